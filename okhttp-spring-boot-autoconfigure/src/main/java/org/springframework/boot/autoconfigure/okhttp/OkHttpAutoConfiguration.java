@@ -15,16 +15,67 @@
  */
 package org.springframework.boot.autoconfigure.okhttp;
 
+import okhttp3.Call;
+import okhttp3.ConnectionSpec;
+import okhttp3.Dns;
 import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.okhttp.CachingDns;
+import org.springframework.boot.okhttp.CallLoggingInterceptor;
+import org.springframework.boot.okhttp.CallPriority;
+import org.springframework.boot.okhttp.ClientMonitor;
+import org.springframework.boot.okhttp.DeadlineCallFactory;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.InProcessTransportInterceptor;
+import org.springframework.boot.okhttp.MemoryBudget;
+import org.springframework.boot.okhttp.MemoryBudgetPublicMetrics;
+import org.springframework.boot.okhttp.MonitoringCallFactory;
+import org.springframework.boot.okhttp.OkHttpClientProfileFactoryBean;
+import org.springframework.boot.okhttp.OkHttpEndpoint;
+import org.springframework.boot.okhttp.OkHttpPropertiesRefresher;
+import org.springframework.boot.okhttp.OkHttpPublicMetrics;
+import org.springframework.boot.okhttp.PriorityCallFactory;
+import org.springframework.boot.okhttp.PriorityScheduler;
+import org.springframework.boot.okhttp.PrioritySchedulerPublicMetrics;
+import org.springframework.boot.okhttp.ReconfigurableCallFactory;
+import org.springframework.boot.okhttp.SpanExporter;
+import org.springframework.boot.okhttp.Tracer;
+import org.springframework.boot.okhttp.TracingCallFactory;
+import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,14 +86,45 @@ import java.util.concurrent.TimeUnit;
 @Configuration
 @ConditionalOnClass(OkHttpClient.class)
 @EnableConfigurationProperties(OkHttpProperties.class)
+@Import(OkHttpAutoConfiguration.ClientProfilesRegistrar.class)
 public class OkHttpAutoConfiguration {
+    private static final Logger logger = LoggerFactory.getLogger(OkHttpAutoConfiguration.class);
+
     @Autowired(required = false)
     private SSLContext sslContext;
 
+    @Autowired(required = false)
+    private X509TrustManager trustManager;
+
+    @Autowired(required = false)
+    private Dns dns;
+
+    @Autowired(required = false)
+    private List<InProcessHandler> inProcessHandlers = Collections.emptyList();
+
+    @Autowired(required = false)
+    private Tracer tracer;
+
+    @Autowired(required = false)
+    private CallLoggingInterceptor callLoggingInterceptor;
+
+    @Autowired(required = false)
+    private ClientMonitor clientMonitor;
+
+    @Autowired(required = false)
+    private MemoryBudget memoryBudget;
+
     @Autowired
     private OkHttpProperties okHttpProperties;
 
+    /**
+     * The root client. It is the primary {@link OkHttpClient} bean, so that injecting a client by type keeps
+     * working once client profiles register clients of their own.
+     *
+     * @return the root client.
+     */
     @Bean
+    @Primary
     @ConditionalOnMissingBean
     public OkHttpClient okHttpClient() {
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
@@ -50,10 +132,409 @@ public class OkHttpAutoConfiguration {
                 .readTimeout(okHttpProperties.getReadTimeout(), TimeUnit.MILLISECONDS)
                 .writeTimeout(okHttpProperties.getWriteTimeout(), TimeUnit.MILLISECONDS);
 
-        if (sslContext != null) {
-            builder.sslSocketFactory(sslContext.getSocketFactory());
+        configureSsl(builder, okHttpProperties.getSsl());
+
+        if (dns != null) {
+            builder.dns(dns);
+        }
+
+        if (clientMonitor != null) {
+            builder.addInterceptor(clientMonitor.getApplicationInterceptor())
+                    .addNetworkInterceptor(clientMonitor.getNetworkInterceptor());
+        }
+
+        if (memoryBudget != null) {
+            // Before the call logging, so that waiting for the budget does not count as latency
+            builder.addInterceptor(memoryBudget);
+        }
+
+        if (callLoggingInterceptor != null) {
+            builder.addInterceptor(callLoggingInterceptor);
+        }
+
+        if (!inProcessHandlers.isEmpty()) {
+            builder.addInterceptor(new InProcessTransportInterceptor(inProcessHandlers));
+        }
+
+        OkHttpClient client = builder.build();
+        client.dispatcher().setMaxRequests(okHttpProperties.getMaxRequests());
+        client.dispatcher().setMaxRequestsPerHost(okHttpProperties.getMaxRequestsPerHost());
+
+        return client;
+    }
+
+    /**
+     * Call factory letting the timeouts of the root client be changed at runtime.
+     *
+     * @param okHttpClient the root client.
+     * @return a call factory delegating to the root client.
+     */
+    @Bean
+    @ConditionalOnMissingBean(ReconfigurableCallFactory.class)
+    public ReconfigurableCallFactory reconfigurableCallFactory(OkHttpClient okHttpClient) {
+        return new ReconfigurableCallFactory(okHttpClient);
+    }
+
+    /**
+     * The call factory Retrofit uses when available, applying deadlines, tracing and monitoring on top of the
+     * reconfigurable root client.
+     *
+     * @param reconfigurableCallFactory the call factory of the root client.
+     * @return a call factory applying deadlines.
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "okHttpCallFactory")
+    public DeadlineCallFactory okHttpCallFactory(ReconfigurableCallFactory reconfigurableCallFactory) {
+        return new DeadlineCallFactory(trace(monitor(reconfigurableCallFactory, clientMonitor), tracer));
+    }
+
+    /**
+     * JMX bean applying changed timeouts to the reconfigurable call factory of the root client and changed request
+     * limits to the shared dispatcher. The client profiles keep their timeouts.
+     *
+     * @param environment the environment to rebind the properties from.
+     * @param reconfigurableCallFactory the call factory of the root client.
+     * @return the refresher.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public OkHttpPropertiesRefresher okHttpPropertiesRefresher(
+            ConfigurableEnvironment environment,
+            ReconfigurableCallFactory reconfigurableCallFactory) {
+        return new OkHttpPropertiesRefresher(environment, okHttpProperties, reconfigurableCallFactory);
+    }
+
+    private static Call.Factory trace(Call.Factory callFactory, Tracer tracer) {
+        return tracer != null ? new TracingCallFactory(callFactory, tracer) : callFactory;
+    }
+
+    private static Call.Factory monitor(Call.Factory callFactory, ClientMonitor clientMonitor) {
+        return clientMonitor != null ? new MonitoringCallFactory(callFactory, clientMonitor) : callFactory;
+    }
+
+    /**
+     * Applies the TLS settings. An {@link SSLContext} bean takes precedence over an {@link X509TrustManager} bean,
+     * which only sets up the context created when there is none. The session cache settings apply to whichever
+     * context is used, including the bean.
+     */
+    private void configureSsl(OkHttpClient.Builder builder, OkHttpProperties.Ssl ssl) {
+        SSLContext context = sslContext;
+
+        if (context != null && trustManager != null) {
+            logger.warn("Both an SSLContext and an X509TrustManager bean exist, OkHttp uses the SSLContext and "
+                    + "ignores the X509TrustManager. Initialize the SSLContext with the trust manager instead.");
+        }
+
+        if (context == null && (trustManager != null
+                || ssl.getSessionCacheSize() != null
+                || ssl.getSessionTimeout() != null)) {
+            context = createSslContext();
+        }
+
+        if (context != null) {
+            SSLSessionContext sessionContext = context.getClientSessionContext();
+
+            if (ssl.getSessionCacheSize() != null) {
+                sessionContext.setSessionCacheSize(ssl.getSessionCacheSize());
+            }
+
+            if (ssl.getSessionTimeout() != null) {
+                sessionContext.setSessionTimeout(ssl.getSessionTimeout());
+            }
+
+            builder.sslSocketFactory(context.getSocketFactory());
+        }
+
+        if (!ssl.getConnectionSpecs().isEmpty()
+                || !ssl.getCipherSuites().isEmpty()
+                || !ssl.getTlsVersions().isEmpty()) {
+            builder.connectionSpecs(createConnectionSpecs(ssl));
+        }
+    }
+
+    /**
+     * Creates an SSL context of our own so that tuning its session cache does not affect the JVM wide default
+     * context. The trust manager bean is used if available, the platform default otherwise.
+     *
+     * @return an initialized SSL context.
+     */
+    private SSLContext createSslContext() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustManager != null ? new TrustManager[] {trustManager} : null, null);
+
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create SSL context for OkHttp", e);
+        }
+    }
+
+    private List<ConnectionSpec> createConnectionSpecs(OkHttpProperties.Ssl ssl) {
+        List<OkHttpProperties.ConnectionSpecType> types = ssl.getConnectionSpecs();
+
+        if (types.isEmpty()) {
+            types = new ArrayList<OkHttpProperties.ConnectionSpecType>();
+            types.add(OkHttpProperties.ConnectionSpecType.MODERN_TLS);
+            types.add(OkHttpProperties.ConnectionSpecType.COMPATIBLE_TLS);
+            types.add(OkHttpProperties.ConnectionSpecType.CLEARTEXT);
+        }
+
+        List<ConnectionSpec> connectionSpecs = new ArrayList<ConnectionSpec>();
+
+        for (OkHttpProperties.ConnectionSpecType type : types) {
+            switch (type) {
+                case MODERN_TLS:
+                    connectionSpecs.add(restrict(ConnectionSpec.MODERN_TLS, ssl));
+                    break;
+                case COMPATIBLE_TLS:
+                    connectionSpecs.add(restrict(ConnectionSpec.COMPATIBLE_TLS, ssl));
+                    break;
+                default:
+                    connectionSpecs.add(ConnectionSpec.CLEARTEXT);
+            }
+        }
+
+        return connectionSpecs;
+    }
+
+    private ConnectionSpec restrict(ConnectionSpec connectionSpec, OkHttpProperties.Ssl ssl) {
+        ConnectionSpec.Builder builder = new ConnectionSpec.Builder(connectionSpec);
+
+        if (!ssl.getCipherSuites().isEmpty()) {
+            builder.cipherSuites(ssl.getCipherSuites().toArray(new String[ssl.getCipherSuites().size()]));
+        }
+
+        if (!ssl.getTlsVersions().isEmpty()) {
+            builder.tlsVersions(ssl.getTlsVersions().toArray(new String[ssl.getTlsVersions().size()]));
         }
 
         return builder.build();
     }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".dns", name = "mode", havingValue = "caching")
+    public static class CachingDnsConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(Dns.class)
+        public CachingDns cachingDns(OkHttpProperties okHttpProperties) {
+            return new CachingDns(Dns.SYSTEM, okHttpProperties.getDns());
+        }
+    }
+
+    /**
+     * Admits the asynchronous calls of the root client and the client profiles to their shared dispatcher by
+     * {@link CallPriority}. Configured before the outer class, so its call factory takes the place of the default
+     * one. The state of the scheduler is exposed as public metrics when the actuator is available.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".scheduling", name = "enabled", havingValue = "true")
+    public static class PrioritySchedulingConfiguration {
+        @Autowired(required = false)
+        private Tracer tracer;
+
+        @Autowired(required = false)
+        private ClientMonitor clientMonitor;
+
+        @Bean
+        @ConditionalOnMissingBean
+        public PriorityScheduler priorityScheduler(OkHttpClient okHttpClient, OkHttpProperties okHttpProperties) {
+            OkHttpProperties.Scheduling scheduling = okHttpProperties.getScheduling();
+            Map<CallPriority, Integer> weights = new EnumMap<CallPriority, Integer>(CallPriority.class);
+            weights.put(CallPriority.HIGH, scheduling.getHighWeight());
+            weights.put(CallPriority.NORMAL, scheduling.getNormalWeight());
+            weights.put(CallPriority.LOW, scheduling.getLowWeight());
+
+            return new PriorityScheduler(okHttpClient.dispatcher(), weights);
+        }
+
+        /**
+         * The call factory Retrofit uses when available, applying deadlines and tracing on top of the priority
+         * scheduling of the reconfigurable root client.
+         *
+         * @param reconfigurableCallFactory the call factory of the root client.
+         * @param priorityScheduler the scheduler of the shared dispatcher.
+         * @return a call factory applying deadlines and priorities.
+         */
+        @Bean
+        @ConditionalOnMissingBean(name = "okHttpCallFactory")
+        public DeadlineCallFactory okHttpCallFactory(
+                ReconfigurableCallFactory reconfigurableCallFactory,
+                PriorityScheduler priorityScheduler) {
+            return new DeadlineCallFactory(trace(
+                    monitor(new PriorityCallFactory(reconfigurableCallFactory, priorityScheduler), clientMonitor),
+                    tracer));
+        }
+
+        @Configuration
+        @ConditionalOnClass(PublicMetrics.class)
+        public static class PrioritySchedulingMetricsConfiguration {
+            @Bean
+            @ConditionalOnMissingBean
+            public PrioritySchedulerPublicMetrics prioritySchedulerPublicMetrics(PriorityScheduler priorityScheduler) {
+                return new PrioritySchedulerPublicMetrics(priorityScheduler);
+            }
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".logging", name = "enabled", havingValue = "true")
+    public static class CallLoggingConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public CallLoggingInterceptor callLoggingInterceptor(OkHttpProperties okHttpProperties) {
+            return new CallLoggingInterceptor(okHttpProperties.getLogging());
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".tracing", name = "enabled", havingValue = "true")
+    public static class TracingConfiguration {
+        @Autowired(required = false)
+        private SpanExporter spanExporter;
+
+        @Bean
+        @ConditionalOnMissingBean
+        public Tracer tracer(OkHttpProperties okHttpProperties) {
+            return new Tracer(spanExporter, okHttpProperties.getTracing().getSamplingProbability());
+        }
+    }
+
+    /**
+     * Tracks the calls and connections of the root client and the client profiles, exposing them through the
+     * "okhttp" actuator endpoint and as public metrics when the actuator is available.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".monitoring", name = "enabled", havingValue = "true")
+    public static class MonitoringConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public ClientMonitor clientMonitor() {
+            return new ClientMonitor();
+        }
+
+        @Configuration
+        @ConditionalOnClass(AbstractEndpoint.class)
+        public static class MonitoringEndpointConfiguration {
+            @Bean
+            @ConditionalOnMissingBean
+            public OkHttpEndpoint okHttpEndpoint(ClientMonitor clientMonitor, OkHttpProperties okHttpProperties) {
+                return new OkHttpEndpoint(clientMonitor, okHttpProperties.getMonitoring().getLongestRunningCalls());
+            }
+
+            @Bean
+            @ConditionalOnMissingBean
+            public OkHttpPublicMetrics okHttpPublicMetrics(ClientMonitor clientMonitor) {
+                return new OkHttpPublicMetrics(clientMonitor);
+            }
+        }
+    }
+
+    /**
+     * Admits the response bodies of the root client and the client profiles, which share its interceptors, against
+     * a single byte budget, exposed as public metrics when the actuator is available.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = OkHttpProperties.PREFIX + ".memory-budget", name = "enabled", havingValue = "true")
+    public static class MemoryBudgetConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public MemoryBudget memoryBudget(OkHttpProperties okHttpProperties) {
+            return new MemoryBudget(okHttpProperties.getMemoryBudget());
+        }
+
+        @Configuration
+        @ConditionalOnClass(PublicMetrics.class)
+        public static class MemoryBudgetMetricsConfiguration {
+            @Bean
+            @ConditionalOnMissingBean
+            public MemoryBudgetPublicMetrics memoryBudgetPublicMetrics(MemoryBudget memoryBudget) {
+                return new MemoryBudgetPublicMetrics(memoryBudget);
+            }
+        }
+    }
+
+    /**
+     * Registers an {@link OkHttpClient} bean for each client profile in {@link OkHttpProperties#getClients()},
+     * along with a {@link DeadlineCallFactory} bean called {@code <name>OkHttpCallFactory} for Retrofit to use.
+     * When enabled, the call factory traces its calls, registers them with the {@link ClientMonitor} and admits
+     * them through the {@link PriorityScheduler}.
+     * <p>
+     * The profiles are read from the environment because the bean definitions are needed before the properties
+     * can be bound. Registrars run after the bean methods of the importing class, so the profile clients do not
+     * make the root client back off.
+     */
+    static class ClientProfilesRegistrar implements ImportBeanDefinitionRegistrar, EnvironmentAware {
+        private Environment environment;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void registerBeanDefinitions(AnnotationMetadata metadata, BeanDefinitionRegistry registry) {
+            for (String profile : getProfiles()) {
+                RootBeanDefinition beanDefinition = new RootBeanDefinition(OkHttpClientProfileFactoryBean.class);
+                beanDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, profile);
+
+                registry.registerBeanDefinition(OkHttpClientProfileFactoryBean.getBeanName(profile), beanDefinition);
+
+                Object callFactory = new RuntimeBeanReference(OkHttpClientProfileFactoryBean.getBeanName(profile));
+
+                if (isEnabled("scheduling")) {
+                    RootBeanDefinition priorityDefinition = new RootBeanDefinition(PriorityCallFactory.class);
+                    priorityDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, callFactory);
+                    priorityDefinition.getConstructorArgumentValues().addIndexedArgumentValue(
+                            1, new RuntimeBeanReference("priorityScheduler"));
+                    callFactory = priorityDefinition;
+                }
+
+                if (isEnabled("monitoring")) {
+                    RootBeanDefinition monitoringDefinition = new RootBeanDefinition(MonitoringCallFactory.class);
+                    monitoringDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, callFactory);
+                    monitoringDefinition.getConstructorArgumentValues().addIndexedArgumentValue(
+                            1, new RuntimeBeanReference("clientMonitor"));
+                    callFactory = monitoringDefinition;
+                }
+
+                if (isEnabled("tracing")) {
+                    RootBeanDefinition tracingDefinition = new RootBeanDefinition(TracingCallFactory.class);
+                    tracingDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, callFactory);
+                    tracingDefinition.getConstructorArgumentValues().addIndexedArgumentValue(
+                            1, new RuntimeBeanReference("tracer"));
+                    callFactory = tracingDefinition;
+                }
+
+                RootBeanDefinition callFactoryDefinition = new RootBeanDefinition(DeadlineCallFactory.class);
+                callFactoryDefinition.getConstructorArgumentValues().addIndexedArgumentValue(0, callFactory);
+
+                registry.registerBeanDefinition(getCallFactoryBeanName(profile), callFactoryDefinition);
+            }
+        }
+
+        private String getCallFactoryBeanName(String profile) {
+            return profile + "OkHttpCallFactory";
+        }
+
+        private boolean isEnabled(String feature) {
+            return new RelaxedPropertyResolver(environment, OkHttpProperties.PREFIX + "." + feature + ".")
+                    .getProperty("enabled", Boolean.class, false);
+        }
+
+        private Set<String> getProfiles() {
+            Map<String, Object> properties = new RelaxedPropertyResolver(environment, OkHttpProperties.PREFIX + ".")
+                    .getSubProperties("clients.");
+            Set<String> profiles = new LinkedHashSet<String>();
+
+            for (String key : properties.keySet()) {
+                int end = key.indexOf('.');
+
+                if (end > 0) {
+                    profiles.add(key.substring(0, end));
+                }
+            }
+
+            return profiles;
+        }
+    }
 }
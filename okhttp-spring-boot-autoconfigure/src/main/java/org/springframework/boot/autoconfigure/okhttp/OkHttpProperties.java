@@ -17,6 +17,11 @@ package org.springframework.boot.autoconfigure.okhttp;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Spring Boot configuration properties for OkHttp.
  *
@@ -44,10 +49,46 @@ public class OkHttpProperties {
      */
     public static final long DEFAULT_WRITE_TIMEOUT = 10000L;
 
+    /**
+     * The default maximum number of concurrently executing asynchronous requests.
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+
+    /**
+     * The default maximum number of concurrently executing asynchronous requests per host.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
     private long connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
     private long readTimeout = DEFAULT_READ_TIMEOUT;
     private long writeTimeout = DEFAULT_WRITE_TIMEOUT;
 
+    /**
+     * Maximum number of concurrently executing asynchronous requests, shared by all client profiles.
+     */
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+
+    /**
+     * Maximum number of concurrently executing asynchronous requests per host, shared by all client profiles.
+     */
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+    private final Dns dns = new Dns();
+    private final Ssl ssl = new Ssl();
+    private final Scheduling scheduling = new Scheduling();
+    private final Tracing tracing = new Tracing();
+    private final Logging logging = new Logging();
+
+    private final Monitoring monitoring = new Monitoring();
+    private final MemoryBudget memoryBudget = new MemoryBudget();
+
+    /**
+     * Named client profiles. Each profile is registered as an OkHttpClient bean called "{name}OkHttpClient",
+     * derived from the root client so that they all share its connection pool and dispatcher, and a call factory
+     * applying deadlines called "{name}OkHttpCallFactory".
+     */
+    private final Map<String, Client> clients = new LinkedHashMap<String, Client>();
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -71,4 +112,607 @@ public class OkHttpProperties {
     public void setWriteTimeout(long writeTimeout) {
         this.writeTimeout = writeTimeout;
     }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    public Dns getDns() {
+        return dns;
+    }
+
+    public Ssl getSsl() {
+        return ssl;
+    }
+
+    public Scheduling getScheduling() {
+        return scheduling;
+    }
+
+    public Tracing getTracing() {
+        return tracing;
+    }
+
+    public Logging getLogging() {
+        return logging;
+    }
+
+    public Monitoring getMonitoring() {
+        return monitoring;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public Map<String, Client> getClients() {
+        return clients;
+    }
+
+    /**
+     * Client profile properties. Settings that are not given are inherited from the root client.
+     */
+    public static class Client {
+        /**
+         * Connection timeout in milliseconds.
+         */
+        private Long connectionTimeout;
+
+        /**
+         * Read timeout in milliseconds.
+         */
+        private Long readTimeout;
+
+        /**
+         * Write timeout in milliseconds.
+         */
+        private Long writeTimeout;
+
+        /**
+         * Names of the Interceptor beans added as application interceptors after those of the root client.
+         */
+        private List<String> interceptors = new ArrayList<String>();
+
+        /**
+         * Names of the Interceptor beans added as network interceptors after those of the root client.
+         */
+        private List<String> networkInterceptors = new ArrayList<String>();
+
+        /**
+         * Path of a Unix domain socket all connections of the profile are made to instead of TCP. Requires Java 16
+         * or later.
+         */
+        private String unixSocketPath;
+
+        public Long getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public void setConnectionTimeout(Long connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+        }
+
+        public Long getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Long readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public Long getWriteTimeout() {
+            return writeTimeout;
+        }
+
+        public void setWriteTimeout(Long writeTimeout) {
+            this.writeTimeout = writeTimeout;
+        }
+
+        public List<String> getInterceptors() {
+            return interceptors;
+        }
+
+        public void setInterceptors(List<String> interceptors) {
+            this.interceptors = interceptors;
+        }
+
+        public List<String> getNetworkInterceptors() {
+            return networkInterceptors;
+        }
+
+        public void setNetworkInterceptors(List<String> networkInterceptors) {
+            this.networkInterceptors = networkInterceptors;
+        }
+
+        public String getUnixSocketPath() {
+            return unixSocketPath;
+        }
+
+        public void setUnixSocketPath(String unixSocketPath) {
+            this.unixSocketPath = unixSocketPath;
+        }
+    }
+
+    /**
+     * DNS resolution properties.
+     */
+    public static class Dns {
+        /**
+         * The default time to live of cached lookups.
+         */
+        public static final long DEFAULT_TTL = 60000L;
+
+        /**
+         * The default time before expiry when cached lookups are refreshed in the background.
+         */
+        public static final long DEFAULT_REFRESH_AHEAD = 10000L;
+
+        /**
+         * The default time stale lookups are served after the resolver failed before they are refreshed again.
+         */
+        public static final long DEFAULT_STALE_RETRY_INTERVAL = 5000L;
+
+        /**
+         * The default time stale lookups are served after their expiry before failing lookups fail.
+         */
+        public static final long DEFAULT_MAX_STALE = 300000L;
+
+        /**
+         * The default maximum number of cached host names.
+         */
+        public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+        private DnsMode mode = DnsMode.SYSTEM;
+        private long ttl = DEFAULT_TTL;
+        private long refreshAhead = DEFAULT_REFRESH_AHEAD;
+        private boolean serveStale = true;
+        private long staleRetryInterval = DEFAULT_STALE_RETRY_INTERVAL;
+        private long maxStale = DEFAULT_MAX_STALE;
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private AddressSelection addressSelection = AddressSelection.NONE;
+
+        public DnsMode getMode() {
+            return mode;
+        }
+
+        public void setMode(DnsMode mode) {
+            this.mode = mode;
+        }
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
+
+        public long getRefreshAhead() {
+            return refreshAhead;
+        }
+
+        public void setRefreshAhead(long refreshAhead) {
+            this.refreshAhead = refreshAhead;
+        }
+
+        public boolean isServeStale() {
+            return serveStale;
+        }
+
+        public void setServeStale(boolean serveStale) {
+            this.serveStale = serveStale;
+        }
+
+        public long getStaleRetryInterval() {
+            return staleRetryInterval;
+        }
+
+        public void setStaleRetryInterval(long staleRetryInterval) {
+            this.staleRetryInterval = staleRetryInterval;
+        }
+
+        public long getMaxStale() {
+            return maxStale;
+        }
+
+        public void setMaxStale(long maxStale) {
+            this.maxStale = maxStale;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public AddressSelection getAddressSelection() {
+            return addressSelection;
+        }
+
+        public void setAddressSelection(AddressSelection addressSelection) {
+            this.addressSelection = addressSelection;
+        }
+    }
+
+    /**
+     * TLS properties.
+     */
+    public static class Ssl {
+        /**
+         * Maximum number of cached client TLS sessions, applied to the SSLContext bean if there is one. The JDK
+         * default is used if not set.
+         */
+        private Integer sessionCacheSize;
+
+        /**
+         * Lifetime of cached client TLS sessions in seconds, applied to the SSLContext bean if there is one. The
+         * JDK default is used if not set.
+         */
+        private Integer sessionTimeout;
+
+        /**
+         * Java names of the cipher suites offered on TLS connections. The OkHttp defaults are used if empty.
+         */
+        private List<String> cipherSuites = new ArrayList<String>();
+
+        /**
+         * Java names of the TLS versions offered on TLS connections. The OkHttp defaults are used if empty.
+         */
+        private List<String> tlsVersions = new ArrayList<String>();
+
+        /**
+         * Connection specs attempted in order. The OkHttp defaults are used if empty.
+         */
+        private List<ConnectionSpecType> connectionSpecs = new ArrayList<ConnectionSpecType>();
+
+        public Integer getSessionCacheSize() {
+            return sessionCacheSize;
+        }
+
+        public void setSessionCacheSize(Integer sessionCacheSize) {
+            this.sessionCacheSize = sessionCacheSize;
+        }
+
+        public Integer getSessionTimeout() {
+            return sessionTimeout;
+        }
+
+        public void setSessionTimeout(Integer sessionTimeout) {
+            this.sessionTimeout = sessionTimeout;
+        }
+
+        public List<String> getCipherSuites() {
+            return cipherSuites;
+        }
+
+        public void setCipherSuites(List<String> cipherSuites) {
+            this.cipherSuites = cipherSuites;
+        }
+
+        public List<String> getTlsVersions() {
+            return tlsVersions;
+        }
+
+        public void setTlsVersions(List<String> tlsVersions) {
+            this.tlsVersions = tlsVersions;
+        }
+
+        public List<ConnectionSpecType> getConnectionSpecs() {
+            return connectionSpecs;
+        }
+
+        public void setConnectionSpecs(List<ConnectionSpecType> connectionSpecs) {
+            this.connectionSpecs = connectionSpecs;
+        }
+    }
+
+    /**
+     * Priority scheduling properties.
+     */
+    public static class Scheduling {
+        /**
+         * Whether asynchronous calls are admitted to the dispatcher by priority instead of in FIFO order.
+         */
+        private boolean enabled;
+
+        /**
+         * Relative share of admissions given to high priority calls while calls of several priorities wait.
+         */
+        private int highWeight = 4;
+
+        /**
+         * Relative share of admissions given to normal priority calls while calls of several priorities wait.
+         */
+        private int normalWeight = 2;
+
+        /**
+         * Relative share of admissions given to low priority calls while calls of several priorities wait.
+         */
+        private int lowWeight = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getHighWeight() {
+            return highWeight;
+        }
+
+        public void setHighWeight(int highWeight) {
+            this.highWeight = highWeight;
+        }
+
+        public int getNormalWeight() {
+            return normalWeight;
+        }
+
+        public void setNormalWeight(int normalWeight) {
+            this.normalWeight = normalWeight;
+        }
+
+        public int getLowWeight() {
+            return lowWeight;
+        }
+
+        public void setLowWeight(int lowWeight) {
+            this.lowWeight = lowWeight;
+        }
+    }
+
+    /**
+     * Tracing properties.
+     */
+    public static class Tracing {
+        /**
+         * Whether calls propagate the trace context of the calling thread in the W3C traceparent header and record
+         * client spans.
+         */
+        private boolean enabled;
+
+        /**
+         * Probability of recording calls made outside of a trace. Calls made within a trace follow its sampling
+         * decision.
+         */
+        private double samplingProbability = 0.1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getSamplingProbability() {
+            return samplingProbability;
+        }
+
+        public void setSamplingProbability(double samplingProbability) {
+            this.samplingProbability = samplingProbability;
+        }
+    }
+
+    /**
+     * Call logging properties.
+     */
+    public static class Logging {
+        /**
+         * Whether to log slow calls, calls with large payloads and a sample of the other calls.
+         */
+        private boolean enabled;
+
+        /**
+         * Time in milliseconds from sending a request until its response headers arrive above which the call is
+         * always logged.
+         */
+        private long slowCallThreshold = 1000;
+
+        /**
+         * Size in bytes of a request or response body above which the call is always logged.
+         */
+        private long payloadSizeThreshold = 1024 * 1024;
+
+        /**
+         * Fraction of the other calls that are logged, from 0 to 1.
+         */
+        private double sampleRate;
+
+        /**
+         * Maximum number of log entries waiting to be written. Entries are dropped while the queue is full.
+         */
+        private int queueSize = 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getSlowCallThreshold() {
+            return slowCallThreshold;
+        }
+
+        public void setSlowCallThreshold(long slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+        }
+
+        public long getPayloadSizeThreshold() {
+            return payloadSizeThreshold;
+        }
+
+        public void setPayloadSizeThreshold(long payloadSizeThreshold) {
+            this.payloadSizeThreshold = payloadSizeThreshold;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+    }
+
+    /**
+     * Monitoring properties.
+     */
+    public static class Monitoring {
+        /**
+         * Whether to track queued and running calls and pooled connections, exposed by the "okhttp" actuator
+         * endpoint and as gauges when the actuator is available.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of longest-running calls listed by the endpoint.
+         */
+        private int longestRunningCalls = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLongestRunningCalls() {
+            return longestRunningCalls;
+        }
+
+        public void setLongestRunningCalls(int longestRunningCalls) {
+            this.longestRunningCalls = longestRunningCalls;
+        }
+    }
+
+    /**
+     * Memory budget properties.
+     */
+    public static class MemoryBudget {
+        /**
+         * Whether response bodies are admitted against a byte budget shared by the root client and the client
+         * profiles before they are read.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum number of bytes of response bodies being read at a time.
+         */
+        private long maxBytes = 64 * 1024 * 1024;
+
+        /**
+         * Time in milliseconds a response waits for budget before its call fails. Zero fails right away.
+         */
+        private long maxWait = 10000;
+
+        /**
+         * Number of bytes reserved up front for a response body of unknown length. The bytes read beyond it are
+         * counted as they are read.
+         */
+        private long unknownLengthReservation = 64 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public long getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public long getUnknownLengthReservation() {
+            return unknownLengthReservation;
+        }
+
+        public void setUnknownLengthReservation(long unknownLengthReservation) {
+            this.unknownLengthReservation = unknownLengthReservation;
+        }
+    }
+
+    /**
+     * The connection specs provided by OkHttp.
+     */
+    public enum ConnectionSpecType {
+        MODERN_TLS,
+        COMPATIBLE_TLS,
+        CLEARTEXT
+    }
+
+    /**
+     * Supported DNS resolution modes.
+     */
+    public enum DnsMode {
+        /**
+         * Every lookup goes to the system resolver.
+         */
+        SYSTEM,
+
+        /**
+         * Lookups are cached and refreshed in the background before they expire.
+         */
+        CACHING
+    }
+
+    /**
+     * Ordering applied to the resolved addresses of a host on each lookup.
+     */
+    public enum AddressSelection {
+        /**
+         * Addresses are returned in the order given by the resolver.
+         */
+        NONE,
+
+        /**
+         * Addresses are shuffled on every lookup.
+         */
+        SHUFFLE,
+
+        /**
+         * The first address is rotated on every lookup.
+         */
+        ROUND_ROBIN
+    }
 }
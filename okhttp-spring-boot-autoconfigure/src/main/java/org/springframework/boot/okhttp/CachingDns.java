@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Dns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Dns} implementation caching the lookups of a delegate resolver.
+ * <p>
+ * Cached lookups are refreshed in the background once they are within the configured refresh-ahead window of
+ * their expiry so that callers rarely wait for the resolver. Expired lookups are resolved synchronously and, if
+ * the resolver fails, the stale addresses are served instead when allowed by the configuration. The stale
+ * addresses are then cached again and refreshed in the background once the stale retry interval passes, so that
+ * callers do not wait for a failing resolver on every lookup. Stale addresses are served for at most the max stale
+ * time after their expiry, after which the lookups fail with the error of the resolver.
+ * <p>
+ * At most the configured maximum number of host names is cached. When a new host name is resolved while the
+ * cache is full, the lookups stale for too long are evicted, or the lookup expiring first if there is none.
+ *
+ * @author troinine
+ */
+public class CachingDns implements Dns, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CachingDns.class);
+
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+    private final Dns delegate;
+    private final OkHttpProperties.Dns properties;
+    private final ExecutorService refreshExecutor;
+
+    public CachingDns(Dns delegate, OkHttpProperties.Dns properties) {
+        this(delegate, properties, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "OkHttp CachingDns");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    /**
+     * Creates a caching resolver refreshing lookups with the given executor. The executor is shut down when
+     * this resolver is closed.
+     *
+     * @param delegate the resolver to cache.
+     * @param properties the DNS configuration.
+     * @param refreshExecutor the executor running the background refreshes.
+     */
+    public CachingDns(Dns delegate, OkHttpProperties.Dns properties, ExecutorService refreshExecutor) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = cache.get(hostname);
+        long now = currentTimeMillis();
+
+        if (entry == null || now >= entry.expiresAt) {
+            entry = resolve(hostname, entry);
+        } else if (now >= entry.refreshAt) {
+            scheduleRefresh(hostname, entry);
+        }
+
+        return select(entry);
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the current time in milliseconds. Exposed for tests.
+     *
+     * @return the current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private Entry resolve(String hostname, Entry stale) throws UnknownHostException {
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            long now = currentTimeMillis();
+            Entry entry = new Entry(addresses, now,
+                    now + properties.getTtl() - properties.getRefreshAhead(), now + properties.getTtl());
+
+            if (!cache.containsKey(hostname) && cache.size() >= properties.getMaxEntries()) {
+                evict(now);
+            }
+
+            cache.put(hostname, entry);
+
+            return entry;
+        } catch (UnknownHostException e) {
+            if (stale != null && properties.isServeStale()) {
+                long now = currentTimeMillis();
+                long staleUntil = staleUntil(stale);
+
+                if (now < staleUntil) {
+                    logger.warn("Failed to resolve {}, serving stale addresses: {}", hostname, e.getMessage());
+
+                    Entry entry = new Entry(stale.addresses, stale.resolvedAt,
+                            Math.min(now + properties.getStaleRetryInterval(), staleUntil),
+                            Math.min(now + properties.getTtl(), staleUntil));
+
+                    // Only replace the entry that failed, not one a concurrent lookup resolved meanwhile
+                    cache.replace(hostname, stale, entry);
+
+                    return entry;
+                }
+
+                logger.warn("Failed to resolve {} and the stale addresses are too old: {}", hostname, e.getMessage());
+
+                cache.remove(hostname, stale);
+            }
+
+            throw e;
+        }
+    }
+
+    private long staleUntil(Entry entry) {
+        return entry.resolvedAt + properties.getTtl() + properties.getMaxStale();
+    }
+
+    /**
+     * Makes room for a new host name, first by evicting the lookups stale for too long and then, if the cache is
+     * still full, the lookup expiring first.
+     *
+     * @param now the current time in milliseconds.
+     */
+    private void evict(long now) {
+        String first = null;
+        Entry firstEntry = null;
+
+        for (Map.Entry<String, Entry> cached : cache.entrySet()) {
+            Entry entry = cached.getValue();
+
+            if (now >= staleUntil(entry)) {
+                cache.remove(cached.getKey(), entry);
+            } else if (firstEntry == null || entry.expiresAt < firstEntry.expiresAt) {
+                first = cached.getKey();
+                firstEntry = entry;
+            }
+        }
+
+        if (first != null && cache.size() >= properties.getMaxEntries()) {
+            cache.remove(first, firstEntry);
+        }
+    }
+
+    private void scheduleRefresh(final String hostname, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resolve(hostname, entry);
+                    } catch (UnknownHostException e) {
+                        logger.debug("Background refresh of {} failed: {}", hostname, e.getMessage());
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private List<InetAddress> select(Entry entry) {
+        List<InetAddress> addresses = entry.addresses;
+
+        if (addresses.size() < 2) {
+            return addresses;
+        }
+
+        switch (properties.getAddressSelection()) {
+            case SHUFFLE:
+                List<InetAddress> shuffled = new ArrayList<InetAddress>(addresses);
+                Collections.shuffle(shuffled);
+                return shuffled;
+            case ROUND_ROBIN:
+                int offset = (entry.position.getAndIncrement() & Integer.MAX_VALUE) % addresses.size();
+                List<InetAddress> rotated = new ArrayList<InetAddress>(addresses.size());
+                rotated.addAll(addresses.subList(offset, addresses.size()));
+                rotated.addAll(addresses.subList(0, offset));
+                return rotated;
+            default:
+                return addresses;
+        }
+    }
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long resolvedAt;
+        final long refreshAt;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        final AtomicInteger position = new AtomicInteger();
+
+        Entry(List<InetAddress> addresses, long resolvedAt, long refreshAt, long expiresAt) {
+            this.addresses = Collections.unmodifiableList(new ArrayList<InetAddress>(addresses));
+            this.resolvedAt = resolvedAt;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Interceptor} logging one line per slow call, per call with a large body and per sampled call.
+ * <p>
+ * Unlike OkHttp's logging interceptor, bodies are never read: the sizes are taken from the declared content
+ * lengths, so bodies of unknown length do not count towards the payload size threshold. The latency is measured
+ * until the response headers arrive. Log entries are handed to a background thread through a bounded queue, so
+ * the calls never wait for the log to be written. Failed calls are logged at WARN and the other calls at INFO, and
+ * entries are only queued while their level is enabled. Entries are dropped while the queue is full, and the number
+ * of dropped entries is logged before the next entry is written, or within a second once the queue is empty.
+ * <p>
+ * The background thread is started by {@link #afterPropertiesSet()}, entries are queued until then.
+ *
+ * @author troinine
+ */
+public class CallLoggingInterceptor implements Interceptor, InitializingBean, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CallLoggingInterceptor.class);
+
+    private static final long DROPPED_REPORT_INTERVAL_MILLIS = 1000;
+
+    private final OkHttpProperties.Logging properties;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread writer;
+
+    public CallLoggingInterceptor(OkHttpProperties.Logging properties) {
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<Entry>(properties.getQueueSize());
+    }
+
+    /**
+     * Starts the background thread writing the log entries.
+     */
+    @Override
+    public synchronized void afterPropertiesSet() {
+        if (writer != null) {
+            return;
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "OkHttp CallLogging");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        boolean warnEnabled = isWarnEnabled();
+        boolean infoEnabled = isInfoEnabled();
+
+        if (!warnEnabled && !infoEnabled) {
+            return chain.proceed(chain.request());
+        }
+
+        Request request = chain.request();
+        long start = System.nanoTime();
+        Response response;
+
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (warnEnabled && (elapsed >= properties.getSlowCallThreshold() || isSampled())) {
+                offer(new Entry(request, elapsed, requestSize(request), -1, null, e));
+            }
+
+            throw e;
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long requestSize = requestSize(request);
+        long responseSize = response.body() != null ? response.body().contentLength() : -1;
+
+        if (infoEnabled && (elapsed >= properties.getSlowCallThreshold()
+                || requestSize > properties.getPayloadSizeThreshold()
+                || responseSize > properties.getPayloadSizeThreshold()
+                || isSampled())) {
+            offer(new Entry(request, elapsed, requestSize, responseSize, response.code(), null));
+        }
+
+        return response;
+    }
+
+    /**
+     * Stops the background thread, discarding the entries not written yet.
+     */
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * Returns whether the entries of failed calls and of dropped entries would be written. Exposed for tests.
+     *
+     * @return {@code true} if the WARN level is enabled.
+     */
+    protected boolean isWarnEnabled() {
+        return logger.isWarnEnabled();
+    }
+
+    /**
+     * Returns whether the entries of completed calls would be written. Exposed for tests.
+     *
+     * @return {@code true} if the INFO level is enabled.
+     */
+    protected boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
+
+    /**
+     * Writes the number of dropped entries on the background thread. Exposed for tests.
+     *
+     * @param count the number of entries dropped since the count was last written.
+     */
+    protected void writeDropped(long count) {
+        logger.warn("Dropped {} call log entries", count);
+    }
+
+    /**
+     * Writes a log entry on the background thread. Exposed for tests.
+     *
+     * @param entry the entry to write.
+     */
+    protected void write(Entry entry) {
+        if (entry.failure != null) {
+            logger.warn("{} {} failed after {} ms: {}",
+                    entry.method, entry.url, entry.elapsed, entry.failure.toString());
+        } else {
+            logger.info("{} {} {} in {} ms, request {} bytes, response {} bytes",
+                    entry.method, entry.url, entry.code, entry.elapsed,
+                    size(entry.requestSize), size(entry.responseSize));
+        }
+    }
+
+    private boolean isSampled() {
+        double sampleRate = properties.getSampleRate();
+
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private void offer(Entry entry) {
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Entry entry = queue.poll(DROPPED_REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                long droppedBefore = dropped.getAndSet(0);
+
+                try {
+                    if (droppedBefore > 0) {
+                        writeDropped(droppedBefore);
+                    }
+
+                    if (entry != null) {
+                        write(entry);
+                    }
+                } catch (RuntimeException e) {
+                    logger.debug("Failed to write call log entry", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private static long requestSize(Request request) {
+        RequestBody body = request.body();
+
+        if (body == null) {
+            return 0;
+        }
+
+        try {
+            return body.contentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String size(long size) {
+        return size >= 0 ? String.valueOf(size) : "unknown";
+    }
+
+    /**
+     * Logged call.
+     */
+    protected static class Entry {
+        final String method;
+        final String url;
+        final long elapsed;
+        final long requestSize;
+        final long responseSize;
+        final Integer code;
+        final IOException failure;
+
+        Entry(Request request, long elapsed, long requestSize, long responseSize, Integer code, IOException failure) {
+            this.method = request.method();
+            this.url = request.url().toString();
+            this.elapsed = elapsed;
+            this.requestSize = requestSize;
+            this.responseSize = responseSize;
+            this.code = code;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+/**
+ * Priority classes of asynchronous calls scheduled by a {@link PriorityScheduler}.
+ * <p>
+ * The priority of the current thread applies to the calls created through a {@link PriorityCallFactory} on that
+ * thread. Calls created without a priority are {@link #NORMAL}.
+ *
+ * @author troinine
+ */
+public enum CallPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    private static final ThreadLocal<CallPriority> CURRENT = new ThreadLocal<CallPriority>();
+
+    /**
+     * Returns the priority of the current thread.
+     *
+     * @return the current priority, {@link #NORMAL} if none has been set.
+     */
+    public static CallPriority current() {
+        CallPriority priority = CURRENT.get();
+
+        return priority != null ? priority : NORMAL;
+    }
+
+    /**
+     * Sets the priority of the current thread.
+     *
+     * @param priority the priority to set.
+     * @return the previous priority to be passed to {@link #restore(CallPriority)}, may be {@code null}.
+     */
+    public static CallPriority set(CallPriority priority) {
+        CallPriority previous = CURRENT.get();
+        CURRENT.set(priority);
+
+        return previous;
+    }
+
+    /**
+     * Restores the priority of the current thread to the one returned by {@link #set(CallPriority)}.
+     *
+     * @param previous the previous priority, may be {@code null}.
+     */
+    public static void restore(CallPriority previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
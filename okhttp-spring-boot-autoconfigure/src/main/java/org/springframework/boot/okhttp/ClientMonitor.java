@@ -0,0 +1,473 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Connection;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the queued and running calls and the pooled connections of a client, per host and per route.
+ * <p>
+ * The dispatcher and the connection pool of OkHttp only expose their totals, and their internals cannot be read
+ * without taking their locks. The state is therefore tracked on the side: the calls are registered when they are
+ * enqueued or executed through a {@link MonitoringCallFactory} and marked as running by the
+ * {@link #getApplicationInterceptor() application interceptor}, and the connections are registered by the
+ * {@link #getNetworkInterceptor() network interceptor} when they carry their first exchange. Connections closed
+ * since then, by the pool or after a failure, are counted as evictions when found closed. Only concurrent
+ * collections are involved, so tracking does not make the calls contend with each other. The totals of a
+ * {@link #snapshot(int) snapshot} are worked out from the tracked state too, since reading them from the dispatcher
+ * or the connection pool would take their locks.
+ * <p>
+ * Calls made with the client directly are tracked from the time they start running.
+ *
+ * @author troinine
+ */
+public class ClientMonitor {
+    private final Set<TrackedCall> calls = Collections.newSetFromMap(new ConcurrentHashMap<TrackedCall, Boolean>());
+    private final ConcurrentMap<Request, TrackedCall> pending = new ConcurrentHashMap<Request, TrackedCall>();
+    private final ConcurrentMap<Connection, TrackedConnection> connections =
+            new ConcurrentHashMap<Connection, TrackedConnection>();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Interceptor applicationInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            TrackedCall call = pending.remove(request);
+
+            if (call != null) {
+                call.start();
+
+                return chain.proceed(request);
+            }
+
+            call = new TrackedCall(request, TracedOperation.current());
+            call.start();
+            calls.add(call);
+
+            try {
+                return chain.proceed(request);
+            } finally {
+                calls.remove(call);
+            }
+        }
+    };
+
+    private final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            TrackedConnection connection = track(chain.connection());
+            connection.exchanges.incrementAndGet();
+
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                connection.exchanges.decrementAndGet();
+            }
+        }
+    };
+
+    /**
+     * Returns the interceptor marking the calls as running, to be added before the other application
+     * interceptors of the client.
+     *
+     * @return the application interceptor.
+     */
+    public Interceptor getApplicationInterceptor() {
+        return applicationInterceptor;
+    }
+
+    /**
+     * Returns the interceptor tracking the connections of the client.
+     *
+     * @return the network interceptor.
+     */
+    public Interceptor getNetworkInterceptor() {
+        return networkInterceptor;
+    }
+
+    /**
+     * Takes a snapshot of the tracked state.
+     *
+     * @param longestRunningCalls the maximum number of longest-running calls to list.
+     * @return the snapshot.
+     */
+    public Snapshot snapshot(int longestRunningCalls) {
+        sweep();
+
+        long now = System.nanoTime();
+        Map<String, HostState> hosts = new TreeMap<String, HostState>();
+        List<TrackedCall> running = new ArrayList<TrackedCall>();
+        int queued = 0;
+
+        for (TrackedCall call : calls) {
+            HostState host = hosts.get(call.host);
+
+            if (host == null) {
+                host = new HostState();
+                hosts.put(call.host, host);
+            }
+
+            if (call.started == 0) {
+                host.queued++;
+                queued++;
+            } else {
+                host.running++;
+                running.add(call);
+            }
+        }
+
+        Collections.sort(running, new Comparator<TrackedCall>() {
+            @Override
+            public int compare(TrackedCall left, TrackedCall right) {
+                return Long.compare(left.started, right.started);
+            }
+        });
+
+        List<CallState> longest = new ArrayList<CallState>();
+
+        for (TrackedCall call : running.subList(0, Math.min(longestRunningCalls, running.size()))) {
+            longest.add(new CallState(call, TimeUnit.NANOSECONDS.toMillis(now - call.started)));
+        }
+
+        Map<String, RouteState> routes = new TreeMap<String, RouteState>();
+        int connectionCount = 0;
+        int idle = 0;
+
+        for (TrackedConnection connection : connections.values()) {
+            RouteState route = routes.get(connection.route);
+
+            if (route == null) {
+                route = new RouteState();
+                routes.put(connection.route, route);
+            }
+
+            route.connections++;
+            route.oldestAge = Math.max(route.oldestAge, TimeUnit.NANOSECONDS.toMillis(now - connection.created));
+            connectionCount++;
+
+            if (connection.exchanges.get() == 0) {
+                route.idle++;
+                idle++;
+            }
+        }
+
+        return new Snapshot(
+                new CallTotals(queued, running.size()),
+                new ConnectionTotals(connectionCount, idle, evictions.get()),
+                hosts,
+                routes,
+                longest);
+    }
+
+    void enqueued(TrackedCall call) {
+        calls.add(call);
+        pending.put(call.request, call);
+    }
+
+    void executed(TrackedCall call) {
+        call.start();
+        calls.add(call);
+        pending.put(call.request, call);
+    }
+
+    void finished(TrackedCall call) {
+        pending.remove(call.request, call);
+        calls.remove(call);
+    }
+
+    private TrackedConnection track(Connection connection) {
+        TrackedConnection tracked = connections.get(connection);
+
+        if (tracked == null) {
+            tracked = new TrackedConnection(connection);
+            TrackedConnection existing = connections.putIfAbsent(connection, tracked);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            // New connections are rare enough to look for the closed ones each time
+            sweep();
+        }
+
+        return tracked;
+    }
+
+    private void sweep() {
+        for (Iterator<Connection> connections = this.connections.keySet().iterator(); connections.hasNext(); ) {
+            if (connections.next().socket().isClosed()) {
+                connections.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Call registered with the monitor.
+     */
+    static class TrackedCall {
+        final Request request;
+        final String host;
+        final TracedOperation operation;
+        volatile long started;
+
+        TrackedCall(Request request, TracedOperation operation) {
+            this.request = request;
+            this.host = request.url().host();
+            this.operation = operation;
+        }
+
+        void start() {
+            started = System.nanoTime();
+        }
+    }
+
+    private static class TrackedConnection {
+        final String route;
+        final long created = System.nanoTime();
+        final AtomicInteger exchanges = new AtomicInteger();
+
+        TrackedConnection(Connection connection) {
+            this.route = describe(connection.route());
+        }
+
+        private static String describe(Route route) {
+            HttpUrl url = route.address().url();
+            String name = url.host() + ":" + url.port();
+
+            return route.proxy().type() == Proxy.Type.DIRECT ? name : name + " via " + route.proxy().address();
+        }
+    }
+
+    /**
+     * State of a client at the time of a {@link #snapshot(int)}.
+     */
+    public static class Snapshot {
+        private final CallTotals calls;
+        private final ConnectionTotals connections;
+        private final Map<String, HostState> hosts;
+        private final Map<String, RouteState> routes;
+        private final List<CallState> longestRunningCalls;
+
+        Snapshot(
+                CallTotals calls,
+                ConnectionTotals connections,
+                Map<String, HostState> hosts,
+                Map<String, RouteState> routes,
+                List<CallState> longestRunningCalls) {
+            this.calls = calls;
+            this.connections = connections;
+            this.hosts = hosts;
+            this.routes = routes;
+            this.longestRunningCalls = longestRunningCalls;
+        }
+
+        public CallTotals getCalls() {
+            return calls;
+        }
+
+        public ConnectionTotals getConnections() {
+            return connections;
+        }
+
+        /**
+         * Returns the tracked calls by host. Calls waiting in a {@link PriorityScheduler} count as queued.
+         *
+         * @return the hosts in alphabetical order.
+         */
+        public Map<String, HostState> getHosts() {
+            return hosts;
+        }
+
+        /**
+         * Returns the open connections by route, named by the host and port and the proxy if any.
+         *
+         * @return the routes in alphabetical order.
+         */
+        public Map<String, RouteState> getRoutes() {
+            return routes;
+        }
+
+        /**
+         * Returns the running calls, the longest-running first.
+         *
+         * @return the longest-running calls.
+         */
+        public List<CallState> getLongestRunningCalls() {
+            return longestRunningCalls;
+        }
+    }
+
+    /**
+     * Totals of the tracked calls.
+     */
+    public static class CallTotals {
+        private final int queued;
+        private final int running;
+
+        CallTotals(int queued, int running) {
+            this.queued = queued;
+            this.running = running;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+    }
+
+    /**
+     * Totals of the tracked connections, along with the evictions.
+     */
+    public static class ConnectionTotals {
+        private final int connections;
+        private final int idle;
+        private final long evictions;
+
+        ConnectionTotals(int connections, int idle, long evictions) {
+            this.connections = connections;
+            this.idle = idle;
+            this.evictions = evictions;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+    }
+
+    /**
+     * Tracked calls of a host.
+     */
+    public static class HostState {
+        private int queued;
+        private int running;
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+    }
+
+    /**
+     * Tracked connections of a route. A connection is idle when it is not carrying an exchange.
+     */
+    public static class RouteState {
+        private int connections;
+        private int idle;
+        private long oldestAge;
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * Returns the age of the oldest connection.
+         *
+         * @return the age in milliseconds.
+         */
+        public long getOldestAge() {
+            return oldestAge;
+        }
+    }
+
+    /**
+     * Running call.
+     */
+    public static class CallState {
+        private final String method;
+        private final String url;
+        private final String operation;
+        private final long elapsed;
+
+        CallState(TrackedCall call, long elapsed) {
+            HttpUrl url = call.request.url();
+            this.method = call.request.method();
+            this.url = url.scheme() + "://" + url.host() + ":" + url.port() + url.encodedPath();
+            this.operation = call.operation != null ? call.operation.toString() : null;
+            this.elapsed = elapsed;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns the URL of the call without its query, which may carry secrets.
+         *
+         * @return the URL.
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the {@link TracedOperation} the call was made for.
+         *
+         * @return the operation or {@code null} if unknown.
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns how long the call has been running.
+         *
+         * @return the time in milliseconds.
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which the work on behalf of a request must be done.
+ * <p>
+ * The deadline of the current thread applies to every call created through a {@link DeadlineCallFactory} on that
+ * thread. Such calls fail without being sent once the deadline has passed, are canceled when it passes while they
+ * are in flight and carry it to the server in the {@value #HEADER} header, so that the downstream service can
+ * stop working on requests nobody waits for anymore. Deadlines are set around the work they apply to:
+ * <pre class="code">
+ * Deadline previous = Deadline.set(Deadline.after(2, TimeUnit.SECONDS));
+ *
+ * try {
+ *     // Calls made here share the budget of two seconds
+ * } finally {
+ *     Deadline.restore(previous);
+ * }
+ * </pre>
+ *
+ * @author troinine
+ */
+public final class Deadline {
+    /**
+     * Header carrying the deadline as milliseconds since the epoch.
+     */
+    public static final String HEADER = "X-Request-Deadline";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long epochMillis;
+
+    private Deadline(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param timeout the time until the deadline.
+     * @param unit the unit of the timeout.
+     * @return the deadline.
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.currentTimeMillis() + unit.toMillis(timeout));
+    }
+
+    /**
+     * Creates a deadline at the given point in time.
+     *
+     * @param epochMillis the deadline as milliseconds since the epoch.
+     * @return the deadline.
+     */
+    public static Deadline at(long epochMillis) {
+        return new Deadline(epochMillis);
+    }
+
+    /**
+     * Parses a deadline from the value of the {@value #HEADER} header.
+     *
+     * @param value the header value, may be {@code null}.
+     * @return the deadline or {@code null} if the value is missing or malformed.
+     */
+    public static Deadline parse(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return new Deadline(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the deadline of the current thread.
+     *
+     * @return the current deadline or {@code null} if there is none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the deadline of the current thread. A deadline later than the current one is ignored, since the caller
+     * waiting for the current one will not wait longer.
+     *
+     * @param deadline the deadline to set.
+     * @return the previous deadline to be passed to {@link #restore(Deadline)}, may be {@code null}.
+     */
+    public static Deadline set(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+
+        if (previous == null || deadline.epochMillis < previous.epochMillis) {
+            CURRENT.set(deadline);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Restores the deadline of the current thread to the one returned by {@link #set(Deadline)}.
+     *
+     * @param previous the previous deadline, may be {@code null}.
+     */
+    public static void restore(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    /**
+     * Returns the time left until this deadline.
+     *
+     * @return the remaining time in milliseconds, zero or negative if the deadline has passed.
+     */
+    public long remainingMillis() {
+        return epochMillis - System.currentTimeMillis();
+    }
+
+    public boolean isExpired() {
+        return remainingMillis() <= 0;
+    }
+
+    /**
+     * Returns this deadline formatted as the value of the {@value #HEADER} header.
+     *
+     * @return the header value.
+     */
+    @Override
+    public String toString() {
+        return Long.toString(epochMillis);
+    }
+}
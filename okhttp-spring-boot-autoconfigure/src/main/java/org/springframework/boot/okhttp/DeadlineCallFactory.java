@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.AsyncTimeout;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Call.Factory} applying the {@link Deadline} of the creating thread to the calls it creates.
+ * <p>
+ * The deadline is taken when the call is created, so it also applies to calls executed asynchronously on the
+ * dispatcher threads. A deadline given in the {@value Deadline#HEADER} header of the request is used when the
+ * thread has none. Calls are failed with a {@link DeadlineExceededException} without being sent when the deadline
+ * has already passed. Otherwise a watchdog cancels the call once the deadline passes, covering the time the call
+ * is queued, the exchange and the reading of the response body.
+ *
+ * @author troinine
+ */
+public class DeadlineCallFactory implements Call.Factory {
+    private final Call.Factory delegate;
+
+    public DeadlineCallFactory(Call.Factory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        Deadline deadline = Deadline.current();
+
+        if (deadline == null) {
+            deadline = Deadline.parse(request.header(Deadline.HEADER));
+
+            if (deadline == null) {
+                return delegate.newCall(request);
+            }
+        }
+
+        Request withDeadline = request.newBuilder().header(Deadline.HEADER, deadline.toString()).build();
+
+        return new DeadlineCall(delegate.newCall(withDeadline), deadline);
+    }
+
+    private static class DeadlineCall implements Call {
+        private final Call call;
+        private final Deadline deadline;
+        private final Watchdog watchdog;
+        private boolean executed;
+
+        DeadlineCall(Call call, Deadline deadline) {
+            this.call = call;
+            this.deadline = deadline;
+            this.watchdog = new Watchdog(call);
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            start();
+
+            Response response;
+
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                throw exit(e);
+            } catch (RuntimeException e) {
+                watchdog.exit();
+
+                throw e;
+            }
+
+            return finish(response);
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            markExecuted();
+
+            try {
+                start();
+            } catch (DeadlineExceededException e) {
+                responseCallback.onFailure(this, e);
+                return;
+            }
+
+            try {
+                enqueueWatched(responseCallback);
+            } catch (RuntimeException e) {
+                // Rejected by the dispatcher, the callback is never called
+                watchdog.exit();
+
+                throw e;
+            }
+        }
+
+        private void enqueueWatched(final Callback responseCallback) {
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    responseCallback.onFailure(DeadlineCall.this, exit(e));
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    Response withDeadline;
+
+                    try {
+                        withDeadline = finish(response);
+                    } catch (DeadlineExceededException e) {
+                        responseCallback.onFailure(DeadlineCall.this, e);
+                        return;
+                    }
+
+                    responseCallback.onResponse(DeadlineCall.this, withDeadline);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+
+        /**
+         * Fails a second execution before the watchdog is entered again, which it does not allow.
+         */
+        private synchronized void markExecuted() {
+            if (executed) {
+                throw new IllegalStateException("Already Executed");
+            }
+
+            executed = true;
+        }
+
+        private void start() throws DeadlineExceededException {
+            long remaining = deadline.remainingMillis();
+
+            if (remaining <= 0) {
+                throw new DeadlineExceededException("Deadline exceeded " + -remaining + " ms before sending");
+            }
+
+            watchdog.deadline(remaining, TimeUnit.MILLISECONDS);
+            watchdog.enter();
+        }
+
+        private IOException exit(IOException e) {
+            return watchdog.exit() ? watchdog.newTimeoutException(e) : e;
+        }
+
+        /**
+         * Stops watching the exchange and bounds the reads of the response body by the same deadline.
+         */
+        private Response finish(Response response) throws DeadlineExceededException {
+            ResponseBody body = response.body();
+
+            if (watchdog.exit()) {
+                if (body != null) {
+                    body.close();
+                }
+
+                throw watchdog.newTimeoutException(null);
+            }
+
+            if (body == null) {
+                return response;
+            }
+
+            return response.newBuilder().body(new DeadlineResponseBody(body, watchdog)).build();
+        }
+    }
+
+    /**
+     * Cancels the watched call when the deadline passes.
+     */
+    private static class Watchdog extends AsyncTimeout {
+        private final Call call;
+
+        Watchdog(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        protected void timedOut() {
+            call.cancel();
+        }
+
+        @Override
+        protected DeadlineExceededException newTimeoutException(IOException cause) {
+            DeadlineExceededException e = new DeadlineExceededException("Deadline exceeded");
+
+            if (cause != null) {
+                e.initCause(cause);
+            }
+
+            return e;
+        }
+    }
+
+    private static class DeadlineResponseBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        DeadlineResponseBody(ResponseBody delegate, AsyncTimeout watchdog) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(watchdog.source(delegate.source()));
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Serves requests to a host within the same JVM without going through the network stack.
+ * <p>
+ * Handlers registered as beans are picked up by the OkHttp auto-configuration and requests to their host are
+ * answered by {@link #handle(Request)} instead of a socket connection. This is meant for co-located services and
+ * tests where the downstream lives in the same process.
+ *
+ * @author troinine
+ * @see InProcessTransportInterceptor
+ */
+public interface InProcessHandler {
+    /**
+     * @return the host name of the requests served by this handler.
+     */
+    String getHost();
+
+    /**
+     * Handles the given request.
+     *
+     * @param request the request to handle.
+     * @return the response to the request, with {@link Response#request()} set to the given request.
+     * @throws IOException if handling the request fails.
+     */
+    Response handle(Request request) throws IOException;
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Application interceptor short-circuiting requests to the hosts served by {@link InProcessHandler}s.
+ * <p>
+ * Being an application interceptor, the interceptors registered before this one still see the in-process
+ * requests. Requests to other hosts proceed to the network as usual.
+ *
+ * @author troinine
+ */
+public class InProcessTransportInterceptor implements Interceptor {
+    private final Map<String, InProcessHandler> handlers = new HashMap<String, InProcessHandler>();
+
+    public InProcessTransportInterceptor(Collection<? extends InProcessHandler> handlers) {
+        for (InProcessHandler handler : handlers) {
+            InProcessHandler previous = this.handlers.put(handler.getHost().toLowerCase(Locale.US), handler);
+
+            if (previous != null) {
+                throw new IllegalArgumentException("Multiple in-process handlers for host " + handler.getHost());
+            }
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        InProcessHandler handler = handlers.get(chain.request().url().host());
+
+        if (handler == null) {
+            return chain.proceed(chain.request());
+        }
+
+        return handler.handle(chain.request());
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Interceptor} admitting response bodies against a byte budget shared by all the clients it is added to,
+ * so that a burst of large responses cannot exhaust the heap while they are buffered and converted.
+ * <p>
+ * When the response headers arrive, the body reserves its {@code Content-Length} from the budget, or the unknown
+ * length reservation if the length is not declared, before the call returns. While the budget is used up the
+ * responses queue in arrival order, with their bodies left unread in the socket, and the calls fail with a
+ * {@link MemoryBudgetExceededException} if they cannot be admitted within the maximum wait. A body larger than the
+ * whole budget waits until the budget is entirely free. The bytes read beyond the reservation are counted as they
+ * are read, without waiting, so the admission of the next responses sees the actual usage. The reservation is
+ * returned when the body is closed: bodies that are never closed keep their share of the budget, as they keep their
+ * connection.
+ * <p>
+ * The budget covers the bytes of the bodies, not the objects they are converted to, which are usually a small
+ * multiple of them.
+ *
+ * @author troinine
+ */
+public class MemoryBudget implements Interceptor {
+    private final long maxBytes;
+    private final long maxWaitNanos;
+    private final long unknownLengthReservation;
+    private final Deque<Object> waiters = new ArrayDeque<Object>();
+    private long used;
+    private long peak;
+    private long admitted;
+    private long rejected;
+
+    public MemoryBudget(OkHttpProperties.MemoryBudget properties) {
+        if (properties.getMaxBytes() <= 0) {
+            throw new IllegalArgumentException("The budget must be positive, was " + properties.getMaxBytes());
+        }
+
+        if (properties.getMaxWait() < 0) {
+            throw new IllegalArgumentException("The maximum wait must not be negative, was " + properties.getMaxWait());
+        }
+
+        this.maxBytes = properties.getMaxBytes();
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxWait());
+        this.unknownLengthReservation = Math.max(1, properties.getUnknownLengthReservation());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+
+        if (body == null || "HEAD".equals(request.method())) {
+            return response;
+        }
+
+        long length = body.contentLength();
+
+        if (length == 0) {
+            return response;
+        }
+
+        long reservation = Math.min(length > 0 ? length : unknownLengthReservation, maxBytes);
+
+        try {
+            reserve(reservation, request);
+        } catch (IOException e) {
+            body.close();
+
+            throw e;
+        }
+
+        return response.newBuilder()
+                .body(new BudgetedResponseBody(body, reservation))
+                .build();
+    }
+
+    /**
+     * Returns the size of the budget.
+     *
+     * @return the size in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the bytes reserved or read by the bodies currently open. Bodies read beyond their reservation may take
+     * the usage above the budget.
+     *
+     * @return the usage in bytes.
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Returns the highest usage since the budget was created.
+     *
+     * @return the usage in bytes.
+     */
+    public synchronized long getPeak() {
+        return peak;
+    }
+
+    /**
+     * Returns the number of responses waiting for budget.
+     *
+     * @return the number of responses.
+     */
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    /**
+     * Returns the number of response bodies admitted since the budget was created.
+     *
+     * @return the number of responses.
+     */
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Returns the number of calls failed because their response could not be admitted in time, since the budget
+     * was created.
+     *
+     * @return the number of calls.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    private synchronized void reserve(long bytes, Request request) throws IOException {
+        if (waiters.isEmpty() && used + bytes <= maxBytes) {
+            admit(bytes);
+
+            return;
+        }
+
+        Object waiter = new Object();
+        waiters.addLast(waiter);
+
+        try {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            long remaining = maxWaitNanos;
+
+            while (waiters.peekFirst() != waiter || used + bytes > maxBytes) {
+                if (remaining <= 0) {
+                    rejected++;
+
+                    throw new MemoryBudgetExceededException("The memory budget of " + maxBytes + " bytes stayed "
+                            + "used up for " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms, cannot admit the "
+                            + bytes + " bytes of the response to " + request.method() + " " + request.url());
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+
+            admit(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for the memory budget");
+        } finally {
+            waiters.remove(waiter);
+            // The next waiter may fit now
+            notifyAll();
+        }
+    }
+
+    private void admit(long bytes) {
+        admitted++;
+        grow(bytes);
+    }
+
+    private synchronized void grow(long bytes) {
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+
+    private synchronized void release(long bytes) {
+        if (bytes > 0) {
+            used -= bytes;
+            notifyAll();
+        }
+    }
+
+    private class BudgetedResponseBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        BudgetedResponseBody(ResponseBody body, final long reservation) {
+            this.body = body;
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                private final AtomicLong held = new AtomicLong(reservation);
+                private final AtomicBoolean closed = new AtomicBoolean();
+                private long read;
+                private long counted = reservation;
+
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long count = super.read(sink, byteCount);
+
+                    if (count > 0) {
+                        read += count;
+
+                        if (read > counted) {
+                            long excess = read - counted;
+                            counted = read;
+                            grow(excess);
+                            held.addAndGet(excess);
+
+                            if (closed.get()) {
+                                release(held.getAndSet(0));
+                            }
+                        }
+                    }
+
+                    return count;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        closed.set(true);
+                        release(held.getAndSet(0));
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * {@link PublicMetrics} exposing the usage of a {@link MemoryBudget} as gauges:
+ * <ul>
+ * <li>{@code okhttp.memory-budget.max}, {@code okhttp.memory-budget.used} and {@code okhttp.memory-budget.peak},
+ * in bytes</li>
+ * <li>{@code okhttp.memory-budget.waiting}, the responses waiting for budget</li>
+ * <li>{@code okhttp.memory-budget.admitted} and {@code okhttp.memory-budget.rejected}, the responses admitted and
+ * the calls failed since startup</li>
+ * </ul>
+ *
+ * @author troinine
+ */
+public class MemoryBudgetPublicMetrics implements PublicMetrics {
+    private static final String PREFIX = "okhttp.memory-budget.";
+
+    private final MemoryBudget budget;
+
+    public MemoryBudgetPublicMetrics(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Long>(PREFIX + "max", budget.getMaxBytes()));
+        metrics.add(new Metric<Long>(PREFIX + "used", budget.getUsed()));
+        metrics.add(new Metric<Long>(PREFIX + "peak", budget.getPeak()));
+        metrics.add(new Metric<Integer>(PREFIX + "waiting", budget.getWaiting()));
+        metrics.add(new Metric<Long>(PREFIX + "admitted", budget.getAdmitted()));
+        metrics.add(new Metric<Long>(PREFIX + "rejected", budget.getRejected()));
+
+        return metrics;
+    }
+}
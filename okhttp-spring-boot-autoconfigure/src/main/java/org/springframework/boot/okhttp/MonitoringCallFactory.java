@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * {@link Call.Factory} registering the calls it creates with a {@link ClientMonitor}.
+ * <p>
+ * Asynchronous calls are tracked as queued from the time they are enqueued until they start running, and as
+ * running until their callback returns. Synchronous calls are tracked as running until they return. The calls
+ * are tagged with the {@link TracedOperation} of the creating thread.
+ *
+ * @author troinine
+ */
+public class MonitoringCallFactory implements Call.Factory {
+    private final Call.Factory delegate;
+    private final ClientMonitor monitor;
+
+    public MonitoringCallFactory(Call.Factory delegate, ClientMonitor monitor) {
+        this.delegate = delegate;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return new MonitoredCall(delegate.newCall(request), monitor, TracedOperation.current());
+    }
+
+    private static class MonitoredCall implements Call {
+        private final Call call;
+        private final ClientMonitor monitor;
+        private final TracedOperation operation;
+
+        MonitoredCall(Call call, ClientMonitor monitor, TracedOperation operation) {
+            this.call = call;
+            this.monitor = monitor;
+            this.operation = operation;
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            ClientMonitor.TrackedCall tracked = new ClientMonitor.TrackedCall(call.request(), operation);
+            monitor.executed(tracked);
+
+            try {
+                return call.execute();
+            } finally {
+                monitor.finished(tracked);
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            final ClientMonitor.TrackedCall tracked = new ClientMonitor.TrackedCall(call.request(), operation);
+            monitor.enqueued(tracked);
+
+            try {
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call ignored, IOException e) {
+                        try {
+                            responseCallback.onFailure(MonitoredCall.this, e);
+                        } finally {
+                            monitor.finished(tracked);
+                        }
+                    }
+
+                    @Override
+                    public void onResponse(Call ignored, Response response) throws IOException {
+                        try {
+                            responseCallback.onResponse(MonitoredCall.this, response);
+                        } finally {
+                            monitor.finished(tracked);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                monitor.finished(tracked);
+
+                throw e;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return call.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+    }
+}
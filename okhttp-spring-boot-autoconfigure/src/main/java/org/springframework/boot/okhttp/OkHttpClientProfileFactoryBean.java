@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FactoryBean} creating the {@link OkHttpClient} of a named client profile.
+ * <p>
+ * The client is derived from the root client with {@link OkHttpClient#newBuilder()}, which makes it share the
+ * connection pool, dispatcher and the rest of the root configuration. The timeouts, interceptors and Unix domain
+ * socket of the profile are applied on top.
+ *
+ * @author troinine
+ * @see OkHttpProperties#getClients()
+ */
+public class OkHttpClientProfileFactoryBean implements FactoryBean<OkHttpClient>, BeanFactoryAware {
+    /**
+     * Suffix appended to the profile name to form the name of the client bean.
+     */
+    public static final String BEAN_NAME_SUFFIX = "OkHttpClient";
+
+    private final String profile;
+
+    private ConfigurableListableBeanFactory beanFactory;
+    private OkHttpClient client;
+
+    public OkHttpClientProfileFactoryBean(String profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Returns the bean name of the client of the given profile.
+     *
+     * @param profile the name of the profile.
+     * @return the name of the client bean.
+     */
+    public static String getBeanName(String profile) {
+        return profile + BEAN_NAME_SUFFIX;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        Assert.isInstanceOf(ConfigurableListableBeanFactory.class, beanFactory);
+
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    @Override
+    public synchronized OkHttpClient getObject() throws Exception {
+        if (client == null) {
+            client = createClient();
+        }
+
+        return client;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return OkHttpClient.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return true;
+    }
+
+    private OkHttpClient createClient() {
+        OkHttpProperties.Client properties = beanFactory.getBean(OkHttpProperties.class).getClients().get(profile);
+
+        Assert.state(properties != null, "No OkHttp client profile named " + profile);
+
+        OkHttpClient.Builder builder = getRootClient().newBuilder();
+
+        if (properties.getConnectionTimeout() != null) {
+            builder.connectTimeout(properties.getConnectionTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        if (properties.getReadTimeout() != null) {
+            builder.readTimeout(properties.getReadTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        if (properties.getWriteTimeout() != null) {
+            builder.writeTimeout(properties.getWriteTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        if (StringUtils.hasText(properties.getUnixSocketPath())) {
+            UnixDomainSocketFactory socketFactory = new UnixDomainSocketFactory(properties.getUnixSocketPath());
+            builder.socketFactory(socketFactory).dns(socketFactory.getDns());
+        }
+
+        for (String name : properties.getInterceptors()) {
+            builder.addInterceptor(beanFactory.getBean(name, Interceptor.class));
+        }
+
+        for (String name : properties.getNetworkInterceptors()) {
+            builder.addNetworkInterceptor(beanFactory.getBean(name, Interceptor.class));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Finds the root client, which is the only {@link OkHttpClient} bean not created for a profile.
+     *
+     * @return the root client.
+     */
+    private OkHttpClient getRootClient() {
+        List<String> candidates = new ArrayList<String>();
+
+        for (String name : beanFactory.getBeanNamesForType(OkHttpClient.class, true, false)) {
+            if (!beanFactory.containsBeanDefinition(name) || !OkHttpClientProfileFactoryBean.class.getName()
+                    .equals(beanFactory.getBeanDefinition(name).getBeanClassName())) {
+                candidates.add(name);
+            }
+        }
+
+        Assert.state(candidates.size() == 1,
+                "Expected a single root OkHttpClient for client profile " + profile + " but found " + candidates);
+
+        return beanFactory.getBean(candidates.get(0), OkHttpClient.class);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * Actuator endpoint exposing the live state of the dispatcher and the connection pool of the root client, as
+ * tracked by a {@link ClientMonitor}. The client profiles share both with the root client, so their calls and
+ * connections are included.
+ *
+ * @author troinine
+ */
+public class OkHttpEndpoint extends AbstractEndpoint<ClientMonitor.Snapshot> {
+    private final ClientMonitor monitor;
+    private final int longestRunningCalls;
+
+    public OkHttpEndpoint(ClientMonitor monitor, int longestRunningCalls) {
+        super("okhttp");
+        this.monitor = monitor;
+        this.longestRunningCalls = longestRunningCalls;
+    }
+
+    @Override
+    public ClientMonitor.Snapshot invoke() {
+        return monitor.snapshot(longestRunningCalls);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.validation.BindException;
+
+/**
+ * Applies changed OkHttp timeouts and request limits to the running client without restarting the context.
+ * <p>
+ * Exposed over JMX, where the settings can either be changed one by one or rebound from the {@code spring.okhttp}
+ * properties of the environment with {@link #refresh()}, for example after a property source has been updated.
+ * Nothing calls {@link #refresh()} on its own when the environment changes. The {@link OkHttpProperties} bean is
+ * kept in sync with the applied settings.
+ * <p>
+ * The timeouts are only applied to the {@link ReconfigurableCallFactory} of the root client. The root
+ * {@code OkHttpClient} bean and the clients of the profiles keep the timeouts they were created with. The request
+ * limits are set on the shared dispatcher and thus apply to every client.
+ *
+ * @author troinine
+ */
+@ManagedResource(description = "Reconfigures the OkHttp client at runtime")
+public class OkHttpPropertiesRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(OkHttpPropertiesRefresher.class);
+
+    private final ConfigurableEnvironment environment;
+    private final OkHttpProperties properties;
+    private final ReconfigurableCallFactory callFactory;
+
+    public OkHttpPropertiesRefresher(
+            ConfigurableEnvironment environment,
+            OkHttpProperties properties,
+            ReconfigurableCallFactory callFactory) {
+        this.environment = environment;
+        this.properties = properties;
+        this.callFactory = callFactory;
+    }
+
+    /**
+     * Rebinds the {@code spring.okhttp} properties from the environment and applies the timeouts and request
+     * limits.
+     */
+    @ManagedOperation(description = "Rebinds the spring.okhttp properties and applies the timeouts and limits")
+    public synchronized void refresh() {
+        OkHttpProperties bound = bind();
+
+        properties.setConnectionTimeout(bound.getConnectionTimeout());
+        properties.setReadTimeout(bound.getReadTimeout());
+        properties.setWriteTimeout(bound.getWriteTimeout());
+        properties.setMaxRequests(bound.getMaxRequests());
+        properties.setMaxRequestsPerHost(bound.getMaxRequestsPerHost());
+
+        apply();
+    }
+
+    @ManagedAttribute(description = "Connection timeout in milliseconds")
+    public long getConnectionTimeout() {
+        return properties.getConnectionTimeout();
+    }
+
+    @ManagedAttribute
+    public synchronized void setConnectionTimeout(long connectionTimeout) {
+        properties.setConnectionTimeout(connectionTimeout);
+        apply();
+    }
+
+    @ManagedAttribute(description = "Read timeout in milliseconds")
+    public long getReadTimeout() {
+        return properties.getReadTimeout();
+    }
+
+    @ManagedAttribute
+    public synchronized void setReadTimeout(long readTimeout) {
+        properties.setReadTimeout(readTimeout);
+        apply();
+    }
+
+    @ManagedAttribute(description = "Write timeout in milliseconds")
+    public long getWriteTimeout() {
+        return properties.getWriteTimeout();
+    }
+
+    @ManagedAttribute
+    public synchronized void setWriteTimeout(long writeTimeout) {
+        properties.setWriteTimeout(writeTimeout);
+        apply();
+    }
+
+    @ManagedAttribute(description = "Maximum number of concurrent asynchronous requests")
+    public int getMaxRequests() {
+        return properties.getMaxRequests();
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxRequests(int maxRequests) {
+        properties.setMaxRequests(maxRequests);
+        apply();
+    }
+
+    @ManagedAttribute(description = "Maximum number of concurrent asynchronous requests per host")
+    public int getMaxRequestsPerHost() {
+        return properties.getMaxRequestsPerHost();
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        properties.setMaxRequestsPerHost(maxRequestsPerHost);
+        apply();
+    }
+
+    private void apply() {
+        callFactory.reconfigure(properties);
+
+        logger.info("Reconfigured OkHttp with connection timeout {} ms, read timeout {} ms, write timeout {} ms, "
+                        + "max requests {} and max requests per host {}",
+                properties.getConnectionTimeout(),
+                properties.getReadTimeout(),
+                properties.getWriteTimeout(),
+                properties.getMaxRequests(),
+                properties.getMaxRequestsPerHost());
+    }
+
+    private OkHttpProperties bind() {
+        OkHttpProperties target = new OkHttpProperties();
+        PropertiesConfigurationFactory<OkHttpProperties> factory =
+                new PropertiesConfigurationFactory<OkHttpProperties>(target);
+        factory.setPropertySources(environment.getPropertySources());
+        factory.setTargetName(OkHttpProperties.PREFIX);
+
+        try {
+            factory.bindPropertiesToTarget();
+        } catch (BindException e) {
+            throw new IllegalArgumentException("Cannot bind the OkHttp properties", e);
+        }
+
+        return target;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link PublicMetrics} exposing the state tracked by a {@link ClientMonitor} as gauges:
+ * <ul>
+ * <li>{@code okhttp.calls.queued} and {@code okhttp.calls.running}, and their {@code .<host>} breakdowns</li>
+ * <li>{@code okhttp.connections.total}, {@code okhttp.connections.idle} and {@code okhttp.connections.evictions},
+ * and the {@code okhttp.connections.total.<route>} and {@code okhttp.connections.idle.<route>} breakdowns</li>
+ * </ul>
+ *
+ * @author troinine
+ */
+public class OkHttpPublicMetrics implements PublicMetrics {
+    private static final String PREFIX = "okhttp.";
+
+    private final ClientMonitor monitor;
+
+    public OkHttpPublicMetrics(ClientMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        ClientMonitor.Snapshot snapshot = monitor.snapshot(0);
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        metrics.add(new Metric<Integer>(PREFIX + "calls.queued", snapshot.getCalls().getQueued()));
+        metrics.add(new Metric<Integer>(PREFIX + "calls.running", snapshot.getCalls().getRunning()));
+
+        for (Map.Entry<String, ClientMonitor.HostState> host : snapshot.getHosts().entrySet()) {
+            metrics.add(new Metric<Integer>(PREFIX + "calls.queued." + host.getKey(), host.getValue().getQueued()));
+            metrics.add(new Metric<Integer>(
+                    PREFIX + "calls.running." + host.getKey(), host.getValue().getRunning()));
+        }
+
+        metrics.add(new Metric<Integer>(
+                PREFIX + "connections.total", snapshot.getConnections().getConnections()));
+        metrics.add(new Metric<Integer>(PREFIX + "connections.idle", snapshot.getConnections().getIdle()));
+        metrics.add(new Metric<Long>(
+                PREFIX + "connections.evictions", snapshot.getConnections().getEvictions()));
+
+        for (Map.Entry<String, ClientMonitor.RouteState> route : snapshot.getRoutes().entrySet()) {
+            metrics.add(new Metric<Integer>(
+                    PREFIX + "connections.total." + route.getKey(), route.getValue().getConnections()));
+            metrics.add(new Metric<Integer>(
+                    PREFIX + "connections.idle." + route.getKey(), route.getValue().getIdle()));
+        }
+
+        return metrics;
+    }
+}
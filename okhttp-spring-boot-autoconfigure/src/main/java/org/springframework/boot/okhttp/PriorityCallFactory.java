@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * {@link Call.Factory} handing the asynchronous calls it creates to a {@link PriorityScheduler} instead of
+ * enqueueing them directly to the dispatcher.
+ * <p>
+ * The calls get the {@link CallPriority} of the creating thread. Synchronous calls are not queued by the
+ * dispatcher and are executed directly.
+ *
+ * @author troinine
+ */
+public class PriorityCallFactory implements Call.Factory {
+    private final Call.Factory delegate;
+    private final PriorityScheduler scheduler;
+
+    public PriorityCallFactory(Call.Factory delegate, PriorityScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return new PriorityCall(delegate.newCall(request), CallPriority.current(), scheduler);
+    }
+
+    /**
+     * Call waiting in the {@link PriorityScheduler} until it is admitted to the dispatcher.
+     */
+    static class PriorityCall implements Call {
+        final Call call;
+        final CallPriority priority;
+        private final PriorityScheduler scheduler;
+        private Callback callback;
+        private boolean executed;
+        private volatile boolean canceled;
+
+        PriorityCall(Call call, CallPriority priority, PriorityScheduler scheduler) {
+            this.call = call;
+            this.priority = priority;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            markExecuted();
+
+            callback = responseCallback;
+            scheduler.enqueue(this);
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            call.cancel();
+
+            if (scheduler.remove(this)) {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        String host() {
+            return call.request().url().host();
+        }
+
+        /**
+         * Enqueues the call to the dispatcher once admitted by the scheduler, reporting the completion back to it.
+         */
+        void start() {
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call ignored, IOException e) {
+                    try {
+                        callback.onFailure(PriorityCall.this, e);
+                    } finally {
+                        scheduler.finished(PriorityCall.this);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call ignored, Response response) throws IOException {
+                    try {
+                        callback.onResponse(PriorityCall.this, response);
+                    } finally {
+                        scheduler.finished(PriorityCall.this);
+                    }
+                }
+            });
+        }
+
+        private synchronized void markExecuted() {
+            if (executed) {
+                throw new IllegalStateException("Already Executed");
+            }
+
+            executed = true;
+        }
+    }
+}
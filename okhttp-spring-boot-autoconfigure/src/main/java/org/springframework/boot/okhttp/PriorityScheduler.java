@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Dispatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scheduler admitting asynchronous calls to an OkHttp {@link Dispatcher} by {@link CallPriority}.
+ * <p>
+ * The dispatcher serves the calls it has to queue in FIFO order, so a burst of background calls to a host delays
+ * the user facing calls to the same host behind them. This scheduler keeps the waiting calls in a queue per
+ * priority class instead and only admits as many calls as the request limits of the dispatcher allow, so that
+ * the dispatcher never has to queue calls of its own. While several classes have calls waiting, they are served
+ * by weighted fair queuing: each class gets a share of the admissions proportional to its weight, so lower
+ * classes are slowed down but never starved. Calls to a host at its limit are passed over in favor of the next
+ * waiting call to another host, like the dispatcher does.
+ * <p>
+ * The limits are read from the dispatcher on every admission and thus follow runtime changes. Calls enqueued to
+ * the dispatcher directly are not accounted for.
+ *
+ * @author troinine
+ */
+public class PriorityScheduler {
+    private static final long STRIDE = 1L << 20;
+
+    private final Dispatcher dispatcher;
+    private final Map<CallPriority, ClassQueue> queues = new EnumMap<CallPriority, ClassQueue>(CallPriority.class);
+    private final Map<String, Integer> runningPerHost = new HashMap<String, Integer>();
+    private int running;
+    private long virtualTime;
+
+    /**
+     * Creates a scheduler for the given dispatcher.
+     *
+     * @param dispatcher the dispatcher to admit calls to.
+     * @param weights the weights of the priority classes, each at least one.
+     */
+    public PriorityScheduler(Dispatcher dispatcher, Map<CallPriority, Integer> weights) {
+        this.dispatcher = dispatcher;
+
+        for (CallPriority priority : CallPriority.values()) {
+            Integer weight = weights.get(priority);
+
+            if (weight == null || weight < 1) {
+                throw new IllegalArgumentException("The weight of priority " + priority + " must be at least 1");
+            }
+
+            queues.put(priority, new ClassQueue(STRIDE / weight));
+        }
+    }
+
+    /**
+     * Returns the number of calls of the given priority waiting for admission.
+     *
+     * @param priority the priority class.
+     * @return the queue depth of the class.
+     */
+    public synchronized int getQueueDepth(CallPriority priority) {
+        return queues.get(priority).calls.size();
+    }
+
+    /**
+     * Returns the number of admitted calls that have not completed yet.
+     *
+     * @return the number of running calls.
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Returns the number of calls of the given priority admitted so far.
+     *
+     * @param priority the priority class.
+     * @return the number of admitted calls.
+     */
+    public synchronized long getAdmittedCount(CallPriority priority) {
+        return queues.get(priority).admitted;
+    }
+
+    void enqueue(PriorityCallFactory.PriorityCall call) {
+        synchronized (this) {
+            ClassQueue queue = queues.get(call.priority);
+
+            if (queue.calls.isEmpty()) {
+                // A class becoming busy starts from the current virtual time instead of spending credit saved
+                // while it was idle
+                queue.pass = Math.max(queue.pass, virtualTime);
+            }
+
+            queue.calls.add(call);
+        }
+
+        promote();
+    }
+
+    synchronized boolean remove(PriorityCallFactory.PriorityCall call) {
+        return queues.get(call.priority).calls.remove(call);
+    }
+
+    void finished(PriorityCallFactory.PriorityCall call) {
+        synchronized (this) {
+            String host = call.host();
+            int count = runningPerHost.get(host) - 1;
+
+            if (count == 0) {
+                runningPerHost.remove(host);
+            } else {
+                runningPerHost.put(host, count);
+            }
+
+            running--;
+        }
+
+        promote();
+    }
+
+    /**
+     * Admits waiting calls while the limits allow. The calls are started outside the lock, since enqueueing them
+     * to the dispatcher may complete them right away on rejection.
+     */
+    private void promote() {
+        List<PriorityCallFactory.PriorityCall> admitted = new ArrayList<PriorityCallFactory.PriorityCall>();
+
+        synchronized (this) {
+            int maxRequests = dispatcher.getMaxRequests();
+            int maxRequestsPerHost = dispatcher.getMaxRequestsPerHost();
+
+            while (running < maxRequests) {
+                PriorityCallFactory.PriorityCall call = next(maxRequestsPerHost);
+
+                if (call == null) {
+                    break;
+                }
+
+                Integer count = runningPerHost.get(call.host());
+                runningPerHost.put(call.host(), count == null ? 1 : count + 1);
+                running++;
+                admitted.add(call);
+            }
+        }
+
+        for (PriorityCallFactory.PriorityCall call : admitted) {
+            call.start();
+        }
+    }
+
+    /**
+     * Takes the next call to admit from the class with the lowest pass among those having a call to a host below
+     * its limit. Ties go to the higher priority.
+     */
+    private PriorityCallFactory.PriorityCall next(int maxRequestsPerHost) {
+        ClassQueue selected = null;
+        PriorityCallFactory.PriorityCall selectedCall = null;
+
+        for (ClassQueue queue : queues.values()) {
+            if (selected != null && queue.pass >= selected.pass) {
+                continue;
+            }
+
+            PriorityCallFactory.PriorityCall call = queue.peek(runningPerHost, maxRequestsPerHost);
+
+            if (call != null) {
+                selected = queue;
+                selectedCall = call;
+            }
+        }
+
+        if (selected == null) {
+            return null;
+        }
+
+        selected.calls.remove(selectedCall);
+        virtualTime = selected.pass;
+        selected.pass += selected.stride;
+        selected.admitted++;
+
+        return selectedCall;
+    }
+
+    private static class ClassQueue {
+        final Deque<PriorityCallFactory.PriorityCall> calls = new ArrayDeque<PriorityCallFactory.PriorityCall>();
+        final long stride;
+        long pass;
+        long admitted;
+
+        ClassQueue(long stride) {
+            this.stride = stride;
+        }
+
+        PriorityCallFactory.PriorityCall peek(Map<String, Integer> runningPerHost, int maxRequestsPerHost) {
+            Iterator<PriorityCallFactory.PriorityCall> iterator = calls.iterator();
+
+            while (iterator.hasNext()) {
+                PriorityCallFactory.PriorityCall call = iterator.next();
+                Integer count = runningPerHost.get(call.host());
+
+                if (count == null || count < maxRequestsPerHost) {
+                    return call;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * {@link PublicMetrics} exposing the state of a {@link PriorityScheduler} as gauges:
+ * <ul>
+ * <li>{@code okhttp.scheduling.queued.<priority>}, the calls of each priority class waiting for admission</li>
+ * <li>{@code okhttp.scheduling.admitted.<priority>}, the calls of each priority class admitted since startup</li>
+ * <li>{@code okhttp.scheduling.running}, the admitted calls that have not completed yet</li>
+ * </ul>
+ * The priority is in lower case, such as {@code okhttp.scheduling.queued.low}.
+ *
+ * @author troinine
+ */
+public class PrioritySchedulerPublicMetrics implements PublicMetrics {
+    private static final String PREFIX = "okhttp.scheduling.";
+
+    private final PriorityScheduler scheduler;
+
+    public PrioritySchedulerPublicMetrics(PriorityScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        for (CallPriority priority : CallPriority.values()) {
+            String name = priority.name().toLowerCase(Locale.ENGLISH);
+
+            metrics.add(new Metric<Integer>(PREFIX + "queued." + name, scheduler.getQueueDepth(priority)));
+            metrics.add(new Metric<Long>(PREFIX + "admitted." + name, scheduler.getAdmittedCount(priority)));
+        }
+
+        metrics.add(new Metric<Integer>(PREFIX + "running", scheduler.getRunningCount()));
+
+        return metrics;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Call.Factory} delegating to an {@link OkHttpClient} that can be replaced at runtime.
+ * <p>
+ * Reconfiguring derives a new client from the current one with {@link OkHttpClient#newBuilder()}, so the
+ * connection pool and dispatcher are kept and no warm connections are lost. Calls already created keep the client
+ * they were created with and complete with their original settings, new calls use the new client.
+ *
+ * @author troinine
+ */
+public class ReconfigurableCallFactory implements Call.Factory {
+    private volatile OkHttpClient client;
+
+    public ReconfigurableCallFactory(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the client new calls are currently created with.
+     *
+     * @return the current client.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return client.newCall(request);
+    }
+
+    /**
+     * Applies the timeouts and request limits of the given properties. The request limits are changed on the
+     * shared dispatcher and thus apply to every client derived from the same root client.
+     *
+     * @param properties the properties to apply.
+     */
+    public synchronized void reconfigure(OkHttpProperties properties) {
+        OkHttpClient current = client;
+
+        if (current.connectTimeoutMillis() != properties.getConnectionTimeout()
+                || current.readTimeoutMillis() != properties.getReadTimeout()
+                || current.writeTimeoutMillis() != properties.getWriteTimeout()) {
+            client = current.newBuilder()
+                    .connectTimeout(properties.getConnectionTimeout(), TimeUnit.MILLISECONDS)
+                    .readTimeout(properties.getReadTimeout(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(properties.getWriteTimeout(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        Dispatcher dispatcher = current.dispatcher();
+        dispatcher.setMaxRequests(properties.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+    }
+}
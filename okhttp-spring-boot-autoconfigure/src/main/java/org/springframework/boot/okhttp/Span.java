@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client span of a call, handed to the {@link SpanExporter} once the call completes.
+ * <p>
+ * The span follows the OpenTelemetry data model: the ids are the lowercase hex strings of the W3C trace context,
+ * the timestamps are nanoseconds since the epoch and the attributes use the OpenTelemetry semantic conventions
+ * for HTTP and RPC clients, so exporters can map spans to OpenTelemetry one to one.
+ *
+ * @author troinine
+ */
+public final class Span {
+    /**
+     * Status of a completed span.
+     */
+    public enum Status {
+        UNSET,
+        OK,
+        ERROR
+    }
+
+    private final String name;
+    private final TraceContext context;
+    private final String parentSpanId;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+    private long endEpochNanos;
+    private Status status = Status.UNSET;
+
+    Span(String name, TraceContext context, String parentSpanId) {
+        this.name = name;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.startEpochNanos = System.currentTimeMillis() * 1000000L;
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the kind of the span, always {@code CLIENT}.
+     *
+     * @return the span kind.
+     */
+    public String getKind() {
+        return "CLIENT";
+    }
+
+    public String getTraceId() {
+        return context.getTraceId();
+    }
+
+    public String getSpanId() {
+        return context.getSpanId();
+    }
+
+    /**
+     * Returns the id of the parent span.
+     *
+     * @return the parent span id or {@code null} if the span is the root of its trace.
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    void setAttribute(String key, Object value) {
+        attributes.put(key, value);
+    }
+
+    /**
+     * Ends the span, measuring its duration with the monotonic clock so that it is not skewed by clock changes.
+     */
+    void end(Status status) {
+        this.status = status;
+        this.endEpochNanos = startEpochNanos + (System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + context + " " + status + " " + (endEpochNanos - startEpochNanos) / 1000 + " us";
+    }
+}
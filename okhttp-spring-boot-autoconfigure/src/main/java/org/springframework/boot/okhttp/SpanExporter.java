@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+/**
+ * Receives the recorded client spans, for example to hand them to an OpenTelemetry span processor.
+ * <p>
+ * Spans are exported on the thread completing the call, which is a dispatcher thread for asynchronous calls.
+ * Implementations should thus only buffer the span and send it elsewhere.
+ *
+ * @author troinine
+ * @see Span
+ */
+public interface SpanExporter {
+    /**
+     * Exports a completed span.
+     *
+     * @param span the span.
+     */
+    void export(Span span);
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identifies a span within a trace, as propagated in the W3C Trace Context {@value #HEADER} header.
+ * <p>
+ * The trace context of the current thread is the parent of the client spans of the calls created through a
+ * {@link TracingCallFactory} on that thread. An incoming request is continued by setting its context around the
+ * work done on its behalf:
+ * <pre class="code">
+ * TraceContext previous = TraceContext.set(TraceContext.parse(request.getHeader(TraceContext.HEADER)));
+ *
+ * try {
+ *     // Calls made here are children of the incoming request
+ * } finally {
+ *     TraceContext.restore(previous);
+ * }
+ * </pre>
+ *
+ * @author troinine
+ */
+public final class TraceContext {
+    /**
+     * Header carrying the trace context.
+     */
+    public static final String HEADER = "traceparent";
+
+    private static final String VERSION = "00";
+    private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+    private static final String INVALID_SPAN_ID = "0000000000000000";
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<TraceContext>();
+
+    private final String traceId;
+    private final String spanId;
+    private final boolean sampled;
+
+    private TraceContext(String traceId, String spanId, boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Creates the context of the first span of a new trace.
+     *
+     * @param sampled whether the trace is recorded.
+     * @return the context.
+     */
+    public static TraceContext newTrace(boolean sampled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String traceId = toHex(random.nextLong()) + toHex(random.nextLong());
+
+        return new TraceContext(traceId, newSpanId(), sampled);
+    }
+
+    /**
+     * Parses a trace context from the value of the {@value #HEADER} header.
+     *
+     * @param value the header value, may be {@code null}.
+     * @return the context or {@code null} if the value is missing or malformed.
+     */
+    public static TraceContext parse(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String[] parts = value.trim().split("-");
+
+        // Later versions may append fields, which are ignored
+        if (parts.length < 4 || !isValidVersion(parts[0]) || (VERSION.equals(parts[0]) && parts.length > 4)
+                || parts[1].length() != 32 || !isHex(parts[1]) || INVALID_TRACE_ID.equals(parts[1])
+                || parts[2].length() != 16 || !isHex(parts[2]) || INVALID_SPAN_ID.equals(parts[2])
+                || parts[3].length() != 2 || !isHex(parts[3])) {
+            return null;
+        }
+
+        return new TraceContext(parts[1], parts[2], (Integer.parseInt(parts[3], 16) & 1) != 0);
+    }
+
+    /**
+     * Returns the trace context of the current thread.
+     *
+     * @return the current context or {@code null} if there is none.
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the trace context of the current thread.
+     *
+     * @param context the context to set, may be {@code null}.
+     * @return the previous context to be passed to {@link #restore(TraceContext)}, may be {@code null}.
+     */
+    public static TraceContext set(TraceContext context) {
+        TraceContext previous = CURRENT.get();
+        CURRENT.set(context);
+
+        return previous;
+    }
+
+    /**
+     * Restores the trace context of the current thread to the one returned by {@link #set(TraceContext)}.
+     *
+     * @param previous the previous context, may be {@code null}.
+     */
+    public static void restore(TraceContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Creates the context of a child span in the same trace, sharing its sampling decision.
+     *
+     * @return the context of the child.
+     */
+    public TraceContext newChild() {
+        return new TraceContext(traceId, newSpanId(), sampled);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * Returns the context as the value of the {@value #HEADER} header.
+     *
+     * @return the header value.
+     */
+    @Override
+    public String toString() {
+        return VERSION + "-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    private static String newSpanId() {
+        long id;
+
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+
+        return toHex(id);
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+
+        return hex.length() == 16 ? hex : INVALID_SPAN_ID.substring(hex.length()) + hex;
+    }
+
+    private static boolean isValidVersion(String version) {
+        return version.length() == 2 && isHex(version) && !"ff".equals(version);
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
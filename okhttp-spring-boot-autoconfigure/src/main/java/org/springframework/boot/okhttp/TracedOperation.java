@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+/**
+ * Service operation a call is made for, naming the client span of the call.
+ * <p>
+ * The operation of the current thread applies to the calls created through a {@link TracingCallFactory} on that
+ * thread. The Retrofit auto-configuration sets it to the bean name of the service and the name of the invoked
+ * method.
+ *
+ * @author troinine
+ */
+public final class TracedOperation {
+    private static final ThreadLocal<TracedOperation> CURRENT = new ThreadLocal<TracedOperation>();
+
+    private final String service;
+    private final String method;
+
+    public TracedOperation(String service, String method) {
+        this.service = service;
+        this.method = method;
+    }
+
+    /**
+     * Returns the operation of the current thread.
+     *
+     * @return the current operation or {@code null} if there is none.
+     */
+    public static TracedOperation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the operation of the current thread.
+     *
+     * @param operation the operation to set.
+     * @return the previous operation to be passed to {@link #restore(TracedOperation)}, may be {@code null}.
+     */
+    public static TracedOperation set(TracedOperation operation) {
+        TracedOperation previous = CURRENT.get();
+        CURRENT.set(operation);
+
+        return previous;
+    }
+
+    /**
+     * Restores the operation of the current thread to the one returned by {@link #set(TracedOperation)}.
+     *
+     * @param previous the previous operation, may be {@code null}.
+     */
+    public static void restore(TracedOperation previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String toString() {
+        return service + "/" + method;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which calls are traced and passes their spans on to a {@link SpanExporter}.
+ * <p>
+ * Calls made within a trace follow the sampling decision of the trace. Calls made outside of a trace start a new
+ * one with the configured probability, and are neither recorded nor given a {@value TraceContext#HEADER} header
+ * otherwise.
+ *
+ * @author troinine
+ */
+public class Tracer {
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    private final SpanExporter exporter;
+    private final double samplingProbability;
+
+    /**
+     * Creates a tracer.
+     *
+     * @param exporter the exporter of the recorded spans, {@code null} to only propagate trace contexts.
+     * @param samplingProbability the probability of tracing a call made outside of a trace, from 0 to 1.
+     */
+    public Tracer(SpanExporter exporter, double samplingProbability) {
+        if (samplingProbability < 0 || samplingProbability > 1) {
+            throw new IllegalArgumentException(
+                    "The sampling probability must be between 0 and 1, was " + samplingProbability);
+        }
+
+        this.exporter = exporter;
+        this.samplingProbability = samplingProbability;
+    }
+
+    /**
+     * Creates the trace context of a call.
+     *
+     * @param parent the trace context the call is made in, may be {@code null}.
+     * @return the context of the client span of the call or {@code null} if the call is not traced.
+     */
+    TraceContext newContext(TraceContext parent) {
+        if (parent != null) {
+            return parent.newChild();
+        }
+
+        if (samplingProbability == 0 || ThreadLocalRandom.current().nextDouble() >= samplingProbability) {
+            return null;
+        }
+
+        return TraceContext.newTrace(true);
+    }
+
+    /**
+     * Returns whether spans of sampled calls are recorded.
+     *
+     * @return {@code true} if there is an exporter.
+     */
+    boolean isRecording() {
+        return exporter != null;
+    }
+
+    void export(Span span) {
+        try {
+            exporter.export(span);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to export span {}", span, e);
+        }
+    }
+}
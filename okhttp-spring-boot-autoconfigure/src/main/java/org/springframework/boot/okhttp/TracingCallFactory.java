@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * {@link Call.Factory} continuing the trace of the creating thread in the calls it creates.
+ * <p>
+ * Each traced call gets a client span whose context is sent in the {@value TraceContext#HEADER} header. The
+ * parent of the span and its name are taken from the {@link TraceContext} and the {@link TracedOperation} of the
+ * thread when the call is created, so they also apply to calls executed asynchronously. Spans of sampled calls are
+ * recorded from the execution of the call until its response headers arrive or it fails.
+ * <p>
+ * Calls which are not traced are created by the delegate as they are, so tracing costs a thread local lookup per
+ * call when the calling thread has no trace and sampling is off.
+ *
+ * @author troinine
+ */
+public class TracingCallFactory implements Call.Factory {
+    private final Call.Factory delegate;
+    private final Tracer tracer;
+
+    public TracingCallFactory(Call.Factory delegate, Tracer tracer) {
+        this.delegate = delegate;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        TraceContext parent = TraceContext.current();
+        TraceContext context = tracer.newContext(parent);
+
+        if (context == null) {
+            return delegate.newCall(request);
+        }
+
+        Call call = delegate.newCall(request.newBuilder().header(TraceContext.HEADER, context.toString()).build());
+
+        if (!context.isSampled() || !tracer.isRecording()) {
+            return call;
+        }
+
+        return new TracedCall(call, tracer, context, parent, TracedOperation.current());
+    }
+
+    private static class TracedCall implements Call {
+        private final Call call;
+        private final Tracer tracer;
+        private final TraceContext context;
+        private final TraceContext parent;
+        private final TracedOperation operation;
+
+        TracedCall(Call call, Tracer tracer, TraceContext context, TraceContext parent, TracedOperation operation) {
+            this.call = call;
+            this.tracer = tracer;
+            this.context = context;
+            this.parent = parent;
+            this.operation = operation;
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            Span span = start();
+            Response response;
+
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                finish(span, e);
+                throw e;
+            }
+
+            finish(span, response);
+
+            return response;
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            final Span span = start();
+
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call ignored, IOException e) {
+                    finish(span, e);
+                    responseCallback.onFailure(TracedCall.this, e);
+                }
+
+                @Override
+                public void onResponse(Call ignored, Response response) throws IOException {
+                    finish(span, response);
+                    responseCallback.onResponse(TracedCall.this, response);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return call.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+
+        private Span start() {
+            Request request = call.request();
+            HttpUrl url = request.url();
+            String name = operation != null ? operation.toString() : "HTTP " + request.method();
+
+            Span span = new Span(name, context, parent != null ? parent.getSpanId() : null);
+            span.setAttribute("http.method", request.method());
+            span.setAttribute("http.url", url.toString());
+            span.setAttribute("net.peer.name", url.host());
+            span.setAttribute("net.peer.port", url.port());
+
+            if (operation != null) {
+                span.setAttribute("rpc.service", operation.getService());
+                span.setAttribute("rpc.method", operation.getMethod());
+            }
+
+            return span;
+        }
+
+        private void finish(Span span, Response response) {
+            span.setAttribute("http.status_code", response.code());
+            span.end(response.code() >= 500 ? Span.Status.ERROR : Span.Status.UNSET);
+            tracer.export(span);
+        }
+
+        private void finish(Span span, IOException e) {
+            span.setAttribute("exception.type", e.getClass().getName());
+            span.setAttribute("exception.message", e.getMessage());
+            span.end(Span.Status.ERROR);
+            tracer.export(span);
+        }
+    }
+}
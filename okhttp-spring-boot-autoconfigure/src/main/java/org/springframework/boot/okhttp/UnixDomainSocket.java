@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link Socket} adapter over a Unix domain {@link SocketChannel}.
+ * <p>
+ * OkHttp works with plain sockets, but Unix domain sockets are only available as channels and a channel of that
+ * kind has no socket view. The channel is used in non-blocking mode with selectors so that the read timeout
+ * OkHttp sets through {@link #setSoTimeout(int)} is honored, which the connection pool relies on when checking
+ * the health of idle connections. Plain sockets have no write timeout, so writes waiting for the peer to drain the
+ * socket are bounded by the same timeout, which keeps a stalled peer from blocking a writer that does not time
+ * out writes on its own.
+ *
+ * @author troinine
+ */
+class UnixDomainSocket extends Socket {
+    private final SocketAddress address;
+
+    private volatile SocketChannel channel;
+    private volatile Selector readSelector;
+    private volatile Selector writeSelector;
+    private volatile int soTimeout;
+    private volatile boolean closed;
+    private volatile boolean inputShutdown;
+    private volatile boolean outputShutdown;
+
+    UnixDomainSocket(SocketAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint) throws IOException {
+        connect(endpoint, 0);
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint, int timeout) throws IOException {
+        if (closed) {
+            throw new SocketException("Socket is closed");
+        }
+
+        // The requested endpoint is a placeholder resolved from the request URL, always use the socket file
+        channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+
+        readSelector = Selector.open();
+        writeSelector = Selector.open();
+        channel.register(readSelector, SelectionKey.OP_READ);
+        channel.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        checkConnected();
+
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] buffer = new byte[1];
+                int read = read(buffer, 0, 1);
+
+                return read == -1 ? -1 : buffer[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                int read = channel.read(buffer);
+
+                while (read == 0) {
+                    int timeout = soTimeout;
+
+                    if (await(readSelector, timeout) == 0 && timeout > 0 && !closed) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+
+                    read = channel.read(buffer);
+                }
+
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                UnixDomainSocket.this.close();
+            }
+        };
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        checkConnected();
+
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) {
+                        int timeout = soTimeout;
+
+                        if (await(writeSelector, timeout) == 0 && timeout > 0 && !closed) {
+                            throw new SocketTimeoutException("Write timed out");
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                UnixDomainSocket.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        this.soTimeout = timeout;
+    }
+
+    @Override
+    public int getSoTimeout() throws SocketException {
+        return soTimeout;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return inputShutdown;
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return outputShutdown;
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        checkConnected();
+        channel.shutdownInput();
+        inputShutdown = true;
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        checkConnected();
+        channel.shutdownOutput();
+        outputShutdown = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (channel != null) {
+            // Wake up blocked readers and writers so they observe the closed channel
+            readSelector.wakeup();
+            writeSelector.wakeup();
+
+            try {
+                channel.close();
+            } finally {
+                readSelector.close();
+                writeSelector.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UnixDomainSocket[" + address + "]";
+    }
+
+    private int await(Selector selector, int timeout) throws IOException {
+        try {
+            int selected = selector.select(timeout);
+            selector.selectedKeys().clear();
+
+            return selected;
+        } catch (ClosedSelectorException e) {
+            throw new SocketException("Socket is closed");
+        }
+    }
+
+    private void checkConnected() throws SocketException {
+        if (closed) {
+            throw new SocketException("Socket is closed");
+        }
+
+        if (channel == null) {
+            throw new SocketException("Socket is not connected");
+        }
+    }
+}
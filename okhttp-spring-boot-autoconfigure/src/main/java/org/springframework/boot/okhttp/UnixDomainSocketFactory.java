@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Dns;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SocketFactory} connecting every socket to the same Unix domain socket regardless of the requested
+ * address.
+ * <p>
+ * Meant for talking to co-located services such as sidecars without going through the TCP loopback stack. Unix
+ * domain socket channels are only available on Java 16 or later, which is checked when the factory is created.
+ * Since the host name of the request URL is not used for connecting, use the {@link #getDns() DNS} of the factory
+ * with it so that the host names need not be resolvable. OkHttp tells pooled connections apart by their DNS and
+ * not by their socket factory, so each factory has a DNS of its own and clients sharing a connection pool never
+ * reuse the connections of another socket.
+ *
+ * @author troinine
+ */
+public class UnixDomainSocketFactory extends SocketFactory {
+    private final SocketAddress address;
+    private final Dns dns = new Dns() {
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            return Collections.singletonList(InetAddress.getByAddress(hostname, new byte[] {127, 0, 0, 1}));
+        }
+    };
+
+    public UnixDomainSocketFactory(String path) {
+        this(createAddress(path));
+    }
+
+    /**
+     * Creates a factory connecting every socket to the given address. Exposed for tests, which connect to a TCP
+     * address on Java versions without Unix domain socket support.
+     *
+     * @param address the address of the socket.
+     */
+    UnixDomainSocketFactory(SocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Returns the DNS to use with this factory, resolving every host name to the loopback address without a
+     * lookup.
+     *
+     * @return the DNS of this factory.
+     */
+    public Dns getDns() {
+        return dns;
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return new UnixDomainSocket(address);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return connected();
+    }
+
+    private Socket connected() throws IOException {
+        Socket socket = createSocket();
+        socket.connect(address);
+
+        return socket;
+    }
+
+    /**
+     * Creates a {@code java.net.UnixDomainSocketAddress} reflectively so that this class can be loaded on Java
+     * versions without Unix domain socket support.
+     *
+     * @param path the path of the socket file.
+     * @return the socket address.
+     */
+    private static SocketAddress createAddress(String path) {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class)
+                    .invoke(null, path);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unix domain sockets require Java 16 or later", e);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("The given Unix domain socket path " + path + " is not valid", e);
+        }
+    }
+}
@@ -15,13 +15,52 @@
  */
 package org.springframework.boot.autoconfigure.okhttp;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.CipherSuite;
+import okhttp3.ConnectionSpec;
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.TlsVersion;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.okhttp.CachingDns;
+import org.springframework.boot.okhttp.CallLoggingInterceptor;
+import org.springframework.boot.okhttp.CallPriority;
+import org.springframework.boot.okhttp.ClientMonitor;
+import org.springframework.boot.okhttp.DeadlineCallFactory;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.MemoryBudget;
+import org.springframework.boot.okhttp.MemoryBudgetPublicMetrics;
+import org.springframework.boot.okhttp.OkHttpEndpoint;
+import org.springframework.boot.okhttp.OkHttpPropertiesRefresher;
+import org.springframework.boot.okhttp.OkHttpPublicMetrics;
+import org.springframework.boot.okhttp.PriorityScheduler;
+import org.springframework.boot.okhttp.PrioritySchedulerPublicMetrics;
+import org.springframework.boot.okhttp.ReconfigurableCallFactory;
+import org.springframework.boot.okhttp.Tracer;
+import org.springframework.boot.okhttp.UnixDomainSocketFactory;
 import org.springframework.boot.test.EnvironmentTestUtils;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.util.ClassUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -55,6 +94,64 @@ public class OkHttpAutoConfigurationTest {
         }
     }
 
+    public static class OkHttpClientConsumerConfiguration {
+        @Autowired
+        private OkHttpClient okHttpClient;
+    }
+
+    public static class MySslConfiguration {
+        @Bean
+        public SSLContext sslContext() throws Exception {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+
+            return sslContext;
+        }
+    }
+
+    public static class MyTrustManagerConfiguration {
+        @Bean
+        public X509TrustManager trustManager() {
+            return mock(X509TrustManager.class);
+        }
+    }
+
+    public static class MyInProcessConfiguration {
+        @Bean
+        public InProcessHandler helloHandler() {
+            return new InProcessHandler() {
+                @Override
+                public String getHost() {
+                    return "in-process.test";
+                }
+
+                @Override
+                public Response handle(Request request) {
+                    String body = "hello " + request.url().encodedPath();
+
+                    return new Response.Builder()
+                            .request(request)
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .body(ResponseBody.create(MediaType.parse("text/plain"), body))
+                            .build();
+                }
+            };
+        }
+    }
+
+    public static class MyInterceptorConfiguration {
+        @Bean
+        public Interceptor headerInterceptor() {
+            return new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    return chain.proceed(chain.request());
+                }
+            };
+        }
+    }
+
     @Test
     public void testOkHttpClientAutoConfigured() {
         OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
@@ -82,6 +179,326 @@ public class OkHttpAutoConfigurationTest {
         assertThat(okHttpClient.writeTimeoutMillis()).isEqualTo(700);
     }
 
+    @Test
+    public void testOkHttpClientAutoConfiguredWithCachingDns() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.dns.mode:caching");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.dns.address-selection:round-robin");
+        context.refresh();
+
+        OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
+        OkHttpProperties okHttpProperties = context.getBean(OkHttpProperties.class);
+
+        assertThat(okHttpClient.dns()).isInstanceOf(CachingDns.class);
+        assertThat(okHttpProperties.getDns().getAddressSelection())
+                .isEqualTo(OkHttpProperties.AddressSelection.ROUND_ROBIN);
+    }
+
+    @Test
+    public void testOkHttpCallFactoryAppliesDeadlines() {
+        assertThat(context.getBean("okHttpCallFactory")).isInstanceOf(DeadlineCallFactory.class);
+    }
+
+    @Test
+    public void testPrioritySchedulingDisabledByDefault() {
+        assertThat(context.getBeansOfType(PriorityScheduler.class)).isEmpty();
+    }
+
+    @Test
+    public void testPrioritySchedulingAutoConfigured() throws Exception {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.scheduling.enabled:true");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.batch.read-timeout:60000");
+        context.refresh();
+
+        PriorityScheduler scheduler = context.getBean(PriorityScheduler.class);
+        DeadlineCallFactory callFactory = context.getBean("okHttpCallFactory", DeadlineCallFactory.class);
+        DeadlineCallFactory batchCallFactory = context.getBean("batchOkHttpCallFactory", DeadlineCallFactory.class);
+
+        Request request = new Request.Builder().url("http://localhost/").build();
+
+        for (DeadlineCallFactory factory : new DeadlineCallFactory[] {callFactory, batchCallFactory}) {
+            factory.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.body().close();
+                }
+            });
+        }
+
+        assertThat(scheduler.getAdmittedCount(CallPriority.NORMAL)).isEqualTo(2);
+
+        Map<String, Number> metrics = new HashMap<String, Number>();
+
+        for (Metric<?> metric : context.getBean(PrioritySchedulerPublicMetrics.class).metrics()) {
+            metrics.put(metric.getName(), metric.getValue());
+        }
+
+        assertThat(metrics).hasSize(7);
+        assertThat(metrics.get("okhttp.scheduling.admitted.normal")).isEqualTo(2L);
+        assertThat(metrics.get("okhttp.scheduling.queued.low")).isEqualTo(0);
+    }
+
+    @Test
+    public void testTracingAutoConfigured() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.tracing.enabled:true");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.tracing.sampling-probability:0");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.batch.read-timeout:60000");
+        context.refresh();
+
+        assertThat(context.getBean(Tracer.class)).isNotNull();
+        assertThat(context.getBean(OkHttpProperties.class).getTracing().getSamplingProbability()).isZero();
+        assertThat(context.getBean("batchOkHttpCallFactory")).isInstanceOf(DeadlineCallFactory.class);
+    }
+
+    @Test
+    public void testCallLoggingAutoConfigured() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.logging.enabled:true");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.logging.slow-call-threshold:250");
+        context.refresh();
+
+        assertThat(context.getBean(OkHttpClient.class).interceptors())
+                .contains(context.getBean(CallLoggingInterceptor.class));
+        assertThat(context.getBean(OkHttpProperties.class).getLogging().getSlowCallThreshold()).isEqualTo(250L);
+    }
+
+    @Test
+    public void testMemoryBudgetAutoConfigured() throws Exception {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.memory-budget.enabled:true");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.memory-budget.max-bytes:1048576");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.batch.read-timeout:60000");
+        context.refresh();
+
+        MemoryBudget memoryBudget = context.getBean(MemoryBudget.class);
+
+        assertThat(memoryBudget.getMaxBytes()).isEqualTo(1048576L);
+        assertThat(context.getBean(OkHttpClient.class).interceptors()).contains(memoryBudget);
+        assertThat(context.getBean("batchOkHttpClient", OkHttpClient.class).interceptors()).contains(memoryBudget);
+        assertThat(context.getBean(MemoryBudgetPublicMetrics.class).metrics()).hasSize(6);
+    }
+
+    @Test
+    public void testMonitoringAutoConfigured() throws Exception {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.monitoring.enabled:true");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.monitoring.longest-running-calls:5");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.batch.read-timeout:60000");
+        context.refresh();
+
+        ClientMonitor clientMonitor = context.getBean(ClientMonitor.class);
+        OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
+
+        assertThat(okHttpClient.interceptors().get(0)).isSameAs(clientMonitor.getApplicationInterceptor());
+        assertThat(okHttpClient.networkInterceptors()).contains(clientMonitor.getNetworkInterceptor());
+        assertThat(context.getBean("batchOkHttpCallFactory")).isInstanceOf(DeadlineCallFactory.class);
+        assertThat(context.getBean(OkHttpEndpoint.class).getId()).isEqualTo("okhttp");
+        assertThat(context.getBean(OkHttpEndpoint.class).invoke().getCalls().getRunning()).isZero();
+        assertThat(context.getBean(OkHttpPublicMetrics.class).metrics()).isNotEmpty();
+    }
+
+    @Test
+    public void testMonitoringDisabledByDefault() {
+        assertThat(context.getBeansOfType(ClientMonitor.class)).isEmpty();
+        assertThat(context.getBeansOfType(OkHttpEndpoint.class)).isEmpty();
+    }
+
+    @Test
+    public void testTracingDisabledByDefault() {
+        assertThat(context.getBeansOfType(Tracer.class)).isEmpty();
+    }
+
+    @Test
+    public void testOkHttpClientUsesSystemDnsByDefault() {
+        assertThat(context.getBean(OkHttpClient.class).dns()).isSameAs(Dns.SYSTEM);
+    }
+
+    @Test
+    public void testOkHttpClientAutoConfiguredWithSslSessionSettings() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class, MySslConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.ssl.session-cache-size:128");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.ssl.session-timeout:3600");
+        context.refresh();
+
+        SSLContext sslContext = context.getBean(SSLContext.class);
+
+        assertThat(context.getBean(OkHttpClient.class).sslSocketFactory()).isNotNull();
+        assertThat(sslContext.getClientSessionContext().getSessionCacheSize()).isEqualTo(128);
+        assertThat(sslContext.getClientSessionContext().getSessionTimeout()).isEqualTo(3600);
+    }
+
+    @Test
+    public void testSslContextBeanPreferredOverTrustManagerBean() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class, MySslConfiguration.class, MyTrustManagerConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.ssl.session-cache-size:64");
+        context.refresh();
+
+        // The settings landing on the bean show that its context is the one used, not one built on the trust manager
+        assertThat(context.getBean(OkHttpClient.class).sslSocketFactory()).isNotNull();
+        assertThat(context.getBean(SSLContext.class).getClientSessionContext().getSessionCacheSize()).isEqualTo(64);
+    }
+
+    @Test
+    public void testOkHttpClientAutoConfiguredWithConnectionSpecs() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.ssl.connection-specs:modern-tls");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.ssl.tls-versions:TLSv1.2");
+        EnvironmentTestUtils.addEnvironment(context,
+                "spring.okhttp.ssl.cipher-suites:TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256");
+        context.refresh();
+
+        List<ConnectionSpec> connectionSpecs = context.getBean(OkHttpClient.class).connectionSpecs();
+
+        assertThat(connectionSpecs).hasSize(1);
+        assertThat(connectionSpecs.get(0).tlsVersions()).containsExactly(TlsVersion.TLS_1_2);
+        assertThat(connectionSpecs.get(0).cipherSuites())
+                .containsExactly(CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256);
+    }
+
+    @Test
+    public void testOkHttpClientUsesDefaultConnectionSpecsByDefault() {
+        assertThat(context.getBean(OkHttpClient.class).connectionSpecs())
+                .containsExactly(ConnectionSpec.MODERN_TLS, ConnectionSpec.COMPATIBLE_TLS, ConnectionSpec.CLEARTEXT);
+    }
+
+    @Test
+    public void testOkHttpClientAutoConfiguredWithInProcessHandler() throws Exception {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class, MyInProcessConfiguration.class);
+        context.refresh();
+
+        OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
+        Response response = okHttpClient
+                .newCall(new Request.Builder().url("http://in-process.test/hello").build())
+                .execute();
+
+        assertThat(response.code()).isEqualTo(200);
+        assertThat(response.body().string()).isEqualTo("hello /hello");
+    }
+
+    @Test
+    public void testOkHttpClientProfilesShareConnectionPoolAndDispatcher() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class, MyInterceptorConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.read-timeout:600");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.long-poll.read-timeout:60000");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.rpc.connection-timeout:200");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.rpc.interceptors:headerInterceptor");
+        context.refresh();
+
+        OkHttpClient root = context.getBean("okHttpClient", OkHttpClient.class);
+        OkHttpClient longPoll = context.getBean("long-pollOkHttpClient", OkHttpClient.class);
+        OkHttpClient rpc = context.getBean("rpcOkHttpClient", OkHttpClient.class);
+
+        assertThat(longPoll.readTimeoutMillis()).isEqualTo(60000);
+        assertThat(longPoll.interceptors()).isEmpty();
+        assertThat(rpc.connectTimeoutMillis()).isEqualTo(200);
+        assertThat(rpc.readTimeoutMillis()).isEqualTo(600);
+        assertThat(rpc.interceptors()).containsExactly(context.getBean("headerInterceptor", Interceptor.class));
+
+        assertThat(context.getBean("rpcOkHttpCallFactory")).isInstanceOf(DeadlineCallFactory.class);
+
+        for (OkHttpClient client : new OkHttpClient[] {longPoll, rpc}) {
+            assertThat(client.connectionPool()).isSameAs(root.connectionPool());
+            assertThat(client.dispatcher()).isSameAs(root.dispatcher());
+        }
+    }
+
+    @Test
+    public void testRootClientInjectedByTypeWithProfiles() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class, OkHttpClientConsumerConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.long-poll.read-timeout:60000");
+        context.refresh();
+
+        OkHttpClient root = context.getBean("okHttpClient", OkHttpClient.class);
+
+        assertThat(context.getBeansOfType(OkHttpClient.class)).hasSize(2);
+        assertThat(context.getBean(OkHttpClient.class)).isSameAs(root);
+        assertThat(context.getBean(OkHttpClientConsumerConfiguration.class).okHttpClient).isSameAs(root);
+    }
+
+    @Test
+    public void testUnixDomainSocketAppliedToClientProfile() {
+        Assume.assumeTrue(ClassUtils.isPresent("java.net.UnixDomainSocketAddress", null));
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.sidecar.unix-socket-path:/tmp/a.sock");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.other.unix-socket-path:/tmp/b.sock");
+        context.refresh();
+
+        OkHttpClient root = context.getBean("okHttpClient", OkHttpClient.class);
+        OkHttpClient sidecar = context.getBean("sidecarOkHttpClient", OkHttpClient.class);
+        OkHttpClient other = context.getBean("otherOkHttpClient", OkHttpClient.class);
+
+        assertThat(root.socketFactory()).isNotInstanceOf(UnixDomainSocketFactory.class);
+        assertThat(sidecar.socketFactory()).isInstanceOf(UnixDomainSocketFactory.class);
+        assertThat(sidecar.dns()).isSameAs(((UnixDomainSocketFactory) sidecar.socketFactory()).getDns());
+        // The pooled connections of the profiles are told apart by their DNS
+        assertThat(sidecar.dns()).isNotSameAs(other.dns()).isNotSameAs(root.dns());
+    }
+
+    @Test
+    public void testOkHttpClientReconfiguredAtRuntime() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.max-requests-per-host:10");
+        context.refresh();
+
+        ReconfigurableCallFactory callFactory = context.getBean(ReconfigurableCallFactory.class);
+        OkHttpClient original = callFactory.getClient();
+
+        assertThat(original).isSameAs(context.getBean(OkHttpClient.class));
+        assertThat(original.dispatcher().getMaxRequestsPerHost()).isEqualTo(10);
+
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.read-timeout:600");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.max-requests-per-host:20");
+        context.getBean(OkHttpPropertiesRefresher.class).refresh();
+
+        OkHttpClient reconfigured = callFactory.getClient();
+
+        assertThat(reconfigured).isNotSameAs(original);
+        assertThat(reconfigured.readTimeoutMillis()).isEqualTo(600);
+        assertThat(reconfigured.connectionPool()).isSameAs(original.connectionPool());
+        assertThat(reconfigured.dispatcher()).isSameAs(original.dispatcher());
+        assertThat(reconfigured.dispatcher().getMaxRequestsPerHost()).isEqualTo(20);
+        assertThat(context.getBean(OkHttpProperties.class).getReadTimeout()).isEqualTo(600L);
+    }
+
+    @Test
+    public void testOkHttpClientProfileKeepsTimeoutsOnReconfiguration() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(OkHttpAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.clients.batch.connection-timeout:200");
+        context.refresh();
+
+        OkHttpClient profile = context.getBean("batchOkHttpClient", OkHttpClient.class);
+
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.read-timeout:600");
+        EnvironmentTestUtils.addEnvironment(context, "spring.okhttp.max-requests-per-host:20");
+        context.getBean(OkHttpPropertiesRefresher.class).refresh();
+
+        assertThat(context.getBean("batchOkHttpClient", OkHttpClient.class)).isSameAs(profile);
+        assertThat(profile.readTimeoutMillis()).isNotEqualTo(600);
+        assertThat(profile.dispatcher().getMaxRequestsPerHost()).isEqualTo(20);
+    }
+
     @Test
     public void testOkHttpClientOverridingBean() {
         context = new AnnotationConfigApplicationContext();
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Dns;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CachingDns}
+ *
+ * @author troinine
+ */
+public class CachingDnsTest {
+    private StubDns resolver;
+    private OkHttpProperties.Dns properties;
+    private ExecutorService refreshExecutor;
+    private TestCachingDns dns;
+
+    @Before
+    public void setup() throws Exception {
+        resolver = new StubDns(
+                InetAddress.getByAddress("host", new byte[] {10, 0, 0, 1}),
+                InetAddress.getByAddress("host", new byte[] {10, 0, 0, 2}),
+                InetAddress.getByAddress("host", new byte[] {10, 0, 0, 3}));
+
+        properties = new OkHttpProperties.Dns();
+        properties.setTtl(1000L);
+        properties.setRefreshAhead(200L);
+        properties.setStaleRetryInterval(100L);
+
+        refreshExecutor = Executors.newSingleThreadExecutor();
+        dns = new TestCachingDns(resolver, properties, refreshExecutor);
+    }
+
+    @After
+    public void teardown() {
+        dns.close();
+    }
+
+    @Test
+    public void testLookupIsCached() throws Exception {
+        List<InetAddress> first = dns.lookup("host");
+        dns.time = 500L;
+        List<InetAddress> second = dns.lookup("host");
+
+        assertThat(second).isEqualTo(first).isEqualTo(resolver.addresses);
+        assertThat(resolver.lookups.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExpiredLookupIsResolvedAgain() throws Exception {
+        dns.lookup("host");
+        dns.time = 1000L;
+        dns.lookup("host");
+
+        assertThat(resolver.lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLookupIsRefreshedInBackgroundBeforeExpiry() throws Exception {
+        dns.lookup("host");
+        dns.time = 850L;
+
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+
+        refreshExecutor.shutdown();
+        assertThat(refreshExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        // The refreshed entry is valid for a full TTL from the refresh time
+        dns.time = 1500L;
+        dns.lookup("host");
+
+        assertThat(resolver.lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStaleAddressesServedWhenResolverFails() throws Exception {
+        dns.lookup("host");
+
+        resolver.failing = true;
+        dns.time = 5000L;
+
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+    }
+
+    @Test
+    public void testStaleAddressesCachedUntilRetryInterval() throws Exception {
+        dns.lookup("host");
+
+        resolver.failing = true;
+        dns.time = 5000L;
+        dns.lookup("host");
+        dns.time = 5099L;
+
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+        assertThat(resolver.failures.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStaleAddressesRefreshedInBackgroundAfterRetryInterval() throws Exception {
+        dns.lookup("host");
+
+        resolver.failing = true;
+        dns.time = 5000L;
+        dns.lookup("host");
+
+        resolver.failing = false;
+        dns.time = 5100L;
+
+        // Served right away while the resolver is retried in the background
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+
+        refreshExecutor.shutdown();
+        assertThat(refreshExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        dns.time = 5900L;
+        dns.lookup("host");
+
+        assertThat(resolver.lookups.get()).isEqualTo(2);
+        assertThat(resolver.failures.get()).isEqualTo(1);
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testResolverFailurePropagatedWhenStaleNotAllowed() throws Exception {
+        properties.setServeStale(false);
+        dns.lookup("host");
+
+        resolver.failing = true;
+        dns.time = 5000L;
+
+        dns.lookup("host");
+    }
+
+    @Test
+    public void testResolverFailurePropagatedOnceStaleForLongerThanMaxStale() throws Exception {
+        properties.setMaxStale(2000L);
+        dns.lookup("host");
+
+        resolver.failing = true;
+        dns.time = 2500L;
+
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+
+        dns.time = 3000L;
+
+        try {
+            dns.lookup("host");
+            failBecauseExceptionWasNotThrown(UnknownHostException.class);
+        } catch (UnknownHostException e) {
+            // Expected
+        }
+
+        resolver.failing = false;
+
+        assertThat(dns.lookup("host")).isEqualTo(resolver.addresses);
+        assertThat(resolver.lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLookupExpiringFirstEvictedWhenCacheFull() throws Exception {
+        properties.setMaxEntries(2);
+
+        dns.lookup("a");
+        dns.time = 100L;
+        dns.lookup("b");
+        dns.time = 200L;
+        dns.lookup("c");
+        dns.lookup("b");
+
+        assertThat(resolver.lookups.get()).isEqualTo(3);
+
+        dns.lookup("a");
+
+        assertThat(resolver.lookups.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void testRoundRobinRotatesAddresses() throws Exception {
+        properties.setAddressSelection(OkHttpProperties.AddressSelection.ROUND_ROBIN);
+
+        List<InetAddress> all = resolver.addresses;
+
+        assertThat(dns.lookup("host")).containsExactly(all.get(0), all.get(1), all.get(2));
+        assertThat(dns.lookup("host")).containsExactly(all.get(1), all.get(2), all.get(0));
+        assertThat(dns.lookup("host")).containsExactly(all.get(2), all.get(0), all.get(1));
+        assertThat(dns.lookup("host")).containsExactly(all.get(0), all.get(1), all.get(2));
+    }
+
+    @Test
+    public void testShuffleKeepsAllAddresses() throws Exception {
+        properties.setAddressSelection(OkHttpProperties.AddressSelection.SHUFFLE);
+
+        assertThat(dns.lookup("host")).containsOnly(resolver.addresses.toArray(new InetAddress[0]));
+    }
+
+    private static class TestCachingDns extends CachingDns {
+        volatile long time;
+
+        TestCachingDns(Dns delegate, OkHttpProperties.Dns properties, ExecutorService refreshExecutor) {
+            super(delegate, properties, refreshExecutor);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    private static class StubDns implements Dns {
+        final List<InetAddress> addresses;
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile boolean failing;
+
+        StubDns(InetAddress... addresses) {
+            this.addresses = Arrays.asList(addresses);
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            if (failing) {
+                failures.incrementAndGet();
+
+                throw new UnknownHostException(hostname);
+            }
+
+            lookups.incrementAndGet();
+
+            return addresses;
+        }
+    }
+}
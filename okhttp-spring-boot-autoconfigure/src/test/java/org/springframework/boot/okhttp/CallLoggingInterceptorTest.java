@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CallLoggingInterceptor}
+ *
+ * @author troinine
+ */
+public class CallLoggingInterceptorTest {
+    private MockWebServer server;
+    private OkHttpProperties.Logging properties;
+    private TestCallLoggingInterceptor interceptor;
+    private OkHttpClient client;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        properties = new OkHttpProperties.Logging();
+        properties.setSlowCallThreshold(500);
+        properties.setPayloadSizeThreshold(100);
+
+        interceptor = new TestCallLoggingInterceptor(properties);
+        interceptor.afterPropertiesSet();
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        interceptor.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testFastSmallCallNotLogged() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        execute(new Request.Builder().url(server.url("/")).build());
+
+        assertThat(interceptor.entries.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testCallAboveLatencyThresholdLogged() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        properties.setSlowCallThreshold(0);
+
+        execute(new Request.Builder().url(server.url("/slow")).build());
+
+        CallLoggingInterceptor.Entry entry = interceptor.entries.poll(5, TimeUnit.SECONDS);
+
+        assertThat(entry.url).endsWith("/slow");
+        assertThat(entry.code).isEqualTo(200);
+    }
+
+    @Test
+    public void testLargeResponseLogged() throws Exception {
+        server.enqueue(new MockResponse().setBody(new String(new char[200]).replace('\0', 'x')));
+
+        execute(new Request.Builder().url(server.url("/large")).build());
+
+        assertThat(interceptor.entries.poll(5, TimeUnit.SECONDS).responseSize).isEqualTo(200);
+    }
+
+    @Test
+    public void testLargeRequestLogged() throws Exception {
+        server.enqueue(new MockResponse());
+
+        RequestBody body = RequestBody.create(MediaType.parse("text/plain"), new byte[200]);
+        execute(new Request.Builder().url(server.url("/upload")).post(body).build());
+
+        CallLoggingInterceptor.Entry entry = interceptor.entries.poll(5, TimeUnit.SECONDS);
+
+        assertThat(entry.method).isEqualTo("POST");
+        assertThat(entry.requestSize).isEqualTo(200);
+    }
+
+    @Test
+    public void testOtherCallsSampled() throws Exception {
+        properties.setSampleRate(1);
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        execute(new Request.Builder().url(server.url("/")).build());
+
+        assertThat(interceptor.entries.poll(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    public void testFailureLoggedWhenOnlyWarnEnabled() throws Exception {
+        interceptor.infoEnabled = false;
+        properties.setSlowCallThreshold(0);
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        execute(new Request.Builder().url(server.url("/")).build());
+
+        assertThat(interceptor.entries.poll(200, TimeUnit.MILLISECONDS)).isNull();
+
+        server.shutdown();
+
+        try {
+            execute(new Request.Builder().url(server.url("/down")).build());
+            failBecauseExceptionWasNotThrown(IOException.class);
+        } catch (IOException e) {
+            // Expected
+        }
+
+        CallLoggingInterceptor.Entry entry = interceptor.entries.poll(5, TimeUnit.SECONDS);
+
+        assertThat(entry.url).endsWith("/down");
+        assertThat(entry.failure).isNotNull();
+    }
+
+    @Test
+    public void testDroppedEntriesReportedWithoutFurtherCalls() throws Exception {
+        interceptor.close();
+        properties.setSlowCallThreshold(0);
+        properties.setQueueSize(1);
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        interceptor = new TestCallLoggingInterceptor(properties) {
+            @Override
+            protected void write(Entry entry) {
+                writing.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.write(entry);
+            }
+        };
+        interceptor.afterPropertiesSet();
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse());
+        }
+
+        execute(new Request.Builder().url(server.url("/1")).build());
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        execute(new Request.Builder().url(server.url("/2")).build());
+        execute(new Request.Builder().url(server.url("/3")).build());
+        release.countDown();
+
+        assertThat(interceptor.dropped.poll(5, TimeUnit.SECONDS)).isEqualTo(1L);
+        assertThat(interceptor.entries.poll(5, TimeUnit.SECONDS).url).endsWith("/1");
+        assertThat(interceptor.entries.poll(5, TimeUnit.SECONDS).url).endsWith("/2");
+    }
+
+    @Test
+    public void testEntriesWrittenOnceStarted() throws Exception {
+        interceptor.close();
+        properties.setSlowCallThreshold(0);
+        interceptor = new TestCallLoggingInterceptor(properties);
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+        server.enqueue(new MockResponse());
+
+        execute(new Request.Builder().url(server.url("/")).build());
+
+        assertThat(interceptor.entries.poll(200, TimeUnit.MILLISECONDS)).isNull();
+
+        interceptor.afterPropertiesSet();
+
+        assertThat(interceptor.entries.poll(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    private void execute(Request request) throws Exception {
+        client.newCall(request).execute().body().close();
+    }
+
+    private static class TestCallLoggingInterceptor extends CallLoggingInterceptor {
+        final BlockingQueue<Entry> entries = new LinkedBlockingQueue<Entry>();
+        final BlockingQueue<Long> dropped = new LinkedBlockingQueue<Long>();
+        volatile boolean infoEnabled = true;
+
+        TestCallLoggingInterceptor(OkHttpProperties.Logging properties) {
+            super(properties);
+        }
+
+        @Override
+        protected boolean isWarnEnabled() {
+            return true;
+        }
+
+        @Override
+        protected boolean isInfoEnabled() {
+            return infoEnabled;
+        }
+
+        @Override
+        protected void writeDropped(long count) {
+            dropped.add(count);
+        }
+
+        @Override
+        protected void write(Entry entry) {
+            entries.add(entry);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ClientMonitor}
+ *
+ * @author troinine
+ */
+public class ClientMonitorTest {
+    private MockWebServer server;
+    private ClientMonitor monitor;
+    private OkHttpClient client;
+    private MonitoringCallFactory callFactory;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        monitor = new ClientMonitor();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(monitor.getApplicationInterceptor())
+                .addNetworkInterceptor(monitor.getNetworkInterceptor())
+                .build();
+        client.dispatcher().setMaxRequestsPerHost(1);
+        callFactory = new MonitoringCallFactory(client, monitor);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testQueuedAndRunningCallsTrackedByHost() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+
+        TracedOperation previous = TracedOperation.set(new TracedOperation("userService", "getUser"));
+
+        try {
+            callFactory.newCall(request("/blocking?token=secret")).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    finished.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    response.body().close();
+                    started.countDown();
+
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    finished.countDown();
+                }
+            });
+        } finally {
+            TracedOperation.restore(previous);
+        }
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        callFactory.newCall(request("/queued")).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                finished.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.body().close();
+                finished.countDown();
+            }
+        });
+
+        ClientMonitor.Snapshot snapshot = monitor.snapshot(10);
+
+        assertThat(snapshot.getCalls().getQueued()).isEqualTo(1);
+        assertThat(snapshot.getCalls().getRunning()).isEqualTo(1);
+        assertThat(snapshot.getHosts()).hasSize(1);
+
+        ClientMonitor.HostState host = snapshot.getHosts().get(server.getHostName());
+
+        assertThat(host.getQueued()).isEqualTo(1);
+        assertThat(host.getRunning()).isEqualTo(1);
+        assertThat(snapshot.getLongestRunningCalls()).hasSize(1);
+
+        ClientMonitor.CallState call = snapshot.getLongestRunningCalls().get(0);
+
+        assertThat(call.getMethod()).isEqualTo("GET");
+        assertThat(call.getUrl()).endsWith("/blocking");
+        assertThat(call.getOperation()).isEqualTo("userService/getUser");
+
+        release.countDown();
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The calls stay tracked until their callbacks return, which is after the latch is counted down
+        awaitNoHosts();
+    }
+
+    @Test
+    public void testSynchronousCallTrackedOnce() throws Exception {
+        server.enqueue(new MockResponse());
+
+        final ClientMonitor.Snapshot[] snapshots = new ClientMonitor.Snapshot[1];
+        OkHttpClient client = this.client.newBuilder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        snapshots[0] = monitor.snapshot(10);
+
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+
+        new MonitoringCallFactory(client, monitor).newCall(request("/sync")).execute().body().close();
+
+        ClientMonitor.HostState host = snapshots[0].getHosts().get(server.getHostName());
+
+        assertThat(host.getQueued()).isZero();
+        assertThat(host.getRunning()).isEqualTo(1);
+        assertThat(monitor.snapshot(10).getHosts()).isEmpty();
+    }
+
+    @Test
+    public void testConnectionsTrackedByRoute() throws Exception {
+        server.enqueue(new MockResponse());
+
+        callFactory.newCall(request("/")).execute().body().close();
+
+        ClientMonitor.Snapshot snapshot = monitor.snapshot(10);
+        String route = server.getHostName() + ":" + server.getPort();
+
+        assertThat(snapshot.getConnections().getConnections()).isEqualTo(1);
+        assertThat(snapshot.getConnections().getIdle()).isEqualTo(1);
+        assertThat(snapshot.getRoutes()).containsKey(route);
+        assertThat(snapshot.getRoutes().get(route).getConnections()).isEqualTo(1);
+        assertThat(snapshot.getRoutes().get(route).getIdle()).isEqualTo(1);
+
+        client.connectionPool().evictAll();
+        snapshot = monitor.snapshot(10);
+
+        assertThat(snapshot.getRoutes()).isEmpty();
+        assertThat(snapshot.getConnections().getConnections()).isZero();
+        assertThat(snapshot.getConnections().getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSnapshotTakenWhileDispatcherAndPoolLocked() throws Exception {
+        server.enqueue(new MockResponse());
+        callFactory.newCall(request("/")).execute().body().close();
+
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (client.dispatcher()) {
+                    synchronized (client.connectionPool()) {
+                        locked.countDown();
+
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        });
+        holder.start();
+
+        try {
+            assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Would wait for the holder if the snapshot read the totals of the dispatcher or the pool
+            ClientMonitor.Snapshot snapshot = monitor.snapshot(10);
+
+            assertThat(snapshot.getCalls().getRunning()).isZero();
+            assertThat(snapshot.getConnections().getConnections()).isEqualTo(1);
+            // The holder gives up its locks after a timeout, so it is still running only if nothing waited for them
+            assertThat(holder.isAlive()).isTrue();
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+
+    private Request request(String path) {
+        return new Request.Builder().url(server.url(path)).build();
+    }
+
+    private void awaitNoHosts() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!monitor.snapshot(10).getHosts().isEmpty()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DeadlineCallFactory}
+ *
+ * @author troinine
+ */
+public class DeadlineCallFactoryTest {
+    private MockWebServer server;
+    private DeadlineCallFactory callFactory;
+    private Request request;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        callFactory = new DeadlineCallFactory(new OkHttpClient());
+        request = new Request.Builder().url(server.url("/")).build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        Deadline.restore(null);
+        server.shutdown();
+    }
+
+    @Test
+    public void testCallWithoutDeadline() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThat(callFactory.newCall(request).execute().body().string()).isEqualTo("ok");
+        assertThat(server.takeRequest().getHeader(Deadline.HEADER)).isNull();
+    }
+
+    @Test
+    public void testDeadlineSentAsHeader() throws Exception {
+        Deadline deadline = Deadline.after(5, TimeUnit.SECONDS);
+        Deadline.set(deadline);
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThat(callFactory.newCall(request).execute().body().string()).isEqualTo("ok");
+        assertThat(server.takeRequest().getHeader(Deadline.HEADER)).isEqualTo(deadline.toString());
+    }
+
+    @Test
+    public void testLaterDeadlineDoesNotExtendCurrent() {
+        Deadline first = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline.set(first);
+        Deadline previous = Deadline.set(Deadline.after(1, TimeUnit.MINUTES));
+
+        assertThat(Deadline.current()).isSameAs(first);
+
+        Deadline.restore(previous);
+
+        assertThat(Deadline.current()).isSameAs(first);
+    }
+
+    @Test
+    public void testExpiredDeadlineFailsBeforeSending() throws Exception {
+        Deadline.set(Deadline.after(-1, TimeUnit.MILLISECONDS));
+
+        try {
+            callFactory.newCall(request).execute();
+            failBecauseExceptionWasNotThrown(DeadlineExceededException.class);
+        } catch (DeadlineExceededException e) {
+            assertThat(server.getRequestCount()).isZero();
+        }
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void testCallCanceledWhenDeadlinePassesWaitingForResponse() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        Deadline.set(Deadline.after(200, TimeUnit.MILLISECONDS));
+
+        callFactory.newCall(request).execute();
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void testCallCanceledWhenDeadlinePassesReadingBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("slow").setBodyDelay(2, TimeUnit.SECONDS));
+        Deadline.set(Deadline.after(500, TimeUnit.MILLISECONDS));
+
+        callFactory.newCall(request).execute().body().string();
+    }
+
+    @Test
+    public void testDeadlineOfCreatingThreadAppliesToAsynchronousCall() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        Deadline.set(Deadline.after(200, TimeUnit.MILLISECONDS));
+
+        Call call = callFactory.newCall(request);
+        Deadline.restore(null);
+
+        final BlockingQueue<IOException> failures = new LinkedBlockingQueue<IOException>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                failures.add(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.body().close();
+            }
+        });
+
+        assertThat(failures.poll(5, TimeUnit.SECONDS)).isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void testWatchdogStoppedWhenInterceptorFails() throws Exception {
+        DeadlineCallFactory callFactory = new DeadlineCallFactory(new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) {
+                        throw new IllegalStateException("Interceptor failure");
+                    }
+                })
+                .build());
+        Deadline.set(Deadline.after(200, TimeUnit.MILLISECONDS));
+        Call call = callFactory.newCall(request);
+
+        try {
+            call.execute();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Interceptor failure");
+        }
+
+        assertNotCanceledAfterDeadline(call);
+    }
+
+    @Test
+    public void testSecondExecutionFailsWithoutEnteringWatchdog() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        Deadline.set(Deadline.after(200, TimeUnit.MILLISECONDS));
+        Call call = callFactory.newCall(request);
+
+        call.execute().body().close();
+
+        try {
+            call.execute();
+            failBecauseExceptionWasNotThrown(IllegalStateException.class);
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Already Executed");
+        }
+
+        assertNotCanceledAfterDeadline(call);
+    }
+
+    @Test
+    public void testWatchdogStoppedWhenDispatcherRejectsCall() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        DeadlineCallFactory callFactory = new DeadlineCallFactory(new OkHttpClient.Builder()
+                .dispatcher(new Dispatcher(executor))
+                .build());
+        Deadline.set(Deadline.after(200, TimeUnit.MILLISECONDS));
+        Call call = callFactory.newCall(request);
+
+        try {
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.body().close();
+                }
+            });
+            failBecauseExceptionWasNotThrown(RejectedExecutionException.class);
+        } catch (RejectedExecutionException e) {
+            assertNotCanceledAfterDeadline(call);
+        }
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void testDeadlineTakenFromRequestHeader() throws Exception {
+        Request withDeadline = request.newBuilder()
+                .header(Deadline.HEADER, Deadline.after(-1, TimeUnit.MILLISECONDS).toString())
+                .build();
+
+        callFactory.newCall(withDeadline).execute();
+    }
+
+    /**
+     * A watchdog left running would cancel the call once the deadline passes.
+     */
+    private static void assertNotCanceledAfterDeadline(Call call) throws InterruptedException {
+        Thread.sleep(400);
+
+        assertThat(call.isCanceled()).isFalse();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.okhttp.OkHttpProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link MemoryBudget}
+ *
+ * @author troinine
+ */
+public class MemoryBudgetTest {
+    private static final int BODY_SIZE = 256 * 1024;
+
+    private MockWebServer server;
+    private OkHttpProperties.MemoryBudget properties;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        properties = new OkHttpProperties.MemoryBudget();
+        properties.setMaxBytes(2 * BODY_SIZE);
+        properties.setMaxWait(5000);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        executor.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    public void testResponsesQueuedWhileBudgetUsedUp() throws Exception {
+        MemoryBudget budget = new MemoryBudget(properties);
+        OkHttpClient client = client(budget);
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(largeResponse(BODY_SIZE));
+        }
+
+        Response first = client.newCall(request()).execute();
+        Response second = client.newCall(request()).execute();
+
+        assertThat(budget.getUsed()).isEqualTo(2L * BODY_SIZE);
+
+        Future<Response> third = executeAsync(client);
+
+        awaitWaiting(budget, 1);
+
+        assertThat(third.isDone()).isFalse();
+
+        first.body().close();
+        Response response = third.get(5, TimeUnit.SECONDS);
+
+        assertThat(budget.getWaiting()).isZero();
+        assertThat(budget.getUsed()).isEqualTo(2L * BODY_SIZE);
+        assertThat(budget.getPeak()).isEqualTo(2L * BODY_SIZE);
+        assertThat(response.body().bytes()).hasSize(BODY_SIZE);
+
+        second.body().close();
+
+        assertThat(budget.getUsed()).isZero();
+        assertThat(budget.getAdmitted()).isEqualTo(3);
+    }
+
+    @Test
+    public void testCallFailsWhenBudgetStaysUsedUp() throws Exception {
+        properties.setMaxWait(100);
+        MemoryBudget budget = new MemoryBudget(properties);
+        OkHttpClient client = client(budget);
+        server.enqueue(largeResponse(2 * BODY_SIZE));
+        server.enqueue(largeResponse(BODY_SIZE));
+
+        Response first = client.newCall(request()).execute();
+
+        try {
+            client.newCall(request()).execute();
+            failBecauseExceptionWasNotThrown(MemoryBudgetExceededException.class);
+        } catch (MemoryBudgetExceededException e) {
+            assertThat(e.getMessage()).contains("cannot admit the " + BODY_SIZE + " bytes");
+        }
+
+        assertThat(budget.getRejected()).isEqualTo(1);
+        assertThat(budget.getWaiting()).isZero();
+
+        first.body().close();
+
+        assertThat(budget.getUsed()).isZero();
+    }
+
+    @Test
+    public void testBodiesOfUnknownLengthCountedAsRead() throws Exception {
+        properties.setUnknownLengthReservation(1024);
+        MemoryBudget budget = new MemoryBudget(properties);
+        server.enqueue(new MockResponse().setChunkedBody(new String(new char[BODY_SIZE]).replace('\0', 'a'), 8192));
+
+        Response response = client(budget).newCall(request()).execute();
+
+        assertThat(budget.getUsed()).isEqualTo(1024);
+
+        assertThat(response.body().source().readByteArray()).hasSize(BODY_SIZE);
+        assertThat(budget.getUsed()).isEqualTo(BODY_SIZE);
+
+        response.body().close();
+
+        assertThat(budget.getUsed()).isZero();
+        assertThat(budget.getPeak()).isEqualTo(BODY_SIZE);
+    }
+
+    @Test
+    public void testBodyLargerThanBudgetAdmittedAlone() throws Exception {
+        MemoryBudget budget = new MemoryBudget(properties);
+        OkHttpClient client = client(budget);
+        server.enqueue(largeResponse(BODY_SIZE));
+        server.enqueue(largeResponse(4 * BODY_SIZE));
+
+        Response small = client.newCall(request()).execute();
+        Future<Response> large = executeAsync(client);
+
+        awaitWaiting(budget, 1);
+        small.body().close();
+
+        Response response = large.get(5, TimeUnit.SECONDS);
+
+        assertThat(budget.getUsed()).isEqualTo(2L * BODY_SIZE);
+        assertThat(response.body().bytes()).hasSize(4 * BODY_SIZE);
+        assertThat(budget.getUsed()).isZero();
+        assertThat(budget.getPeak()).isEqualTo(4L * BODY_SIZE);
+    }
+
+    @Test
+    public void testConcurrentLargeResponsesStayWithinBudget() throws Exception {
+        MemoryBudget budget = new MemoryBudget(properties);
+        OkHttpClient client = client(budget);
+        List<Future<Response>> responses = new ArrayList<Future<Response>>();
+
+        for (int i = 0; i < 8; i++) {
+            server.enqueue(largeResponse(BODY_SIZE));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            final Future<Response> response = executeAsync(client);
+
+            responses.add(executor.submit(new Callable<Response>() {
+                @Override
+                public Response call() throws Exception {
+                    Response result = response.get();
+                    // Hold the body a little, like a slow conversion would
+                    Thread.sleep(20);
+                    result.body().bytes();
+
+                    return result;
+                }
+            }));
+        }
+
+        for (Future<Response> response : responses) {
+            assertThat(response.get(10, TimeUnit.SECONDS).isSuccessful()).isTrue();
+        }
+
+        assertThat(budget.getAdmitted()).isEqualTo(8);
+        assertThat(budget.getRejected()).isZero();
+        assertThat(budget.getPeak()).isLessThanOrEqualTo(2L * BODY_SIZE);
+        assertThat(budget.getUsed()).isZero();
+    }
+
+    private Future<Response> executeAsync(final OkHttpClient client) {
+        return executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return client.newCall(request()).execute();
+            }
+        });
+    }
+
+    private OkHttpClient client(MemoryBudget budget) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(budget)
+                .build();
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/")).build();
+    }
+
+    private static MockResponse largeResponse(int size) {
+        return new MockResponse().setBody(new Buffer().write(new byte[size]));
+    }
+
+    private static void awaitWaiting(MemoryBudget budget, int waiting) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (budget.getWaiting() < waiting) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PriorityScheduler}
+ *
+ * @author troinine
+ */
+public class PrioritySchedulerTest {
+    private MockWebServer server;
+    private PriorityScheduler scheduler;
+    private PriorityCallFactory callFactory;
+    private BlockingQueue<Object> results;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        OkHttpClient client = new OkHttpClient();
+        client.dispatcher().setMaxRequestsPerHost(1);
+
+        Map<CallPriority, Integer> weights = new EnumMap<CallPriority, Integer>(CallPriority.class);
+        weights.put(CallPriority.HIGH, 4);
+        weights.put(CallPriority.NORMAL, 2);
+        weights.put(CallPriority.LOW, 1);
+
+        scheduler = new PriorityScheduler(client.dispatcher(), weights);
+        callFactory = new PriorityCallFactory(client, scheduler);
+        results = new LinkedBlockingQueue<Object>();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        CallPriority.restore(null);
+        server.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWeightMustBePositive() {
+        Map<CallPriority, Integer> weights = new EnumMap<CallPriority, Integer>(CallPriority.class);
+        weights.put(CallPriority.HIGH, 1);
+        weights.put(CallPriority.NORMAL, 0);
+        weights.put(CallPriority.LOW, 1);
+
+        new PriorityScheduler(new OkHttpClient().dispatcher(), weights);
+    }
+
+    @Test
+    public void testHigherPriorityAdmittedFirstWhenHostIsBusy() throws Exception {
+        CountDownLatch release = blockHost();
+
+        enqueue("/low-1", CallPriority.LOW);
+        enqueue("/low-2", CallPriority.LOW);
+        enqueue("/high", CallPriority.HIGH);
+
+        assertThat(scheduler.getRunningCount()).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth(CallPriority.LOW)).isEqualTo(2);
+        assertThat(scheduler.getQueueDepth(CallPriority.HIGH)).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth(CallPriority.NORMAL)).isZero();
+
+        release.countDown();
+
+        assertThat(takePath()).isEqualTo("/blocking");
+        assertThat(takePath()).isEqualTo("/high");
+        assertThat(takePath()).isEqualTo("/low-1");
+        assertThat(takePath()).isEqualTo("/low-2");
+        assertThat(scheduler.getAdmittedCount(CallPriority.LOW)).isEqualTo(2);
+    }
+
+    @Test
+    public void testLowerPriorityNotStarved() throws Exception {
+        CountDownLatch release = blockHost();
+
+        enqueue("/low", CallPriority.LOW);
+
+        for (int i = 0; i < 8; i++) {
+            enqueue("/high-" + i, CallPriority.HIGH);
+        }
+
+        release.countDown();
+        takePath();
+
+        int position = 0;
+
+        while (!takePath().equals("/low")) {
+            position++;
+        }
+
+        assertThat(position).isLessThan(8);
+    }
+
+    @Test
+    public void testCanceledCallRemovedFromQueue() throws Exception {
+        CountDownLatch release = blockHost();
+
+        Call call = enqueue("/canceled", CallPriority.LOW);
+        call.cancel();
+
+        assertThat(scheduler.getQueueDepth(CallPriority.LOW)).isZero();
+        assertThat(results.poll(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+
+        release.countDown();
+    }
+
+    /**
+     * Occupies the only connection slot of the host until the returned latch is released.
+     */
+    private CountDownLatch blockHost() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        server.enqueue(new MockResponse());
+
+        callFactory.newCall(request("/blocking")).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                started.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                response.body().close();
+                started.countDown();
+
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        return release;
+    }
+
+    private Call enqueue(String path, CallPriority priority) {
+        server.enqueue(new MockResponse());
+
+        CallPriority previous = CallPriority.set(priority);
+        Call call;
+
+        try {
+            call = callFactory.newCall(request(path));
+        } finally {
+            CallPriority.restore(previous);
+        }
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                results.add(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.body().close();
+                results.add(response);
+            }
+        });
+
+        return call;
+    }
+
+    private Request request(String path) {
+        return new Request.Builder().url(server.url(path)).build();
+    }
+
+    private String takePath() throws InterruptedException {
+        return server.takeRequest().getPath();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TracingCallFactory}
+ *
+ * @author troinine
+ */
+public class TracingCallFactoryTest {
+    private static final String PARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    private MockWebServer server;
+    private BlockingQueue<Span> spans;
+    private Request request;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        spans = new LinkedBlockingQueue<Span>();
+        request = new Request.Builder().url(server.url("/hello")).build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        TraceContext.restore(null);
+        TracedOperation.restore(null);
+        server.shutdown();
+    }
+
+    @Test
+    public void testCallOutsideTraceNotTracedWhenSamplingOff() throws Exception {
+        server.enqueue(new MockResponse());
+
+        newCallFactory(0).newCall(request).execute().body().close();
+
+        assertThat(server.takeRequest().getHeader(TraceContext.HEADER)).isNull();
+        assertThat(spans).isEmpty();
+    }
+
+    @Test
+    public void testCallContinuesTraceOfThread() throws Exception {
+        TraceContext.set(TraceContext.parse(PARENT));
+        TracedOperation.set(new TracedOperation("helloService", "sayHello"));
+        server.enqueue(new MockResponse().setResponseCode(202));
+
+        newCallFactory(0).newCall(request).execute().body().close();
+
+        TraceContext sent = TraceContext.parse(server.takeRequest().getHeader(TraceContext.HEADER));
+        Span span = spans.poll();
+
+        assertThat(sent.getTraceId()).isEqualTo("4bf92f3577b34da6a3ce929d0e0e4736");
+        assertThat(sent.getSpanId()).isNotEqualTo("00f067aa0ba902b7");
+        assertThat(sent.isSampled()).isTrue();
+        assertThat(span.getName()).isEqualTo("helloService/sayHello");
+        assertThat(span.getTraceId()).isEqualTo(sent.getTraceId());
+        assertThat(span.getSpanId()).isEqualTo(sent.getSpanId());
+        assertThat(span.getParentSpanId()).isEqualTo("00f067aa0ba902b7");
+        assertThat(span.getAttributes())
+                .containsEntry("rpc.service", "helloService")
+                .containsEntry("rpc.method", "sayHello")
+                .containsEntry("http.method", "GET")
+                .containsEntry("http.status_code", 202);
+        assertThat(span.getEndEpochNanos()).isGreaterThanOrEqualTo(span.getStartEpochNanos());
+    }
+
+    @Test
+    public void testUnsampledTracePropagatedButNotRecorded() throws Exception {
+        TraceContext.set(TraceContext.parse(PARENT.substring(0, PARENT.length() - 2) + "00"));
+        server.enqueue(new MockResponse());
+
+        newCallFactory(1).newCall(request).execute().body().close();
+
+        assertThat(TraceContext.parse(server.takeRequest().getHeader(TraceContext.HEADER)).isSampled()).isFalse();
+        assertThat(spans).isEmpty();
+    }
+
+    @Test
+    public void testCallOutsideTraceStartsTraceWhenSampled() throws Exception {
+        server.enqueue(new MockResponse());
+
+        newCallFactory(1).newCall(request).execute().body().close();
+
+        Span span = spans.poll();
+
+        assertThat(server.takeRequest().getHeader(TraceContext.HEADER)).isNotNull();
+        assertThat(span.getName()).isEqualTo("HTTP GET");
+        assertThat(span.getParentSpanId()).isNull();
+    }
+
+    @Test
+    public void testParentOfCreatingThreadAppliesToAsynchronousCall() throws Exception {
+        TraceContext.set(TraceContext.parse(PARENT));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        Call call = newCallFactory(0).newCall(request);
+        TraceContext.restore(null);
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.body().close();
+            }
+        });
+
+        Span span = spans.poll(5, TimeUnit.SECONDS);
+
+        assertThat(span.getParentSpanId()).isEqualTo("00f067aa0ba902b7");
+        assertThat(span.getStatus()).isEqualTo(Span.Status.ERROR);
+    }
+
+    @Test
+    public void testMalformedTraceparentIgnored() {
+        assertThat(TraceContext.parse(null)).isNull();
+        assertThat(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7")).isNull();
+        assertThat(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01")).isNull();
+        assertThat(TraceContext.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01")).isNull();
+        assertThat(TraceContext.parse(PARENT).toString()).isEqualTo(PARENT);
+    }
+
+    private TracingCallFactory newCallFactory(double samplingProbability) {
+        SpanExporter exporter = new SpanExporter() {
+            @Override
+            public void export(Span span) {
+                spans.add(span);
+            }
+        };
+
+        return new TracingCallFactory(new OkHttpClient(), new Tracer(exporter, samplingProbability));
+    }
+}
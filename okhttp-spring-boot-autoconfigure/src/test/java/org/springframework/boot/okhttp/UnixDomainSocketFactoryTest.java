@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.okhttp;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.ClassUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link UnixDomainSocketFactory}
+ * <p>
+ * The socket adapter works with any socket channel, so the round trips run over TCP on every Java version. Only
+ * the round trip over a real Unix domain socket needs Java 16 or later.
+ *
+ * @author troinine
+ */
+public class UnixDomainSocketFactoryTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private UnixDomainSocketFactory socketFactory;
+    private OkHttpClient client;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        socketFactory = new UnixDomainSocketFactory(new InetSocketAddress(server.getHostName(), server.getPort()));
+        client = new OkHttpClient.Builder()
+                .socketFactory(socketFactory)
+                .dns(socketFactory.getDns())
+                .readTimeout(500, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testRequestsSentToSocketRegardlessOfHost() throws Exception {
+        server.enqueue(new MockResponse().setBody("hello"));
+
+        Response response = client.newCall(new Request.Builder().url("http://sidecar.invalid/hello").build())
+                .execute();
+
+        assertThat(response.body().string()).isEqualTo("hello");
+
+        RecordedRequest request = server.takeRequest();
+
+        assertThat(request.getPath()).isEqualTo("/hello");
+        assertThat(request.getHeader("Host")).isEqualTo("sidecar.invalid");
+    }
+
+    @Test
+    public void testLargeBodiesRoundTrip() throws Exception {
+        byte[] body = new byte[4 * 1024 * 1024];
+
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(body)));
+
+        Response response = client.newCall(new Request.Builder()
+                .url("http://sidecar.invalid/echo")
+                .post(RequestBody.create(MediaType.parse("application/octet-stream"), body))
+                .build())
+                .execute();
+
+        assertThat(response.body().bytes()).isEqualTo(body);
+        assertThat(server.takeRequest().getBody().readByteArray()).isEqualTo(body);
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+
+        assertThat(get("/first")).isEqualTo("first");
+        assertThat(get("/second")).isEqualTo("second");
+
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testReadTimeoutApplied() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        get("/stalled");
+    }
+
+    @Test
+    public void testSocketTimesOutAndCloses() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        Socket socket = socketFactory.createSocket("ignored", 80);
+        socket.setSoTimeout(200);
+
+        OutputStream output = socket.getOutputStream();
+        output.write("GET / HTTP/1.1\r\nHost: sidecar\r\n\r\n".getBytes("US-ASCII"));
+        output.flush();
+
+        InputStream input = socket.getInputStream();
+
+        try {
+            input.read();
+            failBecauseExceptionWasNotThrown(SocketTimeoutException.class);
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+
+        socket.close();
+
+        assertThat(socket.isClosed()).isTrue();
+    }
+
+    @Test
+    public void testUnixDomainSocketRoundTrip() throws Exception {
+        Assume.assumeTrue(ClassUtils.isPresent("java.net.UnixDomainSocketAddress", null));
+
+        File path = new File(temporaryFolder.getRoot(), "sidecar.sock");
+        UnixDomainSocketServer unixServer = new UnixDomainSocketServer(path, "unix");
+
+        try {
+            UnixDomainSocketFactory unixSocketFactory = new UnixDomainSocketFactory(path.getPath());
+            OkHttpClient unixClient = new OkHttpClient.Builder()
+                    .socketFactory(unixSocketFactory)
+                    .dns(unixSocketFactory.getDns())
+                    .build();
+
+            Response response = unixClient.newCall(new Request.Builder().url("http://sidecar/").build()).execute();
+
+            assertThat(response.body().string()).isEqualTo("unix");
+        } finally {
+            unixServer.close();
+        }
+    }
+
+    private String get(String path) throws Exception {
+        return client.newCall(new Request.Builder().url("http://sidecar.invalid" + path).build())
+                .execute()
+                .body()
+                .string();
+    }
+
+    /**
+     * Answers a single request on a Unix domain socket, created reflectively so that this test compiles on Java
+     * versions without Unix domain socket support.
+     */
+    private static class UnixDomainSocketServer implements Closeable {
+        private final ServerSocketChannel serverChannel;
+        private final Thread thread;
+
+        UnixDomainSocketServer(File path, final String body) throws Exception {
+            SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class)
+                    .invoke(null, path.getPath());
+
+            serverChannel = (ServerSocketChannel) ServerSocketChannel.class
+                    .getMethod("open", ProtocolFamily.class)
+                    .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+            serverChannel.bind(address);
+
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        respond(serverChannel.accept(), body);
+                    } catch (IOException e) {
+                        // Closed
+                    }
+                }
+            }, "UnixDomainSocketServer");
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverChannel.close();
+
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void respond(SocketChannel channel, String body) throws IOException {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                StringBuilder request = new StringBuilder();
+
+                while (request.indexOf("\r\n\r\n") < 0 && channel.read(buffer) != -1) {
+                    buffer.flip();
+                    request.append(new String(buffer.array(), 0, buffer.limit(), "US-ASCII"));
+                    buffer.clear();
+                }
+
+                String response = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length()
+                        + "\r\nConnection: close\r\n\r\n" + body;
+
+                channel.write(ByteBuffer.wrap(response.getBytes("US-ASCII")));
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -15,12 +15,29 @@
  */
 package org.springframework.boot.autoconfigure.retrofit;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.squareup.moshi.Moshi;
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.okhttp.CallPriority;
+import org.springframework.boot.okhttp.Deadline;
+import org.springframework.boot.retrofit.AdaptiveTimeoutPublicMetrics;
+import org.springframework.boot.retrofit.AdaptiveTimeoutRegistry;
+import org.springframework.boot.retrofit.FileConverterFactory;
+import org.springframework.boot.retrofit.JsonCodecConverterFactory;
+import org.springframework.boot.retrofit.OutboxRegistry;
+import org.springframework.boot.retrofit.PagingCallAdapterFactory;
+import org.springframework.boot.retrofit.PriorityCallAdapterFactory;
+import org.springframework.boot.retrofit.RetrofitServiceWarmUp;
+import org.springframework.boot.retrofit.StreamingJacksonConverterFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import retrofit2.CallAdapter;
@@ -54,6 +71,14 @@ public class RetrofitAutoConfiguration {
     @Autowired(required = false)
     private OkHttpClient okHttpClient;
 
+    /**
+     * The reconfigurable call factory of the OkHttp auto-configuration, preferred over the client itself so that
+     * runtime changes to the client apply to Retrofit services too.
+     */
+    @Autowired(required = false)
+    @Qualifier("okHttpCallFactory")
+    private Call.Factory okHttpCallFactory;
+
     @Autowired
     private RetrofitProperties retrofitProperties;
 
@@ -71,11 +96,14 @@ public class RetrofitAutoConfiguration {
             builder.addConverterFactory(factory);
         }
 
-        if (okHttpClient != null) {
+        if (okHttpCallFactory != null) {
+            builder.callFactory(okHttpCallFactory);
+        } else if (okHttpClient != null) {
             builder.client(okHttpClient);
         }
 
         builder.baseUrl(retrofitProperties.getBaseUrl());
+        builder.validateEagerly(retrofitProperties.getWarmUp().isEnabled());
 
         return builder.build();
     }
@@ -99,8 +127,85 @@ public class RetrofitAutoConfiguration {
         }
     }
 
+    @Configuration
+    @ConditionalOnClass(CallPriority.class)
+    public static class PriorityCallAdapterFactoryConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public PriorityCallAdapterFactory priorityCallAdapterFactory() {
+            return new PriorityCallAdapterFactory();
+        }
+    }
+
+    @Configuration
+    public static class PagingCallAdapterFactoryConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public PagingCallAdapterFactory pagingCallAdapterFactory(RetrofitProperties retrofitProperties) {
+            return new PagingCallAdapterFactory(retrofitProperties.getPaging());
+        }
+    }
+
+    /**
+     * Registry of the adaptive timeouts of the services enabling them, exposed as public metrics when the actuator
+     * is available.
+     */
+    @Configuration
+    @ConditionalOnClass(Deadline.class)
+    public static class AdaptiveTimeoutConfiguration {
+        @Bean(name = AdaptiveTimeoutRegistry.BEAN_NAME)
+        @ConditionalOnMissingBean
+        public AdaptiveTimeoutRegistry adaptiveTimeoutRegistry() {
+            return new AdaptiveTimeoutRegistry();
+        }
+
+        @Configuration
+        @ConditionalOnClass(PublicMetrics.class)
+        public static class AdaptiveTimeoutMetricsConfiguration {
+            @Bean
+            @ConditionalOnMissingBean
+            public AdaptiveTimeoutPublicMetrics adaptiveTimeoutPublicMetrics(AdaptiveTimeoutRegistry registry) {
+                return new AdaptiveTimeoutPublicMetrics(registry);
+            }
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = RetrofitProperties.PREFIX, name = "warm-up.enabled", havingValue = "true")
+    public static class RetrofitServiceWarmUpConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public RetrofitServiceWarmUp retrofitServiceWarmUp(RetrofitProperties retrofitProperties) {
+            return new RetrofitServiceWarmUp(retrofitProperties.getWarmUp().getPasses());
+        }
+    }
+
+    /**
+     * Registry of the outboxes of the services with fire-and-forget methods, closing them on shutdown.
+     */
+    @Configuration
+    public static class OutboxConfiguration {
+        @Bean(name = OutboxRegistry.BEAN_NAME)
+        @ConditionalOnMissingBean
+        public OutboxRegistry outboxRegistry() {
+            return new OutboxRegistry();
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(Moshi.class)
+    public static class JsonCodecConverterFactoryConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public JsonCodecConverterFactory jsonCodecConverterFactory() {
+            return JsonCodecConverterFactory.create();
+        }
+    }
+
     @Configuration
     @ConditionalOnClass(JacksonConverterFactory.class)
+    @ConditionalOnProperty(
+            prefix = RetrofitProperties.PREFIX, name = "jackson.streaming", havingValue = "false", matchIfMissing = true)
     public static class JacksonConverterFactoryConfiguration {
         @Bean
         @ConditionalOnMissingBean
@@ -109,6 +214,26 @@ public class RetrofitAutoConfiguration {
         }
     }
 
+    @Configuration
+    @ConditionalOnClass(ObjectMapper.class)
+    @ConditionalOnProperty(prefix = RetrofitProperties.PREFIX, name = "jackson.streaming", havingValue = "true")
+    public static class StreamingJacksonConverterFactoryConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public StreamingJacksonConverterFactory streamingJacksonConverterFactory() {
+            return StreamingJacksonConverterFactory.create();
+        }
+    }
+
+    @Configuration
+    public static class FileConverterFactoryConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public FileConverterFactory fileConverterFactory() {
+            return new FileConverterFactory();
+        }
+    }
+
     @Configuration
     @ConditionalOnClass(ScalarsConverterFactory.class)
     public static class ScalarsConverterFactoryConfiguration {
@@ -18,6 +18,8 @@ package org.springframework.boot.autoconfigure.retrofit;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import javax.validation.constraints.NotNull;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Spring Boot configuration properties for Retrofit 2.
@@ -34,6 +36,25 @@ public class RetrofitProperties {
     @NotNull
     private String baseUrl;
 
+    /**
+     * Whether to scan the classpath for services even if the service index written by the annotation processor is
+     * available. Needed when services in the scanned packages were compiled without the processor.
+     */
+    private boolean ignoreServiceIndex;
+
+    private final Jackson jackson = new Jackson();
+
+    private final Paging paging = new Paging();
+
+    private final WarmUp warmUp = new WarmUp();
+
+    private final Outbox outbox = new Outbox();
+
+    /**
+     * Per service settings, keyed by the bean name of the service.
+     */
+    private final Map<String, Service> services = new LinkedHashMap<String, Service>();
+
     public String getBaseUrl() {
         return baseUrl;
     }
@@ -41,4 +62,388 @@ public class RetrofitProperties {
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
     }
+
+    public boolean isIgnoreServiceIndex() {
+        return ignoreServiceIndex;
+    }
+
+    public void setIgnoreServiceIndex(boolean ignoreServiceIndex) {
+        this.ignoreServiceIndex = ignoreServiceIndex;
+    }
+
+    public Jackson getJackson() {
+        return jackson;
+    }
+
+    public Paging getPaging() {
+        return paging;
+    }
+
+    public WarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public Map<String, Service> getServices() {
+        return services;
+    }
+
+    /**
+     * Jackson converter properties.
+     */
+    public static class Jackson {
+        /**
+         * Whether to use the streaming Jackson converter, which serializes into pooled buffers and parses
+         * responses without decoding them to characters first.
+         */
+        private boolean streaming;
+
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        public void setStreaming(boolean streaming) {
+            this.streaming = streaming;
+        }
+    }
+
+    /**
+     * Properties of the service methods returning {@code Pages}.
+     */
+    public static class Paging {
+        /**
+         * Number of pages fetched ahead of the page being consumed, unless the method sets its own. With 0, a page
+         * is fetched only once the previous one has been consumed.
+         */
+        private int prefetch = 1;
+
+        /**
+         * Maximum size in bytes of the response bodies of the pages fetched ahead. A page is fetched beyond the
+         * limit only when the consumer is waiting for it.
+         */
+        private long maxBufferedBytes = 8 * 1024 * 1024;
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public long getMaxBufferedBytes() {
+            return maxBufferedBytes;
+        }
+
+        public void setMaxBufferedBytes(long maxBufferedBytes) {
+            this.maxBufferedBytes = maxBufferedBytes;
+        }
+    }
+
+    /**
+     * Properties of the warm-up of the services at startup.
+     */
+    public static class WarmUp {
+        /**
+         * Whether to parse the methods of the services and resolve their converters at startup instead of on the
+         * first calls. Invalid service methods then fail the startup.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of synthetic encode and decode passes run through the converters of each model type once they
+         * are resolved, to get the converters compiled by the JIT before the first calls.
+         */
+        private int passes;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPasses() {
+            return passes;
+        }
+
+        public void setPasses(int passes) {
+            this.passes = passes;
+        }
+    }
+
+    /**
+     * Properties of the outboxes of the services with fire-and-forget methods.
+     */
+    public static class Outbox {
+        /**
+         * Directory of the journals of the outboxes, one subdirectory per service. Required when a service has
+         * fire-and-forget methods. A journal is locked while open, so each instance of the application needs a
+         * directory of its own. Calls survive restarts only if the directory does.
+         */
+        private String directory;
+
+        /**
+         * Size in bytes of the segment files of a journal.
+         */
+        private int segmentSize = 16 * 1024 * 1024;
+
+        /**
+         * Maximum number of segment files of a journal. Calls are rejected once all segments are full.
+         */
+        private int maxSegments = 16;
+
+        /**
+         * Maximum number of calls sent at a time. Set to 1 to send the calls in the order they were queued.
+         */
+        private int batchSize = 64;
+
+        /**
+         * Time in milliseconds waited before retrying failed calls, doubled after each failed attempt.
+         */
+        private long minBackoff = 100;
+
+        /**
+         * Maximum time in milliseconds waited before retrying failed calls.
+         */
+        private long maxBackoff = 30000;
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getMaxSegments() {
+            return maxSegments;
+        }
+
+        public void setMaxSegments(int maxSegments) {
+            this.maxSegments = maxSegments;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getMinBackoff() {
+            return minBackoff;
+        }
+
+        public void setMinBackoff(long minBackoff) {
+            this.minBackoff = minBackoff;
+        }
+
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    /**
+     * Settings of a single Retrofit service.
+     */
+    public static class Service {
+        private final RateLimit rateLimit = new RateLimit();
+        private final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+
+        public RateLimit getRateLimit() {
+            return rateLimit;
+        }
+
+        public AdaptiveTimeout getAdaptiveTimeout() {
+            return adaptiveTimeout;
+        }
+    }
+
+    /**
+     * Rate limit properties of a service.
+     */
+    public static class RateLimit {
+        /**
+         * Maximum number of calls per second made by the service on average. Not limited if left unspecified.
+         */
+        private Double permitsPerSecond;
+
+        /**
+         * Number of calls the service can make at once after being idle.
+         */
+        private int burst = 1;
+
+        /**
+         * What a call does when the limit is exceeded.
+         */
+        private RateLimitMode mode = RateLimitMode.BLOCK;
+
+        /**
+         * Maximum time in milliseconds a call waits for a permit in block mode before failing.
+         */
+        private long maxWait = 5000;
+
+        public Double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public void setPermitsPerSecond(Double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public RateLimitMode getMode() {
+            return mode;
+        }
+
+        public void setMode(RateLimitMode mode) {
+            this.mode = mode;
+        }
+
+        public long getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Adaptive timeout properties of a service. The timeout of each call is a multiple of a high percentile of the
+     * recent latencies of its method, clamped between the floor and the ceiling.
+     */
+    public static class AdaptiveTimeout {
+        /**
+         * Whether to derive the timeouts of the calls from the observed latencies.
+         */
+        private boolean enabled;
+
+        /**
+         * Percentile of the observed latencies the timeout is derived from.
+         */
+        private double percentile = 99.9;
+
+        /**
+         * Factor applied to the percentile to form the timeout.
+         */
+        private double multiplier = 3;
+
+        /**
+         * Minimum timeout in milliseconds.
+         */
+        private long floor = 100;
+
+        /**
+         * Maximum timeout in milliseconds, also used until enough latencies have been observed.
+         */
+        private long ceiling = 10000;
+
+        /**
+         * Number of latencies a method must observe before its timeout adapts.
+         */
+        private int minSamples = 1000;
+
+        /**
+         * Time in milliseconds after which observed latencies start to be forgotten. Estimates reflect between one
+         * and two windows of calls.
+         */
+        private long window = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        public long getFloor() {
+            return floor;
+        }
+
+        public void setFloor(long floor) {
+            this.floor = floor;
+        }
+
+        public long getCeiling() {
+            return ceiling;
+        }
+
+        public void setCeiling(long ceiling) {
+            this.ceiling = ceiling;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public long getWindow() {
+            return window;
+        }
+
+        public void setWindow(long window) {
+            this.window = window;
+        }
+    }
+
+    /**
+     * Behaviors of a call exceeding the rate limit of its service.
+     */
+    public enum RateLimitMode {
+        /**
+         * Wait for a permit up to the maximum wait.
+         */
+        BLOCK,
+
+        /**
+         * Fail right away.
+         */
+        FAIL_FAST
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Request;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.okhttp.Deadline;
+import org.springframework.boot.okhttp.DeadlineCallFactory;
+import org.springframework.boot.okhttp.DeadlineExceededException;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call adapter factory bounding the calls of a Retrofit service by the {@link MethodTimeout adaptive timeout} of
+ * the invoked method.
+ * <p>
+ * The timeout is applied as a {@link Deadline} set on the current thread while Retrofit creates the underlying
+ * OkHttp call, unless the thread already has an earlier deadline. Like a call timeout, it covers the time the call
+ * is queued, the exchange and the reading of the response body, and it is enforced by the
+ * {@link DeadlineCallFactory} the service calls go through. The latencies of the calls are recorded until their
+ * response is converted. Calls failing with a {@link DeadlineExceededException} because of the adaptive timeout
+ * are recorded with the time they took, so that timeouts set too tight adapt upwards. Other failures are not
+ * recorded.
+ * <p>
+ * Methods are recognized like {@link TracingCallAdapterFactory} does.
+ *
+ * @author troinine
+ */
+public class AdaptiveTimeoutCallAdapterFactory extends CallAdapter.Factory {
+    private final String service;
+    private final Class<?> serviceClass;
+    private final RetrofitProperties.AdaptiveTimeout properties;
+    private final AdaptiveTimeoutRegistry registry;
+
+    /**
+     * Creates a factory for the given service.
+     *
+     * @param service the bean name of the service.
+     * @param serviceClass the service interface.
+     * @param properties the adaptive timeout properties of the service.
+     * @param registry the registry of the timeouts.
+     */
+    public AdaptiveTimeoutCallAdapterFactory(
+            String service,
+            Class<?> serviceClass,
+            RetrofitProperties.AdaptiveTimeout properties,
+            AdaptiveTimeoutRegistry registry) {
+        this.service = service;
+        this.serviceClass = serviceClass;
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    /**
+     * Makes sure the given call factory enforces deadlines.
+     *
+     * @param callFactory the call factory of the service.
+     * @return the given call factory if it is a {@link DeadlineCallFactory}, one wrapping it otherwise.
+     */
+    public static okhttp3.Call.Factory withDeadlines(okhttp3.Call.Factory callFactory) {
+        return callFactory instanceof DeadlineCallFactory ? callFactory : new DeadlineCallFactory(callFactory);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Method method = findMethod(returnType, annotations);
+
+        if (method == null) {
+            return null;
+        }
+
+        CallAdapter<Object> delegate = (CallAdapter<Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+        MethodTimeout timeout = registry.register(service, method.getName(), new MethodTimeout(properties));
+
+        return new AdaptiveTimeoutCallAdapter<Object>(delegate, timeout);
+    }
+
+    private Method findMethod(Type returnType, Annotation[] annotations) {
+        for (Method method : serviceClass.getMethods()) {
+            if (method.getGenericReturnType().equals(returnType)
+                    && Arrays.equals(method.getAnnotations(), annotations)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    private static class AdaptiveTimeoutCallAdapter<T> implements CallAdapter<T> {
+        private final CallAdapter<T> delegate;
+        private final MethodTimeout timeout;
+
+        AdaptiveTimeoutCallAdapter(CallAdapter<T> delegate, MethodTimeout timeout) {
+            this.delegate = delegate;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public <R> T adapt(Call<R> call) {
+            return delegate.adapt(new AdaptiveTimeoutCall<R>(call, timeout));
+        }
+    }
+
+    private static class AdaptiveTimeoutCall<T> implements Call<T> {
+        private final Call<T> delegate;
+        private final MethodTimeout timeout;
+        private volatile boolean timeoutApplied;
+
+        AdaptiveTimeoutCall(Call<T> delegate, MethodTimeout timeout) {
+            this.delegate = delegate;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            Deadline previous = applyTimeout();
+            long start = System.nanoTime();
+
+            try {
+                Response<T> response = delegate.execute();
+                record(start);
+
+                return response;
+            } catch (DeadlineExceededException e) {
+                if (timeoutApplied) {
+                    record(start);
+                }
+
+                throw e;
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback<T> callback) {
+            Deadline previous = applyTimeout();
+            final long start = System.nanoTime();
+
+            try {
+                delegate.enqueue(new Callback<T>() {
+                    @Override
+                    public void onResponse(Call<T> call, Response<T> response) {
+                        record(start);
+                        callback.onResponse(AdaptiveTimeoutCall.this, response);
+                    }
+
+                    @Override
+                    public void onFailure(Call<T> call, Throwable t) {
+                        if (t instanceof DeadlineExceededException && timeoutApplied) {
+                            record(start);
+                        }
+
+                        callback.onFailure(AdaptiveTimeoutCall.this, t);
+                    }
+                });
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<T> clone() {
+            return new AdaptiveTimeoutCall<T>(delegate.clone(), timeout);
+        }
+
+        @Override
+        public Request request() {
+            Deadline previous = applyTimeout();
+
+            try {
+                return delegate.request();
+            } finally {
+                Deadline.restore(previous);
+            }
+        }
+
+        /**
+         * Sets the deadline of the current thread to the timeout of the method, unless the thread has an earlier
+         * deadline.
+         *
+         * @return the previous deadline to restore.
+         */
+        private Deadline applyTimeout() {
+            long millis = timeout.getTimeout();
+            Deadline current = Deadline.current();
+
+            if (current != null && current.remainingMillis() <= millis) {
+                timeoutApplied = false;
+
+                return current;
+            }
+
+            timeoutApplied = true;
+
+            return Deadline.set(Deadline.after(millis, TimeUnit.MILLISECONDS));
+        }
+
+        private void record(long start) {
+            if (!delegate.isCanceled()) {
+                timeout.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+}
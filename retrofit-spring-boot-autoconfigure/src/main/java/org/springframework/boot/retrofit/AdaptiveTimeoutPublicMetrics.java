@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link PublicMetrics} exposing the {@link MethodTimeout adaptive timeouts} of the service methods as gauges:
+ * {@code retrofit.timeout.<bean name>.<method name>} for the timeout applied to the next call, and
+ * {@code retrofit.latency.<bean name>.<method name>} for the latency percentile it is derived from, both in
+ * milliseconds.
+ *
+ * @author troinine
+ */
+public class AdaptiveTimeoutPublicMetrics implements PublicMetrics {
+    private final AdaptiveTimeoutRegistry registry;
+
+    public AdaptiveTimeoutPublicMetrics(AdaptiveTimeoutRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+        for (Map.Entry<String, MethodTimeout> timeout : registry.getTimeouts().entrySet()) {
+            metrics.add(new Metric<Long>("retrofit.timeout." + timeout.getKey(), timeout.getValue().getTimeout()));
+
+            long percentile = timeout.getValue().getPercentile();
+
+            if (percentile >= 0) {
+                metrics.add(new Metric<Long>("retrofit.latency." + timeout.getKey(), percentile));
+            }
+        }
+
+        return metrics;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the {@link MethodTimeout adaptive timeouts} of the service methods, for them to be exposed as
+ * metrics. Timeouts are registered when Retrofit first adapts the calls of a method.
+ *
+ * @author troinine
+ */
+public class AdaptiveTimeoutRegistry {
+    /**
+     * The name of the registry bean picked up by the {@link RetrofitServiceFactory}.
+     */
+    public static final String BEAN_NAME = "adaptiveTimeoutRegistry";
+
+    private final ConcurrentMap<String, MethodTimeout> timeouts = new ConcurrentSkipListMap<String, MethodTimeout>();
+
+    /**
+     * Registers the timeout of a service method, unless the method has one already.
+     *
+     * @param service the bean name of the service.
+     * @param method the name of the method.
+     * @param timeout the timeout of the method.
+     * @return the timeout registered for the method.
+     */
+    public MethodTimeout register(String service, String method, MethodTimeout timeout) {
+        MethodTimeout existing = timeouts.putIfAbsent(service + "." + method, timeout);
+
+        return existing != null ? existing : timeout;
+    }
+
+    /**
+     * Returns the registered timeouts.
+     *
+     * @return the timeouts by {@code <bean name>.<method name>} in alphabetical order.
+     */
+    public Map<String, MethodTimeout> getTimeouts() {
+        return Collections.unmodifiableMap(timeouts);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import java.util.List;
+
+/**
+ * Response body of a cursor-paged service method.
+ *
+ * @param <T> the type of the items.
+ * @author troinine
+ * @see org.springframework.boot.retrofit.annotation.Paged
+ */
+public interface CursorPage<T> {
+    /**
+     * Returns the items of the page.
+     *
+     * @return the items, {@code null} for none.
+     */
+    List<T> getItems();
+
+    /**
+     * Returns the cursor of the next page.
+     *
+     * @return the cursor, {@code null} or empty if this is the last page.
+     */
+    String getNextCursor();
+}
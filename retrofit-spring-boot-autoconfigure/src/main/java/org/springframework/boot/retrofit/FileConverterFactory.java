@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+import org.springframework.boot.retrofit.annotation.DownloadTo;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converter factory streaming files to request bodies and response bodies to files.
+ * <p>
+ * {@link Path}, {@link File} and {@link FileChannel} parameters are sent as {@code application/octet-stream}
+ * bodies read from the file as they are written to the connection, so the file is never held in memory. A
+ * {@link FileChannel} is sent from its position at the time of the call until its end.
+ * <p>
+ * Methods annotated with {@link DownloadTo} and returning a {@link Path} or a {@link File} get the response body
+ * written to a new file in the configured directory. The body moves from the connection to the file through
+ * Okio's pooled segments, so heap usage stays flat regardless of the body size.
+ * <p>
+ * The factory is ordered first so that it takes precedence over catch-all converters such as Jackson.
+ *
+ * @author troinine
+ */
+public class FileConverterFactory extends Converter.Factory implements Ordered {
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(
+            Type type,
+            Annotation[] parameterAnnotations,
+            Annotation[] methodAnnotations,
+            Retrofit retrofit) {
+        if (type == Path.class) {
+            return new Converter<Path, RequestBody>() {
+                @Override
+                public RequestBody convert(Path value) throws IOException {
+                    return new PathRequestBody(value);
+                }
+            };
+        }
+
+        if (type == File.class) {
+            return new Converter<File, RequestBody>() {
+                @Override
+                public RequestBody convert(File value) throws IOException {
+                    return new PathRequestBody(value.toPath());
+                }
+            };
+        }
+
+        if (type == FileChannel.class) {
+            return new Converter<FileChannel, RequestBody>() {
+                @Override
+                public RequestBody convert(FileChannel value) throws IOException {
+                    return new FileChannelRequestBody(value);
+                }
+            };
+        }
+
+        return null;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        DownloadTo downloadTo = findDownloadTo(annotations);
+
+        if (downloadTo == null) {
+            return null;
+        }
+
+        final Path directory = StringUtils.hasText(downloadTo.value())
+                ? Paths.get(downloadTo.value())
+                : Paths.get(System.getProperty("java.io.tmpdir"));
+
+        if (type == Path.class) {
+            return new Converter<ResponseBody, Path>() {
+                @Override
+                public Path convert(ResponseBody value) throws IOException {
+                    return download(value, directory);
+                }
+            };
+        }
+
+        if (type == File.class) {
+            return new Converter<ResponseBody, File>() {
+                @Override
+                public File convert(ResponseBody value) throws IOException {
+                    return download(value, directory).toFile();
+                }
+            };
+        }
+
+        throw new IllegalArgumentException(
+                "@DownloadTo requires a java.nio.file.Path or java.io.File response type but was " + type);
+    }
+
+    private static DownloadTo findDownloadTo(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof DownloadTo) {
+                return (DownloadTo) annotation;
+            }
+        }
+
+        return null;
+    }
+
+    private static Path download(ResponseBody body, Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        Path target = Files.createTempFile(directory, "retrofit-", ".download");
+        boolean completed = false;
+
+        try {
+            BufferedSource source = body.source();
+            Sink sink = Okio.sink(target);
+
+            try {
+                source.readAll(sink);
+            } finally {
+                sink.close();
+                source.close();
+            }
+
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(target);
+            }
+        }
+
+        return target;
+    }
+
+    private static class PathRequestBody extends RequestBody {
+        private final Path path;
+
+        PathRequestBody(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Opened on every write as the body may be written more than once on retries
+            Source source = Okio.source(path);
+
+            try {
+                sink.writeAll(source);
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    private static class FileChannelRequestBody extends RequestBody {
+        private final FileChannel channel;
+        private final long position;
+
+        FileChannelRequestBody(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.position = channel.position();
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return channel.size() - position;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Rewind on every write as the body may be written more than once on retries. The channel is owned
+            // by the caller and therefore not closed here.
+            channel.position(position);
+            sink.writeAll(Okio.source(Channels.newInputStream(channel)));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.Response;
+
+import java.io.IOException;
+
+/**
+ * {@link Call} of a generated service implementation, executing a prebuilt request and converting its response the
+ * way Retrofit does.
+ *
+ * @param <T> the type of the converted response body.
+ * @author troinine
+ * @see GeneratedServiceMethod
+ */
+class GeneratedCall<T> implements Call<T> {
+    private final okhttp3.Call.Factory callFactory;
+    private final Request request;
+    private final Converter<ResponseBody, T> responseConverter;
+
+    private volatile okhttp3.Call rawCall;
+    private volatile boolean canceled;
+    private boolean executed;
+
+    GeneratedCall(okhttp3.Call.Factory callFactory, Request request, Converter<ResponseBody, T> responseConverter) {
+        this.callFactory = callFactory;
+        this.request = request;
+        this.responseConverter = responseConverter;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return parseResponse(newRawCall().execute());
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback == null");
+        }
+
+        newRawCall().enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, IOException e) {
+                callback.onFailure(GeneratedCall.this, e);
+            }
+
+            @Override
+            public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                Response<T> response;
+
+                try {
+                    response = parseResponse(rawResponse);
+                } catch (Throwable e) {
+                    callback.onFailure(GeneratedCall.this, e);
+
+                    return;
+                }
+
+                callback.onResponse(GeneratedCall.this, response);
+            }
+        });
+    }
+
+    @Override
+    public synchronized boolean isExecuted() {
+        return executed;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+
+        okhttp3.Call call = rawCall;
+
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<T> clone() {
+        return new GeneratedCall<T>(callFactory, request, responseConverter);
+    }
+
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    private okhttp3.Call newRawCall() {
+        okhttp3.Call call;
+
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+
+            executed = true;
+            call = callFactory.newCall(request);
+            rawCall = call;
+        }
+
+        if (canceled) {
+            call.cancel();
+        }
+
+        return call;
+    }
+
+    private Response<T> parseResponse(okhttp3.Response rawResponse) throws IOException {
+        ResponseBody rawBody = rawResponse.body();
+
+        // The body is consumed below, so the raw response handed to callers must not expose it again
+        rawResponse = rawResponse.newBuilder()
+                .body(new NoContentResponseBody(rawBody.contentType(), rawBody.contentLength()))
+                .build();
+
+        int code = rawResponse.code();
+
+        if (code < 200 || code >= 300) {
+            try {
+                Buffer buffer = new Buffer();
+                rawBody.source().readAll(buffer);
+
+                return Response.error(ResponseBody.create(rawBody.contentType(), rawBody.contentLength(), buffer),
+                        rawResponse);
+            } finally {
+                rawBody.close();
+            }
+        }
+
+        if (code == 204 || code == 205) {
+            rawBody.close();
+
+            return Response.success(null, rawResponse);
+        }
+
+        try {
+            return Response.success(responseConverter.convert(rawBody), rawResponse);
+        } catch (RuntimeException e) {
+            rawBody.close();
+
+            throw e;
+        } catch (IOException e) {
+            rawBody.close();
+
+            throw e;
+        }
+    }
+
+    private static class NoContentResponseBody extends ResponseBody {
+        private final MediaType contentType;
+        private final long contentLength;
+
+        NoContentResponseBody(MediaType contentType, long contentLength) {
+            this.contentType = contentType;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public BufferedSource source() {
+            throw new IllegalStateException("Cannot read raw response body of a converted body.");
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Runtime support for service implementations generated at compile time from {@link
+ * org.springframework.boot.retrofit.annotation.RetrofitService} interfaces.
+ * <p>
+ * The generated code knows the HTTP method, the URL template and the role of every parameter, so this class only
+ * resolves what Retrofit keeps pluggable: the call adapter, the converters and the call factory. They are looked up
+ * once when the service is created, which also reports configuration errors at startup instead of on the first call.
+ * Invoking a method then builds the request directly, without the proxy, the method cache lookup and the reflective
+ * argument handling of {@link Retrofit#create(Class)}.
+ * <p>
+ * Unlike Retrofit, the request is built when the method is invoked, so invalid arguments fail the invocation rather
+ * than the execution of the returned call.
+ *
+ * @param <T> the return type of the service method.
+ * @author troinine
+ */
+public final class GeneratedServiceMethod<T> {
+    private static final RequestBody EMPTY_BODY = RequestBody.create(null, new byte[0]);
+    private static final String PATH_SEGMENT_ALWAYS_ENCODE_SET = " \"<>^`{}|\\?#";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Call.Factory callFactory;
+    private final HttpUrl baseUrl;
+    private final String httpMethod;
+    private final String relativeUrl;
+    private final Headers headers;
+    private final MediaType contentType;
+    private final boolean hasBody;
+    private final CallAdapter<T> callAdapter;
+    private final Converter<ResponseBody, Object> responseConverter;
+    private final Converter<Object, ?>[] parameterConverters;
+
+    /**
+     * @param retrofit the Retrofit instance providing the call factory, the call adapters and the converters.
+     * @param method the service method implemented.
+     * @param httpMethod the HTTP method of the request.
+     * @param hasBody whether requests of the HTTP method carry a body.
+     * @param relativeUrl the URL template relative to the base URL.
+     * @param headers the static headers of the method as {@code name: value} pairs.
+     * @param bodyParameter the index of the parameter converted to the request body, or {@code -1} for none. All other
+     * parameters are converted to strings.
+     */
+    @SuppressWarnings("unchecked")
+    public GeneratedServiceMethod(Retrofit retrofit, Method method, String httpMethod, boolean hasBody,
+            String relativeUrl, String[] headers, int bodyParameter) {
+        this.callFactory = retrofit.callFactory();
+        this.baseUrl = retrofit.baseUrl();
+        this.httpMethod = httpMethod;
+        this.hasBody = hasBody;
+        this.relativeUrl = relativeUrl;
+        this.headers = parseHeaders(headers);
+        this.contentType = this.headers.get("Content-Type") != null
+                ? MediaType.parse(this.headers.get("Content-Type"))
+                : null;
+
+        Annotation[] methodAnnotations = method.getAnnotations();
+        this.callAdapter = (CallAdapter<T>) retrofit.callAdapter(method.getGenericReturnType(), methodAnnotations);
+        this.responseConverter = (Converter<ResponseBody, Object>) retrofit.responseBodyConverter(
+                callAdapter.responseType(), methodAnnotations);
+
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        this.parameterConverters = new Converter[parameterTypes.length];
+
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterConverters[i] = (Converter<Object, ?>) (i == bodyParameter
+                    ? retrofit.requestBodyConverter(parameterTypes[i], parameterAnnotations[i], methodAnnotations)
+                    : retrofit.stringConverter(parameterTypes[i], parameterAnnotations[i]));
+        }
+    }
+
+    /**
+     * Looks up a service method for the generated code.
+     *
+     * @param serviceClass the service interface.
+     * @param name the name of the method.
+     * @param parameterTypes the erased parameter types of the method.
+     * @return the method.
+     */
+    public static Method method(Class<?> serviceClass, String name, Class<?>... parameterTypes) {
+        try {
+            return serviceClass.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Generated implementation of " + serviceClass.getName()
+                    + " does not match the interface, recompile it", e);
+        }
+    }
+
+    /**
+     * @return a builder for a request of this method.
+     */
+    public RequestBuilder newRequest() {
+        return new RequestBuilder();
+    }
+
+    /**
+     * Converts an argument to a string for a path, query or header parameter.
+     *
+     * @param parameter the index of the parameter.
+     * @param value the argument.
+     * @return the converted value or {@code null} if the argument is {@code null}.
+     */
+    public String convert(int parameter, Object value) {
+        return value != null ? (String) convertParameter(parameter, value) : null;
+    }
+
+    /**
+     * Converts an argument to the request body.
+     *
+     * @param parameter the index of the body parameter.
+     * @param value the argument.
+     * @return the request body.
+     */
+    public RequestBody convertBody(int parameter, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Body parameter value must not be null.");
+        }
+
+        return (RequestBody) convertParameter(parameter, value);
+    }
+
+    private Object convertParameter(int parameter, Object value) {
+        try {
+            return parameterConverters[parameter].convert(value);
+        } catch (IOException e) {
+            // Service methods do not declare checked exceptions, Retrofit reports failed body conversions alike
+            throw new RuntimeException("Unable to convert " + value + " of parameter " + parameter, e);
+        }
+    }
+
+    /**
+     * Creates the call for a request and adapts it to the return type of the method.
+     *
+     * @param request the request.
+     * @return the adapted call.
+     */
+    public T adapt(RequestBuilder request) {
+        return callAdapter.adapt(new GeneratedCall<Object>(callFactory, request.build(), responseConverter));
+    }
+
+    private static Headers parseHeaders(String[] headers) {
+        Headers.Builder builder = new Headers.Builder();
+
+        for (String header : headers) {
+            builder.add(header);
+        }
+
+        return builder.build();
+    }
+
+    private static String encodePathSegment(String value) {
+        StringBuilder encoded = null;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x20 || c >= 0x7f || c == '%' || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(c) != -1) {
+                if (encoded == null) {
+                    encoded = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+
+                int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+
+                for (byte b : value.substring(i, end).getBytes(UTF_8)) {
+                    encoded.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+                }
+
+                i = end - 1;
+            } else if (encoded != null) {
+                encoded.append(c);
+            }
+        }
+
+        return encoded != null ? encoded.toString() : value;
+    }
+
+    /**
+     * Collects the arguments of one invocation into a request. Methods are called by the generated code in parameter
+     * order.
+     */
+    public final class RequestBuilder {
+        private String url = relativeUrl;
+        private HttpUrl.Builder urlBuilder;
+        private Headers.Builder headersBuilder;
+        private RequestBody body;
+
+        private RequestBuilder() {
+        }
+
+        public RequestBuilder path(String name, String value, boolean encoded) {
+            if (value == null) {
+                throw new IllegalArgumentException("Path parameter \"" + name + "\" value must not be null.");
+            }
+
+            url = url.replace("{" + name + "}", encoded ? value : encodePathSegment(value));
+
+            return this;
+        }
+
+        public RequestBuilder query(String name, String value, boolean encoded) {
+            if (value != null) {
+                if (encoded) {
+                    urlBuilder().addEncodedQueryParameter(name, value);
+                } else {
+                    urlBuilder().addQueryParameter(name, value);
+                }
+            }
+
+            return this;
+        }
+
+        public RequestBuilder header(String name, String value) {
+            if (value != null) {
+                if (headersBuilder == null) {
+                    headersBuilder = headers.newBuilder();
+                }
+
+                headersBuilder.add(name, value);
+            }
+
+            return this;
+        }
+
+        public RequestBuilder body(RequestBody body) {
+            this.body = body;
+
+            return this;
+        }
+
+        private HttpUrl.Builder urlBuilder() {
+            if (urlBuilder == null) {
+                urlBuilder = resolve().newBuilder();
+            }
+
+            return urlBuilder;
+        }
+
+        private HttpUrl resolve() {
+            HttpUrl resolved = baseUrl.resolve(url);
+
+            if (resolved == null) {
+                throw new IllegalArgumentException("Malformed URL. Base: " + baseUrl + ", Relative: " + url);
+            }
+
+            return resolved;
+        }
+
+        Request build() {
+            RequestBody requestBody = body;
+
+            if (requestBody == null && hasBody) {
+                requestBody = EMPTY_BODY;
+            } else if (requestBody != null && contentType != null) {
+                requestBody = new ContentTypeOverridingRequestBody(requestBody, contentType);
+            }
+
+            return new Request.Builder()
+                    .url(urlBuilder != null ? urlBuilder.build() : resolve())
+                    .headers(headersBuilder != null ? headersBuilder.build() : headers)
+                    .method(httpMethod, requestBody)
+                    .build();
+        }
+    }
+
+    private static class ContentTypeOverridingRequestBody extends RequestBody {
+        private final RequestBody delegate;
+        private final MediaType contentType;
+
+        ContentTypeOverridingRequestBody(RequestBody delegate, MediaType contentType) {
+            this.delegate = delegate;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            delegate.writeTo(sink);
+        }
+    }
+}
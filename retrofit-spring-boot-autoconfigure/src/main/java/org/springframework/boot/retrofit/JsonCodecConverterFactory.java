@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import org.springframework.boot.retrofit.annotation.JsonCodec;
+import org.springframework.core.Ordered;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Converter factory for the model classes annotated with {@link JsonCodec}, using the Moshi adapters generated for
+ * them at compile time.
+ * <p>
+ * The generated adapters read the properties straight off the Okio source of the response body and call the
+ * setters directly, so there is no intermediate {@code String} and no reflection per value.
+ * <p>
+ * Request bodies are written into the pooled segments of an Okio {@link Buffer} handed over to the connection.
+ * Responses declaring a charset other than UTF-8 are decoded first.
+ * <p>
+ * The factory handles the annotated classes, their arrays and their {@link List}, {@link Set} and
+ * {@link Collection} types, and returns {@code null} for any other type so that the next converter, typically
+ * Jackson, handles it. It is ordered first so that it takes precedence over such catch-all converters. Annotated
+ * classes the processor did not generate an adapter for are left to the next converter too.
+ *
+ * @author troinine
+ */
+public class JsonCodecConverterFactory extends Converter.Factory implements Ordered {
+    /**
+     * Must match {@code JsonCodecProcessor.GENERATED_CLASS_SUFFIX}.
+     */
+    static final String GENERATED_CLASS_SUFFIX = "_JsonAdapter";
+
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/json; charset=UTF-8");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final JsonAdapter.Factory GENERATED_ADAPTER_FACTORY = new JsonAdapter.Factory() {
+        @Override
+        public JsonAdapter<?> create(Type type, Set<? extends Annotation> annotations, Moshi moshi) {
+            Class<?> adapterClass = annotations.isEmpty() && type instanceof Class
+                    ? findGeneratedAdapter((Class<?>) type)
+                    : null;
+
+            if (adapterClass == null) {
+                return null;
+            }
+
+            try {
+                return (JsonAdapter<?>) adapterClass.getConstructor(Moshi.class).newInstance(moshi);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Cannot create " + adapterClass.getName(), e.getCause());
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Cannot create " + adapterClass.getName(), e);
+            } catch (InstantiationException e) {
+                throw new IllegalStateException("Cannot create " + adapterClass.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot create " + adapterClass.getName(), e);
+            }
+        }
+    };
+
+    private final Moshi moshi;
+
+    private JsonCodecConverterFactory(Moshi moshi) {
+        this.moshi = moshi;
+    }
+
+    public static JsonCodecConverterFactory create() {
+        return create(new Moshi.Builder());
+    }
+
+    /**
+     * Creates a factory with additional Moshi adapters, for example for the date types used by the model classes.
+     * Adapters of the builder take precedence over the generated ones.
+     *
+     * @param builder the builder to add the factory of generated adapters to and build.
+     * @return the converter factory.
+     */
+    public static JsonCodecConverterFactory create(Moshi.Builder builder) {
+        if (builder == null) {
+            throw new NullPointerException("builder == null");
+        }
+
+        return new JsonCodecConverterFactory(builder.add(GENERATED_ADAPTER_FACTORY).build());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (!isGenerated(type)) {
+            return null;
+        }
+
+        return new ResponseBodyConverter<Object>(moshi.adapter(type));
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(
+            Type type,
+            Annotation[] parameterAnnotations,
+            Annotation[] methodAnnotations,
+            Retrofit retrofit) {
+        if (!isGenerated(type)) {
+            return null;
+        }
+
+        return new RequestBodyConverter<Object>(moshi.adapter(type));
+    }
+
+    /**
+     * Tells whether a type is bound by a generated adapter, either directly or as the elements of an array or a
+     * collection.
+     *
+     * @param type the type to check.
+     * @return {@code true} if the type is handled by this factory.
+     */
+    static boolean isGenerated(Type type) {
+        if (type instanceof Class) {
+            Class<?> rawType = (Class<?>) type;
+
+            return rawType.isArray() ? isGenerated(rawType.getComponentType()) : findGeneratedAdapter(rawType) != null;
+        }
+
+        if (type instanceof GenericArrayType) {
+            return isGenerated(((GenericArrayType) type).getGenericComponentType());
+        }
+
+        if (type instanceof ParameterizedType) {
+            Type rawType = ((ParameterizedType) type).getRawType();
+
+            return (rawType == List.class || rawType == Set.class || rawType == Collection.class)
+                    && isGenerated(((ParameterizedType) type).getActualTypeArguments()[0]);
+        }
+
+        return false;
+    }
+
+    private static Class<?> findGeneratedAdapter(Class<?> type) {
+        if (!type.isAnnotationPresent(JsonCodec.class)) {
+            return null;
+        }
+
+        String name = type.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        String adapterName = name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_')
+                + GENERATED_CLASS_SUFFIX;
+
+        try {
+            return Class.forName(adapterName, false, type.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static class RequestBodyConverter<T> implements Converter<T, RequestBody> {
+        private final JsonAdapter<T> adapter;
+
+        RequestBodyConverter(JsonAdapter<T> adapter) {
+            this.adapter = adapter;
+        }
+
+        @Override
+        public RequestBody convert(T value) throws IOException {
+            return new BufferRequestBody<T>(adapter, value);
+        }
+    }
+
+    private static class BufferRequestBody<T> extends RequestBody {
+        private final JsonAdapter<T> adapter;
+        private final T value;
+        private final long contentLength;
+        private Buffer buffer;
+
+        BufferRequestBody(JsonAdapter<T> adapter, T value) throws IOException {
+            this.adapter = adapter;
+            this.value = value;
+            this.buffer = encode();
+            this.contentLength = buffer.size();
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Buffer encoded = buffer;
+            buffer = null;
+
+            if (encoded == null) {
+                // Written again, the segments of the first encoding were handed over to the connection
+                encoded = encode();
+            }
+
+            sink.write(encoded, encoded.size());
+        }
+
+        private Buffer encode() throws IOException {
+            Buffer encoded = new Buffer();
+            adapter.toJson(encoded, value);
+
+            return encoded;
+        }
+    }
+
+    private static class ResponseBodyConverter<T> implements Converter<ResponseBody, T> {
+        private final JsonAdapter<T> adapter;
+
+        ResponseBodyConverter(JsonAdapter<T> adapter) {
+            this.adapter = adapter;
+        }
+
+        @Override
+        public T convert(ResponseBody value) throws IOException {
+            try {
+                MediaType contentType = value.contentType();
+
+                if (contentType == null || UTF_8.equals(contentType.charset(UTF_8))) {
+                    return adapter.fromJson(value.source());
+                }
+
+                return adapter.fromJson(new Buffer().writeUtf8(value.string()));
+            } finally {
+                value.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of the latencies recorded over a sliding window of time, estimating percentiles in constant
+ * memory.
+ * <p>
+ * Latencies are counted in logarithmic buckets split into 16 linear sub-buckets, like HdrHistogram does, so an
+ * estimate is at most 1/16 above the recorded value it stands for. Latencies are recorded into the current window
+ * only, and estimates combine it with the previous window, so they reflect between one and two windows of calls.
+ * Recording is a pair of atomic increments except when a window is started, which happens once per window.
+ *
+ * @author troinine
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = 0xFFFFFFFFL;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final long windowNanos;
+    private volatile Window current;
+    private volatile Window previous;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param window the length of a window in milliseconds.
+     */
+    LatencyHistogram(long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window must be positive, was " + window);
+        }
+
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        this.current = new Window(nanoTime());
+        this.previous = new Window(current.start - windowNanos);
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param millis the latency in milliseconds, capped to {@value #MAX_VALUE}.
+     */
+    void record(long millis) {
+        Window window = advance();
+        window.counts.incrementAndGet(indexOf(Math.min(Math.max(millis, 0), MAX_VALUE)));
+        window.count.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of latencies the estimates are based on.
+     *
+     * @return the number of latencies recorded in the current and the previous window.
+     */
+    long getCount() {
+        Window current = advance();
+
+        return current.count.get() + previous.count.get();
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param percentile the percentile between 0 and 100.
+     * @return the estimate in milliseconds or {@code -1} if no latencies were recorded.
+     */
+    long getPercentile(double percentile) {
+        Window current = advance();
+        Window previous = this.previous;
+        long count = current.count.get() + previous.count.get();
+
+        if (count == 0) {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += current.counts.get(i) + previous.counts.get(i);
+
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+
+        // Latencies were recorded while iterating, the highest bucket counted is good enough
+        for (int i = BUCKETS - 1; i > 0; i--) {
+            if (current.counts.get(i) + previous.counts.get(i) > 0) {
+                return highestValueOf(i);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the current value of the time source in nanoseconds. Exposed for tests.
+     *
+     * @return the current time in nanoseconds.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private Window advance() {
+        Window window = current;
+        long now = nanoTime();
+
+        if (now - window.start < windowNanos) {
+            return window;
+        }
+
+        synchronized (this) {
+            window = current;
+
+            if (now - window.start >= windowNanos) {
+                previous = now - window.start < 2 * windowNanos ? window : new Window(now - windowNanos);
+                window = new Window(now);
+                current = window;
+            }
+
+            return window;
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static class Window {
+        final long start;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final AtomicLong count = new AtomicLong();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive timeout of a service method, derived from the latencies of its recent calls.
+ * <p>
+ * The timeout is the configured multiple of a percentile of the latencies, clamped between the floor and the
+ * ceiling. It stays at the ceiling until the minimum number of latencies has been recorded. Computing the
+ * percentile walks the histogram, so the timeout is recomputed at most once per {@value #REFRESH_INTERVAL} ms.
+ *
+ * @author troinine
+ */
+public class MethodTimeout {
+    /**
+     * Time in milliseconds the computed timeout is reused for.
+     */
+    static final long REFRESH_INTERVAL = 1000;
+
+    private final RetrofitProperties.AdaptiveTimeout properties;
+    private final LatencyHistogram histogram;
+    private volatile long timeout;
+    private volatile long refreshAt;
+
+    public MethodTimeout(RetrofitProperties.AdaptiveTimeout properties) {
+        this(properties, new LatencyHistogram(properties.getWindow()));
+    }
+
+    MethodTimeout(RetrofitProperties.AdaptiveTimeout properties, LatencyHistogram histogram) {
+        if (properties.getFloor() > properties.getCeiling()) {
+            throw new IllegalArgumentException("The floor " + properties.getFloor()
+                    + " must not exceed the ceiling " + properties.getCeiling());
+        }
+
+        if (properties.getPercentile() <= 0 || properties.getPercentile() > 100) {
+            throw new IllegalArgumentException(
+                    "The percentile must be between 0 and 100, was " + properties.getPercentile());
+        }
+
+        this.properties = properties;
+        this.histogram = histogram;
+        this.timeout = properties.getCeiling();
+        this.refreshAt = histogram.nanoTime();
+    }
+
+    /**
+     * Records the latency of a call.
+     *
+     * @param millis the latency in milliseconds.
+     */
+    public void record(long millis) {
+        histogram.record(millis);
+    }
+
+    /**
+     * Returns the timeout to apply to the next call.
+     *
+     * @return the timeout in milliseconds.
+     */
+    public long getTimeout() {
+        long now = histogram.nanoTime();
+
+        if (now - refreshAt >= 0) {
+            refreshAt = now + TimeUnit.MILLISECONDS.toNanos(REFRESH_INTERVAL);
+            timeout = computeTimeout();
+        }
+
+        return timeout;
+    }
+
+    /**
+     * Returns the current estimate of the configured percentile of the latencies.
+     *
+     * @return the estimate in milliseconds or {@code -1} if no latencies were recorded.
+     */
+    public long getPercentile() {
+        return histogram.getPercentile(properties.getPercentile());
+    }
+
+    /**
+     * Returns the number of latencies the estimate is based on.
+     *
+     * @return the number of recent latencies.
+     */
+    public long getSampleCount() {
+        return histogram.getCount();
+    }
+
+    private long computeTimeout() {
+        if (histogram.getCount() < properties.getMinSamples()) {
+            return properties.getCeiling();
+        }
+
+        long timeout = (long) Math.ceil(getPercentile() * properties.getMultiplier());
+
+        return Math.min(Math.max(timeout, properties.getFloor()), properties.getCeiling());
+    }
+}
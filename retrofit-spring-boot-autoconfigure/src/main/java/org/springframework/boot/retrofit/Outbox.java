@@ -0,0 +1,472 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durable queue of the calls of the {@link org.springframework.boot.retrofit.annotation.FireAndForget} methods of
+ * a service, sent in the background.
+ * <p>
+ * {@link #offer(Request) Offering} a call writes its request to an {@link OutboxJournal append-only journal} of
+ * memory-mapped files, which takes a short lock and no I/O wait, and returns right away. A sender thread reads the
+ * journal and sends up to the batch size of calls at a time with the call factory of the service. It creates the
+ * next segment of the journal ahead of time after each batch and while waiting, and a call that would need a segment
+ * not created yet is rejected rather than waiting for the file to be created. The journal position
+ * is advanced past the calls that succeeded, or were answered with another status below 500 except 408 and 429, which
+ * would be answered alike if sent again, once all calls before them were too. The others are retried after a backoff
+ * doubling from the minimum to the maximum, while the calls behind them wait. Every call is sent at least once: a
+ * call sent right before a crash may be sent again after the restart.
+ * <p>
+ * The calls of a batch are sent concurrently and a retried call is sent again after the later calls of its batch
+ * succeeded, so the calls reach the server in the order they were queued only with a batch size of 1.
+ * <p>
+ * The journal survives restarts, so the calls queued by a previous run of the application are sent once the outbox
+ * is started again.
+ *
+ * @author troinine
+ */
+public class Outbox implements Closeable {
+    private static final byte RECORD_VERSION = 1;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PREALLOCATE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+    private final String name;
+    private final OutboxJournal journal;
+    private final Call.Factory callFactory;
+    private final int batchSize;
+    private final long minBackoff;
+    private final long maxBackoff;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final List<Call> inFlight = new ArrayList<Call>();
+    private volatile Thread sender;
+    private volatile boolean closed;
+
+    /**
+     * Opens the outbox in a directory, recovering the calls queued there before.
+     *
+     * @param name the name of the outbox, used to name the sender thread.
+     * @param directory the directory of the journal.
+     * @param callFactory the call factory sending the calls.
+     * @param properties the properties of the journal and the sender.
+     * @throws IOException if the journal cannot be opened.
+     */
+    public Outbox(String name, File directory, Call.Factory callFactory, RetrofitProperties.Outbox properties)
+            throws IOException {
+        if (properties.getBatchSize() < 1) {
+            throw new IllegalArgumentException("The batch size must be positive, was " + properties.getBatchSize());
+        }
+
+        if (properties.getMinBackoff() < 0 || properties.getMinBackoff() > properties.getMaxBackoff()) {
+            throw new IllegalArgumentException("The minimum backoff " + properties.getMinBackoff()
+                    + " must be between 0 and the maximum backoff " + properties.getMaxBackoff());
+        }
+
+        this.name = name;
+        this.journal = new OutboxJournal(directory, properties.getSegmentSize(), properties.getMaxSegments());
+        this.callFactory = callFactory;
+        this.batchSize = properties.getBatchSize();
+        this.minBackoff = properties.getMinBackoff();
+        this.maxBackoff = properties.getMaxBackoff();
+    }
+
+    /**
+     * Starts sending the queued calls.
+     */
+    public synchronized void start() {
+        if (sender != null || closed) {
+            return;
+        }
+
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, "outbox-" + name);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queues a call. Returns without waiting for the call to be sent.
+     *
+     * @param request the request of the call.
+     * @return {@code true} if the call was queued, {@code false} if the journal is full or the outbox closed.
+     */
+    public boolean offer(Request request) {
+        boolean queued;
+
+        try {
+            queued = journal.append(encode(request));
+        } catch (IOException e) {
+            logger.warn("Cannot queue {} {} in the outbox {}", request.method(), request.url(), name, e);
+            queued = false;
+        }
+
+        if (!queued) {
+            rejected.incrementAndGet();
+
+            return false;
+        }
+
+        Thread sender = this.sender;
+
+        if (sender != null) {
+            LockSupport.unpark(sender);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of calls queued and not sent yet.
+     *
+     * @return the number of calls.
+     */
+    public long getQueued() {
+        return journal.getRecords();
+    }
+
+    /**
+     * Returns the number of calls sent successfully since the outbox was opened.
+     *
+     * @return the number of calls.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Returns the number of calls rejected because the journal was full, since the outbox was opened.
+     *
+     * @return the number of calls.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of calls given up on because of the status they were answered with, since the outbox was
+     * opened.
+     *
+     * @return the number of calls.
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Stops sending, cancelling the calls being sent, and closes the journal. Calls not sent yet stay queued.
+     */
+    @Override
+    public void close() {
+        Thread sender;
+
+        synchronized (this) {
+            closed = true;
+            sender = this.sender;
+        }
+
+        synchronized (inFlight) {
+            for (Call call : inFlight) {
+                call.cancel();
+            }
+        }
+
+        if (sender != null) {
+            sender.interrupt();
+
+            try {
+                sender.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        journal.close();
+    }
+
+    private void send() {
+        List<PendingCall> batch = new ArrayList<PendingCall>();
+        OutboxJournal.Position cursor = journal.getAcknowledged();
+        long backoff = 0;
+        long syncAt = System.nanoTime() + IDLE_NANOS;
+
+        while (!closed) {
+            for (OutboxJournal.Entry entry : journal.read(cursor, batchSize - batch.size())) {
+                batch.add(new PendingCall(entry));
+                cursor = entry.next;
+            }
+
+            if (batch.isEmpty()) {
+                journal.sync();
+                preallocate();
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                syncAt = System.nanoTime() + IDLE_NANOS;
+
+                continue;
+            }
+
+            try {
+                sendAll(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            OutboxJournal.Position position = null;
+            int count = 0;
+
+            for (Iterator<PendingCall> calls = batch.iterator(); calls.hasNext(); ) {
+                PendingCall call = calls.next();
+
+                if (!call.done) {
+                    break;
+                }
+
+                position = call.entry.next;
+                count++;
+                calls.remove();
+            }
+
+            if (position != null) {
+                journal.acknowledge(position, count);
+            }
+
+            if (System.nanoTime() - syncAt >= 0) {
+                journal.sync();
+                syncAt = System.nanoTime() + IDLE_NANOS;
+            }
+
+            preallocate();
+
+            if (batch.isEmpty()) {
+                backoff = 0;
+            } else {
+                backoff = backoff == 0 ? minBackoff : Math.min(backoff * 2, maxBackoff);
+
+                try {
+                    pause(backoff);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void sendAll(List<PendingCall> batch) throws InterruptedException {
+        List<PendingCall> calls = new ArrayList<PendingCall>();
+
+        for (PendingCall call : batch) {
+            if (!call.done) {
+                calls.add(call);
+            }
+        }
+
+        final CountDownLatch latch = new CountDownLatch(calls.size());
+
+        for (final PendingCall call : calls) {
+            Request request;
+
+            try {
+                request = decode(call.entry.content);
+            } catch (IOException e) {
+                logger.error("Discarding an unreadable call of the outbox {}", name, e);
+                discarded.incrementAndGet();
+                call.done = true;
+                latch.countDown();
+
+                continue;
+            }
+
+            final Call httpCall = callFactory.newCall(request);
+
+            synchronized (inFlight) {
+                inFlight.add(httpCall);
+            }
+
+            try {
+                httpCall.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call ignored, IOException e) {
+                        logger.debug("Cannot send {} {}, retrying", httpCall.request().method(),
+                                httpCall.request().url(), e);
+                        finished(httpCall, latch);
+                    }
+
+                    @Override
+                    public void onResponse(Call ignored, Response response) {
+                        try {
+                            response.body().close();
+                            received(call, response);
+                        } finally {
+                            finished(httpCall, latch);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Rate limits failing fast end up here
+                logger.debug("Cannot send {} {}, retrying", request.method(), request.url(), e);
+                finished(httpCall, latch);
+            }
+        }
+
+        // Keep a segment ahead of the producers while the responses take their time
+        while (!latch.await(PREALLOCATE_NANOS, TimeUnit.NANOSECONDS)) {
+            preallocate();
+        }
+    }
+
+    private void pause(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, PREALLOCATE_NANOS));
+            preallocate();
+        }
+    }
+
+    private void received(PendingCall call, Response response) {
+        int code = response.code();
+
+        if (response.isSuccessful()) {
+            sent.incrementAndGet();
+            call.done = true;
+        } else if (code < 500 && code != 408 && code != 429) {
+            logger.warn("Discarding {} {} of the outbox {}, rejected with HTTP {}", response.request().method(),
+                    response.request().url(), name, code);
+            discarded.incrementAndGet();
+            call.done = true;
+        } else {
+            logger.debug("Cannot send {} {}, HTTP {}, retrying", response.request().method(),
+                    response.request().url(), code);
+        }
+    }
+
+    private void finished(Call call, CountDownLatch latch) {
+        synchronized (inFlight) {
+            inFlight.remove(call);
+        }
+
+        latch.countDown();
+    }
+
+    private void preallocate() {
+        try {
+            journal.preallocate();
+        } catch (IOException e) {
+            logger.warn("Cannot preallocate a journal segment of the outbox {}", name, e);
+        }
+    }
+
+    static byte[] encode(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_VERSION);
+        out.writeUTF(request.method());
+        out.writeUTF(request.url().toString());
+
+        Headers headers = request.headers();
+        out.writeInt(headers.size());
+
+        for (int i = 0; i < headers.size(); i++) {
+            out.writeUTF(headers.name(i));
+            out.writeUTF(headers.value(i));
+        }
+
+        RequestBody body = request.body();
+        out.writeBoolean(body != null);
+
+        if (body != null) {
+            MediaType contentType = body.contentType();
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+
+            out.writeUTF(contentType != null ? contentType.toString() : "");
+            out.writeInt((int) buffer.size());
+            buffer.copyTo(out);
+        }
+
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    static Request decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        if (in.readByte() != RECORD_VERSION) {
+            throw new IOException("Unknown record version " + record[0]);
+        }
+
+        String method = in.readUTF();
+        Request.Builder builder = new Request.Builder().url(in.readUTF());
+        int headers = in.readInt();
+
+        for (int i = 0; i < headers; i++) {
+            builder.addHeader(in.readUTF(), in.readUTF());
+        }
+
+        RequestBody body = null;
+
+        if (in.readBoolean()) {
+            String contentType = in.readUTF();
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            body = RequestBody.create(contentType.isEmpty() ? null : MediaType.parse(contentType), content);
+        }
+
+        return builder.method(method, body).build();
+    }
+
+    private static class PendingCall {
+        final OutboxJournal.Entry entry;
+        volatile boolean done;
+
+        PendingCall(OutboxJournal.Entry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.ResponseBody;
+import org.springframework.boot.retrofit.annotation.FireAndForget;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Call adapter factory queueing the calls of the {@link FireAndForget} methods of a service in its {@link Outbox}.
+ * <p>
+ * Retrofit builds the request of a call when asked for it, so adapting a call builds the request and offers it to
+ * the outbox, and the method returns whether the outbox took it. The call itself is never executed.
+ *
+ * @author troinine
+ */
+public class OutboxCallAdapterFactory extends CallAdapter.Factory {
+    private final Outbox outbox;
+
+    public OutboxCallAdapterFactory(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        boolean fireAndForget = false;
+
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof FireAndForget) {
+                fireAndForget = true;
+            }
+        }
+
+        if (!fireAndForget) {
+            return null;
+        }
+
+        if (returnType != boolean.class && returnType != Boolean.class) {
+            throw new IllegalArgumentException("@FireAndForget methods must return boolean");
+        }
+
+        return new CallAdapter<Boolean>() {
+            @Override
+            public Type responseType() {
+                // The response is never read
+                return ResponseBody.class;
+            }
+
+            @Override
+            public <R> Boolean adapt(Call<R> call) {
+                return outbox.offer(call.request());
+            }
+        };
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records in memory-mapped segment files, read and acknowledged by a single consumer.
+ * <p>
+ * A record is its length, the CRC32 of its content and the content. Appending copies the record into the mapped
+ * segment under a short lock and writes the length last, so that a record is never seen partially written. Writes
+ * reach the page cache right away and survive the process; {@link #sync()} forces them to the disk. Segments are
+ * files of a fixed size, the next one created by {@link #preallocate()} ahead of time so that appending never waits
+ * for file I/O. A record that does not fit in the current segment goes to the next one, and is rejected if that one
+ * was not created yet or the journal has its maximum number of segments.
+ * <p>
+ * The position up to which the records were consumed is kept in a small file of its own. Segments entirely before
+ * it are deleted. Records are checked against their CRC32 when read, and when the journal is opened again the
+ * first record failing the check marks where the writing stopped.
+ * <p>
+ * A journal holds a lock on a file of its directory while open, so that no other process or journal of this one
+ * can append to the same segments.
+ *
+ * @author troinine
+ */
+final class OutboxJournal implements Closeable {
+    /**
+     * Size of the length and the CRC32 preceding the content of each record.
+     */
+    static final int RECORD_HEADER_SIZE = 8;
+
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final String POSITION_FILE_NAME = "position";
+    static final String LOCK_FILE_NAME = "lock";
+
+    private static final int POSITION_FILE_SIZE = 16;
+    private static final Logger logger = LoggerFactory.getLogger(OutboxJournal.class);
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ConcurrentNavigableMap<Long, MappedByteBuffer> segments =
+            new ConcurrentSkipListMap<Long, MappedByteBuffer>();
+    private final MappedByteBuffer positionBuffer;
+    private final RandomAccessFile lockFile;
+    private final AtomicLong records = new AtomicLong();
+    private long writeSegment;
+    private int writeOffset;
+    private boolean closed;
+    private volatile Position committed;
+    private volatile Position acknowledged;
+
+    /**
+     * Opens the journal in the given directory, creating it if needed.
+     *
+     * @param directory the directory of the segment files.
+     * @param segmentSize the size of a segment in bytes.
+     * @param maxSegments the maximum number of segments.
+     * @throws IOException if the journal cannot be opened or is open elsewhere.
+     */
+    OutboxJournal(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("The segment size must exceed " + RECORD_HEADER_SIZE
+                    + " bytes, was " + segmentSize);
+        }
+
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("There must be at least one segment, was " + maxSegments);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the journal directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.lockFile = lock(new File(directory, LOCK_FILE_NAME));
+
+        boolean opened = false;
+
+        try {
+            this.positionBuffer = map(new File(directory, POSITION_FILE_NAME), POSITION_FILE_SIZE);
+
+            recover();
+
+            opened = true;
+        } finally {
+            if (!opened) {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param record the content of the record, not empty.
+     * @return {@code true} if the record was appended, {@code false} if the journal is full or closed, or the next
+     * segment was not preallocated.
+     */
+    boolean append(byte[] record) {
+        int size = RECORD_HEADER_SIZE + record.length;
+
+        if (record.length == 0 || size > segmentSize) {
+            throw new IllegalArgumentException("Records must be between 1 and " + (segmentSize - RECORD_HEADER_SIZE)
+                    + " bytes, was " + record.length);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+
+            if (writeOffset + size > segmentSize) {
+                if (!segments.containsKey(writeSegment + 1)) {
+                    return false;
+                }
+
+                writeSegment++;
+                writeOffset = 0;
+            }
+
+            ByteBuffer buffer = segments.get(writeSegment).duplicate();
+            buffer.position(writeOffset + 4);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record);
+            buffer.putInt(writeOffset, record.length);
+
+            writeOffset += size;
+            records.incrementAndGet();
+            committed = new Position(writeSegment, writeOffset);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the records appended after a position.
+     *
+     * @param from the position to read from.
+     * @param max the maximum number of records to read.
+     * @return the records in the order they were appended.
+     */
+    List<Entry> read(Position from, int max) {
+        Position end = committed;
+        List<Entry> entries = new ArrayList<Entry>();
+        long segment = from.segment;
+        int offset = from.offset;
+
+        while (entries.size() < max && (segment < end.segment || segment == end.segment && offset < end.offset)) {
+            byte[] content = readRecord(segments.get(segment), offset);
+
+            if (content == null) {
+                // The rest of a segment the writer has moved on from
+                Long next = segments.higherKey(segment);
+
+                if (next == null) {
+                    break;
+                }
+
+                segment = next;
+                offset = 0;
+
+                continue;
+            }
+
+            offset += RECORD_HEADER_SIZE + content.length;
+            entries.add(new Entry(content, new Position(segment, offset)));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Records that the records up to a position were consumed, and deletes the segments entirely before it.
+     *
+     * @param position the position after the last consumed record.
+     * @param count the number of records consumed since the previous acknowledgement.
+     */
+    void acknowledge(Position position, int count) {
+        synchronized (positionBuffer) {
+            ByteBuffer buffer = ByteBuffer.allocate(POSITION_FILE_SIZE);
+            buffer.putLong(position.segment).putInt(position.offset);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, 12);
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+
+            ByteBuffer target = positionBuffer.duplicate();
+            target.put(buffer);
+
+            acknowledged = position;
+        }
+
+        records.addAndGet(-count);
+
+        for (Long segment : new ArrayList<Long>(segments.headMap(position.segment).keySet())) {
+            segments.remove(segment);
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Creates the next segment ahead of time once the current one is half full, unless the journal has its maximum
+     * number of segments. The file is created and mapped without holding the lock of the appending threads.
+     *
+     * @throws IOException if the segment cannot be created.
+     */
+    void preallocate() throws IOException {
+        long next;
+
+        synchronized (this) {
+            if (closed || writeOffset < segmentSize / 2 || segments.containsKey(writeSegment + 1)
+                    || segments.size() >= maxSegments) {
+                return;
+            }
+
+            next = writeSegment + 1;
+        }
+
+        MappedByteBuffer buffer = map(segmentFile(next), segmentSize);
+
+        synchronized (this) {
+            if (!closed && !segments.containsKey(next)) {
+                segments.put(next, buffer);
+            }
+        }
+    }
+
+    /**
+     * Forces the appended records and the consumed position to the disk.
+     */
+    void sync() {
+        for (MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+
+        synchronized (positionBuffer) {
+            positionBuffer.force();
+        }
+    }
+
+    /**
+     * Returns the position after the last consumed record.
+     *
+     * @return the position.
+     */
+    Position getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Returns the number of records appended and not consumed yet.
+     *
+     * @return the number of records.
+     */
+    long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * Stops appending, forces the journal to the disk and releases its lock. The mapped segments are released by the
+     * garbage collector.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        }
+
+        sync();
+        unlock();
+    }
+
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<Long>();
+        File[] files = directory.listFiles();
+
+        for (File file : files != null ? files : new File[0]) {
+            String name = file.getName();
+
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    ids.add(Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring {}, it is not a journal segment", file);
+                }
+            }
+        }
+
+        Collections.sort(ids);
+
+        Position position = readPosition();
+
+        if (position == null || !ids.contains(position.segment)) {
+            position = new Position(ids.isEmpty() ? 0 : ids.get(0), 0);
+        }
+
+        for (Long id : ids) {
+            if (id < position.segment) {
+                deleteSegment(id);
+            } else {
+                segments.put(id, map(segmentFile(id), segmentSize));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            createSegment(position.segment);
+        }
+
+        // Count the records left to consume and find where the writing stopped
+        long segment = position.segment;
+        int offset = position.offset;
+        long count = 0;
+
+        while (true) {
+            byte[] content = readRecord(segments.get(segment), offset);
+
+            if (content != null) {
+                offset += RECORD_HEADER_SIZE + content.length;
+                count++;
+            } else {
+                Long next = segments.higherKey(segment);
+
+                if (next == null) {
+                    break;
+                }
+
+                segment = next;
+                offset = 0;
+            }
+        }
+
+        // Clear what a write interrupted by a crash may have left behind
+        MappedByteBuffer last = segments.get(segment);
+        int end = segmentSize;
+
+        while (end > offset && last.get(end - 1) == 0) {
+            end--;
+        }
+
+        for (int i = offset; i < end; i++) {
+            last.put(i, (byte) 0);
+        }
+
+        writeSegment = segment;
+        writeOffset = offset;
+        records.set(count);
+        committed = new Position(segment, offset);
+        acknowledged = position;
+
+        if (count > 0) {
+            logger.info("Recovered {} records from the journal in {}", count, directory);
+        }
+    }
+
+    /**
+     * Reads a record, checking it against its CRC32.
+     *
+     * @param segment the segment of the record.
+     * @param offset the offset of the record.
+     * @return the content of the record or {@code null} if there is no valid record at the offset.
+     */
+    private byte[] readRecord(MappedByteBuffer segment, int offset) {
+        if (segment == null || offset + RECORD_HEADER_SIZE > segmentSize) {
+            return null;
+        }
+
+        int length = segment.getInt(offset);
+
+        if (length <= 0 || length > segmentSize - RECORD_HEADER_SIZE - offset) {
+            return null;
+        }
+
+        byte[] content = new byte[length];
+        ByteBuffer source = segment.duplicate();
+        source.position(offset + RECORD_HEADER_SIZE);
+        source.get(content);
+
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+
+        return (int) crc.getValue() == segment.getInt(offset + 4) ? content : null;
+    }
+
+    private Position readPosition() {
+        ByteBuffer buffer = positionBuffer.duplicate();
+        byte[] bytes = new byte[12];
+        buffer.get(bytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        if ((int) crc.getValue() != buffer.getInt()) {
+            return null;
+        }
+
+        ByteBuffer position = ByteBuffer.wrap(bytes);
+
+        return new Position(position.getLong(), position.getInt());
+    }
+
+    private void createSegment(long id) throws IOException {
+        segments.put(id, map(segmentFile(id), segmentSize));
+    }
+
+    private void deleteSegment(long id) {
+        File file = segmentFile(id);
+
+        if (file.exists() && !file.delete()) {
+            // Mapped files cannot be deleted on some platforms, the next recovery deletes them
+            logger.debug("Cannot delete the consumed journal segment {}", file);
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%019d", id) + SEGMENT_SUFFIX);
+    }
+
+    private void unlock() {
+        try {
+            // Closing the file releases its lock
+            lockFile.close();
+        } catch (IOException e) {
+            logger.warn("Cannot release the lock of the journal in {}", directory, e);
+        }
+    }
+
+    private static RandomAccessFile lock(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileLock lock;
+
+        try {
+            lock = randomAccessFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another journal of this process
+            lock = null;
+        } catch (IOException e) {
+            randomAccessFile.close();
+
+            throw e;
+        }
+
+        if (lock == null) {
+            randomAccessFile.close();
+
+            throw new IOException("The journal in " + file.getParentFile() + " is in use by another outbox");
+        }
+
+        return randomAccessFile;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // The mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Position in the journal.
+     */
+    static final class Position {
+        final long segment;
+        final int offset;
+
+        Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return segment + ":" + offset;
+        }
+    }
+
+    /**
+     * Record read from the journal.
+     */
+    static final class Entry {
+        final byte[] content;
+        final Position next;
+
+        Entry(byte[] content, Position next) {
+            this.content = content;
+            this.next = next;
+        }
+    }
+}
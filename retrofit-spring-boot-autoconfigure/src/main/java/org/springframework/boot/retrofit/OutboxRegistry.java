@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the {@link Outbox outboxes} of the services with fire-and-forget methods, closing them when the
+ * application context is closed. Outboxes are registered when the services are created.
+ *
+ * @author troinine
+ */
+public class OutboxRegistry implements DisposableBean {
+    /**
+     * The name of the registry bean picked up by the {@link RetrofitServiceFactory}.
+     */
+    public static final String BEAN_NAME = "outboxRegistry";
+
+    private final ConcurrentMap<String, Outbox> outboxes = new ConcurrentSkipListMap<String, Outbox>();
+
+    /**
+     * Registers the outbox of a service.
+     *
+     * @param service the bean name of the service.
+     * @param outbox the outbox of the service.
+     * @throws IllegalStateException if the service has an outbox already.
+     */
+    public void register(String service, Outbox outbox) {
+        if (outboxes.putIfAbsent(service, outbox) != null) {
+            throw new IllegalStateException("The service " + service + " has an outbox already");
+        }
+    }
+
+    /**
+     * Returns the registered outboxes.
+     *
+     * @return the outboxes by the bean name of their service in alphabetical order.
+     */
+    public Map<String, Outbox> getOutboxes() {
+        return Collections.unmodifiableMap(outboxes);
+    }
+
+    @Override
+    public void destroy() {
+        for (Outbox outbox : outboxes.values()) {
+            outbox.close();
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy sequence of the items of all pages of a paged service method, fetching the next pages in the background
+ * while the current one is consumed.
+ * <p>
+ * Nothing is fetched until {@link #iterator()} is called. Pages are then fetched one after another with the
+ * asynchronous calls of OkHttp, so no thread is dedicated to a sequence. Fetching stays the prefetch depth ahead of
+ * the page being consumed, and does not go beyond the memory bound on the response bodies of the pages fetched
+ * ahead unless the consumer is waiting. A page that fails to be fetched ends the sequence with a
+ * {@link PageFetchException}, once the consumer has reached it.
+ * <p>
+ * The first page is fetched with the call made by the service method, so it goes through the call adapters of the
+ * method such as tracing or priorities. The following pages are fetched with the call factory of the service and
+ * the request of the previous page pointed at the next one, keeping its headers.
+ * <p>
+ * Sequences are iterated once, by a single thread. {@link #close() Closing} a sequence cancels the page being
+ * fetched and stops fetching further pages, so sequences not consumed to the end should be closed:
+ * <pre class="code">
+ * try (Pages&lt;Order&gt; orders = orderService.orders("open")) {
+ *     for (Order order : orders) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <T> the type of the items.
+ * @author troinine
+ * @see org.springframework.boot.retrofit.annotation.Paged
+ */
+public final class Pages<T> implements Iterable<T>, Closeable {
+    private final okhttp3.Call.Factory callFactory;
+    private final PageReader<T> reader;
+    private final int prefetch;
+    private final long maxBufferedBytes;
+    private final Deque<Page<T>> ready = new ArrayDeque<Page<T>>();
+    private Call<ResponseBody> firstCall;
+    private Request nextRequest;
+    private Call<ResponseBody> runningFirstCall;
+    private okhttp3.Call runningCall;
+    private long bufferedBytes;
+    private boolean fetching;
+    private boolean waiting;
+    private boolean iterated;
+    private boolean closed;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    Pages(
+            Call<ResponseBody> firstCall,
+            okhttp3.Call.Factory callFactory,
+            PageReader<T> reader,
+            int prefetch,
+            long maxBufferedBytes) {
+        this.firstCall = firstCall;
+        this.callFactory = callFactory;
+        this.reader = reader;
+        this.prefetch = prefetch;
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Starts fetching the pages and returns an iterator over their items. Its methods throw a
+     * {@link PageFetchException} if a page could not be fetched.
+     *
+     * @return the iterator.
+     * @throws IllegalStateException if called more than once.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        synchronized (this) {
+            if (iterated) {
+                throw new IllegalStateException("Pages can only be iterated once");
+            }
+
+            iterated = true;
+        }
+
+        fetchIfNeeded();
+
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return advance();
+            }
+
+            @Override
+            public T next() {
+                if (!advance()) {
+                    throw new NoSuchElementException();
+                }
+
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    /**
+     * Cancels the page being fetched, if any, and stops fetching. The items of the page being consumed remain
+     * available.
+     */
+    @Override
+    public void close() {
+        Call<ResponseBody> firstCall;
+        okhttp3.Call call;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            firstCall = runningFirstCall;
+            call = runningCall;
+            ready.clear();
+            bufferedBytes = 0;
+            notifyAll();
+        }
+
+        if (firstCall != null) {
+            firstCall.cancel();
+        }
+
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Returns the size of the response bodies of the pages fetched ahead of the page being consumed.
+     *
+     * @return the size in bytes.
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private boolean advance() {
+        while (!current.hasNext()) {
+            Page<T> page;
+
+            synchronized (this) {
+                page = ready.poll();
+
+                if (page == null) {
+                    if (closed || !fetching && firstCall == null && nextRequest == null) {
+                        return false;
+                    }
+
+                    waiting = true;
+                } else {
+                    bufferedBytes -= page.bytes;
+                }
+            }
+
+            if (page == null) {
+                fetchIfNeeded();
+                awaitPage();
+            } else if (page.failure != null) {
+                close();
+
+                throw page.failure;
+            } else {
+                current = page.items.iterator();
+                fetchIfNeeded();
+            }
+        }
+
+        return true;
+    }
+
+    private synchronized void awaitPage() {
+        try {
+            while (ready.isEmpty() && fetching && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+
+            throw new PageFetchException("Interrupted while waiting for the next page");
+        } finally {
+            waiting = false;
+        }
+    }
+
+    private void fetchIfNeeded() {
+        Call<ResponseBody> firstCall = null;
+        okhttp3.Call call = null;
+
+        synchronized (this) {
+            if (closed || fetching || this.firstCall == null && nextRequest == null) {
+                return;
+            }
+
+            boolean wanted = ready.size() < prefetch && bufferedBytes < maxBufferedBytes;
+
+            if (!wanted && !(waiting && ready.isEmpty())) {
+                return;
+            }
+
+            fetching = true;
+
+            if (this.firstCall != null) {
+                firstCall = this.firstCall;
+                runningFirstCall = firstCall;
+                this.firstCall = null;
+            } else {
+                call = callFactory.newCall(nextRequest);
+                runningCall = call;
+                nextRequest = null;
+            }
+        }
+
+        if (firstCall != null) {
+            firstCall.enqueue(new Callback<ResponseBody>() {
+                @Override
+                public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                    if (response.isSuccessful()) {
+                        received(response.raw().request(), response.headers(), response.body());
+                    } else {
+                        closeQuietly(response.errorBody());
+                        failed(new PageFetchException(describe(response.raw())));
+                    }
+                }
+
+                @Override
+                public void onFailure(Call<ResponseBody> call, Throwable t) {
+                    failed(fetchFailed("Cannot fetch the first page", t));
+                }
+            });
+        } else {
+            call.enqueue(new okhttp3.Callback() {
+                @Override
+                public void onResponse(okhttp3.Call call, okhttp3.Response response) {
+                    if (response.isSuccessful()) {
+                        received(response.request(), response.headers(), response.body());
+                    } else {
+                        closeQuietly(response.body());
+                        failed(new PageFetchException(describe(response)));
+                    }
+                }
+
+                @Override
+                public void onFailure(okhttp3.Call call, IOException e) {
+                    failed(fetchFailed(describe(call.request()), e));
+                }
+            });
+        }
+    }
+
+    private void received(Request request, Headers headers, ResponseBody body) {
+        Page<T> page;
+
+        try {
+            // Read off the connection here so that the consumer never blocks on the network within a page
+            Buffer buffer = new Buffer();
+
+            try {
+                buffer.writeAll(body.source());
+            } finally {
+                body.close();
+            }
+
+            long bytes = buffer.size();
+            page = reader.read(request, headers, ResponseBody.create(body.contentType(), bytes, buffer));
+            page.bytes = bytes;
+        } catch (IOException e) {
+            failed(fetchFailed(describe(request), e));
+
+            return;
+        } catch (RuntimeException e) {
+            failed(fetchFailed(describe(request), e));
+
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            fetching = false;
+            runningFirstCall = null;
+            runningCall = null;
+            nextRequest = page.next;
+            bufferedBytes += page.bytes;
+            ready.add(page);
+            notifyAll();
+        }
+
+        fetchIfNeeded();
+    }
+
+    private synchronized void failed(PageFetchException failure) {
+        if (closed) {
+            return;
+        }
+
+        fetching = false;
+        runningFirstCall = null;
+        runningCall = null;
+        nextRequest = null;
+        ready.add(new Page<T>(failure));
+        notifyAll();
+    }
+
+    private static PageFetchException fetchFailed(String message, Throwable t) {
+        if (t instanceof IOException) {
+            return new PageFetchException(message, (IOException) t);
+        }
+
+        PageFetchException failure = new PageFetchException(message);
+        failure.initCause(t);
+
+        return failure;
+    }
+
+    private static String describe(Request request) {
+        return "Cannot fetch " + request.method() + " " + request.url();
+    }
+
+    private static String describe(okhttp3.Response response) {
+        return "HTTP " + response.code() + " " + response.message() + " for " + response.request().method() + " "
+                + response.request().url();
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body != null) {
+            body.close();
+        }
+    }
+
+    /**
+     * Reads the items and the request of the next page from a response.
+     */
+    interface PageReader<T> {
+        /**
+         * Reads a page.
+         *
+         * @param request the request the page was fetched with.
+         * @param headers the response headers.
+         * @param body the response body, fully buffered.
+         * @return the page.
+         * @throws IOException if the body cannot be converted.
+         */
+        Page<T> read(Request request, Headers headers, ResponseBody body) throws IOException;
+    }
+
+    /**
+     * Fetched page, or the failure to fetch it.
+     */
+    static class Page<T> {
+        final List<T> items;
+        final Request next;
+        final PageFetchException failure;
+        long bytes;
+
+        /**
+         * Creates a page.
+         *
+         * @param items the items of the page, {@code null} for none.
+         * @param next the request of the next page, {@code null} if this is the last page.
+         */
+        Page(List<T> items, Request next) {
+            this.items = items != null ? items : Collections.<T>emptyList();
+            this.next = next;
+            this.failure = null;
+        }
+
+        Page(PageFetchException failure) {
+            this.items = Collections.emptyList();
+            this.next = null;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.retrofit.annotation.Paged;
+import org.springframework.core.Ordered;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Call adapter factory for the service methods annotated with {@link Paged} and returning {@link Pages}.
+ * <p>
+ * The response bodies are converted by the converter registered for the page type, which is a {@link List} of the
+ * items for {@code Link} header paging and the {@link Paged#page() page type} for cursor paging. The converter and
+ * the page type are checked when the service method is first used, like Retrofit does for other methods.
+ * <p>
+ * The factory is ordered right after the {@link PriorityCallAdapterFactory} and ahead of the adapters that would
+ * claim any return type, so that prioritized paged methods are still adapted here.
+ *
+ * @author troinine
+ */
+public class PagingCallAdapterFactory extends CallAdapter.Factory implements Ordered {
+    private static final Pattern LINK_RELATION = Pattern.compile(";\\s*rel\\s*=\\s*\"?([^\";,]*)\"?");
+
+    private final RetrofitProperties.Paging properties;
+
+    public PagingCallAdapterFactory() {
+        this(new RetrofitProperties.Paging());
+    }
+
+    public PagingCallAdapterFactory(RetrofitProperties.Paging properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    @Override
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (returnType != Pages.class
+                && !(returnType instanceof ParameterizedType
+                && ((ParameterizedType) returnType).getRawType() == Pages.class)) {
+            return null;
+        }
+
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("Pages return type must be parameterized as Pages<Foo>");
+        }
+
+        Paged paged = null;
+
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Paged) {
+                paged = (Paged) annotation;
+            }
+        }
+
+        if (paged == null) {
+            throw new IllegalArgumentException("Methods returning Pages must be annotated with @Paged");
+        }
+
+        Type itemType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+
+        if (itemType instanceof WildcardType) {
+            itemType = ((WildcardType) itemType).getUpperBounds()[0];
+        }
+
+        int prefetch = paged.prefetch() >= 0 ? paged.prefetch() : properties.getPrefetch();
+
+        return new PagingCallAdapter<Object>(
+                retrofit.callFactory(), createReader(paged, itemType, annotations, retrofit), prefetch,
+                properties.getMaxBufferedBytes());
+    }
+
+    private static Pages.PageReader<Object> createReader(
+            Paged paged,
+            Type itemType,
+            Annotation[] annotations,
+            Retrofit retrofit) {
+        if (paged.cursor().isEmpty() != (paged.page() == Void.class)) {
+            throw new IllegalArgumentException("@Paged cursor and page must be set together");
+        }
+
+        if (paged.cursor().isEmpty()) {
+            return new LinkPageReader<Object>(
+                    retrofit.responseBodyConverter(new ListType(itemType), annotations));
+        }
+
+        if (!CursorPage.class.isAssignableFrom(paged.page())) {
+            throw new IllegalArgumentException(
+                    "@Paged page type " + paged.page().getName() + " must implement " + CursorPage.class.getName());
+        }
+
+        return new CursorPageReader<Object>(
+                paged.cursor(), retrofit.responseBodyConverter(paged.page(), annotations));
+    }
+
+    /**
+     * Returns the URL of the {@code rel="next"} link of a response.
+     *
+     * @param request the request of the response, to resolve relative links against.
+     * @param headers the headers of the response.
+     * @return the URL or {@code null} if there is no such link.
+     */
+    static HttpUrl findNextLink(Request request, Headers headers) {
+        for (String header : headers.values("Link")) {
+            int start = header.indexOf('<');
+
+            while (start != -1) {
+                int end = header.indexOf('>', start);
+
+                if (end == -1) {
+                    break;
+                }
+
+                int next = header.indexOf('<', end);
+                Matcher matcher = LINK_RELATION.matcher(header.substring(end + 1, next != -1 ? next : header.length()));
+
+                while (matcher.find()) {
+                    if (Arrays.asList(matcher.group(1).toLowerCase(Locale.ROOT).split("\\s+")).contains("next")) {
+                        return request.url().resolve(header.substring(start + 1, end).trim());
+                    }
+                }
+
+                start = next;
+            }
+        }
+
+        return null;
+    }
+
+    private static class PagingCallAdapter<T> implements CallAdapter<Pages<T>> {
+        private final okhttp3.Call.Factory callFactory;
+        private final Pages.PageReader<T> reader;
+        private final int prefetch;
+        private final long maxBufferedBytes;
+
+        PagingCallAdapter(
+                okhttp3.Call.Factory callFactory,
+                Pages.PageReader<T> reader,
+                int prefetch,
+                long maxBufferedBytes) {
+            this.callFactory = callFactory;
+            this.reader = reader;
+            this.prefetch = prefetch;
+            this.maxBufferedBytes = maxBufferedBytes;
+        }
+
+        @Override
+        public Type responseType() {
+            // Converted by the reader once buffered, so that the size of each page is known
+            return ResponseBody.class;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R> Pages<T> adapt(Call<R> call) {
+            return new Pages<T>((Call<ResponseBody>) call, callFactory, reader, prefetch, maxBufferedBytes);
+        }
+    }
+
+    private static class LinkPageReader<T> implements Pages.PageReader<T> {
+        private final Converter<ResponseBody, ?> converter;
+
+        LinkPageReader(Converter<ResponseBody, ?> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Pages.Page<T> read(Request request, Headers headers, ResponseBody body) throws IOException {
+            HttpUrl next = findNextLink(request, headers);
+
+            return new Pages.Page<T>(
+                    (List<T>) converter.convert(body),
+                    next != null ? request.newBuilder().url(next).build() : null);
+        }
+    }
+
+    private static class CursorPageReader<T> implements Pages.PageReader<T> {
+        private final String parameter;
+        private final Converter<ResponseBody, ?> converter;
+
+        CursorPageReader(String parameter, Converter<ResponseBody, ?> converter) {
+            this.parameter = parameter;
+            this.converter = converter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Pages.Page<T> read(Request request, Headers headers, ResponseBody body) throws IOException {
+            CursorPage<T> page = (CursorPage<T>) converter.convert(body);
+            String cursor = page != null ? page.getNextCursor() : null;
+            Request next = cursor != null && !cursor.isEmpty()
+                    ? request.newBuilder().url(request.url().newBuilder().setQueryParameter(parameter, cursor).build())
+                            .build()
+                    : null;
+
+            return new Pages.Page<T>(page != null ? page.getItems() : null, next);
+        }
+    }
+
+    /**
+     * {@code List<T>} for the item type of a method.
+     */
+    private static class ListType implements ParameterizedType {
+        private final Type elementType;
+
+        ListType(Type elementType) {
+            this.elementType = elementType;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[] {elementType};
+        }
+
+        @Override
+        public Type getRawType() {
+            return List.class;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ParameterizedType
+                    && ((ParameterizedType) other).getRawType() == List.class
+                    && ((ParameterizedType) other).getOwnerType() == null
+                    && Arrays.equals(((ParameterizedType) other).getActualTypeArguments(), getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            // Same as the JDK implementation, for equal types to be found in the caches of converters
+            return Arrays.hashCode(getActualTypeArguments()) ^ List.class.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            String elementName = elementType instanceof Class
+                    ? ((Class<?>) elementType).getName()
+                    : elementType.toString();
+
+            return "java.util.List<" + elementName + ">";
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Request;
+import org.springframework.boot.okhttp.CallPriority;
+import org.springframework.boot.retrofit.annotation.Priority;
+import org.springframework.core.Ordered;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Call adapter factory applying the {@link Priority} of a service method to the calls it makes.
+ * <p>
+ * Retrofit creates the underlying OkHttp call only when the call is executed, enqueued or asked for its request,
+ * so the priority is set on the current thread around those operations. The adapting itself is left to the next
+ * factory able to handle the return type of the method.
+ * <p>
+ * Only asynchronous calls are scheduled by priority, so the priority has no effect on the methods whose adapter
+ * executes the calls synchronously, such as the RxJava adapter of Retrofit 2.0.
+ * <p>
+ * The factory is ordered first so that it sees the methods before the adapters it delegates to.
+ *
+ * @author troinine
+ */
+public class PriorityCallAdapterFactory extends CallAdapter.Factory implements Ordered {
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallPriority priority = null;
+
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Priority) {
+                priority = ((Priority) annotation).value();
+            }
+        }
+
+        if (priority == null) {
+            return null;
+        }
+
+        CallAdapter<Object> delegate = (CallAdapter<Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+
+        return new PriorityCallAdapter<Object>(delegate, priority);
+    }
+
+    private static class PriorityCallAdapter<T> implements CallAdapter<T> {
+        private final CallAdapter<T> delegate;
+        private final CallPriority priority;
+
+        PriorityCallAdapter(CallAdapter<T> delegate, CallPriority priority) {
+            this.delegate = delegate;
+            this.priority = priority;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public <R> T adapt(Call<R> call) {
+            return delegate.adapt(new PriorityCall<R>(call, priority));
+        }
+    }
+
+    private static class PriorityCall<T> implements Call<T> {
+        private final Call<T> delegate;
+        private final CallPriority priority;
+
+        PriorityCall(Call<T> delegate, CallPriority priority) {
+            this.delegate = delegate;
+            this.priority = priority;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            CallPriority previous = CallPriority.set(priority);
+
+            try {
+                return delegate.execute();
+            } finally {
+                CallPriority.restore(previous);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            CallPriority previous = CallPriority.set(priority);
+
+            try {
+                delegate.enqueue(callback);
+            } finally {
+                CallPriority.restore(previous);
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<T> clone() {
+            return new PriorityCall<T>(delegate.clone(), priority);
+        }
+
+        @Override
+        public Request request() {
+            CallPriority previous = CallPriority.set(priority);
+
+            try {
+                return delegate.request();
+            } finally {
+                CallPriority.restore(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.boot.okhttp.Deadline;
+import org.springframework.util.ClassUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Call.Factory} taking a permit from a {@link RateLimiter} before each call is sent.
+ * <p>
+ * Synchronous calls wait for their permit on the calling thread. Asynchronous calls are enqueued to the
+ * dispatcher once their permit becomes valid, so waiting for permits never occupies the threads or the request
+ * slots of the dispatcher. Calls whose permit would not become valid within the maximum wait fail with a
+ * {@link RateLimitExceededException} without being sent; a maximum wait of zero fails them as soon as the limit is
+ * exceeded. The maximum wait is shortened to the time left until the {@link Deadline} of the calling thread, if
+ * any.
+ * <p>
+ * The asynchronous calls are enqueued by a thread of this factory, started on first use and stopped by
+ * {@link #close()}. The calls already waiting for their permit are still enqueued after closing, the calls
+ * enqueued after closing fail.
+ *
+ * @author troinine
+ */
+public class RateLimitedCallFactory implements Call.Factory, Closeable {
+    private static final boolean DEADLINE_PRESENT = ClassUtils.isPresent(
+            "org.springframework.boot.okhttp.Deadline", RateLimitedCallFactory.class.getClassLoader());
+
+    private final Call.Factory delegate;
+    private final RateLimiter rateLimiter;
+    private final long maxWait;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a call factory limiting the calls of the given delegate.
+     *
+     * @param delegate the call factory to limit.
+     * @param rateLimiter the limiter to take the permits from.
+     * @param maxWait the maximum time in milliseconds a call waits for its permit.
+     */
+    public RateLimitedCallFactory(Call.Factory delegate, RateLimiter rateLimiter, long maxWait) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+        this.maxWait = maxWait;
+        // The thread is only started by the first scheduled call
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "OkHttp RateLimiter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public Call newCall(Request request) {
+        return new RateLimitedCall(delegate.newCall(request));
+    }
+
+    /**
+     * Stops the thread enqueueing the asynchronous calls once the calls waiting for their permit are enqueued.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Returns the maximum time in milliseconds the current call may wait for its permit.
+     *
+     * @return the maximum wait, shortened to the deadline of the calling thread.
+     */
+    private long getMaxWait() {
+        return DEADLINE_PRESENT ? DeadlineSupport.limit(maxWait) : maxWait;
+    }
+
+    private static RateLimitExceededException newRateLimitExceededException(long maxWait) {
+        return new RateLimitExceededException("No permit available within " + maxWait + " ms");
+    }
+
+    private class RateLimitedCall implements Call {
+        private final Call call;
+        private boolean executed;
+
+        RateLimitedCall(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public Request request() {
+            return call.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+
+            long maxWait = getMaxWait();
+            long wait = rateLimiter.reserve(maxWait, TimeUnit.MILLISECONDS);
+
+            if (wait < 0) {
+                throw newRateLimitExceededException(maxWait);
+            }
+
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a permit");
+                }
+            }
+
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            markExecuted();
+
+            long maxWait = getMaxWait();
+            long wait = rateLimiter.reserve(maxWait, TimeUnit.MILLISECONDS);
+
+            if (wait < 0) {
+                responseCallback.onFailure(this, newRateLimitExceededException(maxWait));
+                return;
+            }
+
+            final Callback callback = new Callback() {
+                @Override
+                public void onFailure(Call ignored, IOException e) {
+                    responseCallback.onFailure(RateLimitedCall.this, e);
+                }
+
+                @Override
+                public void onResponse(Call ignored, Response response) throws IOException {
+                    responseCallback.onResponse(RateLimitedCall.this, response);
+                }
+            };
+
+            if (wait == 0) {
+                call.enqueue(callback);
+            } else {
+                try {
+                    // A call canceled while waiting is failed by the dispatcher once enqueued
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            call.enqueue(callback);
+                        }
+                    }, wait, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    responseCallback.onFailure(this, new IOException("The rate limited call factory is closed"));
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return call.isCanceled();
+        }
+
+        private synchronized void markExecuted() {
+            if (executed) {
+                throw new IllegalStateException("Already Executed");
+            }
+
+            executed = true;
+        }
+    }
+
+    /**
+     * Reads the deadline of the calling thread, only loaded when the OkHttp auto-configuration is present.
+     */
+    private static class DeadlineSupport {
+        static long limit(long maxWait) {
+            Deadline current = Deadline.current();
+
+            return current != null ? Math.min(maxWait, Math.max(current.remainingMillis(), 0)) : maxWait;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of the calls made by a Retrofit service.
+ * <p>
+ * A limiter hands out permits by reservation: the caller is told how long to wait before its permit becomes
+ * valid, so that it can wait without holding any lock of the limiter, or learns that no permit is available in
+ * time. The reservation is made by the limiter, and the waiting is left to the caller. This lets a limiter backed
+ * by a shared store serve several instances of an application with a single round trip per permit.
+ * <p>
+ * A {@link RateLimiter} bean called {@code <name>RateLimiter}, where {@code <name>} is the bean name of the
+ * service, replaces the {@link TokenBucketRateLimiter} configured by the properties of the service.
+ *
+ * @author troinine
+ * @see RateLimitedCallFactory
+ */
+public interface RateLimiter {
+    /**
+     * Reserves a permit if one becomes available within the given time.
+     *
+     * @param timeout the maximum time to wait for the permit, zero to take it only if available right away.
+     * @param unit the unit of the timeout.
+     * @return the time in nanoseconds until the reserved permit becomes valid, or a negative value if no permit
+     * becomes available within the timeout, in which case nothing is reserved.
+     */
+    long reserve(long timeout, TimeUnit unit);
+}
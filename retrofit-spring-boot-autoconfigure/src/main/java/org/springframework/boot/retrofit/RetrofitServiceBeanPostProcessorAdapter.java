@@ -18,6 +18,7 @@ package org.springframework.boot.retrofit;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
 import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
 import org.springframework.boot.retrofit.annotation.RetrofitService;
@@ -26,6 +27,9 @@ import org.springframework.core.PriorityOrdered;
 import org.springframework.util.Assert;
 import retrofit2.Retrofit;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Instantiation aware bean post processor adapter to instantiate the bean interfaces marked with {@link RetrofitService}
  * annotation.
@@ -36,7 +40,8 @@ import retrofit2.Retrofit;
  *
  * @author troinine
  */
-public class RetrofitServiceBeanPostProcessorAdapter extends InstantiationAwareBeanPostProcessorAdapter implements BeanFactoryAware, PriorityOrdered {
+public class RetrofitServiceBeanPostProcessorAdapter extends InstantiationAwareBeanPostProcessorAdapter
+        implements BeanFactoryAware, PriorityOrdered, DisposableBean {
     /**
      * The name of this bean.
      */
@@ -66,6 +71,27 @@ public class RetrofitServiceBeanPostProcessorAdapter extends InstantiationAwareB
         return ret;
     }
 
+    /**
+     * Closes the service factory, which stops the threads of the rate limited services.
+     */
+    @Override
+    public void destroy() {
+        if (retrofitServiceFactory != null) {
+            retrofitServiceFactory.close();
+        }
+    }
+
+    /**
+     * Returns the services created so far.
+     *
+     * @return the services in the order they were created.
+     */
+    public List<RetrofitServiceFactory.CreatedService> getCreatedServices() {
+        return retrofitServiceFactory != null
+                ? retrofitServiceFactory.getCreatedServices()
+                : Collections.<RetrofitServiceFactory.CreatedService>emptyList();
+    }
+
     /**
      * Lazy-inits the associated Retrofit service factory because the needed dependencies are available after
      * the needed bean dependencies have been created by the {@link BeanFactory}.
@@ -15,19 +15,85 @@
  */
 package org.springframework.boot.retrofit;
 
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.okhttp.ClientMonitor;
+import org.springframework.boot.okhttp.Tracer;
+import org.springframework.boot.retrofit.annotation.FireAndForget;
+import org.springframework.boot.retrofit.annotation.RetrofitService;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
 import retrofit2.Retrofit;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Factory for constructing {@link Retrofit} service instances.
+ * <p>
+ * Closing the factory stops the threads of the rate limited call factories created for the services.
  *
  * @author troinine
  */
-public class RetrofitServiceFactory {
+public class RetrofitServiceFactory implements Closeable {
+    /**
+     * Suffix appended to the client profile name of {@link RetrofitService#client()} to form the name of the
+     * {@link OkHttpClient} bean.
+     */
+    public static final String CLIENT_BEAN_NAME_SUFFIX = "OkHttpClient";
+
+    /**
+     * Suffix appended to the client profile name of {@link RetrofitService#client()} to form the name of the
+     * {@link Call.Factory} bean, which is preferred over the client bean when available.
+     */
+    public static final String CALL_FACTORY_BEAN_NAME_SUFFIX = "OkHttpCallFactory";
+
+    /**
+     * Suffix appended to the bean name of a service to form the name of a {@link RateLimiter} bean replacing the
+     * one configured by the properties of the service.
+     */
+    public static final String RATE_LIMITER_BEAN_NAME_SUFFIX = "RateLimiter";
+
+    /**
+     * Suffix of the implementation classes generated for {@link RetrofitService} interfaces at compile time. The
+     * class is placed in the package of the interface and named after its binary name, with nested class names
+     * separated by underscores.
+     */
+    public static final String GENERATED_CLASS_SUFFIX = "_Retrofit";
+
+    private static final boolean OKHTTP_SUPPORT_PRESENT = ClassUtils.isPresent(
+            "org.springframework.boot.okhttp.TracedOperation", RetrofitServiceFactory.class.getClassLoader());
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrofitServiceFactory.class);
+
+    private final Map<String, Retrofit> clientRetrofits = new HashMap<String, Retrofit>();
+    private final List<CreatedService> createdServices = new CopyOnWriteArrayList<CreatedService>();
+    private final List<RateLimitedCallFactory> rateLimitedCallFactories =
+            new CopyOnWriteArrayList<RateLimitedCallFactory>();
     private final BeanFactory beanFactory;
     private final Retrofit defaultRetrofit;
     private final RetrofitProperties properties;
+    private AdaptiveTimeoutRegistry adaptiveTimeoutRegistry;
+    private OutboxRegistry outboxRegistry;
+    private Boolean operationsNamed;
 
     public RetrofitServiceFactory(BeanFactory beanFactory, Retrofit defaultRetrofit, RetrofitProperties properties) {
         this.beanFactory = beanFactory;
@@ -35,14 +101,350 @@ public class RetrofitServiceFactory {
         this.properties = properties;
     }
 
+    /**
+     * Creates an instance of the given service. An implementation generated at compile time is used when one is
+     * available, otherwise Retrofit creates a dynamic proxy. The proxy parses its methods right away when the
+     * warm-up is enabled, so that invalid methods fail here like those of the generated implementations.
+     *
+     * @param serviceClass the service interface.
+     * @param beanName the bean name of the service.
+     * @param <T> the type of the service.
+     * @return the service instance.
+     * @throws IllegalArgumentException if the warm-up is enabled and a method of the service is invalid.
+     */
     public <T> T createServiceInstance(Class<T> serviceClass, String beanName) {
-        Retrofit retrofit = getConfiguredRetrofit(beanName);
+        Retrofit retrofit = getConfiguredRetrofit(serviceClass, beanName);
+        Class<? extends T> generatedClass = getGeneratedClass(serviceClass);
+        T service;
+
+        if (generatedClass != null) {
+            logger.debug("Using generated implementation {} for {}", generatedClass.getName(), beanName);
+
+            service = BeanUtils.instantiateClass(
+                    ClassUtils.getConstructorIfAvailable(generatedClass, Retrofit.class), retrofit);
+        } else {
+            service = retrofit.create(serviceClass);
+        }
+
+        createdServices.add(new CreatedService(beanName, serviceClass, retrofit));
+
+        return service;
+    }
+
+    @Override
+    public void close() {
+        for (RateLimitedCallFactory rateLimitedCallFactory : rateLimitedCallFactories) {
+            rateLimitedCallFactory.close();
+        }
+    }
+
+    /**
+     * Returns the services created by this factory so far.
+     *
+     * @return the services in the order they were created.
+     */
+    public List<CreatedService> getCreatedServices() {
+        return Collections.unmodifiableList(createdServices);
+    }
+
+    /**
+     * Returns the implementation generated for the given service interface.
+     *
+     * @param serviceClass the service interface.
+     * @param <T> the type of the service.
+     * @return the generated class or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Class<? extends T> getGeneratedClass(Class<T> serviceClass) {
+        String className = ClassUtils.getPackageName(serviceClass) + "."
+                + ClassUtils.getShortName(serviceClass).replace('.', '_') + GENERATED_CLASS_SUFFIX;
+        ClassLoader classLoader = serviceClass.getClassLoader();
+
+        if (!ClassUtils.isPresent(className, classLoader)) {
+            return null;
+        }
+
+        Class<?> generatedClass = ClassUtils.resolveClassName(className, classLoader);
+
+        if (!serviceClass.isAssignableFrom(generatedClass)
+                || ClassUtils.getConstructorIfAvailable(generatedClass, Retrofit.class) == null) {
+            logger.warn("Ignoring {}, it is not a generated implementation of {}", className, serviceClass.getName());
+
+            return null;
+        }
 
-        return retrofit.create(serviceClass);
+        return (Class<? extends T>) generatedClass;
     }
 
-    private Retrofit getConfiguredRetrofit(String beanName) {
-        return defaultRetrofit;
+    private Retrofit getConfiguredRetrofit(Class<?> serviceClass, String beanName) {
+        RetrofitService annotation = serviceClass.getAnnotation(RetrofitService.class);
+        Retrofit retrofit = defaultRetrofit;
+
+        if (annotation != null && StringUtils.hasText(annotation.client())) {
+            retrofit = getClientRetrofit(annotation.client());
+        }
+
+        RetrofitProperties.Service service = properties.getServices().get(beanName);
+        RetrofitProperties.RateLimit rateLimit =
+                service != null ? service.getRateLimit() : new RetrofitProperties.RateLimit();
+        RateLimiter rateLimiter = getRateLimiter(beanName, rateLimit);
+        RetrofitProperties.AdaptiveTimeout adaptiveTimeout =
+                service != null ? service.getAdaptiveTimeout() : new RetrofitProperties.AdaptiveTimeout();
+
+        Call.Factory callFactory = retrofit.callFactory();
+        List<CallAdapter.Factory> callAdapterFactories = new ArrayList<CallAdapter.Factory>();
+
+        if (isOperationsNamed()) {
+            callAdapterFactories.add(new TracingCallAdapterFactory(beanName, serviceClass));
+        }
+
+        if (adaptiveTimeout.isEnabled()) {
+            Assert.state(OKHTTP_SUPPORT_PRESENT,
+                    "The adaptive timeouts of " + beanName + " require the OkHttp auto-configuration");
+
+            callAdapterFactories.add(new AdaptiveTimeoutCallAdapterFactory(
+                    beanName, serviceClass, adaptiveTimeout, getAdaptiveTimeoutRegistry()));
+            callFactory = AdaptiveTimeoutCallAdapterFactory.withDeadlines(callFactory);
+        }
+
+        if (rateLimiter != null) {
+            long maxWait = rateLimit.getMode() == RetrofitProperties.RateLimitMode.FAIL_FAST
+                    ? 0
+                    : rateLimit.getMaxWait();
+
+            RateLimitedCallFactory rateLimitedCallFactory =
+                    new RateLimitedCallFactory(callFactory, rateLimiter, maxWait);
+
+            rateLimitedCallFactories.add(rateLimitedCallFactory);
+            callFactory = rateLimitedCallFactory;
+        }
+
+        if (hasFireAndForgetMethods(serviceClass)) {
+            // Queued calls are sent later, the other call adapters must not see them
+            callAdapterFactories.add(0, new OutboxCallAdapterFactory(createOutbox(beanName, callFactory)));
+        }
+
+        if (callFactory == retrofit.callFactory() && callAdapterFactories.isEmpty()) {
+            return retrofit;
+        }
+
+        // The rate limit, the timeouts and the call names apply to this service only, so it gets a Retrofit
+        // instance of its own
+        return newBuilder(retrofit, callAdapterFactories.toArray(new CallAdapter.Factory[callAdapterFactories.size()]))
+                .callFactory(callFactory)
+                .validateEagerly(properties.getWarmUp().isEnabled())
+                .build();
+    }
+
+    /**
+     * Returns whether the calls are named after their service and method, which is only done when there is a
+     * {@link Tracer} or a {@link ClientMonitor} to use the names.
+     *
+     * @return {@code true} if the calls are named.
+     */
+    private synchronized boolean isOperationsNamed() {
+        if (operationsNamed == null) {
+            operationsNamed = OKHTTP_SUPPORT_PRESENT && OkHttpSupport.hasOperationConsumers(beanFactory);
+        }
+
+        return operationsNamed;
+    }
+
+    /**
+     * Returns the registry bean of the adaptive timeouts, or a registry of this factory if there is none.
+     *
+     * @return the registry.
+     */
+    private synchronized AdaptiveTimeoutRegistry getAdaptiveTimeoutRegistry() {
+        if (adaptiveTimeoutRegistry == null) {
+            adaptiveTimeoutRegistry = beanFactory.containsBean(AdaptiveTimeoutRegistry.BEAN_NAME)
+                    ? beanFactory.getBean(AdaptiveTimeoutRegistry.BEAN_NAME, AdaptiveTimeoutRegistry.class)
+                    : new AdaptiveTimeoutRegistry();
+        }
+
+        return adaptiveTimeoutRegistry;
+    }
+
+    /**
+     * Returns the registry bean of the outboxes, or a registry of this factory if there is none.
+     *
+     * @return the registry.
+     */
+    private synchronized OutboxRegistry getOutboxRegistry() {
+        if (outboxRegistry == null) {
+            outboxRegistry = beanFactory.containsBean(OutboxRegistry.BEAN_NAME)
+                    ? beanFactory.getBean(OutboxRegistry.BEAN_NAME, OutboxRegistry.class)
+                    : new OutboxRegistry();
+        }
+
+        return outboxRegistry;
     }
 
+    private Outbox createOutbox(String beanName, Call.Factory callFactory) {
+        RetrofitProperties.Outbox outboxProperties = properties.getOutbox();
+
+        if (outboxProperties.getDirectory() == null) {
+            throw new IllegalStateException("The service " + beanName + " has fire-and-forget methods, "
+                    + "spring.retrofit.outbox.directory must be set");
+        }
+
+        File directory = new File(outboxProperties.getDirectory(), beanName);
+        Outbox outbox;
+
+        try {
+            outbox = new Outbox(beanName, directory, callFactory, outboxProperties);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open the outbox of " + beanName + " in " + directory, e);
+        }
+
+        try {
+            getOutboxRegistry().register(beanName, outbox);
+        } catch (IllegalStateException e) {
+            outbox.close();
+
+            throw e;
+        }
+
+        outbox.start();
+
+        return outbox;
+    }
+
+    private static boolean hasFireAndForgetMethods(Class<?> serviceClass) {
+        for (Method method : serviceClass.getMethods()) {
+            if (method.isAnnotationPresent(FireAndForget.class)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private RateLimiter getRateLimiter(String beanName, RetrofitProperties.RateLimit rateLimit) {
+        if (beanFactory.containsBean(beanName + RATE_LIMITER_BEAN_NAME_SUFFIX)) {
+            return beanFactory.getBean(beanName + RATE_LIMITER_BEAN_NAME_SUFFIX, RateLimiter.class);
+        }
+
+        if (rateLimit.getPermitsPerSecond() != null) {
+            return new TokenBucketRateLimiter(rateLimit.getPermitsPerSecond(), rateLimit.getBurst());
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a {@link Retrofit} instance using the client of the given profile, shared by all services of the
+     * profile.
+     *
+     * @param client the name of the client profile.
+     * @return the Retrofit instance of the profile.
+     */
+    private synchronized Retrofit getClientRetrofit(String client) {
+        Retrofit retrofit = clientRetrofits.get(client);
+
+        if (retrofit == null) {
+            Call.Factory callFactory;
+
+            if (beanFactory.containsBean(client + CALL_FACTORY_BEAN_NAME_SUFFIX)) {
+                callFactory = beanFactory.getBean(client + CALL_FACTORY_BEAN_NAME_SUFFIX, Call.Factory.class);
+            } else {
+                callFactory = beanFactory.getBean(client + CLIENT_BEAN_NAME_SUFFIX, OkHttpClient.class);
+            }
+
+            retrofit = newBuilder(defaultRetrofit)
+                    .callFactory(callFactory)
+                    .validateEagerly(properties.getWarmUp().isEnabled())
+                    .build();
+            clientRetrofits.put(client, retrofit);
+        }
+
+        return retrofit;
+    }
+
+    /**
+     * Creates a builder configured like the given {@link Retrofit} instance.
+     * <p>
+     * The builder always adds the built-in converters first and the platform call adapter last, so those are
+     * skipped when copying the factories.
+     *
+     * @param retrofit the instance to copy.
+     * @param callAdapterFactories call adapter factories to add before the ones of the given instance.
+     * @return a builder with the configuration of the given instance.
+     */
+    static Retrofit.Builder newBuilder(Retrofit retrofit, CallAdapter.Factory... callAdapterFactories) {
+        Retrofit.Builder builder = new Retrofit.Builder().baseUrl(retrofit.baseUrl());
+
+        for (CallAdapter.Factory factory : callAdapterFactories) {
+            builder.addCallAdapterFactory(factory);
+        }
+
+        List<Converter.Factory> converterFactories = retrofit.converterFactories();
+
+        for (Converter.Factory factory : converterFactories.subList(1, converterFactories.size())) {
+            builder.addConverterFactory(factory);
+        }
+
+        List<CallAdapter.Factory> copiedFactories = retrofit.callAdapterFactories();
+
+        for (CallAdapter.Factory factory : copiedFactories.subList(0, copiedFactories.size() - 1)) {
+            builder.addCallAdapterFactory(factory);
+        }
+
+        if (retrofit.callbackExecutor() != null) {
+            builder.callbackExecutor(retrofit.callbackExecutor());
+        }
+
+        return builder;
+    }
+
+    /**
+     * Service created by the factory.
+     */
+    public static class CreatedService {
+        private final String beanName;
+        private final Class<?> serviceClass;
+        private final Retrofit retrofit;
+
+        CreatedService(String beanName, Class<?> serviceClass, Retrofit retrofit) {
+            this.beanName = beanName;
+            this.serviceClass = serviceClass;
+            this.retrofit = retrofit;
+        }
+
+        public String getBeanName() {
+            return beanName;
+        }
+
+        public Class<?> getServiceClass() {
+            return serviceClass;
+        }
+
+        /**
+         * Returns the Retrofit instance the service was created with, which may be one of its own.
+         *
+         * @return the Retrofit instance.
+         */
+        public Retrofit getRetrofit() {
+            return retrofit;
+        }
+    }
+
+    /**
+     * Looks up the OkHttp auto-configuration beans, kept apart so that their classes are only loaded when present.
+     */
+    private static class OkHttpSupport {
+        static boolean hasOperationConsumers(BeanFactory beanFactory) {
+            if (!(beanFactory instanceof ListableBeanFactory)) {
+                return false;
+            }
+
+            ListableBeanFactory listableBeanFactory = (ListableBeanFactory) beanFactory;
+
+            return hasBean(listableBeanFactory, Tracer.class) || hasBean(listableBeanFactory, ClientMonitor.class);
+        }
+
+        private static boolean hasBean(ListableBeanFactory beanFactory, Class<?> type) {
+            return BeanFactoryUtils.beanNamesForTypeIncludingAncestors(beanFactory, type, true, false).length > 0;
+        }
+    }
 }
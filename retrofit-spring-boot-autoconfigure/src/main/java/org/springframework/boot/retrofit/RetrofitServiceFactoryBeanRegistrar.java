@@ -17,13 +17,22 @@ package org.springframework.boot.retrofit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.boot.retrofit.annotation.RetrofitService;
+import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.AnnotationBeanNameGenerator;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
 import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.util.Assert;
@@ -31,10 +40,19 @@ import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import java.beans.Introspector;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Bean definition registrar responsible for registering Retrofit specific bean definitions.
@@ -45,10 +63,29 @@ import java.util.Set;
  *
  * @author troinine
  */
-public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinitionRegistrar {
+public class RetrofitServiceFactoryBeanRegistrar
+        implements ImportBeanDefinitionRegistrar, EnvironmentAware, BeanClassLoaderAware {
+    /**
+     * Location of the service index written by the Retrofit service annotation processor. Each entry maps the
+     * binary name of a service interface to its bean name, or to an empty value for a generated bean name.
+     */
+    public static final String INDEX_LOCATION = "META-INF/retrofit-services.properties";
+
     private static final Logger logger = LoggerFactory.getLogger(RetrofitServiceFactoryBeanRegistrar.class);
 
     private final AnnotationBeanNameGenerator beanNameGenerator = new AnnotationBeanNameGenerator();
+    private Environment environment;
+    private ClassLoader classLoader;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
 
     @Override
     public void registerBeanDefinitions(AnnotationMetadata annotationMetadata, BeanDefinitionRegistry registry) {
@@ -62,8 +99,9 @@ public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinition
     }
 
     /**
-     * Scans for interfaces annotated with {@link RetrofitService} from the packages defined by
-     * {@link RetrofitServiceScan}.
+     * Registers the interfaces annotated with {@link RetrofitService} in the packages defined by
+     * {@link RetrofitServiceScan}. The services of the classpath entries with an index written at compile time are
+     * taken from the index, which avoids scanning those entries. The other classpath entries are scanned.
      *
      * @param annotationMetadata annotation metadata of the importing class
      * @param registry current bean definition registry
@@ -71,11 +109,21 @@ public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinition
     private void doRegisterRetrofitServiceBeanDefinitions(
             AnnotationMetadata annotationMetadata,
             BeanDefinitionRegistry registry) {
+        // Find packages to scan for Retrofit services.
+        Set<String> packagesToScan = getPackagesToScan(annotationMetadata);
+        List<String> indexedRoots = new ArrayList<String>();
+        Properties index = loadIndex(indexedRoots);
+
+        if (!index.isEmpty()) {
+            registerIndexedServices(index, packagesToScan, registry);
+        }
+
         RetrofitServiceComponentProvider provider = new RetrofitServiceComponentProvider();
         provider.addIncludeFilter(new AnnotationTypeFilter(RetrofitService.class, true, true));
 
-        // Find packages to scan for Retrofit services.
-        Set<String> packagesToScan = getPackagesToScan(annotationMetadata);
+        if (!indexedRoots.isEmpty()) {
+            provider.setResourceLoader(new UnindexedResourcePatternResolver(classLoader, indexedRoots));
+        }
 
         for (String packageToScan : packagesToScan) {
             logger.debug("Trying to find candidates from package {}", packageToScan);
@@ -88,6 +136,77 @@ public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinition
         }
     }
 
+    /**
+     * Loads the service indexes of all classpath entries.
+     *
+     * @param indexedRoots the list the URLs of the classpath entries with an index are added to.
+     * @return the merged index, empty if there is none or it is ignored.
+     */
+    private Properties loadIndex(List<String> indexedRoots) {
+        boolean ignored = new RelaxedPropertyResolver(environment, RetrofitProperties.PREFIX + ".")
+                .getProperty("ignore-service-index", Boolean.class, false);
+
+        if (ignored) {
+            return new Properties();
+        }
+
+        try {
+            ClassLoader classLoader = this.classLoader != null ? this.classLoader : ClassUtils.getDefaultClassLoader();
+            Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+            Properties index = PropertiesLoaderUtils.loadAllProperties(INDEX_LOCATION, classLoader);
+
+            while (urls.hasMoreElements()) {
+                String url = urls.nextElement().toString();
+                indexedRoots.add(url.substring(0, url.length() - INDEX_LOCATION.length()));
+            }
+
+            return index;
+        } catch (IOException e) {
+            logger.warn("Cannot read Retrofit service index, scanning the classpath instead", e);
+            indexedRoots.clear();
+
+            return new Properties();
+        }
+    }
+
+    /**
+     * Registers the services of the index that are located in the given packages.
+     *
+     * @param index the service index.
+     * @param packagesToScan the packages the services must be located in.
+     * @param registry the bean registry.
+     */
+    private void registerIndexedServices(
+            Properties index,
+            Set<String> packagesToScan,
+            BeanDefinitionRegistry registry) {
+        for (String className : new TreeSet<String>(index.stringPropertyNames())) {
+            if (!isInPackages(className, packagesToScan)) {
+                continue;
+            }
+
+            String beanName = index.getProperty(className);
+
+            if (!StringUtils.hasText(beanName)) {
+                beanName = Introspector.decapitalize(ClassUtils.getShortName(className));
+            }
+
+            logger.debug("Registering indexed Retrofit service {} with bean name {}", className, beanName);
+
+            registry.registerBeanDefinition(beanName, new RootBeanDefinition(className));
+        }
+    }
+
+    private static boolean isInPackages(String className, Set<String> packages) {
+        for (String packageName : packages) {
+            if (className.startsWith(packageName + ".")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Processes the given set of bean definitions and registers them to the bean definition registry
      * to be further processed by {@link RetrofitServiceBeanPostProcessorAdapter}.
@@ -154,16 +273,14 @@ public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinition
     private String generateBeanName(BeanDefinition beanDefinition, BeanDefinitionRegistry registry) {
         String beanName = null;
 
-        // Try obtaining the client specified bean name if available in the annotated interface
-        try {
-            Class<?> beanClass = Class.forName(beanDefinition.getBeanClassName());
-            RetrofitService annotation = beanClass.getAnnotation(RetrofitService.class);
+        // Use the client specified bean name if available, read from the class file without loading the interface
+        if (beanDefinition instanceof AnnotatedBeanDefinition) {
+            Map<String, Object> attributes = ((AnnotatedBeanDefinition) beanDefinition).getMetadata()
+                    .getAnnotationAttributes(RetrofitService.class.getName());
 
-            if (annotation != null && StringUtils.hasText(annotation.name())) {
-                beanName = annotation.name();
+            if (attributes != null && StringUtils.hasText((String) attributes.get("name"))) {
+                beanName = (String) attributes.get("name");
             }
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("Cannot obtain bean name for Retrofit service interface", e);
         }
 
         if (beanName == null) {
@@ -172,4 +289,42 @@ public class RetrofitServiceFactoryBeanRegistrar implements ImportBeanDefinition
 
         return beanName;
     }
+
+    /**
+     * Resolves the resources of the classpath entries without a service index only, so that scanning skips the
+     * entries whose services are registered from their index.
+     */
+    private static class UnindexedResourcePatternResolver extends PathMatchingResourcePatternResolver {
+        private final List<String> indexedRoots;
+
+        UnindexedResourcePatternResolver(ClassLoader classLoader, List<String> indexedRoots) {
+            super(classLoader);
+
+            this.indexedRoots = indexedRoots;
+        }
+
+        @Override
+        public Resource[] getResources(String locationPattern) throws IOException {
+            // Also called for the root directories of a pattern, so the indexed entries are not even traversed
+            List<Resource> resources = new ArrayList<Resource>();
+
+            for (Resource resource : super.getResources(locationPattern)) {
+                if (!isIndexed(resource.getURL().toString())) {
+                    resources.add(resource);
+                }
+            }
+
+            return resources.toArray(new Resource[resources.size()]);
+        }
+
+        private boolean isIndexed(String url) {
+            for (String indexedRoot : indexedRoots) {
+                if (url.startsWith(indexedRoot)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
 }
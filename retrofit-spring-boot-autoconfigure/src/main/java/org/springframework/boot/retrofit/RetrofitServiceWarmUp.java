@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.util.ClassUtils;
+import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.http.Body;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the {@link org.springframework.boot.retrofit.annotation.RetrofitService} instances once all singletons
+ * have been created, so that the first calls after startup do not pay for it.
+ * <p>
+ * Retrofit parses a service method and resolves its converters on the first call of the method, and the JSON
+ * converters build the serializers and deserializers of a type when they are first resolved for it. With the
+ * warm-up enabled, {@link RetrofitServiceFactory} has Retrofit parse the methods of the proxies when they are
+ * created, like the implementations generated at compile time always do, so an invalid service method fails the
+ * startup rather than its first call. This bean then walks the methods of every
+ * service created by the {@link RetrofitServiceBeanPostProcessorAdapter} and resolves the call adapter, the
+ * response body converter and the converters of the {@link Body} parameters of each, which builds the
+ * (de)serializers of the model types the proxies do not resolve eagerly, such as the items of paged methods.
+ * <p>
+ * Optionally, each model type is then encoded and decoded the given number of times, starting from an instance
+ * created with its public no-argument constructor, so that the converters are compiled by the JIT before the first
+ * calls. Collections and arrays are warmed up with one such element. Types that cannot be instantiated that way,
+ * or fail to convert, are skipped: this bean never fails the startup.
+ *
+ * @author troinine
+ */
+public class RetrofitServiceWarmUp implements SmartInitializingSingleton, BeanFactoryAware {
+    private static final Logger logger = LoggerFactory.getLogger(RetrofitServiceWarmUp.class);
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final int passes;
+    private BeanFactory beanFactory;
+    private volatile int services;
+    private volatile int methods;
+    private volatile long duration = -1;
+
+    /**
+     * @param passes the number of synthetic encode and decode passes of each model type, 0 for none.
+     */
+    public RetrofitServiceWarmUp(int passes) {
+        if (passes < 0) {
+            throw new IllegalArgumentException("The number of passes must not be negative, was " + passes);
+        }
+
+        this.passes = passes;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (beanFactory == null || !beanFactory.containsBean(RetrofitServiceBeanPostProcessorAdapter.BEAN_NAME)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int methods = 0;
+        List<RetrofitServiceFactory.CreatedService> services = beanFactory.getBean(
+                RetrofitServiceBeanPostProcessorAdapter.BEAN_NAME,
+                RetrofitServiceBeanPostProcessorAdapter.class).getCreatedServices();
+
+        for (RetrofitServiceFactory.CreatedService service : services) {
+            methods += warmUp(service.getRetrofit(), service.getServiceClass());
+        }
+
+        this.services = services.size();
+        this.methods = methods;
+        this.duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        logger.info("Warmed up {} methods of {} Retrofit services in {} ms", methods, services.size(), duration);
+    }
+
+    /**
+     * Warms up the methods of a service.
+     *
+     * @param retrofit the Retrofit instance the service was created with.
+     * @param serviceClass the service interface.
+     * @return the number of methods warmed up.
+     */
+    public int warmUp(Retrofit retrofit, Class<?> serviceClass) {
+        Set<Type> warmedTypes = new HashSet<Type>();
+        int methods = 0;
+
+        for (Method method : serviceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+
+            try {
+                warmUp(retrofit, method, warmedTypes);
+                methods++;
+            } catch (RuntimeException e) {
+                // Retrofit reports the same error on the first call, which is where it belongs
+                logger.debug("Skipping warm-up of {}", method, e);
+            }
+        }
+
+        return methods;
+    }
+
+    /**
+     * Returns the number of services warmed up at startup.
+     *
+     * @return the number of services.
+     */
+    public int getServices() {
+        return services;
+    }
+
+    /**
+     * Returns the number of service methods warmed up at startup.
+     *
+     * @return the number of methods.
+     */
+    public int getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns how long the warm-up at startup took.
+     *
+     * @return the duration in milliseconds or {@code -1} if the warm-up has not run.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    private void warmUp(Retrofit retrofit, Method method, Set<Type> warmedTypes) {
+        Annotation[] methodAnnotations = method.getAnnotations();
+        CallAdapter<?> callAdapter = retrofit.callAdapter(method.getGenericReturnType(), methodAnnotations);
+        Type responseType = callAdapter.responseType();
+        retrofit.responseBodyConverter(responseType, methodAnnotations);
+
+        if (warmedTypes.add(responseType)) {
+            runPasses(retrofit, responseType, NO_ANNOTATIONS, methodAnnotations);
+        }
+
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!isBody(parameterAnnotations[i])) {
+                continue;
+            }
+
+            retrofit.requestBodyConverter(parameterTypes[i], parameterAnnotations[i], methodAnnotations);
+
+            if (warmedTypes.add(parameterTypes[i])) {
+                runPasses(retrofit, parameterTypes[i], parameterAnnotations[i], methodAnnotations);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runPasses(
+            Retrofit retrofit,
+            Type type,
+            Annotation[] parameterAnnotations,
+            Annotation[] methodAnnotations) {
+        if (passes == 0) {
+            return;
+        }
+
+        try {
+            Object sample = newSample(type);
+
+            if (sample == null) {
+                return;
+            }
+
+            Converter<Object, RequestBody> requestBodyConverter = (Converter<Object, RequestBody>)
+                    retrofit.requestBodyConverter(type, parameterAnnotations, methodAnnotations);
+            Converter<ResponseBody, ?> responseBodyConverter =
+                    retrofit.responseBodyConverter(type, methodAnnotations);
+
+            for (int i = 0; i < passes; i++) {
+                RequestBody body = requestBodyConverter.convert(sample);
+                Buffer buffer = new Buffer();
+                body.writeTo(buffer);
+
+                Object decoded = responseBodyConverter.convert(
+                        ResponseBody.create(body.contentType(), buffer.size(), buffer));
+
+                if (decoded instanceof ResponseBody) {
+                    ((ResponseBody) decoded).close();
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Skipping synthetic passes of {}", type, e);
+        } catch (RuntimeException e) {
+            logger.debug("Skipping synthetic passes of {}", type, e);
+        }
+    }
+
+    private static boolean isBody(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Body) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates an instance of a model type to encode and decode.
+     *
+     * @param type the model type.
+     * @return the instance or {@code null} if the type cannot be instantiated.
+     */
+    static Object newSample(Type type) {
+        if (type instanceof ParameterizedType) {
+            Class<?> rawType = (Class<?>) ((ParameterizedType) type).getRawType();
+            Collection<Object> collection;
+
+            if (rawType.isAssignableFrom(ArrayList.class)) {
+                collection = new ArrayList<Object>();
+            } else if (rawType.isAssignableFrom(LinkedHashSet.class)) {
+                collection = new LinkedHashSet<Object>();
+            } else {
+                return newSample(rawType);
+            }
+
+            Object element = newSample(((ParameterizedType) type).getActualTypeArguments()[0]);
+
+            if (element == null) {
+                return null;
+            }
+
+            collection.add(element);
+
+            return collection;
+        }
+
+        if (!(type instanceof Class)) {
+            return null;
+        }
+
+        Class<?> clazz = (Class<?>) type;
+
+        if (clazz.isArray()) {
+            Object element = newSample(clazz.getComponentType());
+
+            if (element == null) {
+                return null;
+            }
+
+            Object array = Array.newInstance(clazz.getComponentType(), 1);
+            Array.set(array, 0, element);
+
+            return array;
+        }
+
+        // Only the application's own model classes, the JDK types are warm already
+        if (clazz.isInterface() || clazz.isPrimitive() || Modifier.isAbstract(clazz.getModifiers())
+                || clazz.getName().startsWith("java.")) {
+            return null;
+        }
+
+        Constructor<?> constructor = ClassUtils.getConstructorIfAvailable(clazz);
+
+        return constructor != null ? BeanUtils.instantiateClass(constructor) : null;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.springframework.boot.okhttp.Deadline;
+import org.springframework.boot.okhttp.DeadlineExceededException;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the calls of one or more Retrofit services in parallel under a single deadline, gathering whatever
+ * completed by then.
+ * <p>
+ * The calls are enqueued together on the dispatcher of their clients, so no thread is spent waiting for each of
+ * them. The deadline starts when the calls are executed and is shortened to the {@link Deadline} of the current
+ * thread if that is earlier. When the OkHttp auto-configuration is present, the deadline is also set as the
+ * {@link Deadline} of the calls, which carry it to the servers. The calls still running when the deadline passes
+ * are canceled right away, which frees their connections, and their parts are marked
+ * {@link Status#TIMED_OUT timed out}:
+ * <pre class="code">
+ * ScatterGather gather = new ScatterGather(500, TimeUnit.MILLISECONDS);
+ * ScatterGather.Part&lt;User&gt; user = gather.add(userService.getUser(id));
+ * ScatterGather.Part&lt;List&lt;Order&gt;&gt; orders = gather.add(orderService.getOrders(id));
+ *
+ * gather.execute();
+ *
+ * if (orders.isSuccessful()) {
+ *     // Use orders.body()
+ * }
+ * </pre>
+ * Only services returning {@link Call} can be gathered. An instance executes its calls once and is not thread
+ * safe, the parts can be read from any thread after {@link #execute()} returns.
+ *
+ * @author troinine
+ */
+public class ScatterGather {
+    private static final boolean DEADLINE_PRESENT = ClassUtils.isPresent(
+            "org.springframework.boot.okhttp.Deadline", ScatterGather.class.getClassLoader());
+
+    private final long timeoutNanos;
+    private final List<Part<?>> parts = new ArrayList<Part<?>>();
+    private boolean executed;
+
+    /**
+     * Creates an empty scatter-gather.
+     *
+     * @param timeout the time the calls are given from the time they are executed.
+     * @param unit the unit of the timeout.
+     */
+    public ScatterGather(long timeout, TimeUnit unit) {
+        Assert.isTrue(timeout > 0, "The timeout must be positive");
+
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Adds a call to be made.
+     *
+     * @param call a call created by a Retrofit service, not executed yet.
+     * @param <T> the type of the response body.
+     * @return the part holding the outcome of the call.
+     */
+    public <T> Part<T> add(Call<T> call) {
+        Assert.state(!executed, "Already executed");
+
+        Part<T> part = new Part<T>(call);
+        parts.add(part);
+
+        return part;
+    }
+
+    /**
+     * Makes the calls in parallel and waits until they are all done or the deadline passes, canceling the calls
+     * not done by then. If the waiting thread is interrupted, the calls not done are canceled too.
+     *
+     * @return {@code true} if all calls were done in time, {@code false} if some are {@link Status#TIMED_OUT timed
+     * out}, either canceled at the deadline or failed on their own deadline before it.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public boolean execute() throws InterruptedException {
+        Assert.state(!executed, "Already executed");
+        executed = true;
+
+        long timeoutNanos = DEADLINE_PRESENT ? DeadlineSupport.limit(this.timeoutNanos) : this.timeoutNanos;
+        CountDownLatch done = new CountDownLatch(parts.size());
+        Object previous = DEADLINE_PRESENT ? DeadlineSupport.set(timeoutNanos) : null;
+
+        try {
+            for (Part<?> part : parts) {
+                part.enqueue(done);
+            }
+        } finally {
+            if (DEADLINE_PRESENT) {
+                DeadlineSupport.restore(previous);
+            }
+        }
+
+        boolean completed = false;
+
+        try {
+            completed = done.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            if (!completed) {
+                for (Part<?> part : parts) {
+                    part.timeOut();
+                }
+            }
+        }
+
+        // A call failing on its deadline counts the latch down too, so the parts tell whether all were in time
+        for (Part<?> part : parts) {
+            if (part.getStatus() == Status.TIMED_OUT) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the parts in the order the calls were added.
+     *
+     * @return the parts.
+     */
+    public List<Part<?>> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Outcome of a gathered call.
+     */
+    public enum Status {
+        /**
+         * The call has not been made yet or is still running.
+         */
+        PENDING,
+
+        /**
+         * A response was received. It may not be {@link Response#isSuccessful() successful}.
+         */
+        COMPLETED,
+
+        /**
+         * The call failed before the deadline.
+         */
+        FAILED,
+
+        /**
+         * The call was not done by the deadline and was canceled, or failed because its deadline passed.
+         */
+        TIMED_OUT
+    }
+
+    /**
+     * A gathered call and its outcome.
+     *
+     * @param <T> the type of the response body.
+     */
+    public static class Part<T> {
+        private final Call<T> call;
+        private Status status = Status.PENDING;
+        private Response<T> response;
+        private Throwable failure;
+
+        Part(Call<T> call) {
+            this.call = call;
+        }
+
+        public synchronized Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the response of a {@link Status#COMPLETED completed} call.
+         *
+         * @return the response or {@code null} if the call did not complete.
+         */
+        public synchronized Response<T> getResponse() {
+            return response;
+        }
+
+        /**
+         * Returns the failure of a {@link Status#FAILED failed} call.
+         *
+         * @return the failure or {@code null} if the call did not fail.
+         */
+        public synchronized Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns whether the call completed with a successful response.
+         *
+         * @return {@code true} if the response is successful.
+         */
+        public synchronized boolean isSuccessful() {
+            return response != null && response.isSuccessful();
+        }
+
+        /**
+         * Returns the body of a successful response.
+         *
+         * @return the body or {@code null} if the call was not successful.
+         */
+        public synchronized T body() {
+            return response != null ? response.body() : null;
+        }
+
+        void enqueue(final CountDownLatch done) {
+            try {
+                call.enqueue(new Callback<T>() {
+                    @Override
+                    public void onResponse(Call<T> call, Response<T> response) {
+                        complete(Status.COMPLETED, response, null);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Call<T> call, Throwable t) {
+                        if (DEADLINE_PRESENT && DeadlineSupport.isExceeded(t)) {
+                            // The deadline only canceled the OkHttp call, cancel this one as at the deadline
+                            timeOut();
+                        } else {
+                            complete(Status.FAILED, null, t);
+                        }
+
+                        done.countDown();
+                    }
+                });
+            } catch (RuntimeException e) {
+                complete(Status.FAILED, null, e);
+                done.countDown();
+            }
+        }
+
+        void timeOut() {
+            if (complete(Status.TIMED_OUT, null, null)) {
+                call.cancel();
+            }
+        }
+
+        private synchronized boolean complete(Status status, Response<T> response, Throwable failure) {
+            if (this.status != Status.PENDING) {
+                return false;
+            }
+
+            this.status = status;
+            this.response = response;
+            this.failure = failure;
+
+            return true;
+        }
+    }
+
+    /**
+     * Applies the deadline to the calls, kept apart so that OkHttp auto-configuration classes are only loaded
+     * when present.
+     */
+    private static class DeadlineSupport {
+        static long limit(long timeoutNanos) {
+            Deadline current = Deadline.current();
+
+            if (current == null) {
+                return timeoutNanos;
+            }
+
+            return Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(Math.max(current.remainingMillis(), 0)));
+        }
+
+        static Object set(long timeoutNanos) {
+            return Deadline.set(Deadline.after(TimeUnit.NANOSECONDS.toMillis(timeoutNanos), TimeUnit.MILLISECONDS));
+        }
+
+        static void restore(Object previous) {
+            Deadline.restore((Deadline) previous);
+        }
+
+        static boolean isExceeded(Throwable failure) {
+            return failure instanceof DeadlineExceededException;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Jackson converter factory avoiding the intermediate copies of {@code retrofit2.converter.jackson}.
+ * <p>
+ * Request bodies are serialized straight into the pooled segments of an Okio {@link Buffer} instead of a
+ * {@code byte[]}, so the body keeps its {@code Content-Length}, and the segments are handed over to the connection
+ * without copying, which returns them to the pool once written. Bodies written more than once, as when following
+ * a redirect, are serialized again. Response bodies are parsed from the raw byte stream with Jackson's UTF-8
+ * parser instead of going through a decoding {@link java.io.Reader}, unless the response declares a charset other
+ * than UTF-8. In both directions Jackson recycles its own buffers per thread, and the readers and writers are
+ * resolved once per service method.
+ *
+ * @author troinine
+ */
+public class StreamingJacksonConverterFactory extends Converter.Factory {
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/json; charset=UTF-8");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ObjectMapper mapper;
+
+    private StreamingJacksonConverterFactory(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public static StreamingJacksonConverterFactory create() {
+        return create(new ObjectMapper());
+    }
+
+    public static StreamingJacksonConverterFactory create(ObjectMapper mapper) {
+        if (mapper == null) {
+            throw new NullPointerException("mapper == null");
+        }
+
+        return new StreamingJacksonConverterFactory(mapper);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        JavaType javaType = mapper.getTypeFactory().constructType(type);
+
+        return new ResponseBodyConverter<Object>(mapper.readerFor(javaType));
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(
+            Type type,
+            Annotation[] parameterAnnotations,
+            Annotation[] methodAnnotations,
+            Retrofit retrofit) {
+        JavaType javaType = mapper.getTypeFactory().constructType(type);
+
+        return new RequestBodyConverter<Object>(mapper.writerFor(javaType));
+    }
+
+    private static class RequestBodyConverter<T> implements Converter<T, RequestBody> {
+        private final ObjectWriter writer;
+
+        RequestBodyConverter(ObjectWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public RequestBody convert(T value) throws IOException {
+            return new BufferRequestBody(writer, value);
+        }
+    }
+
+    private static class BufferRequestBody extends RequestBody {
+        private final ObjectWriter writer;
+        private final Object value;
+        private final long contentLength;
+        private Buffer buffer;
+
+        BufferRequestBody(ObjectWriter writer, Object value) throws IOException {
+            this.writer = writer;
+            this.value = value;
+            this.buffer = encode();
+            this.contentLength = buffer.size();
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            Buffer encoded = buffer;
+            buffer = null;
+
+            if (encoded == null) {
+                // Written again, for example when following a redirect, the segments of the first encoding
+                // were handed over to the connection
+                encoded = encode();
+            }
+
+            sink.write(encoded, encoded.size());
+        }
+
+        private Buffer encode() throws IOException {
+            Buffer encoded = new Buffer();
+            writer.writeValue(encoded.outputStream(), value);
+
+            return encoded;
+        }
+    }
+
+    private static class ResponseBodyConverter<T> implements Converter<ResponseBody, T> {
+        private final ObjectReader reader;
+
+        ResponseBodyConverter(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public T convert(ResponseBody value) throws IOException {
+            try {
+                MediaType contentType = value.contentType();
+
+                if (contentType == null || UTF_8.equals(contentType.charset(UTF_8))) {
+                    return reader.readValue(value.byteStream());
+                }
+
+                return reader.readValue(value.charStream());
+            } finally {
+                value.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket {@link RateLimiter}.
+ * <p>
+ * The bucket holds up to the burst size of permits and is refilled at the configured rate. Instead of counting
+ * tokens, it keeps the time at which the bucket would be empty again if no more permits were taken, in a single
+ * {@link AtomicLong} updated by compare-and-set (the generic cell rate algorithm). Taking a permit thus never
+ * blocks other threads, and permits waited for are reserved in arrival order.
+ *
+ * @author troinine
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+    private final AtomicLong emptyAt;
+    private final long interval;
+    private final long tolerance;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permitsPerSecond the rate at which the bucket is refilled.
+     * @param burst the number of permits the bucket holds, at least one.
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive, was " + permitsPerSecond);
+        }
+
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst must be at least 1, was " + burst);
+        }
+
+        this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * (burst - 1);
+        this.emptyAt = new AtomicLong(nanoTime() - interval);
+    }
+
+    @Override
+    public long reserve(long timeout, TimeUnit unit) {
+        long timeoutNanos = unit.toNanos(timeout);
+
+        while (true) {
+            long now = nanoTime();
+            long current = emptyAt.get();
+            long start = current - now > 0 ? current : now;
+            long wait = start - now - tolerance;
+
+            if (wait > timeoutNanos) {
+                return -1;
+            }
+
+            if (emptyAt.compareAndSet(current, start + interval)) {
+                return wait > 0 ? wait : 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the current value of the time source in nanoseconds. Exposed for tests.
+     *
+     * @return the current time in nanoseconds.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Request;
+import org.springframework.boot.okhttp.TracedOperation;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * Call adapter factory naming the calls of a Retrofit service after the service and its invoked method.
+ * <p>
+ * Sets the {@link TracedOperation} on the current thread while Retrofit creates the underlying OkHttp call, like
+ * {@link PriorityCallAdapterFactory} does for priorities, so that the tracing call factory of the OkHttp
+ * auto-configuration names the client span of the call {@code <bean name>/<method name>}. Retrofit does not tell
+ * call adapter factories which method they adapt, so the method is recognized by its return type and annotations.
+ * Methods that cannot be told apart that way are named after the first of them.
+ *
+ * @author troinine
+ */
+public class TracingCallAdapterFactory extends CallAdapter.Factory {
+    private final String service;
+    private final Class<?> serviceClass;
+
+    /**
+     * Creates a factory for the given service.
+     *
+     * @param service the bean name of the service.
+     * @param serviceClass the service interface.
+     */
+    public TracingCallAdapterFactory(String service, Class<?> serviceClass) {
+        this.service = service;
+        this.serviceClass = serviceClass;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CallAdapter<?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Method method = findMethod(returnType, annotations);
+
+        if (method == null) {
+            return null;
+        }
+
+        CallAdapter<Object> delegate = (CallAdapter<Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+
+        return new TracingCallAdapter<Object>(delegate, new TracedOperation(service, method.getName()));
+    }
+
+    private Method findMethod(Type returnType, Annotation[] annotations) {
+        for (Method method : serviceClass.getMethods()) {
+            if (method.getGenericReturnType().equals(returnType)
+                    && Arrays.equals(method.getAnnotations(), annotations)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    private static class TracingCallAdapter<T> implements CallAdapter<T> {
+        private final CallAdapter<T> delegate;
+        private final TracedOperation operation;
+
+        TracingCallAdapter(CallAdapter<T> delegate, TracedOperation operation) {
+            this.delegate = delegate;
+            this.operation = operation;
+        }
+
+        @Override
+        public Type responseType() {
+            return delegate.responseType();
+        }
+
+        @Override
+        public <R> T adapt(Call<R> call) {
+            return delegate.adapt(new TracingCall<R>(call, operation));
+        }
+    }
+
+    private static class TracingCall<T> implements Call<T> {
+        private final Call<T> delegate;
+        private final TracedOperation operation;
+
+        TracingCall(Call<T> delegate, TracedOperation operation) {
+            this.delegate = delegate;
+            this.operation = operation;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            TracedOperation previous = TracedOperation.set(operation);
+
+            try {
+                return delegate.execute();
+            } finally {
+                TracedOperation.restore(previous);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            TracedOperation previous = TracedOperation.set(operation);
+
+            try {
+                delegate.enqueue(callback);
+            } finally {
+                TracedOperation.restore(previous);
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<T> clone() {
+            return new TracingCall<T>(delegate.clone(), operation);
+        }
+
+        @Override
+        public Request request() {
+            TracedOperation previous = TracedOperation.set(operation);
+
+            try {
+                return delegate.request();
+            } finally {
+                TracedOperation.restore(previous);
+            }
+        }
+    }
+}
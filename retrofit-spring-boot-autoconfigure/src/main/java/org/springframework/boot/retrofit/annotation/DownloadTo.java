@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Streams the response body of a Retrofit service method to a file instead of reading it into memory.
+ * <p>
+ * Applicable to methods whose response type is {@link java.nio.file.Path} or {@link java.io.File}. The body is
+ * written to a new file in the given directory, and the returned path points to that file. The caller owns the
+ * file and is responsible for moving or deleting it.
+ * <pre class="code">
+ * &#064;GET("/artifacts/{name}")
+ * &#064;DownloadTo("/var/cache/artifacts")
+ * Call&lt;java.nio.file.Path&gt; download(&#064;Path("name") String name);
+ * </pre>
+ *
+ * @author troinine
+ * @see org.springframework.boot.retrofit.FileConverterFactory
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface DownloadTo {
+    /**
+     * The directory to download to. Created if it does not exist. If left unspecified, the default temporary
+     * file directory is used.
+     *
+     * @return the directory to download to.
+     */
+    String value() default "";
+}
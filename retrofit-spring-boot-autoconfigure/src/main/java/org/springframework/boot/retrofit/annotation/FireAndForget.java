@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a Retrofit service method whose calls are queued in the outbox of the service and sent in the background
+ * instead of being made by the caller.
+ * <p>
+ * The method returns {@code boolean}: {@code true} once the call is written to the journal of the outbox, which
+ * survives restarts, and {@code false} if the journal is full. Invoking the method never waits for the server.
+ * Calls are sent in batches, in the order they were queued, at least once, and retried until the server accepts
+ * them or rejects them with a client error.
+ * <pre class="code">
+ * &#064;POST("/audit")
+ * &#064;FireAndForget
+ * boolean audit(&#064;Body AuditEvent event);
+ * </pre>
+ *
+ * @author troinine
+ * @see org.springframework.boot.retrofit.Outbox
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FireAndForget {
+}
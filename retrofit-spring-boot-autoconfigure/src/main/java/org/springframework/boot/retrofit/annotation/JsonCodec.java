@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opts a model class in to a JSON adapter generated at compile time, used instead of Jackson's reflective data
+ * binding.
+ * <p>
+ * The annotation processor of {@code retrofit-spring-boot-processor} generates a Moshi adapter for each annotated
+ * class, named after it with an {@code _JsonAdapter} suffix. The adapter binds the properties having both a getter
+ * and a setter, named like Jackson names them and honoring {@code @JsonProperty} and {@code @JsonIgnore}, and
+ * skips unknown properties. The class must be public with a public no-argument constructor.
+ * <pre class="code">
+ * &#064;JsonCodec
+ * public class Order {
+ *     private String id;
+ *     private List&lt;Item&gt; items;
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author troinine
+ * @see org.springframework.boot.retrofit.JsonCodecConverterFactory
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JsonCodec {
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes how a Retrofit service method returning {@link org.springframework.boot.retrofit.Pages} finds the
+ * next page of results.
+ * <p>
+ * By default the response bodies are lists of items, and the next page is the {@code rel="next"} link of the
+ * {@code Link} response header. For cursor-paged endpoints, set the query parameter carrying the cursor and the
+ * response body type, which implements {@link org.springframework.boot.retrofit.CursorPage}. The next page is then
+ * requested with the cursor of the previous page in that parameter.
+ * <pre class="code">
+ * &#064;GET("/orders")
+ * &#064;Paged
+ * Pages&lt;Order&gt; orders(&#064;Query("status") String status);
+ *
+ * &#064;GET("/events")
+ * &#064;Paged(cursor = "after", page = EventPage.class)
+ * Pages&lt;Event&gt; events();
+ * </pre>
+ *
+ * @author troinine
+ * @see org.springframework.boot.retrofit.PagingCallAdapterFactory
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Paged {
+    /**
+     * The query parameter carrying the cursor of the next page. Leave unspecified for {@code Link} header paging.
+     *
+     * @return the name of the query parameter.
+     */
+    String cursor() default "";
+
+    /**
+     * The response body type of cursor-paged methods, implementing
+     * {@link org.springframework.boot.retrofit.CursorPage} for the item type of the method.
+     *
+     * @return the page type.
+     */
+    Class<?> page() default Void.class;
+
+    /**
+     * The number of pages to fetch ahead of the page being consumed. If negative, the configured
+     * {@code spring.retrofit.paging.prefetch} applies.
+     *
+     * @return the prefetch depth.
+     */
+    int prefetch() default -1;
+}
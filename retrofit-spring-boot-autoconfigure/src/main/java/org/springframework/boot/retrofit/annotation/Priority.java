@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.annotation;
+
+import org.springframework.boot.okhttp.CallPriority;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the {@link CallPriority} of the calls made by a Retrofit service method.
+ * <p>
+ * The priority decides the order in which asynchronous calls waiting for the dispatcher are admitted when priority
+ * scheduling is enabled with {@code spring.okhttp.scheduling.enabled}. Methods without the annotation make calls
+ * of the priority of the calling thread.
+ * <pre class="code">
+ * &#064;GET("/reports")
+ * &#064;Priority(CallPriority.LOW)
+ * Call&lt;List&lt;Report&gt;&gt; reports();
+ * </pre>
+ *
+ * @author troinine
+ * @see org.springframework.boot.retrofit.PriorityCallAdapterFactory
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Priority {
+    /**
+     * The priority of the calls made by the method.
+     *
+     * @return the priority.
+     */
+    CallPriority value();
+}
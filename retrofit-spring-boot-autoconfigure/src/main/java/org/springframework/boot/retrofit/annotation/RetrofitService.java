@@ -42,4 +42,13 @@ public @interface RetrofitService {
      * @return the name of the bean.
      */
     String name() default "";
+
+    /**
+     * Defines the OkHttp client profile the service uses, as configured with {@code spring.okhttp.clients.<name>}.
+     * The profile is looked up as the {@link okhttp3.OkHttpClient} bean named {@code <name>OkHttpClient}. If left
+     * unspecified the service uses the client of the default {@link retrofit2.Retrofit} bean.
+     *
+     * @return the name of the client profile.
+     */
+    String client() default "";
 }
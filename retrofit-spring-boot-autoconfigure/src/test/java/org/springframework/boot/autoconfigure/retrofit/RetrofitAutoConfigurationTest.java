@@ -15,14 +15,26 @@
  */
 package org.springframework.boot.autoconfigure.retrofit;
 
+import okhttp3.OkHttpClient;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.boot.retrofit.FileConverterFactory;
+import org.springframework.boot.retrofit.JsonCodecConverterFactory;
+import org.springframework.boot.retrofit.PagingCallAdapterFactory;
+import org.springframework.boot.retrofit.PriorityCallAdapterFactory;
+import org.springframework.boot.retrofit.RetrofitServiceFactoryBeanRegistrar;
 import org.springframework.boot.retrofit.RetrofitServiceScan;
+import org.springframework.boot.retrofit.RetrofitServiceWarmUp;
+import org.springframework.boot.retrofit.StreamingJacksonConverterFactory;
 import org.springframework.boot.retrofit.annotation.RetrofitService;
 import org.springframework.boot.test.EnvironmentTestUtils;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import retrofit2.Call;
 import retrofit2.CallAdapter;
@@ -34,7 +46,15 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
 import retrofit2.http.GET;
 import rx.Observable;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -44,6 +64,9 @@ import static org.assertj.core.api.Assertions.*;
  * @author troinine
  */
 public class RetrofitAutoConfigurationTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private AnnotationConfigApplicationContext context;
 
     @RetrofitService
@@ -69,6 +92,13 @@ public class RetrofitAutoConfigurationTest {
         // To enable service scanning
     }
 
+    public static class CallFactoryConfiguration {
+        @Bean
+        public okhttp3.Call.Factory okHttpCallFactory() {
+            return new OkHttpClient();
+        }
+    }
+
     @Before
     public void setup() {
         loadContext();
@@ -100,8 +130,11 @@ public class RetrofitAutoConfigurationTest {
 
         // Retrofit internally adds its DefaultCallAdapterFactory
         assertThat(callAdapterFactories)
-                .hasSize(2)
+                .hasSize(4)
                 .hasAtLeastOneElementOfType(RxJavaCallAdapterFactory.class);
+        assertThat(callAdapterFactories.get(0)).isInstanceOf(PriorityCallAdapterFactory.class);
+        // Paging only handles Pages return types, ahead of the adapters that would claim any type
+        assertThat(callAdapterFactories.get(1)).isInstanceOf(PagingCallAdapterFactory.class);
     }
 
     @Test
@@ -115,11 +148,42 @@ public class RetrofitAutoConfigurationTest {
 
         // Retroit internally adds BuildInConverters
         assertThat(converterFactories)
-                .hasSize(3)
+                .hasSize(5)
+                .hasAtLeastOneElementOfType(FileConverterFactory.class)
+                .hasAtLeastOneElementOfType(JsonCodecConverterFactory.class)
                 .hasAtLeastOneElementOfType(JacksonConverterFactory.class)
                 .hasAtLeastOneElementOfType(ScalarsConverterFactory.class);
+
+        // Generated adapters handle their model classes before Jackson gets to them
+        assertThat(indexOf(converterFactories, JsonCodecConverterFactory.class))
+                .isLessThan(indexOf(converterFactories, JacksonConverterFactory.class));
+    }
+
+    @Test
+    public void testStreamingJacksonConverterReplacesJacksonConverter() {
+        context.close();
+        loadContext("spring.retrofit.jackson.streaming:true");
+
+        List<Converter.Factory> converterFactories = context.getBean(Retrofit.class).converterFactories();
+
+        assertThat(converterFactories)
+                .hasSize(5)
+                .hasAtLeastOneElementOfType(StreamingJacksonConverterFactory.class);
+        assertThat(indexOf(converterFactories, JsonCodecConverterFactory.class))
+                .isLessThan(indexOf(converterFactories, StreamingJacksonConverterFactory.class));
+        assertThat(context.getBeansOfType(JacksonConverterFactory.class)).isEmpty();
     }
 
+    @Test
+    public void testRetrofitUsesOkHttpCallFactory() {
+        context.close();
+        context = new AnnotationConfigApplicationContext();
+        EnvironmentTestUtils.addEnvironment(context, "spring.retrofit.base-url:http://localhost/");
+        context.register(RetrofitAutoConfiguration.class, CallFactoryConfiguration.class);
+        context.refresh();
+
+        assertThat(context.getBean(Retrofit.class).callFactory()).isSameAs(context.getBean("okHttpCallFactory"));
+    }
 
     @Test(expected = BeanCreationException.class)
     public void testMissingConfigrationProperties() {
@@ -145,10 +209,80 @@ public class RetrofitAutoConfigurationTest {
         assertThat(myCustomBeanNameService).isNotNull();
     }
 
-    private void loadContext() {
+    @Test
+    public void testServicesRegisteredFromIndex() {
+        assertThat(context.getBeanDefinition("retrofitAutoConfigurationTest.MyService"))
+                .isNotInstanceOf(AnnotatedBeanDefinition.class);
+        assertThat(context.getBean(MyCustomBeanNameService.BEAN_NAME)).isInstanceOf(MyCustomBeanNameService.class);
+    }
+
+    @Test
+    public void testServicesScannedWhenIndexIgnored() {
+        context.close();
+        loadContext("spring.retrofit.ignore-service-index:true");
+
+        assertThat(context.getBeanDefinition("retrofitAutoConfigurationTest.MyService"))
+                .isInstanceOf(AnnotatedBeanDefinition.class);
+        assertThat(context.getBean(MyCustomBeanNameService.BEAN_NAME)).isInstanceOf(MyCustomBeanNameService.class);
+    }
+
+    @Test
+    public void testServicesScannedInClasspathEntriesWithoutIndex() throws Exception {
+        // Only another classpath entry has an index, so the services of the test classes must still be scanned
+        Properties otherIndex = new Properties();
+        otherIndex.setProperty("com.example.OtherService", "");
+        File otherIndexFile = new File(folder.newFolder(), RetrofitServiceFactoryBeanRegistrar.INDEX_LOCATION);
+        otherIndexFile.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(otherIndexFile);
+
+        try {
+            otherIndex.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        final URL otherIndexUrl = otherIndexFile.toURI().toURL();
+
+        context.close();
+        context = new AnnotationConfigApplicationContext();
+        context.setClassLoader(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                if (name.equals(RetrofitServiceFactoryBeanRegistrar.INDEX_LOCATION)) {
+                    return Collections.enumeration(Collections.singletonList(otherIndexUrl));
+                }
+
+                return super.getResources(name);
+            }
+        });
+        EnvironmentTestUtils.addEnvironment(context, "spring.retrofit.base-url:http://localhost/");
+        context.register(RetrofitAutoConfiguration.class, RetrofitTestConfiguration.class);
+        context.refresh();
+
+        assertThat(context.getBeanDefinition("retrofitAutoConfigurationTest.MyService"))
+                .isInstanceOf(AnnotatedBeanDefinition.class);
+        assertThat(context.getBean(MyCustomBeanNameService.BEAN_NAME)).isInstanceOf(MyCustomBeanNameService.class);
+    }
+
+    @Test
+    public void testServicesWarmedUpWhenEnabled() {
+        assertThat(context.getBeansOfType(RetrofitServiceWarmUp.class)).isEmpty();
+
+        context.close();
+        loadContext("spring.retrofit.warm-up.enabled:true", "spring.retrofit.warm-up.passes:2");
+
+        RetrofitServiceWarmUp warmUp = context.getBean(RetrofitServiceWarmUp.class);
+
+        assertThat(warmUp.getServices()).isEqualTo(2);
+        assertThat(warmUp.getMethods()).isEqualTo(3);
+        assertThat(warmUp.getDuration()).isGreaterThanOrEqualTo(0);
+    }
+
+    private void loadContext(String... environment) {
         context = new AnnotationConfigApplicationContext();
 
         EnvironmentTestUtils.addEnvironment(context, "spring.retrofit.base-url:http://localhost/");
+        EnvironmentTestUtils.addEnvironment(context, environment);
 
         context.register(RetrofitAutoConfiguration.class,
                 RetrofitTestConfiguration.class);
@@ -156,6 +290,16 @@ public class RetrofitAutoConfigurationTest {
         context.refresh();
     }
 
+    private static int indexOf(List<?> factories, Class<?> type) {
+        for (int i = 0; i < factories.size(); i++) {
+            if (type.isInstance(factories.get(i))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
     private static class Hello {
         public String getMessage() {
             return message;
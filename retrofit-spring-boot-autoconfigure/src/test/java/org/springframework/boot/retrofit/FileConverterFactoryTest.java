@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.retrofit.annotation.DownloadTo;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link FileConverterFactory}
+ *
+ * @author troinine
+ */
+public class FileConverterFactoryTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private FileService service;
+
+    public interface FileService {
+        @POST("/upload")
+        Call<ResponseBody> upload(@Body Path path);
+
+        @POST("/upload")
+        Call<ResponseBody> upload(@Body FileChannel channel);
+
+        @GET("/download")
+        @DownloadTo
+        Call<Path> download();
+
+        @GET("/download")
+        Call<Path> downloadWithoutAnnotation();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new FileConverterFactory())
+                .addConverterFactory(JacksonConverterFactory.create())
+                .build()
+                .create(FileService.class);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testUploadPath() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "file content".getBytes(UTF_8));
+        server.enqueue(new MockResponse());
+
+        service.upload(file.toPath()).execute();
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Content-Type")).isEqualTo("application/octet-stream");
+        assertThat(request.getHeader("Content-Length")).isEqualTo("12");
+        assertThat(request.getBody().readUtf8()).isEqualTo("file content");
+    }
+
+    @Test
+    public void testUploadFileChannelFromCurrentPosition() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "skipped|sent".getBytes(UTF_8));
+        server.enqueue(new MockResponse());
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.position(8);
+
+            service.upload(channel).execute();
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertThat(server.takeRequest().getBody().readUtf8()).isEqualTo("sent");
+    }
+
+    @Test
+    public void testDownloadToFile() throws Exception {
+        byte[] content = new byte[1024 * 1024];
+
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        server.enqueue(new MockResponse().setBody(new Buffer().write(content)));
+
+        Path path = service.download().execute().body();
+
+        try {
+            assertThat(Files.readAllBytes(path)).isEqualTo(content);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDownloadRequiresAnnotationToReturnPath() throws Exception {
+        // Without @DownloadTo no converter claims the Path response type
+        new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new FileConverterFactory())
+                .build()
+                .create(FileService.class)
+                .downloadWithoutAnnotation();
+    }
+}
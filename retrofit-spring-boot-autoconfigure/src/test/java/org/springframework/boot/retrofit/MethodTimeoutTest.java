@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link MethodTimeout}
+ *
+ * @author troinine
+ */
+public class MethodTimeoutTest {
+    private static final long WINDOW = 60000;
+
+    private RetrofitProperties.AdaptiveTimeout properties;
+    private TestHistogram histogram;
+    private MethodTimeout timeout;
+
+    @Before
+    public void setup() {
+        properties = new RetrofitProperties.AdaptiveTimeout();
+        properties.setMultiplier(2);
+        properties.setFloor(50);
+        properties.setCeiling(5000);
+        properties.setMinSamples(1000);
+        properties.setWindow(WINDOW);
+
+        histogram = new TestHistogram(WINDOW);
+        timeout = new MethodTimeout(properties, histogram);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFloorMustNotExceedCeiling() {
+        properties.setFloor(10000);
+
+        new MethodTimeout(properties, histogram);
+    }
+
+    @Test
+    public void testCeilingUsedUntilEnoughSamples() {
+        record(999, 99);
+        refresh();
+
+        assertThat(timeout.getTimeout()).isEqualTo(5000);
+        assertThat(timeout.getSampleCount()).isEqualTo(999);
+    }
+
+    @Test
+    public void testTimeoutIsMultipleOfPercentile() {
+        record(998, 99);
+        record(2, 399);
+        refresh();
+
+        assertThat(timeout.getPercentile()).isEqualTo(399);
+        assertThat(timeout.getTimeout()).isEqualTo(798);
+    }
+
+    @Test
+    public void testTimeoutClampedToFloorAndCeiling() {
+        record(1000, 1);
+        refresh();
+
+        assertThat(timeout.getTimeout()).isEqualTo(50);
+
+        record(1000, 4000);
+        refresh();
+
+        assertThat(timeout.getTimeout()).isEqualTo(5000);
+    }
+
+    @Test
+    public void testTimeoutReusedUntilRefreshed() {
+        record(1000, 99);
+
+        assertThat(timeout.getTimeout()).isEqualTo(198);
+
+        record(1000, 1023);
+
+        assertThat(timeout.getTimeout()).isEqualTo(198);
+
+        refresh();
+
+        assertThat(timeout.getTimeout()).isEqualTo(2046);
+    }
+
+    @Test
+    public void testOldLatenciesForgotten() {
+        record(1000, 1023);
+        histogram.now += TimeUnit.MILLISECONDS.toNanos(WINDOW);
+        record(1000, 99);
+
+        assertThat(timeout.getSampleCount()).isEqualTo(2000);
+
+        histogram.now += TimeUnit.MILLISECONDS.toNanos(WINDOW);
+        record(1000, 99);
+        refresh();
+
+        assertThat(timeout.getSampleCount()).isEqualTo(2000);
+        assertThat(timeout.getTimeout()).isEqualTo(198);
+
+        histogram.now += TimeUnit.MILLISECONDS.toNanos(2 * WINDOW);
+
+        assertThat(timeout.getSampleCount()).isZero();
+        assertThat(timeout.getPercentile()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testPercentileEstimateWithinBucketPrecision() {
+        for (long value : new long[] {0, 15, 16, 17, 100, 1234, 65535, 1000000}) {
+            long estimate = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+
+            assertThat(estimate).isGreaterThanOrEqualTo(value);
+            assertThat(estimate - value).isLessThanOrEqualTo(value / 16);
+        }
+    }
+
+    private void record(int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            timeout.record(millis);
+        }
+    }
+
+    private void refresh() {
+        histogram.now += TimeUnit.MILLISECONDS.toNanos(MethodTimeout.REFRESH_INTERVAL);
+    }
+
+    private static class TestHistogram extends LatencyHistogram {
+        long now;
+
+        TestHistogram(long window) {
+            super(window);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+}
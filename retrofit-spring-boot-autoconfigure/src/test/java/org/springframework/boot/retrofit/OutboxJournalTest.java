@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link OutboxJournal}
+ *
+ * @author troinine
+ */
+public class OutboxJournalTest {
+    private static final int SEGMENT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private OutboxJournal journal;
+
+    @Before
+    public void setup() throws Exception {
+        directory = folder.newFolder();
+        journal = new OutboxJournal(directory, SEGMENT_SIZE, 3);
+    }
+
+    @After
+    public void teardown() {
+        journal.close();
+    }
+
+    @Test
+    public void testRecordsReadInOrderAndAcknowledged() throws Exception {
+        assertThat(journal.append(bytes("a"))).isTrue();
+        assertThat(journal.append(bytes("bb"))).isTrue();
+        assertThat(journal.append(bytes("ccc"))).isTrue();
+        assertThat(journal.getRecords()).isEqualTo(3);
+
+        List<OutboxJournal.Entry> entries = journal.read(journal.getAcknowledged(), 2);
+
+        assertThat(entries).hasSize(2);
+        assertThat(string(entries.get(0))).isEqualTo("a");
+        assertThat(string(entries.get(1))).isEqualTo("bb");
+
+        journal.acknowledge(entries.get(1).next, 2);
+
+        assertThat(journal.getRecords()).isEqualTo(1);
+
+        entries = journal.read(journal.getAcknowledged(), 10);
+
+        assertThat(entries).hasSize(1);
+        assertThat(string(entries.get(0))).isEqualTo("ccc");
+    }
+
+    @Test
+    public void testSegmentsRolledAndDeletedOnceConsumed() throws Exception {
+        // Two 27 byte records fit in a segment
+        for (int i = 0; i < 4; i++) {
+            append("record-" + i + "-0123456789");
+        }
+
+        assertThat(segmentFiles()).hasSize(2);
+
+        List<OutboxJournal.Entry> entries = journal.read(journal.getAcknowledged(), 10);
+
+        assertThat(entries).hasSize(4);
+        assertThat(string(entries.get(3))).isEqualTo("record-3-0123456789");
+
+        journal.acknowledge(entries.get(2).next, 3);
+
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(journal.getRecords()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAppendRejectedWhenFull() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            append("record-" + i + "-0123456789");
+        }
+
+        journal.preallocate();
+
+        assertThat(journal.append(bytes("record-6-0123456789"))).isFalse();
+
+        // Consuming the first segment entirely frees it
+        List<OutboxJournal.Entry> entries = journal.read(journal.getAcknowledged(), 3);
+        journal.acknowledge(entries.get(2).next, 3);
+
+        append("record-6-0123456789");
+    }
+
+    @Test
+    public void testAppendRejectedUntilNextSegmentPreallocated() throws Exception {
+        append("record-0-0123456789");
+        append("record-1-0123456789");
+
+        // Appending never creates a segment itself
+        assertThat(journal.append(bytes("record-2-0123456789"))).isFalse();
+        assertThat(segmentFiles()).hasSize(1);
+
+        journal.preallocate();
+
+        assertThat(segmentFiles()).hasSize(2);
+        assertThat(journal.append(bytes("record-2-0123456789"))).isTrue();
+    }
+
+    @Test
+    public void testJournalLockedWhileOpen() throws Exception {
+        try {
+            new OutboxJournal(directory, SEGMENT_SIZE, 3);
+            failBecauseExceptionWasNotThrown(IOException.class);
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("in use");
+        }
+
+        journal.close();
+        journal = new OutboxJournal(directory, SEGMENT_SIZE, 3);
+
+        assertThat(journal.append(bytes("a"))).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordLargerThanSegmentRejected() throws Exception {
+        journal.append(new byte[SEGMENT_SIZE]);
+    }
+
+    @Test
+    public void testRecordsRecoveredWhenReopened() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            append("record-" + i + "-0123456789");
+        }
+
+        List<OutboxJournal.Entry> entries = journal.read(journal.getAcknowledged(), 3);
+        journal.acknowledge(entries.get(2).next, 3);
+        journal.close();
+
+        journal = new OutboxJournal(directory, SEGMENT_SIZE, 3);
+
+        assertThat(journal.getRecords()).isEqualTo(2);
+
+        entries = journal.read(journal.getAcknowledged(), 10);
+
+        assertThat(entries).hasSize(2);
+        assertThat(string(entries.get(0))).isEqualTo("record-3-0123456789");
+        assertThat(string(entries.get(1))).isEqualTo("record-4-0123456789");
+
+        assertThat(journal.append(bytes("record-5-0123456789"))).isTrue();
+        assertThat(journal.read(entries.get(1).next, 10)).hasSize(1);
+    }
+
+    @Test
+    public void testTornRecordIgnoredWhenReopened() throws Exception {
+        journal.append(bytes("complete"));
+        journal.append(bytes("torn"));
+        journal.close();
+
+        // Corrupt the content of the second record, as if the process died while writing it
+        RandomAccessFile file = new RandomAccessFile(segmentFiles()[0], "rw");
+
+        try {
+            file.seek(OutboxJournal.RECORD_HEADER_SIZE * 2 + "complete".length());
+            file.write('x');
+        } finally {
+            file.close();
+        }
+
+        journal = new OutboxJournal(directory, SEGMENT_SIZE, 3);
+
+        assertThat(journal.getRecords()).isEqualTo(1);
+
+        journal.append(bytes("next"));
+        List<OutboxJournal.Entry> entries = journal.read(journal.getAcknowledged(), 10);
+
+        assertThat(entries).hasSize(2);
+        assertThat(string(entries.get(0))).isEqualTo("complete");
+        assertThat(string(entries.get(1))).isEqualTo("next");
+    }
+
+    /**
+     * Appends a record, creating the next segment first as the sender of an outbox would.
+     */
+    private void append(String record) throws Exception {
+        journal.preallocate();
+
+        assertThat(journal.append(bytes(record))).isTrue();
+    }
+
+    private File[] segmentFiles() {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(OutboxJournal.SEGMENT_SUFFIX);
+            }
+        });
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+
+    private static String string(OutboxJournal.Entry entry) throws Exception {
+        return new String(entry.content, "UTF-8");
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.retrofit.annotation.FireAndForget;
+import retrofit2.Retrofit;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.POST;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Outbox}
+ *
+ * @author troinine
+ */
+public class OutboxTest {
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private RetrofitProperties.Outbox properties;
+    private File directory;
+    private Outbox outbox;
+
+    public interface EventService {
+        @FireAndForget
+        @POST("/events")
+        boolean publish(@Header("X-Source") String source, @Body RequestBody event);
+
+        @FireAndForget
+        @GET("/events")
+        String list();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        client = new OkHttpClient();
+        properties = new RetrofitProperties.Outbox();
+        properties.setSegmentSize(64 * 1024);
+        properties.setMaxSegments(2);
+        properties.setMinBackoff(10);
+        properties.setMaxBackoff(100);
+        directory = folder.newFolder();
+        outbox = new Outbox("events", directory, client, properties);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        outbox.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testCallsSentInTheBackground() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        outbox.start();
+
+        EventService service = service(outbox);
+
+        assertThat(service.publish("test", RequestBody.create(TEXT, "first"))).isTrue();
+        assertThat(service.publish("test", RequestBody.create(TEXT, "second"))).isTrue();
+
+        awaitSent(outbox, 2);
+
+        List<String> bodies = new ArrayList<String>();
+
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = server.takeRequest();
+
+            assertThat(request.getMethod()).isEqualTo("POST");
+            assertThat(request.getPath()).isEqualTo("/events");
+            assertThat(request.getHeader("X-Source")).isEqualTo("test");
+            assertThat(request.getHeader("Content-Type")).isEqualTo("text/plain; charset=utf-8");
+            bodies.add(request.getBody().readUtf8());
+        }
+
+        assertThat(bodies).containsOnly("first", "second");
+        assertThat(outbox.getQueued()).isZero();
+    }
+
+    @Test
+    public void testCallsSentInOrderWithBatchSizeOfOne() throws Exception {
+        properties.setBatchSize(1);
+        outbox.close();
+        outbox = new Outbox("events", directory, client, properties);
+
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse());
+            outbox.offer(request("event-" + i));
+        }
+
+        outbox.start();
+        awaitSent(outbox, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(server.takeRequest().getBody().readUtf8()).isEqualTo("event-" + i);
+        }
+    }
+
+    @Test
+    public void testServerErrorsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse());
+        outbox.start();
+
+        assertThat(outbox.offer(request("event"))).isTrue();
+
+        awaitSent(outbox, 1);
+
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(outbox.getDiscarded()).isZero();
+    }
+
+    @Test
+    public void testClientErrorsDiscarded() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse());
+        outbox.start();
+
+        outbox.offer(request("invalid"));
+        outbox.offer(request("valid"));
+
+        awaitSent(outbox, 1);
+
+        assertThat(outbox.getDiscarded()).isEqualTo(1);
+        assertThat(outbox.getQueued()).isZero();
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testQueuedCallsSentAfterRestart() throws Exception {
+        assertThat(outbox.offer(request("first"))).isTrue();
+        assertThat(outbox.offer(request("second"))).isTrue();
+        outbox.close();
+
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        outbox = new Outbox("events", directory, client, properties);
+
+        assertThat(outbox.getQueued()).isEqualTo(2);
+
+        outbox.start();
+        awaitSent(outbox, 2);
+
+        assertThat(outbox.getQueued()).isZero();
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCallsRejectedWhenFull() throws Exception {
+        properties.setSegmentSize(256);
+        outbox.close();
+        outbox = new Outbox("events", folder.newFolder(), client, properties);
+
+        int queued = 0;
+
+        while (outbox.offer(request("event-" + queued))) {
+            queued++;
+        }
+
+        assertThat(queued).isGreaterThan(0);
+        assertThat(outbox.getQueued()).isEqualTo(queued);
+        assertThat(outbox.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSenderCreatesSegmentsAheadOfProducers() throws Exception {
+        // A few calls per segment, so the calls span several segments
+        properties.setSegmentSize(512);
+        properties.setMaxSegments(3);
+        outbox.close();
+        outbox = new Outbox("events", folder.newFolder(), client, properties);
+        outbox.start();
+
+        for (int i = 0; i < 20; i++) {
+            server.enqueue(new MockResponse());
+
+            assertThat(outbox.offer(request("event-" + i))).isTrue();
+
+            Thread.sleep(20);
+        }
+
+        awaitSent(outbox, 20);
+
+        assertThat(outbox.getRejected()).isZero();
+    }
+
+    @Test
+    public void testRequestsEncodedAndDecoded() throws Exception {
+        Request request = new Request.Builder()
+                .url(server.url("/events?type=audit"))
+                .header("Authorization", "Bearer token")
+                .addHeader("X-Tag", "a")
+                .addHeader("X-Tag", "b")
+                .put(RequestBody.create(TEXT, "event"))
+                .build();
+
+        Request decoded = Outbox.decode(Outbox.encode(request));
+
+        assertThat(decoded.method()).isEqualTo("PUT");
+        assertThat(decoded.url()).isEqualTo(request.url());
+        assertThat(decoded.headers().toMultimap()).isEqualTo(request.headers().toMultimap());
+        assertThat(decoded.body().contentType()).isEqualTo(TEXT);
+        assertThat(decoded.body().contentLength()).isEqualTo(5);
+    }
+
+    @Test
+    public void testFireAndForgetMethodsMustReturnBoolean() throws Exception {
+        try {
+            service(outbox).list();
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("Unable to create call adapter");
+            assertThat(e.getCause()).hasMessage("@FireAndForget methods must return boolean");
+        }
+    }
+
+    private EventService service(Outbox outbox) {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addCallAdapterFactory(new OutboxCallAdapterFactory(outbox))
+                .build()
+                .create(EventService.class);
+    }
+
+    private Request request(String body) {
+        return new Request.Builder()
+                .url(server.url("/events"))
+                .post(RequestBody.create(TEXT, body))
+                .build();
+    }
+
+    private static void awaitSent(Outbox outbox, long sent) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (outbox.getSent() < sent || outbox.getQueued() > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.retrofit.annotation.Paged;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PagingCallAdapterFactory}
+ *
+ * @author troinine
+ */
+public class PagingCallAdapterFactoryTest {
+    private MockWebServer server;
+    private RetrofitProperties.Paging properties;
+
+    public interface ItemService {
+        @GET("/items")
+        @Paged
+        Pages<String> items(@Query("size") int size);
+
+        @GET("/events")
+        @Paged(cursor = "after", page = EventPage.class)
+        Pages<String> events();
+
+        @GET("/items")
+        Pages<String> unannotated();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        properties = new RetrofitProperties.Paging();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testLinkHeaderPagesFollowed() throws Exception {
+        server.enqueue(page("[\"a\",\"b\"]", "</items?size=2&page=2>; rel=\"next\", </items?size=2&page=3>; rel=last"));
+        server.enqueue(page("[\"c\",\"d\"]", "<" + server.url("/items?size=2&page=3") + ">; rel=\"last next\""));
+        server.enqueue(page("[\"e\"]", "</items?size=2&page=1>; rel=\"first\""));
+
+        Pages<String> pages = service().items(2);
+
+        assertThat(collect(pages)).containsExactly("a", "b", "c", "d", "e");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/items?size=2");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/items?size=2&page=2");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/items?size=2&page=3");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testCursorPagesFollowed() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"items\":[\"a\"],\"nextCursor\":\"c1\"}"));
+        server.enqueue(new MockResponse().setBody("{\"items\":[],\"nextCursor\":\"c 2\"}"));
+        server.enqueue(new MockResponse().setBody("{\"items\":[\"b\"],\"nextCursor\":null}"));
+
+        assertThat(collect(service().events())).containsExactly("a", "b");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/events");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/events?after=c1");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/events?after=c%202");
+    }
+
+    @Test
+    public void testNextPagePrefetchedWhileCurrentPageConsumed() throws Exception {
+        server.enqueue(page("[\"a\",\"b\"]", "</items?page=2>; rel=\"next\""));
+        server.enqueue(page("[\"c\"]", "</items?page=3>; rel=\"next\""));
+        server.enqueue(page("[\"d\"]", null));
+
+        Iterator<String> items = service().items(1).iterator();
+
+        assertThat(items.next()).isEqualTo("a");
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getPath()).isEqualTo("/items?page=2");
+
+        // The second page is buffered, the third one waits until the second is consumed
+        Thread.sleep(200);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+
+        assertThat(items.next()).isEqualTo("b");
+        assertThat(items.next()).isEqualTo("c");
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS).getPath()).isEqualTo("/items?page=3");
+        assertThat(items.next()).isEqualTo("d");
+        assertThat(items.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testPrefetchingStopsAtMemoryBound() throws Exception {
+        properties.setPrefetch(5);
+        properties.setMaxBufferedBytes(1);
+        server.enqueue(page("[\"a\"]", "</items?page=2>; rel=\"next\""));
+        server.enqueue(page("[\"b\"]", "</items?page=3>; rel=\"next\""));
+        server.enqueue(page("[\"c\"]", null));
+
+        Pages<String> pages = service().items(1);
+        Iterator<String> items = pages.iterator();
+
+        assertThat(items.next()).isEqualTo("a");
+        server.takeRequest(5, TimeUnit.SECONDS);
+        server.takeRequest(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(pages.getBufferedBytes()).isEqualTo(5L);
+        assertThat(items.next()).isEqualTo("b");
+        assertThat(items.next()).isEqualTo("c");
+        assertThat(pages.getBufferedBytes()).isZero();
+    }
+
+    @Test
+    public void testClosingStopsFetching() throws Exception {
+        properties.setPrefetch(0);
+        server.enqueue(page("[\"a\",\"b\"]", "</items?page=2>; rel=\"next\""));
+        server.enqueue(page("[\"c\"]", null));
+
+        Pages<String> pages = service().items(1);
+        Iterator<String> items = pages.iterator();
+
+        assertThat(items.next()).isEqualTo("a");
+
+        pages.close();
+
+        assertThat(items.next()).isEqualTo("b");
+        assertThat(items.hasNext()).isFalse();
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedPageEndsIteration() throws Exception {
+        server.enqueue(page("[\"a\"]", "</items?page=2>; rel=\"next\""));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        Iterator<String> items = service().items(1).iterator();
+
+        assertThat(items.next()).isEqualTo("a");
+
+        try {
+            items.hasNext();
+            failBecauseExceptionWasNotThrown(PageFetchException.class);
+        } catch (PageFetchException e) {
+            assertThat(e.getMessage()).startsWith("HTTP 503").endsWith("/items?page=2");
+        }
+
+        assertThat(items.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testConnectionFailureReported() throws Exception {
+        ItemService service = service();
+        server.shutdown();
+
+        try {
+            service.items(1).iterator().hasNext();
+            failBecauseExceptionWasNotThrown(PageFetchException.class);
+        } catch (PageFetchException e) {
+            assertThat(e).hasMessage("Cannot fetch the first page");
+            assertThat(e.getCause()).isNotNull();
+        }
+    }
+
+    @Test
+    public void testPagedAnnotationRequired() {
+        try {
+            service().unannotated();
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getCause()).hasMessageContaining("@Paged");
+        }
+    }
+
+    @Test
+    public void testRelativeNextLinkResolved() {
+        Request request = new Request.Builder().url(server.url("/a/items?page=1")).build();
+        Headers headers = new Headers.Builder()
+                .add("Link", "<https://example.com/first>; rel=\"first\"")
+                .add("Link", "<items?page=2>; title=\"a, b\"; rel=next")
+                .build();
+
+        assertThat(PagingCallAdapterFactory.findNextLink(request, headers))
+                .isEqualTo(server.url("/a/items?page=2"));
+        assertThat(PagingCallAdapterFactory.findNextLink(request, Headers.of())).isNull();
+    }
+
+    private ItemService service() {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addCallAdapterFactory(new PagingCallAdapterFactory(properties))
+                .addConverterFactory(JacksonConverterFactory.create())
+                .build()
+                .create(ItemService.class);
+    }
+
+    private static MockResponse page(String body, String link) {
+        MockResponse response = new MockResponse().setBody(body);
+
+        return link != null ? response.setHeader("Link", link) : response;
+    }
+
+    private static List<String> collect(Pages<String> pages) {
+        List<String> items = new ArrayList<String>();
+
+        try {
+            for (String item : pages) {
+                items.add(item);
+            }
+        } finally {
+            pages.close();
+        }
+
+        return items;
+    }
+
+    public static class EventPage implements CursorPage<String> {
+        private List<String> items;
+        private String nextCursor;
+
+        @Override
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        @Override
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public void setNextCursor(String nextCursor) {
+            this.nextCursor = nextCursor;
+        }
+    }
+}
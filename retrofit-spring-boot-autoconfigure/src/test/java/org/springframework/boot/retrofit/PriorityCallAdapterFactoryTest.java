@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.okhttp.CallPriority;
+import org.springframework.boot.okhttp.PriorityCallFactory;
+import org.springframework.boot.okhttp.PriorityScheduler;
+import org.springframework.boot.retrofit.annotation.Priority;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+import retrofit2.http.GET;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PriorityCallAdapterFactory}
+ *
+ * @author troinine
+ */
+public class PriorityCallAdapterFactoryTest {
+    private MockWebServer server;
+    private List<CallPriority> priorities;
+    private PriorityService service;
+
+    public interface PriorityService {
+        @GET("/default")
+        Call<String> byDefault();
+
+        @GET("/batch")
+        @Priority(CallPriority.LOW)
+        Call<String> batch();
+
+        @GET("/batch")
+        @Priority(CallPriority.LOW)
+        Observable<String> batchObservable();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        final OkHttpClient client = new OkHttpClient();
+        priorities = new ArrayList<CallPriority>();
+
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callFactory(new okhttp3.Call.Factory() {
+                    @Override
+                    public okhttp3.Call newCall(Request request) {
+                        priorities.add(CallPriority.current());
+
+                        return client.newCall(request);
+                    }
+                })
+                .addCallAdapterFactory(new PriorityCallAdapterFactory())
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build()
+                .create(PriorityService.class);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testMethodWithoutPriorityUsesThreadPriority() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        service.byDefault().execute();
+
+        assertThat(priorities).containsExactly(CallPriority.NORMAL);
+    }
+
+    @Test
+    public void testMethodPriorityAppliedToCall() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThat(service.batch().execute().body()).isEqualTo("ok");
+        assertThat(priorities).containsExactly(CallPriority.LOW);
+        assertThat(CallPriority.current()).isEqualTo(CallPriority.NORMAL);
+    }
+
+    @Test
+    public void testMethodPriorityAppliedToObservable() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThat(service.batchObservable().toBlocking().single()).isEqualTo("ok");
+        assertThat(priorities).containsExactly(CallPriority.LOW);
+    }
+
+    @Test
+    public void testOnlyAsynchronousCallsScheduled() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        Map<CallPriority, Integer> weights = new EnumMap<CallPriority, Integer>(CallPriority.class);
+
+        for (CallPriority priority : CallPriority.values()) {
+            weights.put(priority, 1);
+        }
+
+        PriorityScheduler scheduler = new PriorityScheduler(client.dispatcher(), weights);
+        PriorityService scheduledService = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callFactory(new PriorityCallFactory(client, scheduler))
+                .addCallAdapterFactory(new PriorityCallAdapterFactory())
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build()
+                .create(PriorityService.class);
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        // The RxJava adapter executes the call synchronously, bypassing the scheduler
+        assertThat(scheduledService.batchObservable().toBlocking().single()).isEqualTo("ok");
+        assertThat(scheduler.getAdmittedCount(CallPriority.LOW)).isZero();
+
+        final CountDownLatch done = new CountDownLatch(1);
+        scheduledService.batch().enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                done.countDown();
+            }
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.getAdmittedCount(CallPriority.LOW)).isEqualTo(1);
+    }
+}
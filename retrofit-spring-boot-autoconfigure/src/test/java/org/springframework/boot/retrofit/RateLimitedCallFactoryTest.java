@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.okhttp.Deadline;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RateLimitedCallFactory}
+ *
+ * @author troinine
+ */
+public class RateLimitedCallFactoryTest {
+    private MockWebServer server;
+    private OkHttpClient client;
+    private StubRateLimiter rateLimiter;
+    private RateLimitedCallFactory callFactory;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        client = new OkHttpClient();
+        rateLimiter = new StubRateLimiter();
+        callFactory = new RateLimitedCallFactory(client, rateLimiter, 10000);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        callFactory.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testMaxWaitShortenedToDeadline() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        Deadline previous = Deadline.set(Deadline.after(1, TimeUnit.SECONDS));
+
+        try {
+            callFactory.newCall(request()).execute().body().close();
+        } finally {
+            Deadline.restore(previous);
+        }
+
+        assertThat(rateLimiter.timeout).isLessThanOrEqualTo(1000L).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testFullMaxWaitWithoutDeadline() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        callFactory.newCall(request()).execute().body().close();
+
+        assertThat(rateLimiter.timeout).isEqualTo(10000L);
+    }
+
+    @Test
+    public void testAsynchronousCallEnqueuedOnceItsPermitIsValid() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        rateLimiter.wait = TimeUnit.MILLISECONDS.toNanos(100);
+
+        RecordingCallback callback = new RecordingCallback();
+        callFactory.newCall(request()).enqueue(callback);
+
+        assertThat(callback.results.poll(5, TimeUnit.SECONDS)).isInstanceOf(Response.class);
+    }
+
+    @Test
+    public void testWaitingCallsEnqueuedAfterClose() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        rateLimiter.wait = TimeUnit.MILLISECONDS.toNanos(100);
+
+        RecordingCallback callback = new RecordingCallback();
+        callFactory.newCall(request()).enqueue(callback);
+        callFactory.close();
+
+        assertThat(callback.results.poll(5, TimeUnit.SECONDS)).isInstanceOf(Response.class);
+    }
+
+    @Test
+    public void testCallsEnqueuedAfterCloseFail() throws Exception {
+        rateLimiter.wait = TimeUnit.MILLISECONDS.toNanos(100);
+        callFactory.close();
+
+        RecordingCallback callback = new RecordingCallback();
+        callFactory.newCall(request()).enqueue(callback);
+
+        assertThat(callback.results.poll(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+        assertThat(server.getRequestCount()).isEqualTo(0);
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/")).build();
+    }
+
+    private static class StubRateLimiter implements RateLimiter {
+        volatile long wait;
+        volatile long timeout = -1;
+
+        @Override
+        public long reserve(long timeout, TimeUnit unit) {
+            this.timeout = unit.toMillis(timeout);
+
+            return wait;
+        }
+    }
+
+    private static class RecordingCallback implements Callback {
+        final BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(1);
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            results.add(e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            response.body().close();
+            results.add(response);
+        }
+    }
+}
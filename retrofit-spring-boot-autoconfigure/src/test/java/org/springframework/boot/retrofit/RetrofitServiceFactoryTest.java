@@ -0,0 +1,427 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.okhttp.DeadlineExceededException;
+import org.springframework.boot.okhttp.TracedOperation;
+import org.springframework.boot.okhttp.Tracer;
+import org.springframework.boot.retrofit.annotation.FireAndForget;
+import org.springframework.boot.retrofit.annotation.RetrofitService;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Url;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RetrofitServiceFactory}
+ *
+ * @author troinine
+ */
+public class RetrofitServiceFactoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient defaultClient;
+    private DefaultListableBeanFactory beanFactory;
+    private Retrofit defaultRetrofit;
+    private RetrofitServiceFactory factory;
+
+    @RetrofitService
+    public interface DefaultService {
+        @GET("/hello")
+        Call<String> hello();
+    }
+
+    @RetrofitService(client = "tagged")
+    public interface TaggedService {
+        @GET("/hello")
+        Call<String> hello();
+    }
+
+    @RetrofitService
+    public interface LimitedService {
+        @GET("/hello")
+        Call<String> hello();
+    }
+
+    @RetrofitService
+    public interface TimedService {
+        @GET("/hello")
+        Call<String> hello();
+    }
+
+    @RetrofitService
+    public interface GeneratedService {
+        @GET("/items/{id}")
+        Call<String> item(@Path("id") String id, @Query("fields") String fields);
+
+        @POST("/items")
+        @Headers("Content-Type: application/json")
+        Call<String> create(@Body String item);
+
+        @DELETE("/items/{id}")
+        Call<String> delete(@Path("id") String id, @Header("X-Trace") String trace);
+    }
+
+    @RetrofitService
+    public interface ProxiedService {
+        // The processor leaves services with @Url to the proxy
+        @GET
+        Call<String> get(@Url String url);
+    }
+
+    @RetrofitService(client = "tagged")
+    public interface InvalidService {
+        // No call adapter can return a plain String, and @Url keeps the service on the proxy
+        @GET
+        String hello(@Url String url);
+    }
+
+    @RetrofitService
+    public interface AuditService {
+        @FireAndForget
+        @POST("/audit")
+        boolean audit();
+    }
+
+    @RetrofitService(client = "missing")
+    public interface MissingClientService {
+        @GET("/hello")
+        Call<ResponseBody> hello();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        defaultClient = new OkHttpClient();
+        OkHttpClient taggedClient = defaultClient.newBuilder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        return chain.proceed(chain.request().newBuilder().header("X-Client", "tagged").build());
+                    }
+                })
+                .build();
+
+        beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("taggedOkHttpClient", taggedClient);
+
+        defaultRetrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(defaultClient)
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build();
+
+        factory = new RetrofitServiceFactory(beanFactory, defaultRetrofit, new RetrofitProperties());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testServiceUsesDefaultClient() throws Exception {
+        server.enqueue(new MockResponse().setBody("hello"));
+
+        assertThat(factory.createServiceInstance(DefaultService.class, "defaultService").hello().execute().body())
+                .isEqualTo("hello");
+        assertThat(server.takeRequest().getHeader("X-Client")).isNull();
+    }
+
+    @Test
+    public void testServiceUsesClientProfile() throws Exception {
+        server.enqueue(new MockResponse().setBody("hello"));
+
+        // The converters of the default Retrofit instance are carried over
+        assertThat(factory.createServiceInstance(TaggedService.class, "taggedService").hello().execute().body())
+                .isEqualTo("hello");
+        assertThat(server.takeRequest().getHeader("X-Client")).isEqualTo("tagged");
+    }
+
+    @Test
+    public void testCopiedBuilderDoesNotDuplicateBuiltInFactories() {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build();
+        Retrofit copy = RetrofitServiceFactory.newBuilder(retrofit).build();
+
+        assertThat(copy.baseUrl()).isEqualTo(retrofit.baseUrl());
+        assertThat(copy.converterFactories()).hasSameSizeAs(retrofit.converterFactories());
+        assertThat(copy.callAdapterFactories()).hasSameSizeAs(retrofit.callAdapterFactories());
+    }
+
+    @Test
+    public void testRateLimitFailsFastWhenExceeded() throws Exception {
+        RetrofitProperties properties = new RetrofitProperties();
+        RetrofitProperties.Service service = new RetrofitProperties.Service();
+        service.getRateLimit().setPermitsPerSecond(0.001);
+        service.getRateLimit().setMode(RetrofitProperties.RateLimitMode.FAIL_FAST);
+        properties.getServices().put("limitedService", service);
+        server.enqueue(new MockResponse().setBody("hello"));
+
+        LimitedService limitedService = new RetrofitServiceFactory(beanFactory, defaultRetrofit, properties)
+                .createServiceInstance(LimitedService.class, "limitedService");
+
+        assertThat(limitedService.hello().execute().body()).isEqualTo("hello");
+
+        try {
+            limitedService.hello().execute();
+            failBecauseExceptionWasNotThrown(RateLimitExceededException.class);
+        } catch (RateLimitExceededException e) {
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test(expected = RateLimitExceededException.class)
+    public void testRateLimiterBeanReplacesConfiguredLimiter() throws Exception {
+        beanFactory.registerSingleton("limitedServiceRateLimiter", new RateLimiter() {
+            @Override
+            public long reserve(long timeout, TimeUnit unit) {
+                return -1;
+            }
+        });
+
+        factory.createServiceInstance(LimitedService.class, "limitedService").hello().execute();
+    }
+
+    @Test
+    public void testAdaptiveTimeoutFailsSlowCalls() throws Exception {
+        AdaptiveTimeoutRegistry registry = new AdaptiveTimeoutRegistry();
+        beanFactory.registerSingleton(AdaptiveTimeoutRegistry.BEAN_NAME, registry);
+
+        RetrofitProperties properties = new RetrofitProperties();
+        RetrofitProperties.Service service = new RetrofitProperties.Service();
+        service.getAdaptiveTimeout().setEnabled(true);
+        service.getAdaptiveTimeout().setFloor(100);
+        service.getAdaptiveTimeout().setCeiling(200);
+        properties.getServices().put("timedService", service);
+        server.enqueue(new MockResponse().setBody("hello"));
+        server.enqueue(new MockResponse().setBody("hello").setBodyDelay(2, TimeUnit.SECONDS));
+
+        TimedService timedService = new RetrofitServiceFactory(beanFactory, defaultRetrofit, properties)
+                .createServiceInstance(TimedService.class, "timedService");
+
+        assertThat(timedService.hello().execute().body()).isEqualTo("hello");
+
+        try {
+            timedService.hello().execute();
+            failBecauseExceptionWasNotThrown(DeadlineExceededException.class);
+        } catch (DeadlineExceededException e) {
+            MethodTimeout timeout = registry.getTimeouts().get("timedService.hello");
+
+            assertThat(timeout.getTimeout()).isEqualTo(200);
+            assertThat(timeout.getSampleCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testServiceCallsNamedAfterBeanAndMethod() throws Exception {
+        beanFactory.registerSingleton("tracer", new Tracer(null, 0));
+
+        assertThat(callOperations()).containsExactly("defaultService/hello");
+        assertThat(TracedOperation.current()).isNull();
+    }
+
+    @Test
+    public void testServiceCallsNotNamedWithoutTracer() throws Exception {
+        assertThat(callOperations()).containsExactly("null");
+    }
+
+    @Test
+    public void testGeneratedImplementationPreferredOverProxy() throws Exception {
+        server.enqueue(new MockResponse().setBody("item"));
+
+        GeneratedService service = factory.createServiceInstance(GeneratedService.class, "generatedService");
+
+        assertThat(service).isInstanceOf(RetrofitServiceFactoryTest_GeneratedService_Retrofit.class);
+        assertThat(service.item("a b", "name").execute().body()).isEqualTo("item");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/items/a%20b?fields=name");
+    }
+
+    @Test
+    public void testGeneratedImplementationSendsHeaders() throws Exception {
+        server.enqueue(new MockResponse().setBody("created"));
+        server.enqueue(new MockResponse().setBody("deleted"));
+
+        GeneratedService service = factory.createServiceInstance(GeneratedService.class, "generatedService");
+
+        assertThat(service.create("{}").execute().body()).isEqualTo("created");
+        assertThat(service.delete("a", "trace-1").execute().body()).isEqualTo("deleted");
+
+        RecordedRequest create = server.takeRequest();
+        assertThat(create.getMethod()).isEqualTo("POST");
+        assertThat(create.getHeader("Content-Type")).isEqualTo("application/json");
+        assertThat(create.getBody().readUtf8()).isEqualTo("{}");
+
+        RecordedRequest delete = server.takeRequest();
+        assertThat(delete.getMethod()).isEqualTo("DELETE");
+        assertThat(delete.getPath()).isEqualTo("/items/a");
+        assertThat(delete.getHeader("X-Trace")).isEqualTo("trace-1");
+    }
+
+    @Test
+    public void testGeneratedImplementationReturnsNoBodyForNoContent() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(204));
+
+        retrofit2.Response<String> response = factory.createServiceInstance(GeneratedService.class, "generatedService")
+                .delete("a", null)
+                .execute();
+
+        assertThat(response.isSuccessful()).isTrue();
+        assertThat(response.code()).isEqualTo(204);
+        assertThat(response.body()).isNull();
+        assertThat(server.takeRequest().getHeader("X-Trace")).isNull();
+    }
+
+    @Test
+    public void testGeneratedImplementationExposesErrorBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("no such item"));
+
+        retrofit2.Response<String> response = factory.createServiceInstance(GeneratedService.class, "generatedService")
+                .item("a", null)
+                .execute();
+
+        assertThat(response.isSuccessful()).isFalse();
+        assertThat(response.code()).isEqualTo(404);
+        assertThat(response.body()).isNull();
+        assertThat(response.errorBody().string()).isEqualTo("no such item");
+        // The error body is buffered, so the raw response does not expose it a second time
+        assertThat(response.raw().body().contentLength()).isEqualTo(12);
+    }
+
+    @Test
+    public void testServiceWithoutGeneratedImplementationUsesProxy() {
+        assertThat(RetrofitServiceFactory.getGeneratedClass(ProxiedService.class)).isNull();
+        assertThat(Proxy.isProxyClass(
+                factory.createServiceInstance(ProxiedService.class, "proxiedService").getClass())).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidServiceFailsCreationWhenWarmUpEnabled() {
+        RetrofitProperties properties = new RetrofitProperties();
+        properties.getWarmUp().setEnabled(true);
+
+        new RetrofitServiceFactory(beanFactory, defaultRetrofit, properties)
+                .createServiceInstance(InvalidService.class, "invalidService");
+    }
+
+    @Test
+    public void testInvalidServiceFailsFirstCallWhenWarmUpDisabled() {
+        InvalidService service = factory.createServiceInstance(InvalidService.class, "invalidService");
+
+        try {
+            service.hello("/hello");
+
+            fail("Expected the invalid method to fail");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("call adapter");
+        }
+    }
+
+    @Test(expected = NoSuchBeanDefinitionException.class)
+    public void testMissingClientProfileFails() {
+        factory.createServiceInstance(MissingClientService.class, "missingClientService");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFireAndForgetServiceRequiresOutboxDirectory() {
+        factory.createServiceInstance(AuditService.class, "auditService");
+    }
+
+    @Test
+    public void testOutboxDirectoryInUseFailsCreation() throws Exception {
+        RetrofitProperties properties = new RetrofitProperties();
+        properties.getOutbox().setDirectory(folder.getRoot().getPath());
+        OutboxRegistry registry = new OutboxRegistry();
+        beanFactory.registerSingleton(OutboxRegistry.BEAN_NAME, registry);
+
+        try {
+            new RetrofitServiceFactory(beanFactory, defaultRetrofit, properties)
+                    .createServiceInstance(AuditService.class, "auditService");
+
+            // Another instance of the application using the same directory
+            try {
+                new RetrofitServiceFactory(new DefaultListableBeanFactory(), defaultRetrofit, properties)
+                        .createServiceInstance(AuditService.class, "auditService");
+                failBecauseExceptionWasNotThrown(IllegalStateException.class);
+            } catch (IllegalStateException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class);
+                assertThat(e.getCause().getMessage()).contains("in use");
+            }
+        } finally {
+            registry.destroy();
+        }
+    }
+
+    private List<String> callOperations() throws IOException {
+        final List<String> operations = new ArrayList<String>();
+        Retrofit retrofit = RetrofitServiceFactory.newBuilder(defaultRetrofit)
+                .callFactory(new okhttp3.Call.Factory() {
+                    @Override
+                    public okhttp3.Call newCall(Request request) {
+                        operations.add(String.valueOf(TracedOperation.current()));
+
+                        return defaultClient.newCall(request);
+                    }
+                })
+                .build();
+        server.enqueue(new MockResponse().setBody("hello"));
+
+        new RetrofitServiceFactory(beanFactory, retrofit, new RetrofitProperties())
+                .createServiceInstance(DefaultService.class, "defaultService")
+                .hello()
+                .execute();
+
+        return operations;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RetrofitServiceWarmUp}
+ *
+ * @author troinine
+ */
+public class RetrofitServiceWarmUpTest {
+    private CountingConverterFactory converterFactory;
+    private Retrofit retrofit;
+
+    public interface ItemService {
+        @GET("/items/{id}")
+        Call<Item> get(@Path("id") String id);
+
+        @GET("/items")
+        Call<List<Item>> list();
+
+        @POST("/items")
+        Call<Void> create(@Body Item item);
+
+        @GET("/receipts/{id}")
+        Call<Receipt> receipt(@Path("id") String id);
+    }
+
+    @Before
+    public void setup() {
+        converterFactory = new CountingConverterFactory(JacksonConverterFactory.create());
+        retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .addConverterFactory(converterFactory)
+                .build();
+    }
+
+    @Test
+    public void testConvertersResolvedForEachMethod() {
+        assertThat(new RetrofitServiceWarmUp(0).warmUp(retrofit, ItemService.class)).isEqualTo(4);
+
+        assertThat(converterFactory.responseBodyConverters).contains(Item.class, Receipt.class);
+        assertThat(converterFactory.requestBodyConverters).contains(Item.class);
+        assertThat(converterFactory.conversions).isEmpty();
+    }
+
+    @Test
+    public void testModelTypesEncodedAndDecoded() {
+        new RetrofitServiceWarmUp(3).warmUp(retrofit, ItemService.class);
+
+        // Item is warmed up once although two methods use it, Receipt cannot be instantiated
+        assertThat(converterFactory.conversions.get("encode " + Item.class)).isEqualTo(3);
+        assertThat(converterFactory.conversions.get("decode " + Item.class)).isEqualTo(3);
+        assertThat(converterFactory.conversions.get("decode " + Receipt.class)).isNull();
+
+        for (Map.Entry<String, Integer> conversion : converterFactory.conversions.entrySet()) {
+            if (conversion.getKey().startsWith("decode java.util.List")) {
+                assertThat(conversion.getValue()).isEqualTo(3);
+
+                return;
+            }
+        }
+
+        fail("List<Item> was not decoded");
+    }
+
+    @Test
+    public void testSamplesCreatedForModelTypes() throws Exception {
+        Type itemList = ItemService.class.getMethod("list").getGenericReturnType();
+        Type items = ((ParameterizedType) itemList).getActualTypeArguments()[0];
+
+        assertThat(RetrofitServiceWarmUp.newSample(Item.class)).isInstanceOf(Item.class);
+        assertThat(RetrofitServiceWarmUp.newSample(Item[].class)).isInstanceOf(Item[].class);
+        assertThat((Collection<?>) RetrofitServiceWarmUp.newSample(items)).hasSize(1);
+        assertThat(RetrofitServiceWarmUp.newSample(Receipt.class)).isNull();
+        assertThat(RetrofitServiceWarmUp.newSample(String.class)).isNull();
+        assertThat(RetrofitServiceWarmUp.newSample(Set.class)).isNull();
+        assertThat(RetrofitServiceWarmUp.newSample(int.class)).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePassesRejected() {
+        new RetrofitServiceWarmUp(-1);
+    }
+
+    public static class Item {
+        private String name;
+        private int quantity;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    public static class Receipt {
+        private final String id;
+
+        public Receipt(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    private static class CountingConverterFactory extends Converter.Factory {
+        private final Converter.Factory delegate;
+        private final List<Type> requestBodyConverters = new ArrayList<Type>();
+        private final List<Type> responseBodyConverters = new ArrayList<Type>();
+        private final Map<String, Integer> conversions = new HashMap<String, Integer>();
+
+        CountingConverterFactory(Converter.Factory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Converter<ResponseBody, ?> responseBodyConverter(
+                final Type type,
+                Annotation[] annotations,
+                Retrofit retrofit) {
+            final Converter<ResponseBody, ?> converter = delegate.responseBodyConverter(type, annotations, retrofit);
+            responseBodyConverters.add(type);
+
+            return new Converter<ResponseBody, Object>() {
+                @Override
+                public Object convert(ResponseBody value) throws IOException {
+                    count("decode " + type);
+
+                    return converter.convert(value);
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Converter<?, RequestBody> requestBodyConverter(
+                final Type type,
+                Annotation[] parameterAnnotations,
+                Annotation[] methodAnnotations,
+                Retrofit retrofit) {
+            final Converter<Object, RequestBody> converter = (Converter<Object, RequestBody>)
+                    delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+            requestBodyConverters.add(type);
+
+            return new Converter<Object, RequestBody>() {
+                @Override
+                public RequestBody convert(Object value) throws IOException {
+                    count("encode " + type);
+
+                    return converter.convert(value);
+                }
+            };
+        }
+
+        private void count(String conversion) {
+            Integer count = conversions.get(conversion);
+            conversions.put(conversion, count != null ? count + 1 : 1);
+        }
+    }
+}
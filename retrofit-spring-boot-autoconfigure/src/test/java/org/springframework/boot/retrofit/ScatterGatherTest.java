@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.okhttp.Deadline;
+import org.springframework.boot.okhttp.DeadlineCallFactory;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ScatterGather}
+ *
+ * @author troinine
+ */
+public class ScatterGatherTest {
+    private MockWebServer server;
+    private PartService service;
+
+    public interface PartService {
+        @GET("/{path}")
+        Call<String> get(@Path("path") String path);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/slow")) {
+                    return new MockResponse().setBody("slow").setBodyDelay(5, TimeUnit.SECONDS);
+                }
+
+                if (request.getPath().equals("/error")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+
+                return new MockResponse().setBody(request.getPath().substring(1));
+            }
+        });
+        server.start();
+
+        OkHttpClient client = new OkHttpClient();
+        client.dispatcher().setMaxRequestsPerHost(10);
+
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callFactory(new DeadlineCallFactory(client))
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build()
+                .create(PartService.class);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        Deadline.restore(null);
+        server.shutdown();
+    }
+
+    @Test
+    public void testAllCallsGathered() throws Exception {
+        ScatterGather gather = new ScatterGather(5, TimeUnit.SECONDS);
+        ScatterGather.Part<String> first = gather.add(service.get("first"));
+        ScatterGather.Part<String> second = gather.add(service.get("second"));
+
+        assertThat(gather.execute()).isTrue();
+        assertThat(first.getStatus()).isEqualTo(ScatterGather.Status.COMPLETED);
+        assertThat(first.body()).isEqualTo("first");
+        assertThat(second.body()).isEqualTo("second");
+        assertThat(gather.getParts()).hasSize(2);
+    }
+
+    @Test
+    public void testPartialResultsReturnedAtDeadline() throws Exception {
+        ScatterGather gather = new ScatterGather(500, TimeUnit.MILLISECONDS);
+        ScatterGather.Part<String> fast = gather.add(service.get("fast"));
+        ScatterGather.Part<String> error = gather.add(service.get("error"));
+        Call<String> slowCall = service.get("slow");
+        ScatterGather.Part<String> slow = gather.add(slowCall);
+        long start = System.nanoTime();
+
+        assertThat(gather.execute()).isFalse();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+        assertThat(fast.isSuccessful()).isTrue();
+        assertThat(fast.body()).isEqualTo("fast");
+        assertThat(error.getStatus()).isEqualTo(ScatterGather.Status.COMPLETED);
+        assertThat(error.isSuccessful()).isFalse();
+        assertThat(error.getResponse().code()).isEqualTo(500);
+        assertThat(slow.getStatus()).isEqualTo(ScatterGather.Status.TIMED_OUT);
+        assertThat(slow.getResponse()).isNull();
+        assertThat(slow.body()).isNull();
+        assertThat(slowCall.isCanceled()).isTrue();
+    }
+
+    @Test
+    public void testDeadlineCarriedByCalls() throws Exception {
+        ScatterGather gather = new ScatterGather(5, TimeUnit.SECONDS);
+        gather.add(service.get("first"));
+
+        assertThat(gather.execute()).isTrue();
+
+        Deadline deadline = Deadline.parse(server.takeRequest().getHeader(Deadline.HEADER));
+
+        assertThat(deadline).isNotNull();
+        assertThat(deadline.remainingMillis()).isLessThanOrEqualTo(5000);
+        assertThat(Deadline.current()).isNull();
+    }
+
+    @Test
+    public void testEarlierThreadDeadlineApplies() throws Exception {
+        Deadline.set(Deadline.after(300, TimeUnit.MILLISECONDS));
+
+        ScatterGather gather = new ScatterGather(10, TimeUnit.SECONDS);
+        ScatterGather.Part<String> slow = gather.add(service.get("slow"));
+        long start = System.nanoTime();
+
+        assertThat(gather.execute()).isFalse();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(slow.getStatus()).isEqualTo(ScatterGather.Status.TIMED_OUT);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotAddAfterExecute() throws Exception {
+        ScatterGather gather = new ScatterGather(1, TimeUnit.SECONDS);
+        gather.execute();
+
+        gather.add(service.get("late"));
+    }
+}
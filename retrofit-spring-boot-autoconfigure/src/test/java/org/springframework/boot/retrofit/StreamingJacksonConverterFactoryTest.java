@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+import java.lang.annotation.Annotation;
+import java.nio.charset.Charset;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link StreamingJacksonConverterFactory}
+ *
+ * @author troinine
+ */
+public class StreamingJacksonConverterFactoryTest {
+    private MockWebServer server;
+    private Retrofit retrofit;
+    private EchoService service;
+
+    public interface EchoService {
+        @POST("/echo")
+        Call<Message> echo(@Body Message message);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(StreamingJacksonConverterFactory.create())
+                .build();
+        service = retrofit.create(EchoService.class);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"text\":\"pong\"}"));
+
+        Message response = service.echo(new Message("ping")).execute().body();
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Content-Type")).isEqualTo("application/json; charset=UTF-8");
+        assertThat(request.getHeader("Content-Length")).isEqualTo("15");
+        assertThat(request.getBody().readUtf8()).isEqualTo("{\"text\":\"ping\"}");
+        assertThat(response.getText()).isEqualTo("pong");
+    }
+
+    @Test
+    public void testRequestBodyCanBeWrittenMoreThanOnce() throws Exception {
+        RequestBody body = requestBodyConverter().convert(new Message("ping"));
+
+        Buffer first = new Buffer();
+        body.writeTo(first);
+        Buffer second = new Buffer();
+        body.writeTo(second);
+
+        assertThat(body.contentLength()).isEqualTo(15L);
+        assertThat(first.readUtf8()).isEqualTo("{\"text\":\"ping\"}");
+        assertThat(second.readUtf8()).isEqualTo("{\"text\":\"ping\"}");
+    }
+
+    @Test
+    public void testResponseDecodedWithDeclaredCharset() throws Exception {
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        ResponseBody body = ResponseBody.create(
+                MediaType.parse("application/json; charset=ISO-8859-1"),
+                "{\"text\":\"déjà vu\"}".getBytes(latin1));
+
+        Message message = responseBodyConverter().convert(body);
+
+        assertThat(message.getText()).isEqualTo("déjà vu");
+    }
+
+    private Converter<Message, RequestBody> requestBodyConverter() {
+        return retrofit.requestBodyConverter(Message.class, new Annotation[0], new Annotation[0]);
+    }
+
+    private Converter<ResponseBody, Message> responseBodyConverter() {
+        return retrofit.responseBodyConverter(Message.class, new Annotation[0]);
+    }
+
+    public static class Message {
+        private String text;
+
+        public Message() {
+        }
+
+        public Message(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TokenBucketRateLimiter}
+ *
+ * @author troinine
+ */
+public class TokenBucketRateLimiterTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private TestRateLimiter rateLimiter;
+
+    @Before
+    public void setup() {
+        rateLimiter = new TestRateLimiter(10, 3);
+    }
+
+    @Test
+    public void testBurstAvailableRightAway() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(rateLimiter.reserve(0, TimeUnit.MILLISECONDS)).isZero();
+        }
+
+        assertThat(rateLimiter.reserve(0, TimeUnit.MILLISECONDS)).isNegative();
+    }
+
+    @Test
+    public void testPermitsRefilledAtRate() {
+        drain();
+
+        rateLimiter.now += INTERVAL;
+
+        assertThat(rateLimiter.reserve(0, TimeUnit.MILLISECONDS)).isZero();
+        assertThat(rateLimiter.reserve(0, TimeUnit.MILLISECONDS)).isNegative();
+    }
+
+    @Test
+    public void testReservationsWaitInArrivalOrder() {
+        drain();
+
+        assertThat(rateLimiter.reserve(1, TimeUnit.SECONDS)).isEqualTo(INTERVAL);
+        assertThat(rateLimiter.reserve(1, TimeUnit.SECONDS)).isEqualTo(2 * INTERVAL);
+    }
+
+    @Test
+    public void testNothingReservedWhenWaitExceedsTimeout() {
+        drain();
+
+        assertThat(rateLimiter.reserve(50, TimeUnit.MILLISECONDS)).isNegative();
+        assertThat(rateLimiter.reserve(100, TimeUnit.MILLISECONDS)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    public void testIdleTimeDoesNotGrowBurst() {
+        rateLimiter.now += TimeUnit.MINUTES.toNanos(1);
+
+        drain();
+
+        assertThat(rateLimiter.reserve(0, TimeUnit.MILLISECONDS)).isNegative();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateMustBePositive() {
+        new TokenBucketRateLimiter(0, 1);
+    }
+
+    private void drain() {
+        while (rateLimiter.reserve(0, TimeUnit.MILLISECONDS) == 0) {
+            // Take the permits left in the bucket
+        }
+    }
+
+    private static class TestRateLimiter extends TokenBucketRateLimiter {
+        long now;
+
+        TestRateLimiter(double permitsPerSecond, int burst) {
+            super(permitsPerSecond, burst);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+}
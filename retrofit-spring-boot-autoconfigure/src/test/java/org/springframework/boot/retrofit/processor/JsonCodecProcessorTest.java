@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.processor;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link JsonCodecProcessor}
+ *
+ * @author troinine
+ */
+public class JsonCodecProcessorTest {
+    private static final String ORDER = "package sample;\n"
+            + "import com.fasterxml.jackson.annotation.JsonIgnore;\n"
+            + "import com.fasterxml.jackson.annotation.JsonProperty;\n"
+            + "import org.springframework.boot.retrofit.annotation.JsonCodec;\n"
+            + "import java.util.List;\n"
+            + "@JsonCodec\n"
+            + "public class Order {\n"
+            + "    @JsonProperty(\"order_id\")\n"
+            + "    private String id;\n"
+            + "    private int quantity;\n"
+            + "    private Double price;\n"
+            + "    private boolean paid;\n"
+            + "    private List<Item> items;\n"
+            + "    private String secret;\n"
+            + "    public String getId() { return id; }\n"
+            + "    public void setId(String id) { this.id = id; }\n"
+            + "    public int getQuantity() { return quantity; }\n"
+            + "    public void setQuantity(int quantity) { this.quantity = quantity; }\n"
+            + "    public Double getPrice() { return price; }\n"
+            + "    public void setPrice(Double price) { this.price = price; }\n"
+            + "    public boolean isPaid() { return paid; }\n"
+            + "    public void setPaid(boolean paid) { this.paid = paid; }\n"
+            + "    public List<Item> getItems() { return items; }\n"
+            + "    public void setItems(List<Item> items) { this.items = items; }\n"
+            + "    @JsonIgnore\n"
+            + "    public String getSecret() { return secret; }\n"
+            + "    public void setSecret(String secret) { this.secret = secret; }\n"
+            + "    public String getSummary() { return id + \" x\" + quantity; }\n"
+            + "    @JsonCodec\n"
+            + "    public static class Item {\n"
+            + "        private String name;\n"
+            + "        public String getName() { return name; }\n"
+            + "        public void setName(String name) { this.name = name; }\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String GENERIC_PAGE = "package sample;\n"
+            + "import org.springframework.boot.retrofit.annotation.JsonCodec;\n"
+            + "@JsonCodec\n"
+            + "public class Page<T> {\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File output;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGeneratedAdapterReadsAndWritesProperties() throws Exception {
+        ClassLoader classLoader = compile("sample.Order", ORDER);
+        Class<?> orderClass = classLoader.loadClass("sample.Order");
+        Moshi moshi = new Moshi.Builder().build();
+        JsonAdapter<Object> adapter = (JsonAdapter<Object>) classLoader.loadClass("sample.Order_JsonAdapter")
+                .getConstructor(Moshi.class)
+                .newInstance(moshi);
+
+        Object order = adapter.fromJson("{\"order_id\":\"o-1\",\"quantity\":3,\"price\":null,\"paid\":true,"
+                + "\"items\":[{\"name\":\"book\"}],\"secret\":\"s\",\"summary\":\"ignored\",\"extra\":{\"a\":[1]}}");
+
+        assertThat(orderClass.getMethod("getId").invoke(order)).isEqualTo("o-1");
+        assertThat(orderClass.getMethod("getQuantity").invoke(order)).isEqualTo(3);
+        assertThat(orderClass.getMethod("getPrice").invoke(order)).isNull();
+        assertThat(orderClass.getMethod("isPaid").invoke(order)).isEqualTo(true);
+        assertThat(orderClass.getMethod("getSecret").invoke(order)).isNull();
+
+        List<?> items = (List<?>) orderClass.getMethod("getItems").invoke(order);
+        assertThat(items).hasSize(1);
+        assertThat(items.get(0).getClass().getName()).isEqualTo("sample.Order$Item");
+
+        orderClass.getMethod("setPrice", Double.class).invoke(order, 9.5);
+
+        assertThat(adapter.toJson(order)).isEqualTo(
+                "{\"order_id\":\"o-1\",\"quantity\":3,\"price\":9.5,\"paid\":true,\"items\":[{\"name\":\"book\"}]}");
+    }
+
+    @Test
+    public void testUnsupportedModelLeftToNextConverter() throws Exception {
+        ClassLoader classLoader = compile("sample.Page", GENERIC_PAGE);
+
+        assertThat(classLoader.loadClass("sample.Page")).isNotNull();
+
+        try {
+            classLoader.loadClass("sample.Page_JsonAdapter");
+            failBecauseExceptionWasNotThrown(ClassNotFoundException.class);
+        } catch (ClassNotFoundException e) {
+            // Expected, the model is handled by Jackson
+        }
+    }
+
+    @Test
+    public void testNativeImageConfigurationWritten() throws Exception {
+        compile("sample.Order", ORDER);
+
+        String reflectConfig = new String(Files.readAllBytes(
+                new File(output, JsonCodecProcessor.NATIVE_IMAGE_LOCATION + "reflect-config.json").toPath()), "UTF-8");
+
+        assertThat(reflectConfig)
+                .contains("{\"name\": \"sample.Order_JsonAdapter\", \"methods\": [{\"name\": \"<init>\", "
+                        + "\"parameterTypes\": [\"com.squareup.moshi.Moshi\"]}]}")
+                .contains("{\"name\": \"sample.Order_Item_JsonAdapter\"");
+    }
+
+    private ClassLoader compile(String className, final String source) throws Exception {
+        output = temporaryFolder.newFolder();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                Arrays.asList("-d", output.getPath(), "-s", output.getPath(),
+                        "-classpath", System.getProperty("java.class.path")),
+                null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new JsonCodecProcessor()));
+
+        assertThat(task.call()).isTrue();
+
+        return new URLClassLoader(new URL[] {output.toURI().toURL()}, getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.processor;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RetrofitServiceProcessor}
+ *
+ * @author troinine
+ */
+public class RetrofitServiceProcessorTest {
+    private static final String USER_SERVICE = "package sample;\n"
+            + "import org.springframework.boot.retrofit.annotation.RetrofitService;\n"
+            + "import retrofit2.Call;\n"
+            + "import retrofit2.http.*;\n"
+            + "@RetrofitService\n"
+            + "public interface UserService {\n"
+            + "    @GET(\"/users/{id}\")\n"
+            + "    Call<String> get(@Path(\"id\") String id, @Query(\"fields\") String fields,\n"
+            + "            @Header(\"X-Trace\") String trace);\n"
+            + "    @POST(\"/users\")\n"
+            + "    @Headers(\"Content-Type: application/json\")\n"
+            + "    Call<String> create(@Body String user);\n"
+            + "}\n";
+
+    private static final String URL_SERVICE = "package sample;\n"
+            + "import org.springframework.boot.retrofit.annotation.RetrofitService;\n"
+            + "import retrofit2.Call;\n"
+            + "import retrofit2.http.*;\n"
+            + "@RetrofitService\n"
+            + "public interface UrlService {\n"
+            + "    @GET\n"
+            + "    Call<String> get(@Url String url);\n"
+            + "}\n";
+
+    private static final String PRIVATE_MODEL_SERVICE = "package sample;\n"
+            + "import org.springframework.boot.retrofit.annotation.RetrofitService;\n"
+            + "import retrofit2.Call;\n"
+            + "import retrofit2.http.*;\n"
+            + "public class Outer {\n"
+            + "    private static class Hidden {\n"
+            + "    }\n"
+            + "    @RetrofitService\n"
+            + "    public interface HiddenService {\n"
+            + "        @GET(\"/hidden\")\n"
+            + "        Call<Hidden> get();\n"
+            + "    }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private Retrofit retrofit;
+    private File output;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGeneratedImplementationMakesRequests() throws Exception {
+        ClassLoader classLoader = compile("sample.UserService", USER_SERVICE);
+        Object service = classLoader.loadClass("sample.UserService_Retrofit")
+                .getConstructor(Retrofit.class)
+                .newInstance(retrofit);
+        server.enqueue(new MockResponse().setBody("found"));
+        server.enqueue(new MockResponse().setBody("created"));
+
+        Call<String> get = (Call<String>) service.getClass()
+                .getMethod("get", String.class, String.class, String.class)
+                .invoke(service, "a/b c", "name", null);
+        Call<String> create = (Call<String>) service.getClass()
+                .getMethod("create", String.class)
+                .invoke(service, "{}");
+
+        assertThat(get.execute().body()).isEqualTo("found");
+        assertThat(create.execute().body()).isEqualTo("created");
+
+        RecordedRequest getRequest = server.takeRequest();
+        assertThat(getRequest.getMethod()).isEqualTo("GET");
+        assertThat(getRequest.getPath()).isEqualTo("/users/a/b%20c?fields=name");
+        assertThat(getRequest.getHeader("X-Trace")).isNull();
+
+        RecordedRequest createRequest = server.takeRequest();
+        assertThat(createRequest.getMethod()).isEqualTo("POST");
+        assertThat(createRequest.getHeader("Content-Type")).isEqualTo("application/json");
+        assertThat(createRequest.getBody().readUtf8()).isEqualTo("{}");
+    }
+
+    @Test
+    public void testUnsupportedServiceLeftToProxy() throws Exception {
+        ClassLoader classLoader = compile("sample.UrlService", URL_SERVICE);
+
+        assertThat(classLoader.loadClass("sample.UrlService")).isNotNull();
+
+        try {
+            classLoader.loadClass("sample.UrlService_Retrofit");
+            failBecauseExceptionWasNotThrown(ClassNotFoundException.class);
+        } catch (ClassNotFoundException e) {
+            // Expected, the service keeps using the dynamic proxy
+        }
+    }
+
+    @Test
+    public void testServiceReferringToInaccessibleTypesLeftToProxy() throws Exception {
+        ClassLoader classLoader = compile("sample.Outer", PRIVATE_MODEL_SERVICE);
+
+        assertThat(classLoader.loadClass("sample.Outer$HiddenService")).isNotNull();
+
+        try {
+            classLoader.loadClass("sample.Outer_HiddenService_Retrofit");
+            failBecauseExceptionWasNotThrown(ClassNotFoundException.class);
+        } catch (ClassNotFoundException e) {
+            // Expected, the implementation could not refer to the private model class
+        }
+    }
+
+    @Test
+    public void testServiceIndexAndNativeImageConfigurationWritten() throws Exception {
+        compile("sample.UserService", USER_SERVICE);
+
+        Properties index = new Properties();
+        FileInputStream in = new FileInputStream(new File(output, ServiceMetadata.INDEX_LOCATION));
+
+        try {
+            index.load(in);
+        } finally {
+            in.close();
+        }
+
+        assertThat(index.getProperty("sample.UserService")).isEmpty();
+        assertThat(read(ServiceMetadata.NATIVE_IMAGE_LOCATION + "reflect-config.json"))
+                .contains("{\"name\": \"sample.UserService\", \"allDeclaredMethods\": true}")
+                .contains("{\"name\": \"sample.UserService_Retrofit\", \"methods\": [{\"name\": \"<init>\"");
+        assertThat(read(ServiceMetadata.NATIVE_IMAGE_LOCATION + "proxy-config.json"))
+                .contains("{\"interfaces\": [\"sample.UserService\"]}");
+    }
+
+    private String read(String location) throws Exception {
+        return new String(Files.readAllBytes(new File(output, location).toPath()), "UTF-8");
+    }
+
+    private ClassLoader compile(String className, final String source) throws Exception {
+        output = temporaryFolder.newFolder();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                Arrays.asList("-d", output.getPath(), "-s", output.getPath(),
+                        "-classpath", System.getProperty("java.class.path")),
+                null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new RetrofitServiceProcessor()));
+
+        assertThat(task.call()).isTrue();
+
+        return new URLClassLoader(new URL[] {output.toURI().toURL()}, getClass().getClassLoader());
+    }
+}
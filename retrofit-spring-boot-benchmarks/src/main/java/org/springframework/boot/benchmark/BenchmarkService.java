@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import org.springframework.boot.retrofit.annotation.RetrofitService;
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+
+/**
+ * Service used by the service invocation benchmarks. An implementation is generated for it at compile time.
+ *
+ * @author troinine
+ */
+@RetrofitService
+public interface BenchmarkService {
+    @GET("/items/{id}")
+    Call<String> get(@Path("id") String id, @Query("fields") String fields, @Header("X-Request-Id") String requestId);
+
+    @GET("/items")
+    Call<String> list(@Query("page") int page, @Query("size") int size);
+
+    @POST("/items")
+    Call<String> create(@Body String item);
+
+    @DELETE("/items/{id}")
+    Call<String> delete(@Path("id") String id);
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal keep-alive HTTP/1.1 server answering every request with the same response.
+ * <p>
+ * The same implementation serves both TCP and Unix domain sockets so that transports can be compared without the
+ * server side skewing the results. Request bodies are supported when their length is given by a
+ * {@code Content-Length} header and the whole request fits in the 8 KiB read buffer; bodies are discarded.
+ *
+ * @author troinine
+ */
+public class FixedResponseServer implements Closeable {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ServerSocketChannel serverChannel;
+    private final byte[] response;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private FixedResponseServer(ServerSocketChannel serverChannel, String body) {
+        this.serverChannel = serverChannel;
+        this.response = ("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.getBytes(ASCII).length + "\r\n"
+                + "\r\n"
+                + body).getBytes(ASCII);
+    }
+
+    /**
+     * Starts a server on an ephemeral loopback TCP port.
+     *
+     * @param body the response body.
+     * @return the started server.
+     * @throws IOException if binding fails.
+     */
+    public static FixedResponseServer tcp(String body) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        return new FixedResponseServer(channel, body).start();
+    }
+
+    /**
+     * Starts a server on the given Unix domain socket path. Requires Java 16 or later.
+     *
+     * @param path the socket file path, which must not exist.
+     * @param body the response body.
+     * @return the started server.
+     * @throws IOException if binding fails.
+     */
+    public static FixedResponseServer unix(String path, String body) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            ServerSocketChannel channel = (ServerSocketChannel) ServerSocketChannel.class
+                    .getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unix);
+            SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class)
+                    .invoke(null, path);
+            channel.bind(address);
+
+            return new FixedResponseServer(channel, body).start();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unix domain sockets require Java 16 or later", e);
+        }
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        executor.shutdownNow();
+    }
+
+    private FixedResponseServer start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (serverChannel.isOpen()) {
+                    try {
+                        final SocketChannel channel = serverChannel.accept();
+
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(channel);
+                            }
+                        });
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+
+        return this;
+    }
+
+    private void serve(SocketChannel channel) {
+        ByteBuffer in = ByteBuffer.allocate(8192);
+
+        try {
+            while (true) {
+                if (channel.read(in) == -1) {
+                    break;
+                }
+
+                int end;
+
+                while ((end = endOfRequest(in)) != -1) {
+                    ByteBuffer out = ByteBuffer.wrap(response);
+
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+
+                    // Drop the request just served and keep any pipelined remainder
+                    in.flip();
+                    in.position(end);
+                    in.compact();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing to do
+            }
+        }
+    }
+
+    private static int endOfRequest(ByteBuffer buffer) {
+        int end = endOfHeaders(buffer);
+
+        if (end == -1) {
+            return -1;
+        }
+
+        end += contentLength(buffer, end);
+
+        return end <= buffer.position() ? end : -1;
+    }
+
+    private static int contentLength(ByteBuffer buffer, int endOfHeaders) {
+        byte[] bytes = new byte[endOfHeaders];
+
+        for (int i = 0; i < endOfHeaders; i++) {
+            bytes[i] = buffer.get(i);
+        }
+
+        for (String line : new String(bytes, ASCII).split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                return Integer.parseInt(line.substring(15).trim());
+            }
+        }
+
+        return 0;
+    }
+
+    private static int endOfHeaders(ByteBuffer buffer) {
+        for (int i = 3; i < buffer.position(); i++) {
+            if (buffer.get(i - 3) == '\r' && buffer.get(i - 2) == '\n'
+                    && buffer.get(i - 1) == '\r' && buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.retrofit.JsonCodecConverterFactory;
+import org.springframework.boot.retrofit.StreamingJacksonConverterFactory;
+import org.springframework.boot.retrofit.annotation.JsonCodec;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of the streaming Jackson converter and the converter of the
+ * {@link JsonCodec} adapters generated at compile time against {@code retrofit2.converter.jackson}. Orders carry a
+ * customer, a nested address and the given number of items, with non-ASCII characters and escaped quotes in the
+ * text. Run with {@code -prof gc} to see the allocated bytes per operation.
+ *
+ * @author troinine
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonConverterBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=UTF-8");
+
+    @Param({"jackson", "streaming", "codec"})
+    public String converter;
+
+    @Param({"10", "1000"})
+    public int items;
+
+    private Converter<Order, RequestBody> requestBodyConverter;
+    private Converter<ResponseBody, Order> responseBodyConverter;
+    private Order order;
+    private byte[] json;
+    private Buffer sink;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Converter.Factory factory;
+
+        if ("jackson".equals(converter)) {
+            factory = JacksonConverterFactory.create(mapper);
+        } else if ("streaming".equals(converter)) {
+            factory = StreamingJacksonConverterFactory.create(mapper);
+        } else if ("codec".equals(converter)) {
+            factory = JsonCodecConverterFactory.create();
+        } else {
+            throw new IllegalArgumentException("Unknown converter " + converter);
+        }
+
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .addConverterFactory(factory)
+                .build();
+
+        requestBodyConverter = retrofit.requestBodyConverter(Order.class, new Annotation[0], new Annotation[0]);
+        responseBodyConverter = retrofit.responseBodyConverter(Order.class, new Annotation[0]);
+
+        order = new Order();
+        order.setId("order-1");
+        order.setCustomer("Zoë Müller");
+        order.setPaid(true);
+        order.setShippingAddress(new Address("Mannerheimintie 12 B 7", "Helsinki", "00100", "FI"));
+
+        for (int i = 0; i < items; i++) {
+            order.getItems().add(new Item("item-" + i, "Item \"" + i + "\" – gift wrapped", i, i * 0.5 + 0.99));
+        }
+
+        json = mapper.writeValueAsBytes(order);
+        sink = new Buffer();
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        RequestBody body = requestBodyConverter.convert(order);
+        long length = body.contentLength();
+
+        // Stands in for the connection, clearing recycles the segments like a socket write would
+        body.writeTo(sink);
+        sink.clear();
+
+        return length;
+    }
+
+    @Benchmark
+    public Order decode() throws IOException {
+        return responseBodyConverter.convert(ResponseBody.create(JSON, json));
+    }
+
+    @JsonCodec
+    public static class Order {
+        private String id;
+        private String customer;
+        private boolean paid;
+        private Address shippingAddress;
+        private List<Item> items = new ArrayList<Item>();
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+        }
+
+        public boolean isPaid() {
+            return paid;
+        }
+
+        public void setPaid(boolean paid) {
+            this.paid = paid;
+        }
+
+        public Address getShippingAddress() {
+            return shippingAddress;
+        }
+
+        public void setShippingAddress(Address shippingAddress) {
+            this.shippingAddress = shippingAddress;
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+    }
+
+    @JsonCodec
+    public static class Address {
+        private String street;
+        private String city;
+        private String postalCode;
+        private String country;
+
+        public Address() {
+        }
+
+        public Address(String street, String city, String postalCode, String country) {
+            this.street = street;
+            this.city = city;
+            this.postalCode = postalCode;
+            this.country = country;
+        }
+
+        public String getStreet() {
+            return street;
+        }
+
+        public void setStreet(String street) {
+            this.street = street;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+
+        public String getPostalCode() {
+            return postalCode;
+        }
+
+        public void setPostalCode(String postalCode) {
+            this.postalCode = postalCode;
+        }
+
+        public String getCountry() {
+            return country;
+        }
+
+        public void setCountry(String country) {
+            this.country = country;
+        }
+    }
+
+    @JsonCodec
+    public static class Item {
+        private String name;
+        private String description;
+        private int quantity;
+        private double price;
+
+        public Item() {
+        }
+
+        public Item(String name, String description, int quantity, double price) {
+            this.name = name;
+            this.description = description;
+            this.quantity = quantity;
+            this.price = price;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public void setPrice(double price) {
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.retrofit.RetrofitProperties;
+import org.springframework.boot.retrofit.Outbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rate at which calls are queued in an {@link Outbox} and the rate at which its sender drains them to
+ * a local stub server.
+ * <p>
+ * Queueing writes to the memory-mapped journal only, so the outbox is not started while it is measured and every
+ * iteration gets a fresh journal whose single segment is large enough never to reject a call, since only the sender
+ * creates further segments. Draining is measured from a journal filled
+ * with {@value #CALLS} calls before each iteration, for several batch sizes, until the sender has acknowledged them
+ * all. Run the enqueue benchmark with {@code -t 1,4,16} to see how producers contend for the journal.
+ *
+ * @author troinine
+ */
+@Fork(1)
+public class OutboxBenchmark {
+    static final int CALLS = 10000;
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String EVENT = "{\"type\":\"order-paid\",\"orderId\":\"order-1\",\"amount\":42.5}";
+
+    @State(Scope.Benchmark)
+    public static class EnqueueState {
+        private File directory;
+        private Outbox outbox;
+        private Request request;
+
+        @Setup(Level.Iteration)
+        public void setup() throws IOException {
+            RetrofitProperties.Outbox properties = new RetrofitProperties.Outbox();
+            properties.setSegmentSize(1 << 30);
+            properties.setMaxSegments(1);
+
+            directory = createDirectory();
+            outbox = new Outbox("enqueue", directory, new OkHttpClient(), properties);
+            request = request("http://127.0.0.1:1/events");
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() {
+            outbox.close();
+            delete(directory);
+
+            if (outbox.getRejected() > 0) {
+                throw new IllegalStateException("The journal filled up, the results do not measure queueing alone");
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DrainState {
+        @Param({"1", "16", "64"})
+        public int batchSize;
+
+        private FixedResponseServer server;
+        private OkHttpClient client;
+        private File directory;
+        private Outbox outbox;
+
+        @Setup(Level.Trial)
+        public void startServer() throws IOException {
+            server = FixedResponseServer.tcp("");
+            client = new OkHttpClient();
+            client.dispatcher().setMaxRequestsPerHost(64);
+        }
+
+        @Setup(Level.Iteration)
+        public void setup() throws IOException {
+            RetrofitProperties.Outbox properties = new RetrofitProperties.Outbox();
+            properties.setBatchSize(batchSize);
+
+            directory = createDirectory();
+            outbox = new Outbox("drain", directory, client, properties);
+
+            Request request = request("http://127.0.0.1:" + server.getPort() + "/events");
+
+            for (int i = 0; i < CALLS; i++) {
+                if (!outbox.offer(request)) {
+                    throw new IllegalStateException("The journal filled up");
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() {
+            outbox.close();
+            delete(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void stopServer() throws IOException {
+            client.connectionPool().evictAll();
+            server.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Threads(4)
+    public boolean enqueue(EnqueueState state) {
+        return state.outbox.offer(state.request);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @OperationsPerInvocation(CALLS)
+    public long drain(DrainState state) throws InterruptedException {
+        state.outbox.start();
+
+        while (state.outbox.getQueued() > 0) {
+            Thread.sleep(1);
+        }
+
+        return state.outbox.getSent();
+    }
+
+    private static Request request(String url) {
+        return new Request.Builder()
+                .url(url)
+                .header("X-Source", "benchmark")
+                .post(RequestBody.create(JSON, EVENT))
+                .build();
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("outbox", "");
+
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.retrofit.RateLimiter;
+import org.springframework.boot.retrofit.TokenBucketRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of taking permits from a rate limiter shared by many threads, comparing the lock-free
+ * {@link TokenBucketRateLimiter} against a token bucket guarded by a lock.
+ * <p>
+ * With the {@code unlimited} rate every permit is granted, which shows the cost of the bookkeeping alone. With the
+ * {@code limited} rate most requests are rejected, like a service hammered past its quota. Run with
+ * {@code -t 1,4,16,64} to see how each limiter scales with the number of threads.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class RateLimiterBenchmark {
+    @Param({"lock-free", "synchronized"})
+    public String limiter;
+
+    @Param({"unlimited", "limited"})
+    public String rate;
+
+    private RateLimiter rateLimiter;
+
+    @Setup
+    public void setup() {
+        double permitsPerSecond = "unlimited".equals(rate) ? 1e12 : 1000;
+
+        if ("lock-free".equals(limiter)) {
+            rateLimiter = new TokenBucketRateLimiter(permitsPerSecond, 100);
+        } else if ("synchronized".equals(limiter)) {
+            rateLimiter = new SynchronizedTokenBucket(permitsPerSecond, 100);
+        } else {
+            throw new IllegalArgumentException("Unknown limiter " + limiter);
+        }
+    }
+
+    @Benchmark
+    public long failFast() {
+        return rateLimiter.reserve(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Classic token bucket counting tokens under a lock.
+     */
+    private static class SynchronizedTokenBucket implements RateLimiter {
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        SynchronizedTokenBucket(double permitsPerSecond, int burst) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        @Override
+        public synchronized long reserve(long timeout, TimeUnit unit) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+            refilledAt = now;
+
+            long wait = tokens >= 1 ? 0 : (long) ((1 - tokens) / permitsPerNano);
+
+            if (wait > unit.toNanos(timeout)) {
+                return -1;
+            }
+
+            tokens -= 1;
+
+            return wait;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.InProcessTransportInterceptor;
+import org.springframework.boot.retrofit.ScatterGather;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways an aggregating endpoint can fan out to a number of service calls: one after another, by
+ * submitting blocking calls to a thread pool, and with a {@link ScatterGather} enqueueing them on the OkHttp
+ * dispatcher.
+ * <p>
+ * Every call takes {@code latency} milliseconds in the in-process transport, so the sequential fan-out takes
+ * {@code width} times as long and the parallel ones about as long as a single call. The thread pool is sized to
+ * the width, which the naive hand-rolled fan-outs do, and the dispatcher admits as many calls per host. Run with
+ * {@code -prof gc} to compare the allocations per fan-out.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScatterGatherBenchmark {
+    private static final String HOST = "in-process.local";
+    private static final long TIMEOUT = 5000;
+
+    @Param({"10", "30"})
+    public int width;
+
+    @Param({"5"})
+    public long latency;
+
+    private BenchmarkService service;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new InProcessTransportInterceptor(
+                        Collections.<InProcessHandler>singletonList(new SlowResponseHandler(latency))))
+                .build();
+        client.dispatcher().setMaxRequests(width);
+        client.dispatcher().setMaxRequestsPerHost(width);
+
+        service = new Retrofit.Builder()
+                .baseUrl("http://" + HOST + "/")
+                .client(client)
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build()
+                .create(BenchmarkService.class);
+        executor = Executors.newFixedThreadPool(width);
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void sequential(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < width; i++) {
+            blackhole.consume(service.get(String.valueOf(i), null, null).execute().body());
+        }
+    }
+
+    @Benchmark
+    public void threadPool(Blackhole blackhole) throws Exception {
+        List<Future<String>> futures = new ArrayList<Future<String>>(width);
+
+        for (int i = 0; i < width; i++) {
+            final String id = String.valueOf(i);
+
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return service.get(id, null, null).execute().body();
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+
+        for (Future<String> future : futures) {
+            blackhole.consume(future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Benchmark
+    public void scatterGather(Blackhole blackhole) throws Exception {
+        ScatterGather gather = new ScatterGather(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < width; i++) {
+            gather.add(service.get(String.valueOf(i), null, null));
+        }
+
+        gather.execute();
+
+        for (ScatterGather.Part<?> part : gather.getParts()) {
+            blackhole.consume(part.body());
+        }
+    }
+
+    private static class SlowResponseHandler implements InProcessHandler {
+        private static final MediaType JSON = MediaType.parse("application/json");
+
+        private final long latency;
+
+        SlowResponseHandler(long latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public String getHost() {
+            return HOST;
+        }
+
+        @Override
+        public Response handle(Request request) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(JSON, "{}"))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.InProcessTransportInterceptor;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-call overhead of a service implementation generated at compile time against the dynamic proxy
+ * of {@link Retrofit#create(Class)}.
+ * <p>
+ * {@code request} invokes a service method and builds the request of the returned call, which is the work both
+ * variants do on top of executing the call. {@code execute} also executes it through the in-process transport. The
+ * benchmark runs on several threads because the proxy looks up every method in a synchronized cache.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ServiceInvocationBenchmark {
+    private static final String HOST = "in-process.local";
+
+    @Param({"proxy", "generated"})
+    public String implementation;
+
+    private BenchmarkService service;
+
+    @Setup
+    public void setup() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new InProcessTransportInterceptor(
+                        Collections.<InProcessHandler>singletonList(new FixedResponseHandler())))
+                .build();
+
+        service = createService(implementation, new Retrofit.Builder()
+                .baseUrl("http://" + HOST + "/")
+                .client(client)
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build());
+    }
+
+    @Benchmark
+    public Request request() {
+        return service.get("42", "name", "request-id").request();
+    }
+
+    @Benchmark
+    public String execute() throws IOException {
+        return service.get("42", "name", "request-id").execute().body();
+    }
+
+    /**
+     * Creates the benchmarked service.
+     *
+     * @param implementation {@code proxy} or {@code generated}.
+     * @param retrofit the Retrofit instance to use.
+     * @return the service.
+     * @throws Exception if the generated implementation cannot be instantiated.
+     */
+    static BenchmarkService createService(String implementation, Retrofit retrofit) throws Exception {
+        if ("proxy".equals(implementation)) {
+            return retrofit.create(BenchmarkService.class);
+        } else if ("generated".equals(implementation)) {
+            return (BenchmarkService) Class.forName(BenchmarkService.class.getName() + "_Retrofit")
+                    .getConstructor(Retrofit.class)
+                    .newInstance(retrofit);
+        }
+
+        throw new IllegalArgumentException("Unknown implementation " + implementation);
+    }
+
+    private static class FixedResponseHandler implements InProcessHandler {
+        private static final MediaType TEXT = MediaType.parse("text/plain");
+
+        @Override
+        public String getHost() {
+            return HOST;
+        }
+
+        @Override
+        public Response handle(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(TEXT, "ok"))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of a service: creating it and building the first request of each of its methods in a
+ * fresh JVM, with a proxy or with the implementation generated at compile time.
+ * <p>
+ * Every fork measures a single invocation, so the result includes class loading and interpreted execution the way
+ * application startup does. Increase the number of forks with {@code -f} for tighter error bounds.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ServiceStartupBenchmark {
+    @Param({"proxy", "generated"})
+    public String implementation;
+
+    @Benchmark
+    public void firstCalls(Blackhole blackhole) throws Exception {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .addConverterFactory(ScalarsConverterFactory.create())
+                .build();
+        BenchmarkService service = ServiceInvocationBenchmark.createService(implementation, retrofit);
+
+        blackhole.consume(service.get("42", "name", "request-id").request());
+        blackhole.consume(service.list(1, 20).request());
+        blackhole.consume(service.create("{}").request());
+        blackhole.consume(service.delete("42").request());
+    }
+}
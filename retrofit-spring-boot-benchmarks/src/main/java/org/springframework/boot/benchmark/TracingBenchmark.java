@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.InProcessTransportInterceptor;
+import org.springframework.boot.okhttp.Span;
+import org.springframework.boot.okhttp.SpanExporter;
+import org.springframework.boot.okhttp.Tracer;
+import org.springframework.boot.okhttp.TracingCallFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the tracing call factory against an un-instrumented client.
+ * <p>
+ * Calls go through the in-process transport so that the network does not hide the overhead. With
+ * {@code sampling-off} the calls are made outside of a trace with a sampling probability of zero, which is the
+ * path that should cost next to nothing. With {@code sampling-on} every call is recorded and handed to an exporter
+ * discarding the spans. Run with {@code -prof gc} to compare the allocations per call.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TracingBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final String HOST = "in-process.local";
+
+    @Param({"plain", "sampling-off", "sampling-on"})
+    public String tracing;
+
+    private Call.Factory callFactory;
+    private Request request;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new InProcessTransportInterceptor(
+                        Collections.<InProcessHandler>singletonList(new FixedResponseHandler())))
+                .build();
+        SpanExporter exporter = new SpanExporter() {
+            @Override
+            public void export(Span span) {
+                blackhole.consume(span);
+            }
+        };
+
+        if ("plain".equals(tracing)) {
+            callFactory = client;
+        } else if ("sampling-off".equals(tracing)) {
+            callFactory = new TracingCallFactory(client, new Tracer(exporter, 0));
+        } else if ("sampling-on".equals(tracing)) {
+            callFactory = new TracingCallFactory(client, new Tracer(exporter, 1));
+        } else {
+            throw new IllegalArgumentException("Unknown tracing " + tracing);
+        }
+
+        request = new Request.Builder().url("http://" + HOST + "/hello").build();
+    }
+
+    @Benchmark
+    public int call() throws IOException {
+        Response response = callFactory.newCall(request).execute();
+        response.body().close();
+
+        return response.code();
+    }
+
+    private static class FixedResponseHandler implements InProcessHandler {
+        @Override
+        public String getHost() {
+            return HOST;
+        }
+
+        @Override
+        public Response handle(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(JSON, "{}"))
+                    .build();
+        }
+    }
+}
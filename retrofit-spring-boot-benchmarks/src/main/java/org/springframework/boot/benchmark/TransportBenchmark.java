@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.okhttp.InProcessHandler;
+import org.springframework.boot.okhttp.InProcessTransportInterceptor;
+import org.springframework.boot.okhttp.UnixDomainSocketFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the request latency of the in-process transport and Unix domain sockets against loopback TCP.
+ * <p>
+ * The Unix domain socket transport requires Java 16 or later. On older JVMs run with
+ * {@code -p transport=in-process,tcp}.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+    private static final String BODY = "{\"message\":\"hello\"}";
+
+    @Param({"in-process", "tcp", "unix"})
+    public String transport;
+
+    private FixedResponseServer server;
+    private File socketFile;
+    private OkHttpClient client;
+    private Request request;
+
+    @Setup
+    public void setup() throws IOException {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+
+        if ("in-process".equals(transport)) {
+            builder.addInterceptor(new InProcessTransportInterceptor(
+                    Collections.singletonList(new FixedResponseHandler("in-process.local"))));
+            request = new Request.Builder().url("http://in-process.local/hello").build();
+        } else if ("tcp".equals(transport)) {
+            server = FixedResponseServer.tcp(BODY);
+            request = new Request.Builder().url("http://127.0.0.1:" + server.getPort() + "/hello").build();
+        } else if ("unix".equals(transport)) {
+            socketFile = new File(System.getProperty("java.io.tmpdir"), "okhttp-benchmark-" + System.nanoTime());
+            server = FixedResponseServer.unix(socketFile.getPath(), BODY);
+            UnixDomainSocketFactory socketFactory = new UnixDomainSocketFactory(socketFile.getPath());
+            builder.socketFactory(socketFactory).dns(socketFactory.getDns());
+            request = new Request.Builder().url("http://sidecar.local/hello").build();
+        } else {
+            throw new IllegalArgumentException("Unknown transport " + transport);
+        }
+
+        client = builder.build();
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        client.connectionPool().evictAll();
+
+        if (server != null) {
+            server.close();
+        }
+
+        if (socketFile != null && !socketFile.delete()) {
+            socketFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public String call() throws IOException {
+        Response response = client.newCall(request).execute();
+
+        return response.body().string();
+    }
+
+    private static class FixedResponseHandler implements InProcessHandler {
+        private static final MediaType JSON = MediaType.parse("application/json");
+
+        private final String host;
+
+        FixedResponseHandler(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public Response handle(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(JSON, BODY))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.benchmark;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.benchmark.JacksonConverterBenchmark.Order;
+import org.springframework.boot.retrofit.RetrofitServiceWarmUp;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the first call of a service method in a fresh JVM, without warm-up, with the warm-up
+ * resolving the converters, and with synthetic encode and decode passes on top.
+ * <p>
+ * The connection is established before the measurement in all cases, so the difference is the parsing of the
+ * method, the building of the Jackson deserializers and the interpreted execution of the converter. Every fork
+ * measures a single call, increase the number of forks with {@code -f} for tighter error bounds.
+ *
+ * @author troinine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class WarmUpBenchmark {
+    private static final String BODY = "{\"id\":\"order-1\",\"customer\":\"Zo\\u00eb M\\u00fcller\",\"paid\":true,"
+            + "\"shippingAddress\":{\"street\":\"Mannerheimintie 12 B 7\",\"city\":\"Helsinki\","
+            + "\"postalCode\":\"00100\",\"country\":\"FI\"},"
+            + "\"items\":[{\"name\":\"item-0\",\"description\":\"Item \\\"0\\\"\",\"quantity\":1,\"price\":0.99},"
+            + "{\"name\":\"item-1\",\"description\":\"Item \\\"1\\\"\",\"quantity\":2,\"price\":1.49}]}";
+
+    @Param({"none", "converters", "passes"})
+    public String warmUp;
+
+    public interface OrderService {
+        @GET("/orders/{id}")
+        Call<Order> get(@Path("id") String id);
+    }
+
+    private FixedResponseServer server;
+    private OkHttpClient client;
+    private OrderService service;
+
+    @Setup
+    public void setup() throws IOException {
+        server = FixedResponseServer.tcp(BODY);
+        client = new OkHttpClient();
+
+        String baseUrl = "http://127.0.0.1:" + server.getPort() + "/";
+        client.newCall(new Request.Builder().url(baseUrl).build()).execute().body().close();
+
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(JacksonConverterFactory.create())
+                .validateEagerly(!"none".equals(warmUp))
+                .build();
+        service = retrofit.create(OrderService.class);
+
+        if ("converters".equals(warmUp)) {
+            new RetrofitServiceWarmUp(0).warmUp(retrofit, OrderService.class);
+        } else if ("passes".equals(warmUp)) {
+            new RetrofitServiceWarmUp(1000).warmUp(retrofit, OrderService.class);
+        } else if (!"none".equals(warmUp)) {
+            throw new IllegalArgumentException("Unknown warm-up " + warmUp);
+        }
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        client.connectionPool().evictAll();
+        server.close();
+    }
+
+    @Benchmark
+    public Order firstCall() throws IOException {
+        return service.get("order-1").execute().body();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an operation with an open workload model: requests arrive on a fixed schedule derived from the target rate
+ * and are never held back because earlier requests are slow.
+ * <p>
+ * Latency is measured from the <em>intended</em> start time of each request rather than from the moment a worker
+ * picked it up. When the system under test stalls, requests queue up behind it and their waiting time is recorded,
+ * which avoids the coordinated omission of closed-loop generators that only measure requests they managed to send.
+ *
+ * @author troinine
+ */
+public class LoadGenerator {
+    private final double rate;
+    private final int concurrency;
+
+    /**
+     * @param rate the target arrival rate in requests per second.
+     * @param concurrency the maximum number of requests in flight.
+     */
+    public LoadGenerator(double rate, int concurrency) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+        }
+
+        this.rate = rate;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Runs the operation for the warm-up period followed by the measured period and waits for all issued requests
+     * to complete.
+     *
+     * @param operation the operation to drive; a thrown exception counts as an error.
+     * @param warmup the warm-up duration.
+     * @param duration the measured duration.
+     * @param unit the unit of both durations.
+     * @return the measured results.
+     * @throws InterruptedException if interrupted while issuing or awaiting requests.
+     */
+    public Result run(final Callable<?> operation, long warmup, long duration, TimeUnit unit)
+            throws InterruptedException {
+        final Recorder recorder = new Recorder(3);
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong lastCompletion = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        final long measureFrom = start + unit.toNanos(warmup);
+        long end = measureFrom + unit.toNanos(duration);
+        long issued = 0;
+
+        try {
+            for (long intended = start; intended < end; intended = start + ++issued * interval) {
+                long delay;
+
+                while ((delay = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                final long intendedStart = intended;
+
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean failed = false;
+
+                        try {
+                            operation.call();
+                        } catch (Exception e) {
+                            failed = true;
+                        }
+
+                        long now = System.nanoTime();
+
+                        if (intendedStart >= measureFrom) {
+                            recorder.recordValue(now - intendedStart);
+                            updateMax(lastCompletion, now);
+
+                            if (failed) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        return new Result(recorder.getIntervalHistogram(), errors.get(),
+                Math.max(lastCompletion.get(), end) - measureFrom, rate);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+
+        while ((current = max.get()) < value && !max.compareAndSet(current, value)) {
+            // Retry until the value is stored or a later completion has been recorded.
+        }
+    }
+
+    /**
+     * Outcome of a run covering only the measured period.
+     */
+    public static class Result {
+        private final Histogram histogram;
+        private final long errors;
+        private final long elapsedNanos;
+        private final double targetRate;
+
+        Result(Histogram histogram, long errors, long elapsedNanos, double targetRate) {
+            this.histogram = histogram;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.targetRate = targetRate;
+        }
+
+        /**
+         * @return the latency distribution in nanoseconds, including failed requests.
+         */
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return completed requests per second over the measured period, including the time needed to drain
+         * requests still in flight when issuing stopped.
+         */
+        public double getThroughput() {
+            return elapsedNanos > 0 ? getCount() * 1e9 / elapsedNanos : 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.retrofit.HelloService;
+import org.springframework.boot.retrofit.Main;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test harness for the sample application. Starts the sample context against a {@link StubServer}, drives
+ * {@link HelloService} with a {@link LoadGenerator} and reports throughput and latency percentiles.
+ * <p>
+ * Runs are configured with {@link LoadTestProperties}, typically as command line arguments such as
+ * {@code --loadtest.rate=500 --loadtest.concurrency=32}. All other arguments are passed to the sample application,
+ * so Retrofit and OkHttp properties can be varied between runs.
+ *
+ * @author troinine
+ */
+@Configuration
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    public static void main(String[] args) throws Exception {
+        StubServer server = new StubServer();
+        server.start();
+
+        try {
+            String[] arguments = Arrays.copyOf(args, args.length + 1);
+            arguments[args.length] = "--spring.retrofit.base-url=" + server.getUrl();
+
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class, LoadTest.class)
+                    .web(false)
+                    .run(arguments);
+
+            try {
+                run(context.getBean(LoadTestProperties.class), context.getBean(HelloService.class), server);
+            } finally {
+                context.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void run(LoadTestProperties properties, final HelloService helloService, StubServer server)
+            throws InterruptedException, IOException {
+        server.setLatency(properties.getLatency());
+        server.setErrorRate(properties.getErrorRate());
+
+        logger.info("Running at {} requests/s with concurrency {} for {} ms after {} ms warm-up",
+                properties.getRate(), properties.getConcurrency(), properties.getDuration(), properties.getWarmup());
+
+        LoadGenerator.Result result = new LoadGenerator(properties.getRate(), properties.getConcurrency())
+                .run(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return helloService.sayHello().toBlocking().single();
+                    }
+                }, properties.getWarmup(), properties.getDuration(), TimeUnit.MILLISECONDS);
+
+        report(result);
+
+        if (StringUtils.hasText(properties.getHistogramFile())) {
+            PrintStream out = new PrintStream(new FileOutputStream(properties.getHistogramFile()), false, "UTF-8");
+
+            try {
+                result.getHistogram().outputPercentileDistribution(out, 1e6);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static void report(LoadGenerator.Result result) {
+        Histogram histogram = result.getHistogram();
+
+        logger.info("Requests: {}, errors: {}", result.getCount(), result.getErrors());
+        logger.info("Throughput: {} requests/s (target {})",
+                String.format("%.1f", result.getThroughput()), result.getTargetRate());
+
+        for (double percentile : PERCENTILES) {
+            logger.info("p{}: {} ms", percentile, millis(histogram.getValueAtPercentile(percentile)));
+        }
+
+        logger.info("max: {} ms", millis(histogram.getMaxValue()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
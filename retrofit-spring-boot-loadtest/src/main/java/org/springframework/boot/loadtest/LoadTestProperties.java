@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loadtest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration of a load test run, bound from {@code loadtest.*} properties or command line arguments.
+ *
+ * @author troinine
+ */
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+    /**
+     * Target arrival rate in requests per second. Requests are issued on this schedule regardless of how fast
+     * earlier requests complete.
+     */
+    private double rate = 200;
+
+    /**
+     * Maximum number of requests in flight. Requests arriving while all slots are busy wait in line and the wait
+     * counts towards their latency.
+     */
+    private int concurrency = 64;
+
+    /**
+     * Measured duration in milliseconds.
+     */
+    private long duration = 30000;
+
+    /**
+     * Warm-up duration in milliseconds. Requests issued during warm-up are not recorded.
+     */
+    private long warmup = 5000;
+
+    /**
+     * Latency in milliseconds the stub server adds to every response.
+     */
+    private long latency = 10;
+
+    /**
+     * Fraction of stub server responses, between 0 and 1, answered with HTTP 503.
+     */
+    private double errorRate;
+
+    /**
+     * Optional file the full latency distribution is written to, in the HdrHistogram percentile format.
+     */
+    private String histogramFile;
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(long warmup) {
+        this.warmup = warmup;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public String getHistogramFile() {
+        return histogramFile;
+    }
+
+    public void setHistogramFile(String histogramFile) {
+        this.histogramFile = histogramFile;
+    }
+}
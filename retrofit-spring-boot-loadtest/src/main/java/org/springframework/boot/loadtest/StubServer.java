@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loadtest;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stub backend for the sample {@code HelloService} with injectable latency and errors.
+ * <p>
+ * Latency is added on the connection thread before the response is written, so it is observed by the client as
+ * server time rather than transfer time. Settings may be changed while the server is running. The underlying
+ * {@link MockWebServer} keeps every recorded request, so very long runs need a correspondingly large heap.
+ *
+ * @author troinine
+ */
+public class StubServer implements Closeable {
+    private static final String BODY = "{\"message\":\"Hello from the stub\"}";
+
+    private final MockWebServer server = new MockWebServer();
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+
+    public StubServer() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (latencyMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(latencyMillis);
+                }
+
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    return new MockResponse().setResponseCode(503);
+                }
+
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(BODY);
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public String getUrl() {
+        return server.url("/").toString();
+    }
+
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+}
@@ -0,0 +1,624 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor generating a Moshi {@code JsonAdapter} for every class annotated with {@code JsonCodec}.
+ * <p>
+ * The adapter of {@code Order} is named {@code Order_JsonAdapter} and placed in the same package, nested classes are
+ * named after all enclosing types like the implementations generated by {@link RetrofitServiceProcessor}. It binds
+ * the properties having both a public getter and a public setter of the same type. Property names follow Jackson's
+ * defaults and its {@code @JsonProperty} and {@code @JsonIgnore} annotations, found on the getter, the setter or
+ * the field of the property, so that a class reads and writes the same JSON whichever converter handles it.
+ * <p>
+ * Strings, primitives and their wrappers are read and written inline. Properties of any other type delegate to the
+ * adapter Moshi provides for it, which is the generated one for other annotated classes. Classes the adapter
+ * cannot be generated for, such as generic or abstract classes or classes without a public no-argument
+ * constructor, are skipped with a note and keep being handled by Jackson.
+ * <p>
+ * The processor also writes the GraalVM native image configuration for the constructors of the generated adapters
+ * under {@value #NATIVE_IMAGE_LOCATION}.
+ *
+ * @author troinine
+ */
+@SupportedAnnotationTypes(JsonCodecProcessor.JSON_CODEC_ANNOTATION)
+public class JsonCodecProcessor extends AbstractProcessor {
+    static final String JSON_CODEC_ANNOTATION = "org.springframework.boot.retrofit.annotation.JsonCodec";
+
+    /**
+     * Must match {@code JsonCodecConverterFactory.GENERATED_CLASS_SUFFIX}.
+     */
+    static final String GENERATED_CLASS_SUFFIX = "_JsonAdapter";
+
+    static final String NATIVE_IMAGE_LOCATION = "META-INF/native-image/org.springframework.boot/retrofit-json-codecs/";
+
+    private static final String JSON_PROPERTY_ANNOTATION = "com.fasterxml.jackson.annotation.JsonProperty";
+    private static final String JSON_IGNORE_ANNOTATION = "com.fasterxml.jackson.annotation.JsonIgnore";
+    private static final String MOSHI_PACKAGE = "com.squareup.moshi.";
+    private static final Map<String, String> INLINE_READERS = new HashMap<String, String>();
+
+    static {
+        // Types read and written inline and how to read them, written values resolve to the matching overload
+        INLINE_READERS.put("boolean", "reader.nextBoolean()");
+        INLINE_READERS.put("byte", "(byte) reader.nextInt()");
+        INLINE_READERS.put("short", "(short) reader.nextInt()");
+        INLINE_READERS.put("int", "reader.nextInt()");
+        INLINE_READERS.put("long", "reader.nextLong()");
+        INLINE_READERS.put("float", "(float) reader.nextDouble()");
+        INLINE_READERS.put("double", "reader.nextDouble()");
+        INLINE_READERS.put("java.lang.Boolean", "reader.nextBoolean()");
+        INLINE_READERS.put("java.lang.Byte", "(byte) reader.nextInt()");
+        INLINE_READERS.put("java.lang.Short", "(short) reader.nextInt()");
+        INLINE_READERS.put("java.lang.Integer", "reader.nextInt()");
+        INLINE_READERS.put("java.lang.Long", "reader.nextLong()");
+        INLINE_READERS.put("java.lang.Float", "(float) reader.nextDouble()");
+        INLINE_READERS.put("java.lang.Double", "reader.nextDouble()");
+        INLINE_READERS.put("java.lang.String", "reader.nextString()");
+    }
+
+    private final Set<String> generatedClasses = new TreeSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeReflectConfig();
+
+            return false;
+        }
+
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    processModel((TypeElement) element);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void processModel(TypeElement model) {
+        try {
+            generatedClasses.add(writeAdapter(model, parseModel(model)));
+        } catch (UnsupportedModelException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "No JSON adapter generated for " + model.getQualifiedName()
+                            + ", it is handled by the next converter instead: " + e.getMessage(),
+                    e.element);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write the JSON adapter of " + model.getQualifiedName() + ": " + e.getMessage(), model);
+        }
+    }
+
+    private List<Property> parseModel(TypeElement model) throws UnsupportedModelException {
+        if (!model.getTypeParameters().isEmpty()) {
+            throw new UnsupportedModelException(model, "generic classes are not supported");
+        }
+
+        if (model.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedModelException(model, "abstract classes cannot be instantiated");
+        }
+
+        for (Element element = model; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+                throw new UnsupportedModelException(model, "the class and its enclosing classes must be public");
+            }
+
+            if (((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                    && !element.getModifiers().contains(Modifier.STATIC)) {
+                throw new UnsupportedModelException(model, "inner classes cannot be instantiated");
+            }
+        }
+
+        if (!hasPublicDefaultConstructor(model)) {
+            throw new UnsupportedModelException(model, "no public no-argument constructor");
+        }
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(model));
+        List<VariableElement> fields = ElementFilter.fieldsIn(processingEnv.getElementUtils().getAllMembers(model));
+        List<Property> properties = new ArrayList<Property>();
+        Set<String> names = new HashSet<String>();
+
+        for (ExecutableElement getter : methods) {
+            String name = getPropertyName(getter);
+
+            if (name == null) {
+                continue;
+            }
+
+            ExecutableElement setter = findSetter(methods, name, getter.getReturnType());
+
+            if (setter == null) {
+                continue;
+            }
+
+            List<Element> elements = new ArrayList<Element>();
+            elements.add(getter);
+            elements.add(setter);
+
+            for (VariableElement field : fields) {
+                if (field.getSimpleName().contentEquals(name) && !field.getModifiers().contains(Modifier.STATIC)) {
+                    elements.add(field);
+                }
+            }
+
+            if (isIgnored(elements)) {
+                continue;
+            }
+
+            Property property = new Property(getJsonName(elements, name), getter, setter);
+
+            if (!names.add(property.jsonName)) {
+                throw new UnsupportedModelException(getter, "duplicate JSON property " + property.jsonName);
+            }
+
+            if (!INLINE_READERS.containsKey(property.type.toString())) {
+                property.typeLiteral = typeLiteral(property.type, getter);
+            }
+
+            properties.add(property);
+        }
+
+        return properties;
+    }
+
+    private static boolean hasPublicDefaultConstructor(TypeElement model) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the name of the property a method is the public getter of, following Jackson's defaults.
+     */
+    private static String getPropertyName(ExecutableElement method) {
+        if (!isPublicInstanceMethod(method) || !method.getParameters().isEmpty()
+                || method.getReturnType().getKind() == TypeKind.VOID) {
+            return null;
+        }
+
+        String name = method.getSimpleName().toString();
+
+        if (name.startsWith("get") && name.length() > 3 && !name.equals("getClass")) {
+            return manglePropertyName(name.substring(3));
+        }
+
+        if (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+            return manglePropertyName(name.substring(2));
+        }
+
+        return null;
+    }
+
+    private ExecutableElement findSetter(List<ExecutableElement> methods, String name, TypeMirror type) {
+        for (ExecutableElement method : methods) {
+            String methodName = method.getSimpleName().toString();
+
+            if (isPublicInstanceMethod(method)
+                    && methodName.startsWith("set")
+                    && methodName.length() > 3
+                    && method.getParameters().size() == 1
+                    && manglePropertyName(methodName.substring(3)).equals(name)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isPublicInstanceMethod(ExecutableElement method) {
+        return method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC);
+    }
+
+    /**
+     * Lower-cases the leading upper-case characters of a property name like Jackson does by default, so that
+     * {@code getURL} names the {@code url} property.
+     */
+    private static String manglePropertyName(String name) {
+        StringBuilder mangled = new StringBuilder(name);
+
+        for (int i = 0; i < name.length() && Character.isUpperCase(name.charAt(i)); i++) {
+            mangled.setCharAt(i, Character.toLowerCase(name.charAt(i)));
+        }
+
+        return mangled.toString();
+    }
+
+    private boolean isIgnored(List<Element> elements) {
+        for (Element element : elements) {
+            AnnotationMirror annotation = getAnnotation(element, JSON_IGNORE_ANNOTATION);
+
+            if (annotation != null && (Boolean) getValue(annotation, "value")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private String getJsonName(List<Element> elements, String name) {
+        for (Element element : elements) {
+            AnnotationMirror annotation = getAnnotation(element, JSON_PROPERTY_ANNOTATION);
+
+            if (annotation != null && !((String) getValue(annotation, "value")).isEmpty()) {
+                return (String) getValue(annotation, "value");
+            }
+        }
+
+        return name;
+    }
+
+    /**
+     * Returns a Java expression evaluating to the {@code java.lang.reflect.Type} of a property, to look up its
+     * Moshi adapter with.
+     */
+    private String typeLiteral(TypeMirror type, Element element) throws UnsupportedModelException {
+        if (type.getKind().isPrimitive()) {
+            return type + ".class";
+        }
+
+        if (type.getKind() == TypeKind.ARRAY) {
+            if (!isRawType(((ArrayType) type).getComponentType())) {
+                throw new UnsupportedModelException(element, "arrays of generic types are not supported");
+            }
+
+            return processingEnv.getTypeUtils().erasure(type) + ".class";
+        }
+
+        if (type.getKind() == TypeKind.WILDCARD) {
+            TypeMirror bound = ((WildcardType) type).getExtendsBound();
+
+            return bound != null ? typeLiteral(bound, element) : "java.lang.Object.class";
+        }
+
+        if (type.getKind() != TypeKind.DECLARED) {
+            throw new UnsupportedModelException(element, "properties of type " + type + " are not supported");
+        }
+
+        List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+        String rawType = processingEnv.getTypeUtils().erasure(type) + ".class";
+
+        if (typeArguments.isEmpty()) {
+            return rawType;
+        }
+
+        StringBuilder literal = new StringBuilder(MOSHI_PACKAGE).append("Types.newParameterizedType(")
+                .append(rawType);
+
+        for (TypeMirror typeArgument : typeArguments) {
+            literal.append(", ").append(typeLiteral(typeArgument, element));
+        }
+
+        return literal.append(')').toString();
+    }
+
+    private static boolean isRawType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isRawType(((ArrayType) type).getComponentType());
+        }
+
+        return type.getKind().isPrimitive()
+                || type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private String writeAdapter(TypeElement model, List<Property> properties) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        String modelName = model.getQualifiedName().toString();
+        String className = (packageName.isEmpty() ? modelName : modelName.substring(packageName.length() + 1))
+                .replace('.', '_') + GENERATED_CLASS_SUFFIX;
+
+        StringBuilder source = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("/**\n")
+                .append(" * JSON adapter of {@link ").append(modelName).append("} generated by {@code ")
+                .append(getClass().getSimpleName()).append("}.\n")
+                .append(" */\n")
+                .append("public final class ").append(className).append(" extends ").append(MOSHI_PACKAGE)
+                .append("JsonAdapter<").append(modelName).append("> {\n");
+
+        for (int i = 0; i < properties.size(); i++) {
+            if (properties.get(i).typeLiteral != null) {
+                source.append("    private final ").append(MOSHI_PACKAGE).append("JsonAdapter<")
+                        .append(properties.get(i).boxedType()).append("> adapter").append(i).append(";\n");
+            }
+        }
+
+        source.append("\n    public ").append(className).append('(').append(MOSHI_PACKAGE).append("Moshi moshi) {\n");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+
+            if (property.typeLiteral != null) {
+                source.append("        this.adapter").append(i).append(" = moshi.<").append(property.boxedType())
+                        .append(">adapter(").append(property.typeLiteral).append(").nullSafe();\n");
+            }
+        }
+
+        source.append("    }\n");
+
+        writeFromJson(source, modelName, properties);
+        writeToJson(source, modelName, properties);
+
+        source.append("\n    @Override\n")
+                .append("    public String toString() {\n")
+                .append("        return ").append(literal("JsonAdapter(" + modelName + ")")).append(";\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, model);
+        Writer writer = file.openWriter();
+
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+
+        return qualifiedName;
+    }
+
+    private void writeFromJson(StringBuilder source, String modelName, List<Property> properties) {
+        source.append("\n    @Override\n")
+                .append("    public ").append(modelName).append(" fromJson(").append(MOSHI_PACKAGE)
+                .append("JsonReader reader) throws java.io.IOException {\n")
+                .append("        if (reader.peek() == ").append(MOSHI_PACKAGE).append("JsonReader.Token.NULL) {\n")
+                .append("            reader.nextNull();\n")
+                .append("            return null;\n")
+                .append("        }\n\n")
+                .append("        ").append(modelName).append(" value = new ").append(modelName).append("();\n")
+                .append("        reader.beginObject();\n\n")
+                .append("        while (reader.hasNext()) {\n")
+                .append("            String name = reader.nextName();\n\n");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String setter = "value." + property.setter.getSimpleName();
+            String read = property.typeLiteral != null
+                    ? "this.adapter" + i + ".fromJson(reader)"
+                    : INLINE_READERS.get(property.type.toString());
+
+            source.append(i == 0 ? "            if (" : " else if (").append(literal(property.jsonName))
+                    .append(".equals(name)) {\n");
+
+            if (property.typeLiteral != null && !property.type.getKind().isPrimitive()) {
+                // Null-safe adapter
+                source.append("                ").append(setter).append('(').append(read).append(");\n");
+            } else {
+                source.append("                if (reader.peek() == ").append(MOSHI_PACKAGE)
+                        .append("JsonReader.Token.NULL) {\n")
+                        .append("                    reader.nextNull();\n");
+
+                if (!property.type.getKind().isPrimitive()) {
+                    source.append("                    ").append(setter).append("(null);\n");
+                }
+
+                source.append("                } else {\n")
+                        .append("                    ").append(setter).append('(').append(read).append(");\n")
+                        .append("                }\n");
+            }
+
+            source.append("            }");
+        }
+
+        if (properties.isEmpty()) {
+            source.append("            reader.skipValue();\n");
+        } else {
+            source.append(" else {\n")
+                    .append("                reader.skipValue();\n")
+                    .append("            }\n");
+        }
+
+        source.append("        }\n\n")
+                .append("        reader.endObject();\n\n")
+                .append("        return value;\n")
+                .append("    }\n");
+    }
+
+    private void writeToJson(StringBuilder source, String modelName, List<Property> properties) {
+        source.append("\n    @Override\n")
+                .append("    public void toJson(").append(MOSHI_PACKAGE).append("JsonWriter writer, ")
+                .append(modelName).append(" value) throws java.io.IOException {\n")
+                .append("        if (value == null) {\n")
+                .append("            writer.nullValue();\n")
+                .append("            return;\n")
+                .append("        }\n\n")
+                .append("        writer.beginObject();\n");
+
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            String get = "value." + property.getter.getSimpleName() + "()";
+
+            source.append("        writer.name(").append(literal(property.jsonName)).append(");\n");
+
+            if (property.typeLiteral != null) {
+                source.append("        this.adapter").append(i).append(".toJson(writer, ").append(get)
+                        .append(");\n");
+            } else if (property.type.getKind() == TypeKind.FLOAT) {
+                // Written as a Number, widening to a double would print digits the float does not have
+                source.append("        writer.value(Float.valueOf(").append(get).append("));\n");
+            } else if (property.type.getKind().isPrimitive()) {
+                source.append("        writer.value(").append(get).append(");\n");
+            } else {
+                String local = "property" + i;
+
+                source.append("        ").append(property.type).append(' ').append(local).append(" = ")
+                        .append(get).append(";\n")
+                        .append("        if (").append(local).append(" == null) {\n")
+                        .append("            writer.nullValue();\n")
+                        .append("        } else {\n")
+                        .append("            writer.value(").append(local).append(");\n")
+                        .append("        }\n");
+            }
+        }
+
+        source.append("        writer.endObject();\n")
+                .append("    }\n");
+    }
+
+    private void writeReflectConfig() {
+        if (generatedClasses.isEmpty()) {
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("[");
+
+        for (String generatedClass : generatedClasses) {
+            json.append(json.length() > 1 ? "," : "").append("\n  {\"name\": \"").append(generatedClass)
+                    .append("\", \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": [\"")
+                    .append(MOSHI_PACKAGE).append("Moshi\"]}]}");
+        }
+
+        json.append("\n]\n");
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", NATIVE_IMAGE_LOCATION + "reflect-config.json");
+            Writer writer = file.openWriter();
+
+            try {
+                writer.append(json);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write the native image configuration of the JSON adapters: " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror annotation, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(annotation);
+
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+
+        throw new IllegalArgumentException("No attribute " + name + " in " + annotation);
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c >= 0x7f) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return literal.append('"').toString();
+    }
+
+    private class Property {
+        final String jsonName;
+        final ExecutableElement getter;
+        final ExecutableElement setter;
+        final TypeMirror type;
+        String typeLiteral;
+
+        Property(String jsonName, ExecutableElement getter, ExecutableElement setter) {
+            this.jsonName = jsonName;
+            this.getter = getter;
+            this.setter = setter;
+            this.type = getter.getReturnType();
+        }
+
+        String boxedType() {
+            return type.getKind().isPrimitive()
+                    ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                            .getQualifiedName().toString()
+                    : type.toString();
+        }
+    }
+
+    private static class UnsupportedModelException extends Exception {
+        private final Element element;
+
+        UnsupportedModelException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Annotation processor generating an implementation class for every interface annotated with {@code
+ * RetrofitService}, used in place of the dynamic proxy created by {@code Retrofit.create}.
+ * <p>
+ * The implementation of {@code HelloService} is named {@code HelloService_Retrofit} and placed in the same package.
+ * Nested interfaces are named after all enclosing types, for example {@code Outer_HelloService_Retrofit}. Services
+ * using features the generated code does not support, such as form or multipart requests, {@code @Url}, {@code
+ * @QueryMap} or collections of query parameters, or referring to types the implementation cannot access, such as
+ * private nested classes, are skipped with a note and keep using the proxy.
+ * <p>
+ * The processor also writes an index of all services, read at startup instead of scanning the classpath, and the
+ * GraalVM native image configuration for the services, their generated implementations and their model types. See
+ * {@link ServiceMetadata}.
+ *
+ * @author troinine
+ */
+@SupportedAnnotationTypes(RetrofitServiceProcessor.RETROFIT_SERVICE_ANNOTATION)
+public class RetrofitServiceProcessor extends AbstractProcessor {
+    static final String RETROFIT_SERVICE_ANNOTATION = "org.springframework.boot.retrofit.annotation.RetrofitService";
+
+    /**
+     * Must match {@code RetrofitServiceFactory.GENERATED_CLASS_SUFFIX}.
+     */
+    static final String GENERATED_CLASS_SUFFIX = "_Retrofit";
+
+    private static final String HTTP_ANNOTATION_PACKAGE = "retrofit2.http.";
+    private static final String SERVICE_METHOD_CLASS = "org.springframework.boot.retrofit.GeneratedServiceMethod";
+    private static final Pattern PATH_PARAMETER = Pattern.compile("\\{([a-zA-Z][a-zA-Z0-9_-]*)\\}");
+    private static final Map<String, Boolean> HTTP_METHODS = new HashMap<String, Boolean>();
+
+    static {
+        // HTTP method annotations and whether requests made with them carry a body
+        HTTP_METHODS.put("DELETE", false);
+        HTTP_METHODS.put("GET", false);
+        HTTP_METHODS.put("HEAD", false);
+        HTTP_METHODS.put("OPTIONS", false);
+        HTTP_METHODS.put("PATCH", true);
+        HTTP_METHODS.put("POST", true);
+        HTTP_METHODS.put("PUT", true);
+    }
+
+    private ServiceMetadata metadata;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        metadata = new ServiceMetadata(processingEnv.getElementUtils());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeMetadata();
+
+            return false;
+        }
+
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.INTERFACE) {
+                    processService((TypeElement) element);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void processService(TypeElement service) {
+        metadata.addService(service, (String) getValue(getServiceAnnotation(service), "name"));
+
+        try {
+            metadata.addGeneratedClass(writeImplementation(service, parseService(service)));
+        } catch (UnsupportedServiceException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "No implementation generated for " + service.getQualifiedName()
+                            + ", it uses a dynamic proxy instead: " + e.getMessage(),
+                    e.element);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write the implementation of " + service.getQualifiedName() + ": " + e.getMessage(),
+                    service);
+        }
+    }
+
+    private void writeMetadata() {
+        try {
+            metadata.write(processingEnv.getFiler());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write the Retrofit service index and native image configuration: " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror getServiceAnnotation(TypeElement service) {
+        for (AnnotationMirror annotation : service.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(RETROFIT_SERVICE_ANNOTATION)) {
+                return annotation;
+            }
+        }
+
+        throw new IllegalArgumentException(service + " is not annotated with " + RETROFIT_SERVICE_ANNOTATION);
+    }
+
+    private List<ServiceMethod> parseService(TypeElement service) throws UnsupportedServiceException {
+        if (!service.getTypeParameters().isEmpty()) {
+            throw new UnsupportedServiceException(service, "generic service interfaces are not supported");
+        }
+
+        if (!service.getInterfaces().isEmpty()) {
+            throw new UnsupportedServiceException(service, "service interfaces must not extend other interfaces");
+        }
+
+        for (Element element = service; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedServiceException(service, "private types cannot be implemented");
+            }
+        }
+
+        List<ServiceMethod> methods = new ArrayList<ServiceMethod>();
+
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(parseMethod(method));
+            }
+        }
+
+        return methods;
+    }
+
+    private ServiceMethod parseMethod(ExecutableElement element) throws UnsupportedServiceException {
+        if (!element.getTypeParameters().isEmpty() || element.isVarArgs()) {
+            throw new UnsupportedServiceException(element, "generic and varargs methods are not supported");
+        }
+
+        TypeKind returnKind = element.getReturnType().getKind();
+
+        if (returnKind == TypeKind.VOID || returnKind.isPrimitive()) {
+            throw new UnsupportedServiceException(element, "service methods must return a call or adapted type");
+        }
+
+        PackageElement servicePackage = processingEnv.getElementUtils().getPackageOf(element);
+
+        if (!isAccessible(element.getReturnType(), servicePackage)) {
+            throw new UnsupportedServiceException(element, "the return type is not accessible from the package");
+        }
+
+        ServiceMethod method = new ServiceMethod(element);
+
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            String name = getHttpAnnotationName(annotation);
+
+            if (name == null || name.equals("Streaming")) {
+                continue;
+            }
+
+            if (HTTP_METHODS.containsKey(name)) {
+                if (method.httpMethod != null) {
+                    throw new UnsupportedServiceException(element, "only one HTTP method is allowed");
+                }
+
+                method.httpMethod = name;
+                method.hasBody = HTTP_METHODS.get(name);
+                method.url = (String) getValue(annotation, "value");
+            } else if (name.equals("Headers")) {
+                for (Object header : (List<?>) getValue(annotation, "value")) {
+                    method.headers.add((String) ((AnnotationValue) header).getValue());
+                }
+            } else {
+                throw new UnsupportedServiceException(element, "@" + name + " is not supported");
+            }
+        }
+
+        if (method.httpMethod == null) {
+            throw new UnsupportedServiceException(element, "no HTTP method annotation");
+        }
+
+        if (method.url.isEmpty()) {
+            throw new UnsupportedServiceException(element, "methods without a relative URL are not supported");
+        }
+
+        List<? extends VariableElement> parameters = element.getParameters();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!isAccessible(parameters.get(i).asType(), servicePackage)) {
+                throw new UnsupportedServiceException(parameters.get(i), "the type is not accessible from the package");
+            }
+
+            method.parameters.add(parseParameter(method, parameters.get(i), i));
+        }
+
+        String path = method.url.indexOf('?') != -1 ? method.url.substring(0, method.url.indexOf('?')) : method.url;
+        Matcher matcher = PATH_PARAMETER.matcher(path);
+
+        while (matcher.find()) {
+            if (!method.hasPathParameter(matcher.group(1))) {
+                throw new UnsupportedServiceException(element, "no @Path parameter for {" + matcher.group(1) + "}");
+            }
+        }
+
+        for (Parameter parameter : method.parameters) {
+            if (parameter.kind.equals("Path") && !path.contains("{" + parameter.name + "}")) {
+                throw new UnsupportedServiceException(parameter.element, "@Path parameter not in the URL");
+            }
+        }
+
+        return method;
+    }
+
+    private Parameter parseParameter(ServiceMethod method, VariableElement element, int index)
+            throws UnsupportedServiceException {
+        Parameter parameter = null;
+
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            String name = getHttpAnnotationName(annotation);
+
+            if (name == null) {
+                continue;
+            }
+
+            if (parameter != null) {
+                throw new UnsupportedServiceException(element, "only one Retrofit annotation is allowed");
+            }
+
+            parameter = new Parameter(element, index, name);
+
+            if (name.equals("Path") || name.equals("Query")) {
+                parameter.name = (String) getValue(annotation, "value");
+                parameter.encoded = (Boolean) getValue(annotation, "encoded");
+            } else if (name.equals("Header")) {
+                parameter.name = (String) getValue(annotation, "value");
+            } else if (name.equals("Body")) {
+                if (!method.hasBody || method.bodyParameter != -1) {
+                    throw new UnsupportedServiceException(element, "unexpected @Body parameter");
+                }
+
+                method.bodyParameter = index;
+            } else {
+                throw new UnsupportedServiceException(element, "@" + name + " is not supported");
+            }
+        }
+
+        if (parameter == null) {
+            throw new UnsupportedServiceException(element, "parameters must have a Retrofit annotation");
+        }
+
+        if ((parameter.kind.equals("Query") || parameter.kind.equals("Header")) && isMultiValued(element.asType())) {
+            throw new UnsupportedServiceException(element, "multi-valued parameters are not supported");
+        }
+
+        return parameter;
+    }
+
+    /**
+     * Returns whether the generated implementation, placed in the given package, can refer to the given type.
+     */
+    private boolean isAccessible(TypeMirror type, PackageElement from) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return isAccessible(((ArrayType) type).getComponentType(), from);
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+
+                return (wildcard.getExtendsBound() == null || isAccessible(wildcard.getExtendsBound(), from))
+                        && (wildcard.getSuperBound() == null || isAccessible(wildcard.getSuperBound(), from));
+            case DECLARED:
+                Element element = ((DeclaredType) type).asElement();
+
+                for (; element instanceof TypeElement; element = element.getEnclosingElement()) {
+                    if (element.getModifiers().contains(Modifier.PRIVATE)
+                            || !element.getModifiers().contains(Modifier.PUBLIC)
+                            && !processingEnv.getElementUtils().getPackageOf(element).equals(from)) {
+                        return false;
+                    }
+                }
+
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (!isAccessible(argument, from)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private boolean isMultiValued(TypeMirror type) {
+        TypeMirror iterable = processingEnv.getElementUtils().getTypeElement("java.lang.Iterable").asType();
+
+        return type.getKind() == TypeKind.ARRAY || processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type),
+                processingEnv.getTypeUtils().erasure(iterable));
+    }
+
+    private String writeImplementation(TypeElement service, List<ServiceMethod> methods) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString();
+        String serviceName = service.getQualifiedName().toString();
+        String className = (packageName.isEmpty() ? serviceName : serviceName.substring(packageName.length() + 1))
+                .replace('.', '_') + GENERATED_CLASS_SUFFIX;
+
+        StringBuilder source = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("/**\n")
+                .append(" * Implementation of {@link ").append(serviceName).append("} generated by {@code ")
+                .append(getClass().getSimpleName()).append("}.\n")
+                .append(" */\n")
+                .append("public final class ").append(className).append(" implements ").append(serviceName)
+                .append(" {\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("    private final ").append(SERVICE_METHOD_CLASS).append('<')
+                    .append(methods.get(i).element.getReturnType()).append("> method").append(i).append(";\n");
+        }
+
+        source.append("\n    public ").append(className).append("(retrofit2.Retrofit retrofit) {\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            writeInitializer(source, serviceName, methods.get(i), i);
+        }
+
+        source.append("    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            writeMethod(source, methods.get(i), i);
+        }
+
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, service);
+        Writer writer = file.openWriter();
+
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+
+        return qualifiedName;
+    }
+
+    private void writeInitializer(StringBuilder source, String serviceName, ServiceMethod method, int index) {
+        source.append("        this.method").append(index).append(" = new ").append(SERVICE_METHOD_CLASS)
+                .append('<').append(method.element.getReturnType()).append(">(\n")
+                .append("                retrofit,\n")
+                .append("                ").append(SERVICE_METHOD_CLASS).append(".method(").append(serviceName)
+                .append(".class, ").append(literal(method.element.getSimpleName().toString()));
+
+        for (Parameter parameter : method.parameters) {
+            source.append(", ").append(processingEnv.getTypeUtils().erasure(parameter.element.asType()))
+                    .append(".class");
+        }
+
+        source.append("),\n")
+                .append("                ").append(literal(method.httpMethod)).append(", ").append(method.hasBody)
+                .append(", ").append(literal(method.url)).append(",\n")
+                .append("                new String[] {");
+
+        for (int i = 0; i < method.headers.size(); i++) {
+            source.append(i > 0 ? ", " : "").append(literal(method.headers.get(i)));
+        }
+
+        source.append("}, ").append(method.bodyParameter).append(");\n");
+    }
+
+    private void writeMethod(StringBuilder source, ServiceMethod method, int index) {
+        String field = "this.method" + index;
+
+        source.append("\n    @Override\n")
+                .append("    public ").append(method.element.getReturnType()).append(' ')
+                .append(method.element.getSimpleName()).append('(');
+
+        for (int i = 0; i < method.parameters.size(); i++) {
+            VariableElement element = method.parameters.get(i).element;
+            source.append(i > 0 ? ", " : "").append(element.asType()).append(' ').append(element.getSimpleName());
+        }
+
+        source.append(") {\n")
+                .append("        return ").append(field).append(".adapt(").append(field).append(".newRequest()");
+
+        for (Parameter parameter : method.parameters) {
+            String value = field + (parameter.kind.equals("Body") ? ".convertBody(" : ".convert(")
+                    + parameter.index + ", " + parameter.element.getSimpleName() + ")";
+
+            source.append("\n                .");
+
+            if (parameter.kind.equals("Body")) {
+                source.append("body(").append(value).append(')');
+            } else if (parameter.kind.equals("Header")) {
+                source.append("header(").append(literal(parameter.name)).append(", ").append(value).append(')');
+            } else {
+                source.append(parameter.kind.equals("Path") ? "path(" : "query(").append(literal(parameter.name))
+                        .append(", ").append(value).append(", ").append(parameter.encoded).append(')');
+            }
+        }
+
+        source.append(");\n")
+                .append("    }\n");
+    }
+
+    private static String getHttpAnnotationName(AnnotationMirror annotation) {
+        String name = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+
+        return name.startsWith(HTTP_ANNOTATION_PACKAGE) ? name.substring(HTTP_ANNOTATION_PACKAGE.length()) : null;
+    }
+
+    private Object getValue(AnnotationMirror annotation, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(annotation);
+
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+
+        throw new IllegalArgumentException("No attribute " + name + " in " + annotation);
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c >= 0x7f) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return literal.append('"').toString();
+    }
+
+    private static class ServiceMethod {
+        final ExecutableElement element;
+        final List<String> headers = new ArrayList<String>();
+        final List<Parameter> parameters = new ArrayList<Parameter>();
+        String httpMethod;
+        boolean hasBody;
+        String url;
+        int bodyParameter = -1;
+
+        ServiceMethod(ExecutableElement element) {
+            this.element = element;
+        }
+
+        boolean hasPathParameter(String name) {
+            for (Parameter parameter : parameters) {
+                if (parameter.kind.equals("Path") && parameter.name.equals(name)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private static class Parameter {
+        final VariableElement element;
+        final int index;
+        final String kind;
+        String name;
+        boolean encoded;
+
+        Parameter(VariableElement element, int index, String kind) {
+            this.element = element;
+            this.index = index;
+            this.kind = kind;
+        }
+    }
+
+    private static class UnsupportedServiceException extends Exception {
+        private final Element element;
+
+        UnsupportedServiceException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
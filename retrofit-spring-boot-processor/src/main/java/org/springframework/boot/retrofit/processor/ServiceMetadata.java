@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.retrofit.processor;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Collects the services seen by {@link RetrofitServiceProcessor} and writes the resources derived from them once
+ * processing is over:
+ * <ul>
+ * <li>{@value #INDEX_LOCATION}, mapping each service interface to its bean name, which replaces classpath scanning
+ * at startup.</li>
+ * <li>GraalVM native image configuration under {@value #NATIVE_IMAGE_LOCATION}: reflective access to the service
+ * methods and their annotations, the constructors of the generated implementations and the members of the model
+ * types reachable from the method signatures, the dynamic proxies for services without a generated implementation,
+ * and the index itself as a resource.</li>
+ * </ul>
+ * Model types are found by following type arguments, array components, superclasses and field types, so that
+ * reflection based converters such as Jackson can bind nested objects. Types of the JDK and of the libraries the
+ * services are built on are left out.
+ *
+ * @author troinine
+ */
+class ServiceMetadata {
+    /**
+     * Must match {@code RetrofitServiceFactoryBeanRegistrar.INDEX_LOCATION}.
+     */
+    static final String INDEX_LOCATION = "META-INF/retrofit-services.properties";
+
+    static final String NATIVE_IMAGE_LOCATION = "META-INF/native-image/org.springframework.boot/retrofit-services/";
+
+    private static final String[] LIBRARY_PACKAGES = {
+            "java.", "javax.", "retrofit2.", "okhttp3.", "okio.", "rx.", "com.fasterxml.jackson."
+    };
+
+    private final Elements elements;
+    private final Map<String, String> services = new TreeMap<String, String>();
+    private final Set<String> generatedClasses = new TreeSet<String>();
+    private final Set<String> modelTypes = new TreeSet<String>();
+
+    ServiceMetadata(Elements elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Adds a service and the model types of its methods.
+     *
+     * @param service the service interface.
+     * @param beanName the bean name given to the service, or an empty string for a generated name.
+     */
+    void addService(TypeElement service, String beanName) {
+        services.put(elements.getBinaryName(service).toString(), beanName);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            addModelTypes(method.getReturnType());
+
+            for (VariableElement parameter : method.getParameters()) {
+                addModelTypes(parameter.asType());
+            }
+        }
+    }
+
+    /**
+     * Adds the implementation generated for a service.
+     *
+     * @param className the canonical name of the generated top-level class.
+     */
+    void addGeneratedClass(String className) {
+        generatedClasses.add(className);
+    }
+
+    void write(Filer filer) throws IOException {
+        if (services.isEmpty()) {
+            return;
+        }
+
+        writeIndex(filer);
+        writeReflectConfig(filer);
+        writeProxyConfig(filer);
+        writeResourceConfig(filer);
+    }
+
+    private void addModelTypes(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            addModelTypes(((ArrayType) type).getComponentType());
+        } else if (type.getKind() == TypeKind.WILDCARD) {
+            WildcardType wildcard = (WildcardType) type;
+
+            if (wildcard.getExtendsBound() != null) {
+                addModelTypes(wildcard.getExtendsBound());
+            }
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declaredType = (DeclaredType) type;
+            TypeElement element = (TypeElement) declaredType.asElement();
+
+            for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+                addModelTypes(typeArgument);
+            }
+
+            String name = elements.getBinaryName(element).toString();
+
+            if (isLibraryType(name) || element.getKind() == ElementKind.ANNOTATION_TYPE || !modelTypes.add(name)) {
+                return;
+            }
+
+            addModelTypes(element.getSuperclass());
+
+            for (Element member : element.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.FIELD && !member.getModifiers().contains(Modifier.STATIC)) {
+                    addModelTypes(member.asType());
+                }
+            }
+        }
+    }
+
+    private static boolean isLibraryType(String name) {
+        for (String libraryPackage : LIBRARY_PACKAGES) {
+            if (name.startsWith(libraryPackage)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void writeIndex(Filer filer) throws IOException {
+        StringBuilder index = new StringBuilder("# Retrofit services, generated by RetrofitServiceProcessor\n");
+
+        for (Map.Entry<String, String> service : services.entrySet()) {
+            index.append(service.getKey()).append('=').append(service.getValue()).append('\n');
+        }
+
+        write(filer, INDEX_LOCATION, index);
+    }
+
+    private void writeReflectConfig(Filer filer) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+
+        for (String service : services.keySet()) {
+            appendEntry(json, service, "\"allDeclaredMethods\": true");
+        }
+
+        for (String generatedClass : generatedClasses) {
+            appendEntry(json, generatedClass,
+                    "\"methods\": [{\"name\": \"<init>\", \"parameterTypes\": [\"retrofit2.Retrofit\"]}]");
+        }
+
+        for (String modelType : modelTypes) {
+            appendEntry(json, modelType, "\"allDeclaredConstructors\": true, \"allDeclaredMethods\": true, "
+                    + "\"allDeclaredFields\": true");
+        }
+
+        write(filer, NATIVE_IMAGE_LOCATION + "reflect-config.json", json.append("\n]\n"));
+    }
+
+    private void writeProxyConfig(Filer filer) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+
+        for (String service : services.keySet()) {
+            json.append(json.length() > 1 ? "," : "").append("\n  {\"interfaces\": [").append(string(service))
+                    .append("]}");
+        }
+
+        write(filer, NATIVE_IMAGE_LOCATION + "proxy-config.json", json.append("\n]\n"));
+    }
+
+    private void writeResourceConfig(Filer filer) throws IOException {
+        write(filer, NATIVE_IMAGE_LOCATION + "resource-config.json", new StringBuilder()
+                .append("{\n")
+                .append("  \"resources\": {\"includes\": [{\"pattern\": ")
+                .append(string("\\Q" + INDEX_LOCATION + "\\E"))
+                .append("}]}\n")
+                .append("}\n"));
+    }
+
+    private static void appendEntry(StringBuilder json, String name, String members) {
+        json.append(json.length() > 1 ? "," : "").append("\n  {\"name\": ").append(string(name)).append(", ")
+                .append(members).append('}');
+    }
+
+    private static String string(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static void write(Filer filer, String location, CharSequence content) throws IOException {
+        FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", location);
+        Writer writer = file.openWriter();
+
+        try {
+            writer.append(content);
+        } finally {
+            writer.close();
+        }
+    }
+}